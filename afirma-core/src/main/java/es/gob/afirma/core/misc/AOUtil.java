@@ -10,14 +10,16 @@
 package es.gob.afirma.core.misc;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.Charset;
@@ -55,6 +57,14 @@ public final class AOUtil {
      * codificaciones de Base64 est&aacute; aceptado, aunque no es nada recomendable */
     private static final String BASE_64_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz=_-\t\n+/0123456789\r~"; //$NON-NLS-1$
 
+    /** Tabla indexada por car&aacute;cter ASCII que indica si pertenece a {@link #BASE_64_ALPHABET}. */
+    private static final boolean[] BASE_64_TABLE = new boolean[128];
+    static {
+    	for (int i = 0; i < BASE_64_ALPHABET.length(); i++) {
+    		BASE_64_TABLE[BASE_64_ALPHABET.charAt(i)] = true;
+    	}
+    }
+
     /** Crea una URI a partir de un nombre de fichero local o una URL.
      * @param file Nombre del fichero local o URL
      * @return URI (<code>file://</code>) del fichero local o URL
@@ -315,9 +325,22 @@ public final class AOUtil {
 			return ""; //$NON-NLS-1$
 		}
 		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		final OutputStreamWriter osw = new OutputStreamWriter(baos, DEFAULT_ENCODING);
-		p.store(osw, ""); //$NON-NLS-1$
-		return Base64.getEncoder().encodeToString(baos.toByteArray()).replace('+', '-').replace('/', '_');
+		properties2Base64(p, baos);
+		return baos.toString(StandardCharsets.US_ASCII.name());
+	}
+
+	/** Escribe un objeto de propiedades codificado en Base64 URL SAFE, sin generar
+	 * representaciones intermedias del fichero de propiedades.
+	 * @param p Objeto de propiedades a convertir. Si es <code>null</code> no se escribe nada.
+	 * @param out Flujo en el que escribir el Base64. No se cierra.
+	 * @throws IOException Si hay problemas en la conversi&oacute;n a Base64 o en la escritura. */
+	public static void properties2Base64(final Properties p, final OutputStream out) throws IOException {
+		if (p == null) {
+			return;
+		}
+		try (Writer w = new OutputStreamWriter(newBase64Encoder(out, true), DEFAULT_ENCODING)) {
+			p.store(w, ""); //$NON-NLS-1$
+		}
 	}
 
 	/** Convierte una cadena Base64 en un objeto de propiedades.
@@ -325,17 +348,79 @@ public final class AOUtil {
 	 * @return Objeto de propiedades.
 	 * @throws IOException Si hay problemas en el proceso. */
     public static Properties base642Properties(final String base64) throws IOException {
-    	final Properties p = new Properties();
     	if (base64 == null || base64.isEmpty()) {
-    		return p;
+    		return new Properties();
     	}
-    	p.load(new InputStreamReader(
-			new ByteArrayInputStream(Base64.getDecoder().decode(base64.replace('-', '+').replace('_', '/'))), DEFAULT_ENCODING)
-		);
+    	return loadProperties(newBase64Decoder(base64));
+    }
 
+	/** Lee un objeto de propiedades codificado en Base64 (normal o URL SAFE) de un flujo de datos.
+	 * @param base64 Flujo con el Base64 que descodificado es un fichero de propiedades en texto plano.
+	 *               No se cierra.
+	 * @return Objeto de propiedades.
+	 * @throws IOException Si hay problemas en la lectura o la descodificaci&oacute;n. */
+    public static Properties base642Properties(final InputStream base64) throws IOException {
+    	return loadProperties(newBase64Decoder(base64));
+    }
+
+    private static Properties loadProperties(final InputStream decoded) throws IOException {
+    	final Properties p = new Properties();
+    	p.load(new InputStreamReader(decoded, DEFAULT_ENCODING));
     	return p;
     }
 
+    /** Crea un flujo que codifica en Base64 los datos que se escriben en &eacute;l.
+     * Al cerrarlo se escribe el final de la codificaci&oacute;n, pero no se cierra el flujo de destino.
+     * @param out Flujo en el que escribir el Base64.
+     * @param urlSafe <code>true</code> para usar el alfabeto URL SAFE, <code>false</code> para
+     *                usar el alfabeto normal.
+     * @return Flujo de codificaci&oacute;n. */
+    public static OutputStream newBase64Encoder(final OutputStream out, final boolean urlSafe) {
+    	final OutputStream nonClosing = new FilterOutputStream(out) {
+    		@Override
+    		public void write(final byte[] b, final int off, final int len) throws IOException {
+    			this.out.write(b, off, len);
+    		}
+    		@Override
+    		public void close() throws IOException {
+    			this.out.flush();
+    		}
+    	};
+    	return (urlSafe ? Base64.getUrlEncoder() : Base64.getEncoder()).wrap(nonClosing);
+    }
+
+    /** Escribe un objeto JSON con un &uacute;nico atributo cuyo valor son unos datos codificados en
+     * Base64. El Base64 se escribe directamente en el flujo de salida, sin generar representaciones
+     * intermedias de los datos.
+     * @param name Nombre del atributo JSON.
+     * @param data Datos a codificar en Base64 como valor del atributo.
+     * @param out Flujo en el que escribir el JSON en ASCII. No se cierra.
+     * @throws IOException Si hay problemas en la escritura. */
+    public static void writeBase64Json(final String name, final byte[] data, final OutputStream out) throws IOException {
+    	out.write(("{\n    \"" + name + "\": \"").getBytes(StandardCharsets.US_ASCII)); //$NON-NLS-1$ //$NON-NLS-2$
+    	try (OutputStream b64 = newBase64Encoder(out, false)) {
+    		b64.write(data);
+    	}
+    	out.write("\"\n}".getBytes(StandardCharsets.US_ASCII)); //$NON-NLS-1$
+    }
+
+    /** Crea un flujo que descodifica el Base64 de otro flujo. Se admiten tanto el alfabeto
+     * normal como el URL SAFE y se omiten los saltos de l&iacute;nea.
+     * @param base64 Flujo con el Base64. Se cierra al cerrar el flujo devuelto.
+     * @return Flujo con los datos descodificados. */
+    public static InputStream newBase64Decoder(final InputStream base64) {
+    	return Base64.getDecoder().wrap(new Base64AlphabetInputStream(base64));
+    }
+
+    /** Crea un flujo que descodifica una cadena Base64 car&aacute;cter a car&aacute;cter, sin
+     * copiarla previamente a un array de octetos. Se admiten tanto el alfabeto normal como
+     * el URL SAFE y se omiten los saltos de l&iacute;nea.
+     * @param base64 Texto Base64.
+     * @return Flujo con los datos descodificados. */
+    public static InputStream newBase64Decoder(final CharSequence base64) {
+    	return Base64.getDecoder().wrap(new Base64AlphabetInputStream(base64));
+    }
+
     /** Comprueba si un array de datos es una cadena en Base64.
      * @param data Datos a comprobar si podr&iacute;an o no ser Base64.
      * @return <code>true</code> si los datos proporcionado pueden ser una
@@ -348,9 +433,9 @@ public final class AOUtil {
         // Comprobamos que todos los caracteres de la cadena pertenezcan al alfabeto Base64
 
         for (int i = 0; i < data.length; i++) {
-        	final char b = (char) data[i];
+        	final int b = data[i];
         	// Solo puede aparecer el signo igual en los dos ultimos caracteres de la cadena
-        	if (BASE_64_ALPHABET.indexOf(b) == -1 || b == '=' && i < data.length - 2) {
+        	if (b < 0 || !BASE_64_TABLE[b] || b == '=' && i < data.length - 2) {
         		return false;
         	}
         	if (b != '\n' && b != '\r') {
@@ -373,10 +458,11 @@ public final class AOUtil {
 
         // Comprobamos que todos los caracteres de la cadena pertenezcan al alfabeto Base64
 
-        for (int i = 0; i < data.length(); i++) {
+        final int length = data.length();
+        for (int i = 0; i < length; i++) {
         	final char b = data.charAt(i);
         	// Solo puede aparecer el signo igual en como 2 ultimos caracteres de la cadena
-        	if (BASE_64_ALPHABET.indexOf(b) == -1 || b == '=' && i < data.length() - 2) {
+        	if (b >= BASE_64_TABLE.length || !BASE_64_TABLE[b] || b == '=' && i < length - 2) {
         		return false;
         	}
         	if (b != '\n' && b != '\r') {
@@ -387,4 +473,89 @@ public final class AOUtil {
         // Comprobamos que la cadena (sin contar los saltos de linea) tenga una longitud multiplo de 4 caracteres
         return count % 4 == 0;
     }
+
+    /** Flujo de lectura de texto Base64 que convierte el alfabeto URL SAFE al normal y omite
+     * los saltos de l&iacute;nea, para poder descodificarlo con el descodificador b&aacute;sico.
+     * El texto puede leerse de otro flujo o directamente de una cadena. */
+    private static final class Base64AlphabetInputStream extends InputStream {
+
+    	/** Valor que se devuelve para los caracteres no ASCII, que no pertenecen a ning&uacute;n alfabeto Base64. */
+    	private static final int INVALID_CHAR = '!';
+
+    	private final InputStream in;
+    	private final CharSequence chars;
+    	private int pos = 0;
+
+    	Base64AlphabetInputStream(final InputStream in) {
+    		this.in = in;
+    		this.chars = null;
+    	}
+
+    	Base64AlphabetInputStream(final CharSequence chars) {
+    		this.in = null;
+    		this.chars = chars;
+    	}
+
+    	@Override
+    	public int read() throws IOException {
+    		int c;
+    		do {
+    			if (this.in != null) {
+    				c = this.in.read();
+    			}
+    			else {
+    				c = this.pos < this.chars.length() ? this.chars.charAt(this.pos++) : -1;
+    			}
+    		} while (c == '\n' || c == '\r');
+    		return normalize(c);
+    	}
+
+    	@Override
+    	public int read(final byte[] b, final int off, final int len) throws IOException {
+    		if (len == 0) {
+    			return 0;
+    		}
+    		int n = 0;
+    		if (this.in != null) {
+    			// Leemos un bloque y lo compactamos sobre si mismo omitiendo los saltos de linea
+    			while (n == 0) {
+    				final int read = this.in.read(b, off, len);
+    				if (read == -1) {
+    					return -1;
+    				}
+    				for (int i = off; i < off + read; i++) {
+    					if (b[i] != '\n' && b[i] != '\r') {
+    						b[off + n++] = (byte) normalize(b[i] & 0xFF);
+    					}
+    				}
+    			}
+    			return n;
+    		}
+    		final int length = this.chars.length();
+    		while (n < len && this.pos < length) {
+    			final char c = this.chars.charAt(this.pos++);
+    			if (c != '\n' && c != '\r') {
+    				b[off + n++] = (byte) normalize(c);
+    			}
+    		}
+    		return n == 0 ? -1 : n;
+    	}
+
+    	private static int normalize(final int c) {
+    		if (c == '-') {
+    			return '+';
+    		}
+    		if (c == '_') {
+    			return '/';
+    		}
+    		return c > 0x7F ? INVALID_CHAR : c;
+    	}
+
+    	@Override
+    	public void close() throws IOException {
+    		if (this.in != null) {
+    			this.in.close();
+    		}
+    	}
+    }
 }
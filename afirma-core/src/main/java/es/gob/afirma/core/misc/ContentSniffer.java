@@ -0,0 +1,361 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * You may contact the copyright holder at: soporte.afirma@seap.minhap.es
+ */
+
+package es.gob.afirma.core.misc;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/** Utilidades para la identificaci&oacute;n del tipo de unos datos analizando solo una
+ * porci&oacute;n acotada de ellos.
+ * <p>
+ *  Se trabaja con una ventana al inicio y otra al final de los datos, cuyo tama&ntilde;o
+ *  puede configurarse mediante la propiedad de sistema {@link MimeHelper#SAMPLE_SIZE_PROPERTY},
+ *  y con unas pocas posiciones conocidas de los formatos soportados, de forma que el coste
+ *  del an&aacute;lisis no depende del tama&ntilde;o del documento.
+ * </p> */
+final class ContentSniffer {
+
+	/** Tama&ntilde;o por defecto de las ventanas de an&aacute;lisis. */
+	static final int DEFAULT_SAMPLE_SIZE = 8 * 1024;
+
+	private static final Logger LOGGER = Logger.getLogger(ContentSniffer.class.getName());
+
+	/** Firma de los ficheros compuestos OLE2 (Microsoft Office 97-2003). */
+	private static final byte[] OLE2_SIGNATURE = new byte[] {
+		(byte) 0xD0, (byte) 0xCF, (byte) 0x11, (byte) 0xE0, (byte) 0xA1, (byte) 0xB1, (byte) 0x1A, (byte) 0xE1
+	};
+
+	/** Nombre del flujo OLE2 con el resumen de propiedades del documento. */
+	private static final String SUMMARY_INFORMATION_STREAM = "\u0005SummaryInformation"; //$NON-NLS-1$
+
+	/** Identificador de la propiedad con el nombre de la aplicaci&oacute;n que cre&oacute; el documento. */
+	private static final int PIDSI_APPNAME = 0x12;
+
+	private static final int VT_LPSTR = 0x1E;
+	private static final int VT_LPWSTR = 0x1F;
+
+	/** N&uacute;mero de entradas del DIFAT incluidas en la cabecera OLE2. */
+	private static final int HEADER_DIFAT_ENTRIES = 109;
+
+	/** Longitud m&aacute;xima que se lee del nombre de la aplicaci&oacute;n. */
+	private static final int MAX_APPNAME_LENGTH = 256;
+
+	/** N&uacute;mero m&aacute;ximo de propiedades que se examinan en una secci&oacute;n. */
+	private static final int MAX_PROPERTIES = 1024;
+
+	private ContentSniffer() {
+		// No permitimos la instanciacion
+	}
+
+	/** Obtiene el tama&ntilde;o configurado para las ventanas de an&aacute;lisis.
+	 * @return Tama&ntilde;o de las ventanas en octetos. */
+	static int getSampleSize() {
+		final String value = System.getProperty(MimeHelper.SAMPLE_SIZE_PROPERTY);
+		if (value == null) {
+			return DEFAULT_SAMPLE_SIZE;
+		}
+		try {
+			final int size = Integer.parseInt(value.trim());
+			if (size > 0) {
+				return size;
+			}
+		}
+		catch (final NumberFormatException e) {
+			// Se avisa a continuacion
+		}
+		LOGGER.warning(() -> "Tamano de ventana de analisis no valido (" + value + "), se usara el por defecto: " + DEFAULT_SAMPLE_SIZE); //$NON-NLS-1$ //$NON-NLS-2$
+		return DEFAULT_SAMPLE_SIZE;
+	}
+
+	/** Obtiene la ventana inicial de los datos.
+	 * @param data Datos completos.
+	 * @return Primeros octetos de los datos o los propios datos si no superan el tama&ntilde;o
+	 *         de la ventana. */
+	static byte[] getHead(final byte[] data) {
+		final int size = getSampleSize();
+		return data.length <= size ? data : Arrays.copyOf(data, size);
+	}
+
+	/** Obtiene el texto de las ventanas inicial y final de los datos, interpretando cada octeto
+	 * como un car&aacute;cter ISO-8859-1 para poder buscar en &eacute;l cadenas ASCII.
+	 * @param data Datos completos.
+	 * @return Texto de las ventanas de an&aacute;lisis. */
+	static String getSampleText(final byte[] data) {
+		final int size = getSampleSize();
+		if (data.length <= 2L * size) {
+			return new String(data, StandardCharsets.ISO_8859_1);
+		}
+		return new String(data, 0, size, StandardCharsets.ISO_8859_1)
+				+ '\0'
+				+ new String(data, data.length - size, size, StandardCharsets.ISO_8859_1);
+	}
+
+	/** Obtiene el nombre de la aplicaci&oacute;n que cre&oacute; un documento compuesto OLE2
+	 * (formato de Microsoft Office 97-2003) a partir de su resumen de propiedades. Solo se leen
+	 * la cabecera, el directorio y los sectores del flujo de propiedades que se necesitan.
+	 * @param data Datos que se desean analizar.
+	 * @return Nombre de la aplicaci&oacute;n o <code>null</code> si los datos no son un
+	 *         documento OLE2 o no declaran la aplicaci&oacute;n que los cre&oacute;. */
+	static String getOle2ApplicationName(final byte[] data) {
+		if (data.length < 512 || !Arrays.equals(Arrays.copyOf(data, OLE2_SIGNATURE.length), OLE2_SIGNATURE)) {
+			return null;
+		}
+		try {
+			final Ole2File ole = new Ole2File(data);
+			final Ole2File.Stream summary = ole.findStream(SUMMARY_INFORMATION_STREAM);
+			return summary != null ? readApplicationName(ole, summary) : null;
+		}
+		catch (final IOException e) {
+			LOGGER.fine(() -> "No se ha podido analizar el documento OLE2: " + e); //$NON-NLS-1$
+			return null;
+		}
+	}
+
+	/** Lee la propiedad con el nombre de la aplicaci&oacute;n de un conjunto de propiedades
+	 * (<i>PropertySetStream</i>).
+	 * @param ole Documento OLE2.
+	 * @param stream Flujo con el conjunto de propiedades.
+	 * @return Nombre de la aplicaci&oacute;n o <code>null</code> si no se declara.
+	 * @throws IOException Si el conjunto de propiedades est&aacute; corrupto. */
+	private static String readApplicationName(final Ole2File ole, final Ole2File.Stream stream) throws IOException {
+		// Cabecera (28 octetos) y primer par FMTID/desplazamiento de seccion
+		final byte[] header = ole.read(stream, 0, 48);
+		final int sectionOffset = getInt(header, 44);
+
+		final byte[] section = ole.read(stream, sectionOffset, 8);
+		final int count = getInt(section, 4);
+		if (count < 0 || count > MAX_PROPERTIES) {
+			throw new IOException("Numero de propiedades no valido: " + count); //$NON-NLS-1$
+		}
+		final byte[] ids = ole.read(stream, sectionOffset + 8L, count * 8);
+		for (int i = 0; i < count; i++) {
+			if (getInt(ids, i * 8) == PIDSI_APPNAME) {
+				final long propertyOffset = sectionOffset + (getInt(ids, i * 8 + 4) & 0xFFFFFFFFL);
+				final byte[] property = ole.read(stream, propertyOffset, 8);
+				final int type = getInt(property, 0) & 0xFFFF;
+				final int length = getInt(property, 4);
+				if (length <= 0) {
+					return null;
+				}
+				final String name;
+				if (type == VT_LPSTR) {
+					name = new String(
+						ole.read(stream, propertyOffset + 8, Math.min(length, MAX_APPNAME_LENGTH)),
+						StandardCharsets.ISO_8859_1
+					);
+				}
+				else if (type == VT_LPWSTR) {
+					name = new String(
+						ole.read(stream, propertyOffset + 8, Math.min(length, MAX_APPNAME_LENGTH) * 2),
+						StandardCharsets.UTF_16LE
+					);
+				}
+				else {
+					return null;
+				}
+				final int end = name.indexOf('\0');
+				return end != -1 ? name.substring(0, end) : name;
+			}
+		}
+		return null;
+	}
+
+	private static int getInt(final byte[] data, final int offset) {
+		return data[offset] & 0xFF
+				| (data[offset + 1] & 0xFF) << 8
+				| (data[offset + 2] & 0xFF) << 16
+				| (data[offset + 3] & 0xFF) << 24;
+	}
+
+	/** Acceso aleatorio a los flujos de un documento compuesto OLE2 que se encuentra en memoria.
+	 * Las cadenas de sectores se recorren bajo demanda sin copiar los datos. */
+	private static final class Ole2File {
+
+		private static final int DIRECTORY_ENTRY_SIZE = 128;
+		private static final int STREAM_OBJECT = 2;
+
+		private final byte[] data;
+		private final int sectorShift;
+		private final int miniSectorShift;
+		private final long miniStreamCutoff;
+		private final int maxChainLength;
+		private int rootStart = -1;
+
+		Ole2File(final byte[] data) throws IOException {
+			this.data = data;
+			this.sectorShift = getShort(30);
+			this.miniSectorShift = getShort(32);
+			if (this.sectorShift < 7 || this.sectorShift > 16 || this.miniSectorShift < 2 || this.miniSectorShift >= this.sectorShift) {
+				throw new IOException("Tamano de sector no valido"); //$NON-NLS-1$
+			}
+			this.miniStreamCutoff = readInt(56) & 0xFFFFFFFFL;
+			this.maxChainLength = (data.length >> this.sectorShift) + 1;
+		}
+
+		/** Busca un flujo por su nombre en el directorio del documento.
+		 * @param name Nombre del flujo.
+		 * @return Flujo o <code>null</code> si no existe.
+		 * @throws IOException Si el directorio est&aacute; corrupto. */
+		Stream findStream(final String name) throws IOException {
+			final int entriesPerSector = (1 << this.sectorShift) / DIRECTORY_ENTRY_SIZE;
+			int sector = readInt(48);
+			for (int steps = 0; sector >= 0; steps++) {
+				checkSteps(steps);
+				final long sectorOffset = sectorOffset(sector);
+				checkRange(sectorOffset, 1 << this.sectorShift);
+				for (int i = 0; i < entriesPerSector; i++) {
+					final long entry = sectorOffset + (long) i * DIRECTORY_ENTRY_SIZE;
+					if (this.rootStart == -1) {
+						// La primera entrada del directorio es la raiz, que contiene el miniflujo
+						this.rootStart = readInt(entry + 116);
+						continue;
+					}
+					final int nameLength = getShort(entry + 64);
+					if (this.data[(int) entry + 66] == STREAM_OBJECT
+							&& nameLength == (name.length() + 1) * 2
+							&& name.equals(new String(this.data, (int) entry, nameLength - 2, StandardCharsets.UTF_16LE))) {
+						return new Stream(readInt(entry + 116), readInt(entry + 120) & 0xFFFFFFFFL);
+					}
+				}
+				sector = nextSector(sector);
+			}
+			return null;
+		}
+
+		/** Lee un fragmento de un flujo.
+		 * @param stream Flujo.
+		 * @param position Posici&oacute;n del flujo desde la que leer.
+		 * @param length N&uacute;mero de octetos a leer.
+		 * @return Octetos le&iacute;dos.
+		 * @throws IOException Si el fragmento excede el flujo o la cadena de sectores est&aacute; corrupta. */
+		byte[] read(final Stream stream, final long position, final int length) throws IOException {
+			if (position < 0 || length < 0 || position + length > stream.size) {
+				throw new IOException("Lectura fuera del flujo OLE2"); //$NON-NLS-1$
+			}
+			final boolean mini = stream.size < this.miniStreamCutoff;
+			final int unit = 1 << (mini ? this.miniSectorShift : this.sectorShift);
+			final byte[] out = new byte[length];
+			int done = 0;
+			while (done < length) {
+				final long pos = position + done;
+				final long offset = mini ? miniOffset(stream.start, pos) : offset(stream.start, pos);
+				final int chunk = (int) Math.min(length - done, unit - (pos & unit - 1));
+				checkRange(offset, chunk);
+				System.arraycopy(this.data, (int) offset, out, done, chunk);
+				done += chunk;
+			}
+			return out;
+		}
+
+		/** Calcula la posici&oacute;n en los datos de un octeto de una cadena de sectores. */
+		private long offset(final int start, final long position) throws IOException {
+			int sector = start;
+			final long steps = position >> this.sectorShift;
+			checkSteps(steps);
+			for (long i = 0; i < steps; i++) {
+				sector = nextSector(sector);
+			}
+			return sectorOffset(sector) + (position & (1 << this.sectorShift) - 1);
+		}
+
+		/** Calcula la posici&oacute;n en los datos de un octeto de una cadena de minisectores. */
+		private long miniOffset(final int start, final long position) throws IOException {
+			if (this.rootStart == -1) {
+				throw new IOException("No se ha localizado el miniflujo"); //$NON-NLS-1$
+			}
+			int miniSector = start;
+			final long steps = position >> this.miniSectorShift;
+			checkSteps(steps);
+			final int miniFatStart = readInt(60);
+			for (long i = 0; i < steps; i++) {
+				if (miniSector < 0) {
+					throw new IOException("Cadena de minisectores truncada"); //$NON-NLS-1$
+				}
+				miniSector = readInt(offset(miniFatStart, (long) miniSector * 4));
+			}
+			if (miniSector < 0) {
+				throw new IOException("Cadena de minisectores truncada"); //$NON-NLS-1$
+			}
+			return offset(
+				this.rootStart,
+				((long) miniSector << this.miniSectorShift) + (position & (1 << this.miniSectorShift) - 1)
+			);
+		}
+
+		/** Obtiene el siguiente sector de una cadena consultando la FAT. */
+		private int nextSector(final int sector) throws IOException {
+			if (sector < 0) {
+				throw new IOException("Cadena de sectores truncada"); //$NON-NLS-1$
+			}
+			final int entriesPerSector = 1 << this.sectorShift - 2;
+			final int fatSector = getFatSector(sector / entriesPerSector);
+			return readInt(sectorOffset(fatSector) + (long) (sector % entriesPerSector) * 4);
+		}
+
+		/** Obtiene el sector de la FAT con el &iacute;ndice indicado a partir del DIFAT. */
+		private int getFatSector(final int index) throws IOException {
+			if (index < HEADER_DIFAT_ENTRIES) {
+				return readInt(76 + index * 4L);
+			}
+			final int entriesPerSector = (1 << this.sectorShift - 2) - 1;
+			int difatSector = readInt(68);
+			int remaining = index - HEADER_DIFAT_ENTRIES;
+			for (int steps = 0; remaining >= entriesPerSector; steps++) {
+				checkSteps(steps);
+				difatSector = readInt(sectorOffset(difatSector) + entriesPerSector * 4L);
+				remaining -= entriesPerSector;
+			}
+			return readInt(sectorOffset(difatSector) + remaining * 4L);
+		}
+
+		private long sectorOffset(final int sector) throws IOException {
+			if (sector < 0) {
+				throw new IOException("Sector no valido: " + sector); //$NON-NLS-1$
+			}
+			return (long) (sector + 1) << this.sectorShift;
+		}
+
+		private void checkSteps(final long steps) throws IOException {
+			if (steps > this.maxChainLength) {
+				throw new IOException("Cadena de sectores demasiado larga o circular"); //$NON-NLS-1$
+			}
+		}
+
+		private void checkRange(final long offset, final int length) throws IOException {
+			if (offset < 0 || offset + length > this.data.length) {
+				throw new IOException("Posicion fuera del documento OLE2: " + offset); //$NON-NLS-1$
+			}
+		}
+
+		private int readInt(final long offset) throws IOException {
+			checkRange(offset, 4);
+			return getInt(this.data, (int) offset);
+		}
+
+		private int getShort(final long offset) throws IOException {
+			checkRange(offset, 2);
+			return this.data[(int) offset] & 0xFF | (this.data[(int) offset + 1] & 0xFF) << 8;
+		}
+
+		/** Inicio y tama&ntilde;o de un flujo del documento. */
+		static final class Stream {
+
+			final int start;
+			final long size;
+
+			Stream(final int start, final long size) {
+				this.start = start;
+				this.size = size;
+			}
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * You may contact the copyright holder at: soporte.afirma@seap.minhap.es
+ */
+
+package es.gob.afirma.core.misc;
+
+import java.io.ByteArrayInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Reserva por hilo de instancias de <code>MessageDigest</code> y <code>CertificateFactory</code>.
+ * <p>
+ *  Obtener estas instancias con <code>getInstance()</code> supone buscar el algoritmo entre los
+ *  proveedores de seguridad instalados, una operaci&oacute;n sincronizada que penaliza el
+ *  rendimiento cuando se realizan muchas firmas concurrentes. Esta clase conserva en cada hilo
+ *  las instancias ya creadas, identificadas por algoritmo y proveedor, para reutilizarlas.
+ * </p><p>
+ *  Las instancias obtenidas no deben compartirse con otros hilos ni conservarse m&aacute;s
+ *  all&aacute; de una &uacute;nica llamada, ya que la siguiente petici&oacute;n del mismo
+ *  algoritmo en el mismo hilo devolver&aacute; la misma instancia reinicializada. Cuando la
+ *  instancia deba usarse mientras se ejecuta c&oacute;digo ajeno (por ejemplo, al procesar un
+ *  flujo de datos), debe crearse con <code>getInstance()</code>.
+ * </p><p>
+ *  Las instancias reservadas mantienen referencias a las clases de sus proveedores. En entornos
+ *  en los que los hilos pertenecen a un contenedor (por ejemplo, un servidor de aplicaciones),
+ *  debe llamarse a {@link #clear()} al terminar cada petici&oacute;n para que los hilos no
+ *  retengan el cargador de clases de la aplicaci&oacute;n.
+ * </p><p>
+ *  Las instancias de <code>Signature</code> no se reservan: tras inicializarlas conservan la
+ *  clave usada y quedan ligadas al proveedor que la atendi&oacute;, por lo que deben crearse
+ *  para cada operaci&oacute;n.
+ * </p> */
+public final class CryptoInstancePool {
+
+	/** Tipos de instancia que se reservan. */
+	public enum InstanceType {
+		/** Instancias de <code>MessageDigest</code>. */
+		MESSAGE_DIGEST,
+		/** Instancias de <code>CertificateFactory</code>. */
+		CERTIFICATE_FACTORY
+	}
+
+	private static final String X509 = "X.509"; //$NON-NLS-1$
+
+	private static final ThreadLocal<Map<String, MessageDigest>> DIGESTS = ThreadLocal.withInitial(HashMap::new);
+	private static final ThreadLocal<CertificateFactory> CERTIFICATE_FACTORIES = new ThreadLocal<>();
+
+	private static final Map<InstanceType, LongAdder> HITS = new EnumMap<>(InstanceType.class);
+	private static final Map<InstanceType, LongAdder> MISSES = new EnumMap<>(InstanceType.class);
+	static {
+		for (final InstanceType type : InstanceType.values()) {
+			HITS.put(type, new LongAdder());
+			MISSES.put(type, new LongAdder());
+		}
+	}
+
+	private CryptoInstancePool() {
+		// No permitimos la instanciacion
+	}
+
+	/** Obtiene una instancia reinicializada de <code>MessageDigest</code> del hilo actual.
+	 * @param algorithm Nombre del algoritmo de huella digital.
+	 * @return Instancia del algoritmo de huella, sin datos procesados.
+	 * @throws NoSuchAlgorithmException Si ning&uacute;n proveedor soporta el algoritmo. */
+	public static MessageDigest getMessageDigest(final String algorithm) throws NoSuchAlgorithmException {
+		final Map<String, MessageDigest> digests = DIGESTS.get();
+		MessageDigest md = digests.get(algorithm);
+		if (md == null) {
+			md = MessageDigest.getInstance(algorithm);
+			digests.put(algorithm, md);
+			MISSES.get(InstanceType.MESSAGE_DIGEST).increment();
+		}
+		else {
+			md.reset();
+			HITS.get(InstanceType.MESSAGE_DIGEST).increment();
+		}
+		return md;
+	}
+
+	/** Calcula la huella digital de unos datos.
+	 * @param algorithm Nombre del algoritmo de huella digital.
+	 * @param data Datos de los que calcular la huella.
+	 * @return Huella digital de los datos.
+	 * @throws NoSuchAlgorithmException Si ning&uacute;n proveedor soporta el algoritmo. */
+	public static byte[] digest(final String algorithm, final byte[] data) throws NoSuchAlgorithmException {
+		return getMessageDigest(algorithm).digest(data);
+	}
+
+	/** Obtiene la factor&iacute;a de certificados X.509 del hilo actual.
+	 * @return Factor&iacute;a de certificados X.509.
+	 * @throws CertificateException Si ning&uacute;n proveedor soporta certificados X.509. */
+	public static CertificateFactory getCertificateFactory() throws CertificateException {
+		CertificateFactory cf = CERTIFICATE_FACTORIES.get();
+		if (cf == null) {
+			cf = CertificateFactory.getInstance(X509);
+			CERTIFICATE_FACTORIES.set(cf);
+			MISSES.get(InstanceType.CERTIFICATE_FACTORY).increment();
+		}
+		else {
+			HITS.get(InstanceType.CERTIFICATE_FACTORY).increment();
+		}
+		return cf;
+	}
+
+	/** Genera un certificado X.509 a partir de su codificaci&oacute;n.
+	 * @param encoded Codificaci&oacute;n del certificado.
+	 * @return Certificado X.509.
+	 * @throws CertificateException Si los datos no son un certificado v&aacute;lido. */
+	public static X509Certificate generateCertificate(final byte[] encoded) throws CertificateException {
+		return (X509Certificate) getCertificateFactory().generateCertificate(new ByteArrayInputStream(encoded));
+	}
+
+	/** Libera las instancias reservadas por el hilo actual.
+	 * Las siguientes peticiones de este hilo crear&aacute;n instancias nuevas. */
+	public static void clear() {
+		DIGESTS.remove();
+		CERTIFICATE_FACTORIES.remove();
+	}
+
+	/** Obtiene el n&uacute;mero de peticiones atendidas con una instancia ya existente.
+	 * @param type Tipo de instancia.
+	 * @return N&uacute;mero de aciertos. */
+	public static long getHits(final InstanceType type) {
+		return HITS.get(type).sum();
+	}
+
+	/** Obtiene el n&uacute;mero de peticiones para las que hubo que crear una instancia nueva.
+	 * @param type Tipo de instancia.
+	 * @return N&uacute;mero de fallos. */
+	public static long getMisses(final InstanceType type) {
+		return MISSES.get(type).sum();
+	}
+
+	/** Obtiene la proporci&oacute;n de peticiones atendidas con una instancia ya existente.
+	 * @param type Tipo de instancia.
+	 * @return Tasa de aciertos entre 0 y 1, o 0 si no ha habido peticiones. */
+	public static double getHitRate(final InstanceType type) {
+		final long hits = getHits(type);
+		final long total = hits + getMisses(type);
+		return total == 0 ? 0 : (double) hits / total;
+	}
+}
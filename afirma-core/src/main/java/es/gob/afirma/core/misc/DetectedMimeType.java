@@ -0,0 +1,55 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * You may contact the copyright holder at: soporte.afirma@seap.minhap.es
+ */
+
+package es.gob.afirma.core.misc;
+
+/** Tipo de datos identificado por un {@link MimeTypeDetector}. */
+public final class DetectedMimeType {
+
+	private final String mimeType;
+	private final String extension;
+	private final String description;
+
+	/** Crea el resultado de una detecci&oacute;n.
+	 * @param mimeType MimeType de los datos.
+	 * @param extension Extensi&oacute;n de fichero sin el punto separador o <code>null</code>
+	 *                  si no se conoce.
+	 * @param description Descripci&oacute;n del tipo de datos o <code>null</code> si no se conoce. */
+	public DetectedMimeType(final String mimeType, final String extension, final String description) {
+		if (mimeType == null) {
+			throw new IllegalArgumentException("El MimeType detectado no puede ser nulo"); //$NON-NLS-1$
+		}
+		this.mimeType = mimeType;
+		this.extension = extension;
+		this.description = description;
+	}
+
+	/** Obtiene el MimeType de los datos.
+	 * @return MimeType de los datos. */
+	public String getMimeType() {
+		return this.mimeType;
+	}
+
+	/** Obtiene la extensi&oacute;n de fichero asociada al tipo de datos.
+	 * @return Extensi&oacute;n sin el punto separador o <code>null</code> si no se conoce. */
+	public String getExtension() {
+		return this.extension;
+	}
+
+	/** Obtiene la descripci&oacute;n del tipo de datos.
+	 * @return Descripci&oacute;n o <code>null</code> si no se conoce. */
+	public String getDescription() {
+		return this.description;
+	}
+
+	@Override
+	public String toString() {
+		return this.mimeType + " (" + this.extension + ", " + this.description + ")"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+}
@@ -0,0 +1,60 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * You may contact the copyright holder at: soporte.afirma@seap.minhap.es
+ */
+
+package es.gob.afirma.core.misc;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.sf.jmimemagic.Magic;
+import net.sf.jmimemagic.MagicMatch;
+import net.sf.jmimemagic.MagicMatchNotFoundException;
+
+/** Detector del tipo de datos que delega en JMimeMagic.
+ * <p>
+ *  Esta clase solo debe cargarse tras comprobar que JMimeMagic est&aacute; disponible en el
+ *  <i>classpath</i>, ya que hace referencia directa a sus clases.
+ * </p> */
+final class JMimeMagicDetector implements MimeTypeDetector {
+
+	private static final Logger LOGGER = Logger.getLogger(JMimeMagicDetector.class.getName());
+
+	@Override
+	public DetectedMimeType detect(final byte[] head) {
+		final MagicMatch match;
+		try {
+			match = Magic.getMagicMatch(head);
+		}
+		catch (final MagicMatchNotFoundException e) {
+			LOGGER.warning(() -> "No se pudo detectar el formato de los datos: " + e); //$NON-NLS-1$
+			return null;
+		}
+		catch (final Exception | LinkageError e) {
+			LOGGER.log(Level.WARNING, "Error durante el analisis de la cabecera de los datos", e); //$NON-NLS-1$
+			return null;
+		}
+
+		final String mimeType = filterUnknown(match.getMimeType());
+		if (mimeType == null) {
+			return null;
+		}
+		return new DetectedMimeType(
+			mimeType,
+			filterUnknown(match.getExtension()),
+			filterUnknown(match.getDescription())
+		);
+	}
+
+	/** Sustituye por <code>null</code> el valor que devuelve JMimeMagic cuando no conoce un dato.
+	 * @param value Valor devuelto por JMimeMagic.
+	 * @return Valor o <code>null</code> si JMimeMagic no lo conoc&iacute;a. */
+	private static String filterUnknown(final String value) {
+		return MimeHelper.UNKNOWN_JMIMEMAGIC_VALUE.equals(value) ? null : value;
+	}
+}
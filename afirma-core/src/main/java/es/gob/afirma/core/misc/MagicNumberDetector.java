@@ -0,0 +1,74 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * You may contact the copyright holder at: soporte.afirma@seap.minhap.es
+ */
+
+package es.gob.afirma.core.misc;
+
+/** Detector de los formatos m&aacute;s habituales en la firma (PDF, Zip y los formatos
+ * ofim&aacute;ticos basados en &eacute;l y XML) mediante sus n&uacute;meros m&aacute;gicos.
+ * Devuelve los mismos valores que JMimeMagic para estos formatos, de forma que los casos
+ * comunes no necesitan recurrir a &eacute;l. Los formatos que JMimeMagic no reconoce, como
+ * CMS, no se detectan aqu&iacute; para no alterar el resultado. */
+final class MagicNumberDetector implements MimeTypeDetector {
+
+	/** Instancia &uacute;nica del detector. */
+	static final MagicNumberDetector INSTANCE = new MagicNumberDetector();
+
+	private static final DetectedMimeType PDF = new DetectedMimeType(
+		"application/pdf", "pdf", "PDF document" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	);
+
+	private static final DetectedMimeType ZIP = new DetectedMimeType(
+		"application/zip", "zip", "Zip archive data" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	);
+
+	private static final DetectedMimeType XML = new DetectedMimeType(
+		"text/xml", "xml", "Documento XML" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	);
+
+	private static final byte[] PDF_MAGIC = new byte[] { '%', 'P', 'D', 'F', '-' };
+
+	private static final byte[] XML_MAGIC = new byte[] { '<', '?', 'x', 'm', 'l' };
+
+	private static final byte[] UTF8_BOM = new byte[] { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+
+	private MagicNumberDetector() {
+		// Se usa la instancia unica
+	}
+
+	@Override
+	public DetectedMimeType detect(final byte[] head) {
+		if (startsWith(head, 0, PDF_MAGIC)) {
+			return PDF;
+		}
+		// Cabeceras de fichero local, de directorio central (Zip vacio) y de Zip fragmentado
+		if (head.length >= 4 && head[0] == 'P' && head[1] == 'K'
+				&& (head[2] == 0x03 && head[3] == 0x04
+					|| head[2] == 0x05 && head[3] == 0x06
+					|| head[2] == 0x07 && head[3] == 0x08)) {
+			return ZIP;
+		}
+		if (startsWith(head, 0, XML_MAGIC)
+				|| startsWith(head, 0, UTF8_BOM) && startsWith(head, UTF8_BOM.length, XML_MAGIC)) {
+			return XML;
+		}
+		return null;
+	}
+
+	private static boolean startsWith(final byte[] data, final int offset, final byte[] prefix) {
+		if (data.length < offset + prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (data[offset + i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -11,11 +11,19 @@ package es.gob.afirma.core.misc;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import es.gob.afirma.core.signers.AOSignConstants;
+
 /** M&eacute;todos de utilidad para la gesti&oacute;n de MimeType y OID
  * identificadores de tipo de contenido. */
 public final class MimeHelper {
@@ -35,6 +43,10 @@ public final class MimeHelper {
     /** OID del tipo de datos gen&eacute;rico. */
     public static final String DEFAULT_CONTENT_OID_DATA ="1.2.840.113549.1.7.1"; //$NON-NLS-1$
 
+    /** Propiedad de sistema con el tama&ntilde;o en octetos de las ventanas al inicio y al
+     * final de los datos que se examinan para identificar su tipo. Por defecto, 8 KB. */
+    public static final String SAMPLE_SIZE_PROPERTY = "es.gob.afirma.core.misc.mimeSampleSize"; //$NON-NLS-1$
+
     /** Mimetype de ficheros ZIP. */
     private static final String ZIP_MIMETYPE = "application/zip"; //$NON-NLS-1$
 
@@ -50,71 +62,189 @@ public final class MimeHelper {
     /** Mimetype asignado por JMimeMagic a algunos ficheros Word. */
     private static final String DOC_OFFICE_MIMETYPE = "application/msword"; //$NON-NLS-1$
 
-    /** Tabla que asocia Oids y Mimetypes. */
-    private static Properties oidMimetypeProp = null;
+    /** N&uacute;mero de resultados de an&aacute;lisis que se conservan en cach&eacute;. */
+    static final int DETECTION_CACHE_SIZE = 32;
+
+    /** Algoritmo de huella con el que se identifican en la cach&eacute; los datos analizados
+     * cuando no se proporciona su huella. */
+    private static final String FINGERPRINT_ALGORITHM = "SHA-256"; //$NON-NLS-1$
+
+    /** Tabla inmutable que asocia Oids y Mimetypes o <code>null</code> si no se pudo cargar. */
+    private static final Map<String, String> OID_MIMETYPE;
+
+    /** Tabla inmutable que asocia MimeType y OID o <code>null</code> si no se pudo cargar. */
+    private static final Map<String, String> MIMETYPE_OID;
+
+    /** Error producido al cargar las tablas de correspondencias entre OID y MimeType. */
+    private static final IOException TABLES_LOAD_ERROR;
+
+    static {
+        Map<String, String> oidMimetype = null;
+        Map<String, String> mimetypeOid = null;
+        IOException loadError = null;
+        try {
+            oidMimetype = loadOidMimetypeTable();
+            mimetypeOid = new HashMap<>();
+            for (final Map.Entry<String, String> entry : oidMimetype.entrySet()) {
+                mimetypeOid.put(entry.getValue(), entry.getKey());
+            }
+            mimetypeOid = Collections.unmodifiableMap(mimetypeOid);
+        }
+        catch (final IOException e) {
+            oidMimetype = null;
+            mimetypeOid = null;
+            loadError = e;
+        }
+        OID_MIMETYPE = oidMimetype;
+        MIMETYPE_OID = mimetypeOid;
+        TABLES_LOAD_ERROR = loadError;
+    }
+
+    /** MimeTypes verificados en los &uacute;ltimos an&aacute;lisis que requirieron recorrer los
+     * datos completos, identificados por la huella de los datos. */
+    private static final Map<ByteBuffer, String> DETECTION_CACHE = new LinkedHashMap<ByteBuffer, String>(DETECTION_CACHE_SIZE, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
 
-    /** Tabla que asocia MimeType y OID. */
-    private static Properties mimetypeOidProp = null;
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<ByteBuffer, String> eldest) {
+            return size() > DETECTION_CACHE_SIZE;
+        }
+    };
+
+    /** Huella de los datos analizados o <code>null</code> si a&uacute;n no se ha calculado. */
+    private ByteBuffer fingerprint;
+
+    /** Algoritmo de la huella de los datos proporcionada al construir el objeto o <code>null</code>
+     * si la huella se calcula internamente. */
+    private final String suppliedDigestAlgorithm;
 
     /** Objeto para el almac&eacute;n de la informaci&oacute;n de los datos. */
-    private MimeInfo mimeInfo = null;
+    private final MimeInfo mimeInfo;
 
     /** Datos analizados. */
     private final byte[] data;
 
-    /** Realiza el an&aacute;lisis de los datos.
+    /** Realiza el an&aacute;lisis de los datos con los detectores disponibles (ver
+     * {@link MimeTypeDetector}).
      * @param data Datos que se desean analizar.
      * @throws NullPointerException Cuando se introducen datos nulos. */
     public MimeHelper(final byte[] data) {
+        this(data, null, null);
+    }
+
+    /** Realiza el an&aacute;lisis de los datos con los detectores disponibles (ver
+     * {@link MimeTypeDetector}), aprovechando una huella digital de los datos ya calculada
+     * para identificarlos en la cach&eacute; de resultados sin tener que recorrerlos de nuevo.
+     * <p>
+     *  La cach&eacute; de resultados es com&uacute;n a todo el proceso, por lo que la huella
+     *  proporcionada solo se usa directamente para consultarla. Antes de guardar en ella el
+     *  resultado de un an&aacute;lisis, que ya exige recorrer los datos completos, se comprueba
+     *  que la huella corresponde a los datos y, si no es as&iacute;, el resultado no se guarda.
+     * </p>
+     * @param data Datos que se desean analizar.
+     * @param digestAlgorithm Algoritmo con el que se calcul&oacute; la huella de los datos o
+     *                        <code>null</code> si no se dispone de ella.
+     * @param dataDigest Huella digital de los datos o <code>null</code> si no se dispone de ella.
+     * @throws NullPointerException Cuando se introducen datos nulos. */
+    public MimeHelper(final byte[] data, final String digestAlgorithm, final byte[] dataDigest) {
 
         if (data == null) {
             throw new IllegalArgumentException("No se han indicado los datos que se desean analizar"); //$NON-NLS-1$
         }
 
         this.data = data;
+        this.suppliedDigestAlgorithm = digestAlgorithm != null && dataDigest != null ? digestAlgorithm : null;
+        this.fingerprint = this.suppliedDigestAlgorithm != null ?
+        		toFingerprint(digestAlgorithm, dataDigest) :
+        			null;
         this.mimeInfo = new MimeInfo();
 
+        // Las reglas de deteccion solo examinan la cabecera de los datos
+        final DetectedMimeType detected = MimeTypeDetectors.detect(ContentSniffer.getHead(this.data));
+        if (detected != null) {
+            this.mimeInfo.setMimeType(detected.getMimeType());
+            this.mimeInfo.setExtension(detected.getExtension());
+            this.mimeInfo.setDescription(detected.getDescription());
+        }
+    }
+
+    /** Compone la clave de la cach&eacute; de resultados a partir de la huella de unos datos.
+     * @param digestAlgorithm Algoritmo de la huella.
+     * @param dataDigest Huella de los datos.
+     * @return Clave de los datos en la cach&eacute;. */
+    private static ByteBuffer toFingerprint(final String digestAlgorithm, final byte[] dataDigest) {
+        final byte[] algorithm = digestAlgorithm.toUpperCase(Locale.ROOT).replace("-", "").getBytes(StandardCharsets.US_ASCII); //$NON-NLS-1$ //$NON-NLS-2$
+        final byte[] key = new byte[algorithm.length + 1 + dataDigest.length];
+        System.arraycopy(algorithm, 0, key, 0, algorithm.length);
+        System.arraycopy(dataDigest, 0, key, algorithm.length + 1, dataDigest.length);
+        return ByteBuffer.wrap(key);
+    }
+
+    /** Calcula la huella que identifica unos datos en la cach&eacute; de resultados.
+     * @param data Datos analizados.
+     * @return Huella de los datos o <code>null</code> si no se pudo calcular. */
+    private static ByteBuffer getFingerprint(final byte[] data) {
         try {
-            final Method getMagicMatchMethod = Class.forName("net.sf.jmimemagic.Magic") //$NON-NLS-1$
-                .getMethod("getMagicMatch", byte[].class); //$NON-NLS-1$
-            final Object magicMatchObject = getMagicMatchMethod.invoke(null, this.data);
-
-            final Class<?> magicMatchClass = Class.forName("net.sf.jmimemagic.MagicMatch"); //$NON-NLS-1$
-            String mt = (String) magicMatchClass.getMethod("getMimeType", (Class[]) null).invoke(magicMatchObject, (Object[]) null); //$NON-NLS-1$
-            if (UNKNOWN_JMIMEMAGIC_VALUE.equals(mt)) {
-            	mt = null;
-            }
-            this.mimeInfo.setMimeType(mt);
-            String ext = (String)magicMatchClass.getMethod("getExtension", (Class[]) null).invoke(magicMatchObject, (Object[]) null); //$NON-NLS-1$
-            if (UNKNOWN_JMIMEMAGIC_VALUE.equals(ext)) {
-            	ext = null;
-            }
-            this.mimeInfo.setExtension(ext);
-            String desc = (String) magicMatchClass.getMethod("getDescription", (Class[]) null).invoke(magicMatchObject, (Object[]) null); //$NON-NLS-1$
-            if (UNKNOWN_JMIMEMAGIC_VALUE.equals(desc)) {
-            	desc = null;
-            }
-            this.mimeInfo.setDescription(desc);
+            return toFingerprint(FINGERPRINT_ALGORITHM, CryptoInstancePool.digest(FINGERPRINT_ALGORITHM, data));
         }
-        catch (final ClassNotFoundException e) {
-            LOGGER.warning("No se encontro la biblioteca JMimeMagic para la deteccion del tipo de dato: " + e); //$NON-NLS-1$
+        catch (final NoSuchAlgorithmException e) {
+            LOGGER.warning("No se ha podido calcular la huella de los datos, no se usara la cache de resultados: " + e); //$NON-NLS-1$
+            return null;
         }
-        catch (final Exception e) {
-            try {
-                final Class<?> magicMatchNotFoundException = Class.forName("net.sf.jmimemagic.MagicMatchNotFoundException"); //$NON-NLS-1$
-                if (e.getCause() != null && magicMatchNotFoundException.isInstance(e.getCause())) {
-                    LOGGER.warning(()-> "No se pudo detectar el formato de los datos: " + e); //$NON-NLS-1$
-                }
-                else {
-                    LOGGER.log(Level.WARNING, "Error durante el analisis de la cabecera de los datos", e); //$NON-NLS-1$
-                }
-            }
-            catch (final Exception e2) {
-                LOGGER.warning("Error al cargar las bibliotecas de deteccion del tipo de dato: " + e2); //$NON-NLS-1$
+    }
+
+    /** Obtiene la huella que identifica los datos analizados en la cach&eacute; de resultados,
+     * calcul&aacute;ndola si no se proporcion&oacute; al construir el objeto.
+     * @return Huella de los datos o <code>null</code> si no se pudo calcular. */
+    private ByteBuffer getFingerprint() {
+        if (this.fingerprint == null) {
+            this.fingerprint = getFingerprint(this.data);
+        }
+        return this.fingerprint;
+    }
+
+    /** Obtiene la huella con la que guardar en la cach&eacute; de resultados los datos analizados.
+     * Si la huella se proporcion&oacute; al construir el objeto, se comprueba que corresponde a
+     * los datos, de forma que una huella err&oacute;nea no pueda asociar un resultado a otros datos.
+     * @return Huella de los datos o <code>null</code> si no se pudo calcular o la proporcionada
+     *         no corresponde a los datos. */
+    private ByteBuffer getVerifiedFingerprint() {
+        if (this.suppliedDigestAlgorithm == null) {
+            return getFingerprint();
+        }
+        try {
+            final String algorithm = AOSignConstants.getDigestAlgorithmName(this.suppliedDigestAlgorithm);
+            if (toFingerprint(this.suppliedDigestAlgorithm, CryptoInstancePool.digest(algorithm, this.data)).equals(this.fingerprint)) {
+                return this.fingerprint;
             }
+            LOGGER.warning("La huella proporcionada no corresponde a los datos, no se guardara el resultado en cache"); //$NON-NLS-1$
+        }
+        catch (final Exception e) {
+            LOGGER.warning("No se ha podido comprobar la huella de los datos, no se guardara el resultado en cache: " + e); //$NON-NLS-1$
+        }
+        return null;
+    }
+
+    /** Obtiene el MimeType en cach&eacute; de unos datos.
+     * @param fingerprint Huella de los datos.
+     * @return MimeType verificado o <code>null</code> si no se encuentra en cach&eacute;. */
+    private static String getCachedMimeType(final ByteBuffer fingerprint) {
+        if (fingerprint == null) {
+            return null;
+        }
+        synchronized (DETECTION_CACHE) {
+            return DETECTION_CACHE.get(fingerprint);
         }
     }
 
+    /** Obtiene el MimeType en cach&eacute; de unos datos.
+     * @param data Datos analizados.
+     * @return MimeType verificado o <code>null</code> si no se encuentra en cach&eacute;. */
+    static String getCachedMimeType(final byte[] data) {
+        return getCachedMimeType(getFingerprint(data));
+    }
+
     /** Obtiene el OID correspondiente a un MimeType concreto. Si no conoce el
      * OID asociado, devuelve el OID por defecto para datos binarios
      * (DEFAULT_CONTENT_OID_DATA).
@@ -122,12 +252,12 @@ public final class MimeHelper {
      * @return OID asociado al MimeType.
      * @throws IOException Si no se puede cargar la tabla de correspondencias entre MimeType y OID. */
     public static String transformMimeTypeToOid(final String mimetype) throws IOException {
-        if (mimetypeOidProp == null) {
-            loadMimetypeOidProperties();
+        if (MIMETYPE_OID == null) {
+            throw new IOException("No se han podido cargar las tablas de correspondencias entre OID y MimeType", TABLES_LOAD_ERROR); //$NON-NLS-1$
         }
         return mimetype == null ?
         		DEFAULT_CONTENT_OID_DATA :
-        			mimetypeOidProp.getProperty(mimetype, DEFAULT_CONTENT_OID_DATA);
+        			MIMETYPE_OID.getOrDefault(mimetype, DEFAULT_CONTENT_OID_DATA);
     }
 
     /** Obtiene el MimeType correspondiente a un OID concreto. Si no conoce el MimeType
@@ -136,37 +266,31 @@ public final class MimeHelper {
      * @return MimeType asociado al OID.
      * @throws IOException Si no se puede cargar la tabla de correspondencias entre MimeType y OID. */
     public static String transformOidToMimeType(final String oid) throws IOException {
-        if (oidMimetypeProp == null) {
-            loadOidMimetypeProperties();
+        if (OID_MIMETYPE == null) {
+            throw new IOException("No se han podido cargar las tablas de correspondencias entre OID y MimeType", TABLES_LOAD_ERROR); //$NON-NLS-1$
         }
         return oid == null ?
         		DEFAULT_MIMETYPE :
-        			oidMimetypeProp.getProperty(oid, DEFAULT_MIMETYPE);
+        			OID_MIMETYPE.getOrDefault(oid, DEFAULT_MIMETYPE);
     }
 
     /** Carga el fichero de propiedades que relaciona OID de formato con su MimeType
      * correspondiente.
+     * @return Tabla inmutable que asocia OID y MimeType.
      * @throws IOException Cuando hay errores en la carga del fichero de propiedades. */
-    private static void loadOidMimetypeProperties() throws IOException {
-        oidMimetypeProp = new Properties();
+    private static Map<String, String> loadOidMimetypeTable() throws IOException {
+        final Properties oidMimetypeProp = new Properties();
         try (InputStream isProp = MimeHelper.class.getClassLoader().getResourceAsStream("resources/mimetypes_oids.properties")) { //$NON-NLS-1$
 	        if (isProp == null) {
 	        	throw new IOException("No se ha encontrado el fichero de recursos para la relacion entre OID y MimeType"); //$NON-NLS-1$
 	        }
 	        oidMimetypeProp.load(isProp);
         }
-    }
-
-    /** Carga la tabla de relaci&oacute;n de MimeType y OID.
-     * @throws IOException Cuando hay errores en la carga del fichero de propiedades */
-    private static void loadMimetypeOidProperties() throws IOException {
-        if (oidMimetypeProp == null) {
-            loadOidMimetypeProperties();
-        }
-        mimetypeOidProp = new Properties();
-        for (final String key : oidMimetypeProp.keySet().toArray(new String[0])) {
-            mimetypeOidProp.put(oidMimetypeProp.get(key), key);
+        final Map<String, String> table = new HashMap<>();
+        for (final String key : oidMimetypeProp.stringPropertyNames()) {
+            table.put(key, oidMimetypeProp.getProperty(key));
         }
+        return Collections.unmodifiableMap(table);
     }
 
     /** Recupera el MimeType de los datos analizados.
@@ -182,6 +306,20 @@ public final class MimeHelper {
 
     	String mType = this.mimeInfo.getMimeType();
 
+    	// Las comprobaciones que faltan recorren los datos completos, asi que solo en ese caso
+    	// calculamos su huella y reutilizamos el resultado si ya se comprobaron
+    	final boolean fullCheck = mType == null || XML_MIMETYPE.equals(mType)
+    			|| ZIP_MIMETYPE.equals(mType) || DOC_OFFICE_MIMETYPE.equals(mType);
+    	if (!fullCheck) {
+    		return mType;
+    	}
+    	final String cached = getCachedMimeType(getFingerprint());
+    	if (cached != null) {
+    		this.mimeInfo.setMimeType(cached);
+    		this.mimeInfo.setMimeTypeVerified(true);
+    		return cached;
+    	}
+
     	// Si no hubo analisis inicial o este indico que los datos son XML, comprobamos
     	// si los datos son XML en realidad
     	if (mType == null || XML_MIMETYPE.equals(mType)) {
@@ -206,6 +344,13 @@ public final class MimeHelper {
     		this.mimeInfo.setMimeTypeVerified(true);
     	}
 
+    	final ByteBuffer verifiedFingerprint = getVerifiedFingerprint();
+    	if (verifiedFingerprint != null) {
+    		synchronized (DETECTION_CACHE) {
+    			DETECTION_CACHE.put(verifiedFingerprint, this.mimeInfo.getMimeType());
+    		}
+    	}
+
         return this.mimeInfo.getMimeType();
     }
 
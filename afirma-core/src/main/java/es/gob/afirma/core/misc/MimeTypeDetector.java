@@ -0,0 +1,27 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * You may contact the copyright holder at: soporte.afirma@seap.minhap.es
+ */
+
+package es.gob.afirma.core.misc;
+
+/** Detector del tipo de unos datos a partir de su cabecera.
+ * <p>
+ *  Las implementaciones adicionales se registran como servicio de {@link java.util.ServiceLoader}
+ *  (fichero <code>META-INF/services/es.gob.afirma.core.misc.MimeTypeDetector</code>) y se
+ *  consultan despu&eacute;s de la tabla interna de n&uacute;meros m&aacute;gicos y antes de
+ *  JMimeMagic. Deben poder usarse desde varios hilos a la vez.
+ * </p> */
+public interface MimeTypeDetector {
+
+	/** Identifica el tipo de unos datos.
+	 * @param head Primeros octetos de los datos. Su tama&ntilde;o est&aacute; acotado por
+	 *             la propiedad {@link MimeHelper#SAMPLE_SIZE_PROPERTY}, por lo que puede no
+	 *             contener los datos completos. No debe modificarse.
+	 * @return Tipo de los datos o <code>null</code> si este detector no lo reconoce. */
+	DetectedMimeType detect(byte[] head);
+}
@@ -0,0 +1,75 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * You may contact the copyright holder at: soporte.afirma@seap.minhap.es
+ */
+
+package es.gob.afirma.core.misc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** Registro de los detectores de tipo de datos disponibles. Se construye una &uacute;nica vez
+ * con, por este orden, la tabla interna de n&uacute;meros m&aacute;gicos, los detectores
+ * registrados como servicio y JMimeMagic, si est&aacute; disponible. */
+final class MimeTypeDetectors {
+
+	private static final Logger LOGGER = Logger.getLogger(MimeTypeDetectors.class.getName());
+
+	private static final List<MimeTypeDetector> DETECTORS = loadDetectors();
+
+	private MimeTypeDetectors() {
+		// No permitimos la instanciacion
+	}
+
+	private static List<MimeTypeDetector> loadDetectors() {
+		final List<MimeTypeDetector> detectors = new ArrayList<>();
+		detectors.add(MagicNumberDetector.INSTANCE);
+
+		try {
+			for (final MimeTypeDetector detector : ServiceLoader.load(MimeTypeDetector.class, MimeTypeDetectors.class.getClassLoader())) {
+				detectors.add(detector);
+				LOGGER.fine(() -> "Se ha registrado el detector de tipo de datos: " + detector.getClass().getName()); //$NON-NLS-1$
+			}
+		}
+		catch (final ServiceConfigurationError e) {
+			LOGGER.log(Level.WARNING, "No se han podido cargar los detectores de tipo de datos registrados", e); //$NON-NLS-1$
+		}
+
+		try {
+			Class.forName("net.sf.jmimemagic.Magic", false, MimeTypeDetectors.class.getClassLoader()); //$NON-NLS-1$
+			detectors.add(new JMimeMagicDetector());
+		}
+		catch (final ClassNotFoundException | LinkageError e) {
+			LOGGER.warning("No se encontro la biblioteca JMimeMagic para la deteccion del tipo de dato: " + e); //$NON-NLS-1$
+		}
+
+		return Collections.unmodifiableList(detectors);
+	}
+
+	/** Identifica el tipo de unos datos con el primer detector que lo reconozca.
+	 * @param head Primeros octetos de los datos.
+	 * @return Tipo de los datos o <code>null</code> si ning&uacute;n detector lo reconoce. */
+	static DetectedMimeType detect(final byte[] head) {
+		for (final MimeTypeDetector detector : DETECTORS) {
+			try {
+				final DetectedMimeType detected = detector.detect(head);
+				if (detected != null) {
+					return detected;
+				}
+			}
+			catch (final Exception e) {
+				LOGGER.log(Level.WARNING, "Error en el detector de tipo de datos " + detector.getClass().getName(), e); //$NON-NLS-1$
+			}
+		}
+		return null;
+	}
+}
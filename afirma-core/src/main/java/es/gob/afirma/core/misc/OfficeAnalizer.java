@@ -9,17 +9,14 @@
 
 package es.gob.afirma.core.misc;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
 import java.util.zip.ZipException;
-import java.util.zip.ZipFile;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -148,18 +145,18 @@ public final class OfficeAnalizer {
     	if (data.length >= THRESHOLD_FILE_SIZE) {
     		throw new IOException("El archivo tiene un tamano superior al permitido."); //$NON-NLS-1$
     	}
-    	final File tempFile = AOFileUtils.createTempFile(data);
-    	try (final ZipFile zipFile = new ZipFile(tempFile)) {
-    		if (isODFFile(zipFile)) {
+    	try {
+    		final ZipCentralDirectory zip = ZipCentralDirectory.read(data);
+    		if (isODFFile(zip)) {
     			try (
-					final InputStream is = zipFile.getInputStream(zipFile.getEntry("mimetype")); //$NON-NLS-1$
+					final InputStream is = zip.getInputStream("mimetype"); //$NON-NLS-1$
 				) {
     				mimetype = getODFMimeType(is);
     			}
     		}
-    		else if (isOOXMLFile(zipFile)) {
+    		else if (isOOXMLFile(zip)) {
     			try (
-					final InputStream is = zipFile.getInputStream(zipFile.getEntry("[Content_Types].xml")) //$NON-NLS-1$
+					final InputStream is = zip.getInputStream("[Content_Types].xml") //$NON-NLS-1$
 				) {
     				mimetype = getOOXMLMimeType(is);
     			}
@@ -175,13 +172,6 @@ public final class OfficeAnalizer {
     		// El fichero indicado no es un ZIP y, por tanto, tampoco un OOXML
     	}
 
-    	try {
-    		Files.delete(tempFile.toPath());
-    	}
-    	catch (final IOException e) {
-    		LOGGER.warning(()-> "No se ha podido eliminar el fichero temporal: " + e); //$NON-NLS-1$
-    	}
-
     	if (mimetype == null) {
     		mimetype = getMimeTypeOffice97(data);
     	}
@@ -195,8 +185,13 @@ public final class OfficeAnalizer {
 
 	private static String getMimeTypeOffice97(final byte[] data) {
 
-		// Comprobamos si se trata de un documento de Office 97-2003 con una estructura zip interna
-		final String testString = new String(data);
+		// Comprobamos si se trata de un documento de Office 97-2003 a partir de la aplicacion
+		// que declara en su resumen de propiedades o, si no es posible, buscando la aplicacion
+		// al inicio y al final de los datos
+		String testString = ContentSniffer.getOle2ApplicationName(data);
+		if (testString == null) {
+			testString = ContentSniffer.getSampleText(data);
+		}
 
 		if (testString.contains("Microsoft Excel")) { //$NON-NLS-1$
 			return "application/vnd.ms-excel"; //$NON-NLS-1$
@@ -267,40 +262,26 @@ public final class OfficeAnalizer {
      * @return Devuelve <code>true</code> si el fichero era un OOXML,
      * <code>false</code> en caso de no serlo o no poder comprobarlo. */
     public static boolean isOOXMLDocument(final byte[] document) {
-    	boolean result;
-    	File tempFile = null;
+    	if (document.length >= THRESHOLD_FILE_SIZE) {
+    		LOGGER.warning("El archivo tiene un tamano superior al permitido: " + document.length); //$NON-NLS-1$
+    		return false;
+    	}
     	try {
-        	if (document.length >= THRESHOLD_FILE_SIZE) {
-        		throw new IOException("El archivo tiene un tamano superior al permitido: " + document.length); //$NON-NLS-1$
-        	}
-    		tempFile = AOFileUtils.createTempFile(document);
-			try (final ZipFile zipFile = new ZipFile(tempFile)) {
-				result = isOOXMLFile(zipFile);
-			}
+    		return isOOXMLFile(ZipCentralDirectory.read(document));
     	}
     	catch (final Exception e) {
-    		result = false;
+    		return false;
 		}
-
-    	if (tempFile != null) {
-    		try {
-				Files.delete(tempFile.toPath());
-			}
-    		catch (final IOException e) {
-				LOGGER.warning("No se ha podido eliminar el fichero temporal: " + e); //$NON-NLS-1$
-			}
-    	}
-    	return result;
     }
 
     /** Indica si un fichero Zip tiene la estructura de un documento OOXML soportado.
-     * @param zipFile Fichero Zip que deseamos comprobar.
+     * @param zip Directorio central del Zip que deseamos comprobar.
      * @return Devuelve <code>true</code> si el fichero era un OOXML soportado, <code>false</code> en caso contrario. */
-    private static boolean isOOXMLFile(final ZipFile zipFile) {
+    private static boolean isOOXMLFile(final ZipCentralDirectory zip) {
         // Comprobamos si estan todos los ficheros principales del documento
-        return zipFile.getEntry("[Content_Types].xml") != null && zipFile.getEntry("_rels/.rels") != null //$NON-NLS-1$ //$NON-NLS-2$
-               && zipFile.getEntry("docProps/app.xml") != null //$NON-NLS-1$
-               && zipFile.getEntry("docProps/core.xml") != null; //$NON-NLS-1$
+        return zip.hasEntry("[Content_Types].xml") && zip.hasEntry("_rels/.rels") //$NON-NLS-1$ //$NON-NLS-2$
+               && zip.hasEntry("docProps/app.xml") //$NON-NLS-1$
+               && zip.hasEntry("docProps/core.xml"); //$NON-NLS-1$
     }
 
     /** Recupera el MimeType del XML "[Content_Type].xml" de un OOXML. Si el
@@ -359,44 +340,30 @@ public final class OfficeAnalizer {
      * <code>false</code> en caso de no serlo o no poder comprobarlo.
      * @throws IOException Si ocurren problemas leyendo el fichero. */
     public static boolean isODFDocument(final byte[] document) throws IOException {
-    	boolean result;
-    	File tempFile = null;
+    	if (document.length >= THRESHOLD_FILE_SIZE) {
+    		LOGGER.warning("El archivo tiene un tamano superior al permitido: " + document.length); //$NON-NLS-1$
+    		return false;
+    	}
     	try {
-        	if (document.length >= THRESHOLD_FILE_SIZE) {
-        		throw new IOException("El archivo tiene un tamano superior al permitido: " + document.length); //$NON-NLS-1$
-        	}
-    		tempFile = AOFileUtils.createTempFile(document);
-			try (final ZipFile zipFile = new ZipFile(tempFile)) {
-				result = isODFFile(zipFile);
-			}
+    		return isODFFile(ZipCentralDirectory.read(document));
     	}
     	catch (final Exception e) {
-    		result = false;
+    		return false;
 		}
-
-    	if (tempFile != null) {
-    		try {
-				Files.delete(tempFile.toPath());
-			}
-    		catch (final IOException e) {
-				LOGGER.warning("No se ha podido eliminar el fichero temporal: " + e); //$NON-NLS-1$
-			}
-    	}
-    	return result;
     }
 
     /** Indica si un fichero Zip tiene la estructura de un documento ODF soportado.
-     * @param zipFile Fichero Zip que deseamos comprobar.
+     * @param zip Directorio central del Zip que deseamos comprobar.
      * @return Devuelve <code>true</code> si el fichero era un ODF soportado, <code>false</code> en caso contrario. */
-    private static boolean isODFFile(final ZipFile zipFile) {
+    private static boolean isODFFile(final ZipCentralDirectory zip) {
         // Comprobamos si estan todos los ficheros principales del documento
     	return
-			zipFile.getEntry("mimetype") != null && //$NON-NLS-1$
-			zipFile.getEntry("content.xml") != null && //$NON-NLS-1$
-			zipFile.getEntry("meta.xml") != null && //$NON-NLS-1$
-			zipFile.getEntry("settings.xml") != null && //$NON-NLS-1$
-			zipFile.getEntry("styles.xml") != null && //$NON-NLS-1$
-			zipFile.getEntry("META-INF/manifest.xml") != null; //$NON-NLS-1$
+			zip.hasEntry("mimetype") && //$NON-NLS-1$
+			zip.hasEntry("content.xml") && //$NON-NLS-1$
+			zip.hasEntry("meta.xml") && //$NON-NLS-1$
+			zip.hasEntry("settings.xml") && //$NON-NLS-1$
+			zip.hasEntry("styles.xml") && //$NON-NLS-1$
+			zip.hasEntry("META-INF/manifest.xml"); //$NON-NLS-1$
     }
 
     /** Recupera la extensi&oacute;n apropiada para un documento ODF.
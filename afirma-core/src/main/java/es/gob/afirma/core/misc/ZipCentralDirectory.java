@@ -0,0 +1,229 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * You may contact the copyright holder at: soporte.afirma@seap.minhap.es
+ */
+
+package es.gob.afirma.core.misc;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/** Lector del directorio central de un fichero Zip que se encuentra en memoria.
+ * <p>
+ *  Permite comprobar qu&eacute; entradas contiene un Zip y leer algunas de ellas sin escribir
+ *  los datos en disco ni recorrer el fichero completo: solo se analiza el directorio central
+ *  del final del fichero y, al leer una entrada, su cabecera local y sus datos.
+ * </p> */
+final class ZipCentralDirectory {
+
+	private static final int EOCD_SIGNATURE = 0x06054b50;
+	private static final int EOCD_MIN_SIZE = 22;
+	private static final int ZIP64_EOCD_LOCATOR_SIGNATURE = 0x07064b50;
+	private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+	private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	private static final int LOCAL_HEADER_SIZE = 30;
+	private static final int ZIP64_EXTRA_ID = 0x0001;
+
+	/** Tama&ntilde;o m&aacute;ximo del comentario del Zip, que precede al final del directorio central. */
+	private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+	private static final int METHOD_STORED = 0;
+	private static final int METHOD_DEFLATED = 8;
+
+	private final ByteBuffer zip;
+	private final Map<String, Entry> entries;
+
+	private ZipCentralDirectory(final ByteBuffer zip, final Map<String, Entry> entries) {
+		this.zip = zip;
+		this.entries = entries;
+	}
+
+	/** Lee el directorio central de un Zip.
+	 * @param data Octetos del Zip.
+	 * @return Directorio central del Zip.
+	 * @throws ZipException Si los datos no son un Zip o su directorio central est&aacute; corrupto. */
+	static ZipCentralDirectory read(final byte[] data) throws ZipException {
+		return read(ByteBuffer.wrap(data));
+	}
+
+	/** Lee el directorio central de un Zip.
+	 * @param data Octetos del Zip, entre la posici&oacute;n y el l&iacute;mite del b&uacute;fer.
+	 *             No se modifica la posici&oacute;n del b&uacute;fer.
+	 * @return Directorio central del Zip.
+	 * @throws ZipException Si los datos no son un Zip o su directorio central est&aacute; corrupto. */
+	static ZipCentralDirectory read(final ByteBuffer data) throws ZipException {
+		final ByteBuffer zip = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+		try {
+			final int eocd = findEndOfCentralDirectory(zip);
+			long entriesCount = zip.getShort(eocd + 10) & 0xFFFF;
+			long cdOffset = zip.getInt(eocd + 16) & 0xFFFFFFFFL;
+
+			// Zip64: el final del directorio central real se indica en un localizador previo
+			if ((entriesCount == 0xFFFF || cdOffset == 0xFFFFFFFFL)
+					&& eocd >= 20 && zip.getInt(eocd - 20) == ZIP64_EOCD_LOCATOR_SIGNATURE) {
+				final int zip64Eocd = toPosition(zip, zip.getLong(eocd - 12));
+				if (zip.getInt(zip64Eocd) != ZIP64_EOCD_SIGNATURE) {
+					throw new ZipException("Final del directorio central Zip64 no encontrado"); //$NON-NLS-1$
+				}
+				entriesCount = zip.getLong(zip64Eocd + 32);
+				cdOffset = zip.getLong(zip64Eocd + 48);
+			}
+
+			final Map<String, Entry> entries = new HashMap<>();
+			int pos = toPosition(zip, cdOffset);
+			for (long i = 0; i < entriesCount; i++) {
+				if (zip.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+					throw new ZipException("Entrada del directorio central no valida"); //$NON-NLS-1$
+				}
+				final int method = zip.getShort(pos + 10) & 0xFFFF;
+				long compressedSize = zip.getInt(pos + 20) & 0xFFFFFFFFL;
+				final long size = zip.getInt(pos + 24) & 0xFFFFFFFFL;
+				final int nameLength = zip.getShort(pos + 28) & 0xFFFF;
+				final int extraLength = zip.getShort(pos + 30) & 0xFFFF;
+				final int commentLength = zip.getShort(pos + 32) & 0xFFFF;
+				long localHeaderOffset = zip.getInt(pos + 42) & 0xFFFFFFFFL;
+
+				final byte[] nameBytes = new byte[nameLength];
+				final ByteBuffer nameBuffer = zip.duplicate();
+				nameBuffer.position(pos + 46);
+				nameBuffer.get(nameBytes);
+				final String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+				// Valores Zip64 en el campo extra, en este orden y solo los que no caben en 32 bits
+				int extra = pos + 46 + nameLength;
+				final int extraEnd = extra + extraLength;
+				while (extra + 4 <= extraEnd) {
+					final int id = zip.getShort(extra) & 0xFFFF;
+					final int len = zip.getShort(extra + 2) & 0xFFFF;
+					if (id == ZIP64_EXTRA_ID) {
+						int field = extra + 4;
+						if (size == 0xFFFFFFFFL) {
+							field += 8;
+						}
+						if (compressedSize == 0xFFFFFFFFL) {
+							compressedSize = zip.getLong(field);
+							field += 8;
+						}
+						if (localHeaderOffset == 0xFFFFFFFFL) {
+							localHeaderOffset = zip.getLong(field);
+						}
+						break;
+					}
+					extra += 4 + len;
+				}
+
+				if (compressedSize < 0 || compressedSize > Integer.MAX_VALUE) {
+					throw new ZipException("Tamano comprimido no valido para la entrada " + name + ": " + compressedSize); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+				entries.putIfAbsent(name, new Entry(method, compressedSize, localHeaderOffset));
+				pos += 46 + nameLength + extraLength + commentLength;
+			}
+			return new ZipCentralDirectory(zip, entries);
+		}
+		catch (final IndexOutOfBoundsException e) {
+			throw new ZipException("Directorio central del Zip corrupto: " + e); //$NON-NLS-1$
+		}
+	}
+
+	private static int findEndOfCentralDirectory(final ByteBuffer zip) throws ZipException {
+		final int last = zip.limit() - EOCD_MIN_SIZE;
+		final int first = Math.max(0, last - MAX_COMMENT_SIZE);
+		for (int pos = last; pos >= first; pos--) {
+			if (zip.getInt(pos) == EOCD_SIGNATURE
+					&& pos + EOCD_MIN_SIZE + (zip.getShort(pos + 20) & 0xFFFF) == zip.limit()) {
+				return pos;
+			}
+		}
+		throw new ZipException("Los datos no son un Zip"); //$NON-NLS-1$
+	}
+
+	private static int toPosition(final ByteBuffer zip, final long offset) throws ZipException {
+		if (offset < 0 || offset >= zip.limit()) {
+			throw new ZipException("Desplazamiento fuera del Zip: " + offset); //$NON-NLS-1$
+		}
+		return (int) offset;
+	}
+
+	/** Indica si el Zip contiene una entrada.
+	 * @param name Nombre de la entrada.
+	 * @return <code>true</code> si el Zip contiene la entrada, <code>false</code> en caso contrario. */
+	boolean hasEntry(final String name) {
+		return this.entries.containsKey(name);
+	}
+
+	/** Obtiene un flujo de lectura con el contenido descomprimido de una entrada.
+	 * @param name Nombre de la entrada.
+	 * @return Flujo de lectura del contenido o <code>null</code> si el Zip no contiene la entrada.
+	 * @throws IOException Si la entrada est&aacute; corrupta o usa un m&eacute;todo de compresi&oacute;n
+	 *                     no soportado. */
+	InputStream getInputStream(final String name) throws IOException {
+		final Entry entry = this.entries.get(name);
+		if (entry == null) {
+			return null;
+		}
+		final int dataStart;
+		try {
+			final int header = toPosition(this.zip, entry.localHeaderOffset);
+			if (this.zip.getInt(header) != LOCAL_HEADER_SIGNATURE) {
+				throw new ZipException("Cabecera local no valida para la entrada: " + name); //$NON-NLS-1$
+			}
+			dataStart = header + LOCAL_HEADER_SIZE
+					+ (this.zip.getShort(header + 26) & 0xFFFF)
+					+ (this.zip.getShort(header + 28) & 0xFFFF);
+		}
+		catch (final IndexOutOfBoundsException e) {
+			throw new ZipException("Cabecera local corrupta para la entrada " + name + ": " + e); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		if (entry.compressedSize > this.zip.limit() - (long) dataStart) {
+			throw new ZipException("Datos fuera del Zip para la entrada: " + name); //$NON-NLS-1$
+		}
+
+		final byte[] compressed = new byte[(int) entry.compressedSize];
+		final ByteBuffer dataBuffer = this.zip.duplicate();
+		dataBuffer.position(dataStart);
+		dataBuffer.get(compressed);
+
+		switch (entry.method) {
+			case METHOD_STORED:
+				return new ByteArrayInputStream(compressed);
+			case METHOD_DEFLATED:
+				return new InflaterInputStream(new ByteArrayInputStream(compressed), new Inflater(true)) {
+					@Override
+					public void close() throws IOException {
+						super.close();
+						this.inf.end();
+					}
+				};
+			default:
+				throw new ZipException("Metodo de compresion no soportado (" + entry.method + ") para la entrada: " + name); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	/** Datos del directorio central sobre una entrada. */
+	private static final class Entry {
+
+		final int method;
+		final long compressedSize;
+		final long localHeaderOffset;
+
+		Entry(final int method, final long compressedSize, final long localHeaderOffset) {
+			this.method = method;
+			this.compressedSize = compressedSize;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+	}
+}
@@ -10,13 +10,11 @@
 package es.gob.afirma.core.misc.http;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.Base64;
 import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
 
@@ -53,9 +51,9 @@ public final class DataDownloader {
 		}
 
 		// Si eran datos comprimidos, los descomprimimos directamente
-		if (gzipped && AOUtil.isBase64(ds.getBytes())) {
+		if (gzipped && AOUtil.isBase64(ds)) {
 			LOGGER.info("Se ha indicado que los datos de entrada estan comrpimidos con GZIP"); //$NON-NLS-1$
-			return gunzipBytes(Base64.getDecoder().decode(ds.replace("_", "/").replace("-", "+"))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			return gunzipBytes(AOUtil.newBase64Decoder(ds));
 		}
 
 		final String dataSource = ds.trim();
@@ -89,10 +87,10 @@ public final class DataDownloader {
 		// No son URL, son los datos en si
 
 		// Comprobamos que los datos se pueden tratar como base 64
-		if (AOUtil.isBase64(dataSource.getBytes())) {
+		if (AOUtil.isBase64(dataSource)) {
 			LOGGER.info("El contenido a obtener es Base64"); //$NON-NLS-1$
-			try {
-				return Base64.getDecoder().decode(dataSource.replace("_", "/").replace("-", "+")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			try (InputStream is = AOUtil.newBase64Decoder(dataSource)) {
+				return AOUtil.getDataFromInputStream(is);
 			}
 			catch (final Exception e) {
 				LOGGER.warning("Los datos introducidos no se pueden tratar como Base64: " + e); //$NON-NLS-1$
@@ -115,11 +113,10 @@ public final class DataDownloader {
 		return downloadData(ds, false);
 	}
 
-	private static byte[] gunzipBytes(final byte[] compressedData) throws IOException {
+	private static byte[] gunzipBytes(final InputStream compressedData) throws IOException {
         try (
-    		ByteArrayInputStream bis = new ByteArrayInputStream(compressedData);
     		ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            GZIPInputStream gzipIS = new GZIPInputStream(bis)
+            GZIPInputStream gzipIS = new GZIPInputStream(compressedData)
 		) {
             final byte[] buffer = new byte[GUNZIP_BUFFER_SIZE];
             int len;
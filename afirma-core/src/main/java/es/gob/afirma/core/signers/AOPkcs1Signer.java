@@ -32,6 +32,19 @@ public final class AOPkcs1Signer implements AOSigner {
 
 	private static final Logger LOGGER = Logger.getLogger(AOPkcs1Signer.class.getName());
 
+	/** Par&aacute;metro adicional con la pol&iacute;tica de verificaci&oacute;n del PKCS#1 generado
+	 * (<code>always</code>, <code>sampled</code> o <code>async</code>). Por defecto, <code>always</code>.
+	 * @see Pkcs1VerificationPolicy */
+	public static final String PARAM_VERIFICATION_POLICY = "pkcs1VerificationPolicy"; //$NON-NLS-1$
+
+	/** Par&aacute;metro adicional con la frecuencia de verificaci&oacute;n de la pol&iacute;tica
+	 * <code>sampled</code>: se verifica una de cada N firmas, contadas de forma conjunta para toda la
+	 * m&aacute;quina virtual. Por defecto, {@value #DEFAULT_VERIFICATION_SAMPLE_RATE}. */
+	public static final String PARAM_VERIFICATION_SAMPLE_RATE = "pkcs1VerificationSampleRate"; //$NON-NLS-1$
+
+	/** Frecuencia de verificaci&oacute;n por defecto de la pol&iacute;tica <code>sampled</code>. */
+	public static final int DEFAULT_VERIFICATION_SAMPLE_RATE = 10;
+
 	/** Realiza una firma electr&oacute;nica PKCS#1 v1.5.
 	 * @param algorithm Algoritmo de firma a utilizar.
 	 * @param key Clave privada a usar para la firma.
@@ -46,6 +59,9 @@ public final class AOPkcs1Signer implements AOSigner {
 	 *                      Provider.es.gob.jmulticard.jse.provider.DniePrivateKey=DNIeJCAProvider<br>
 	 *                      Provider.es.gob.jmulticard.jse.provider.ceres.CeresPrivateKey=CeresJCAProvider
 	 *                    </code></p>
+	 *                    Tambi&eacute;n puede indicarse la pol&iacute;tica de verificaci&oacute;n del PKCS#1
+	 *                    generado mediante los par&aacute;metros {@link #PARAM_VERIFICATION_POLICY} y
+	 *                    {@link #PARAM_VERIFICATION_SAMPLE_RATE}.
 	 * @return Firma PKCS#1 en binario puro no tratado.
 	 * @throws AOException en caso de cualquier problema durante la firma. */
 	@Override
@@ -111,17 +127,14 @@ public final class AOPkcs1Signer implements AOSigner {
         // creacion de firma realmente ha generado el PKCS#1 usando la clave privada del
         // certificado proporcionado
 		if (certChain != null && certChain.length > 0) {
-			try {
-				final Signature sigVerifier = Signature.getInstance(algorithmName);
-				sigVerifier.initVerify(certChain[0].getPublicKey());
-				sigVerifier.update(data);
-				if (!sigVerifier.verify(signature)) {
-					throw new AOException("El PKCS#1 de firma obtenido no se genero con el certificado indicado"); //$NON-NLS-1$
-				}
-			}
-			catch (final NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
-				throw new AOException("Error al verificar el PKCS#1 de la firma", e); //$NON-NLS-1$
-			}
+			Pkcs1SignatureVerifier.verify(
+				algorithmName,
+				certChain[0].getPublicKey(),
+				data,
+				signature,
+				getVerificationPolicy(extraParams),
+				getVerificationSampleRate(extraParams)
+			);
 		}
 		else {
 			LOGGER.warning("No se ha proporcionado el certificado para comprobar la integridad del PKCS#1"); //$NON-NLS-1$
@@ -130,6 +143,45 @@ public final class AOPkcs1Signer implements AOSigner {
 		return signature;
 	}
 
+	/** Obtiene una instant&aacute;nea de las estad&iacute;sticas de verificaci&oacute;n de los
+	 * PKCS#1 generados en esta m&aacute;quina virtual.
+	 * @return Estad&iacute;sticas de verificaci&oacute;n. */
+	public static Pkcs1VerificationMetrics getVerificationMetrics() {
+		return Pkcs1SignatureVerifier.getMetrics();
+	}
+
+	private static Pkcs1VerificationPolicy getVerificationPolicy(final Properties extraParams) {
+		final String policy = extraParams != null ? extraParams.getProperty(PARAM_VERIFICATION_POLICY) : null;
+		if (policy == null || policy.trim().isEmpty()) {
+			return Pkcs1VerificationPolicy.ALWAYS;
+		}
+		try {
+			return Pkcs1VerificationPolicy.fromName(policy);
+		}
+		catch (final IllegalArgumentException e) {
+			LOGGER.warning("Politica de verificacion del PKCS#1 no reconocida (" + policy + "), se verificaran todas las firmas: " + e); //$NON-NLS-1$ //$NON-NLS-2$
+			return Pkcs1VerificationPolicy.ALWAYS;
+		}
+	}
+
+	private static int getVerificationSampleRate(final Properties extraParams) {
+		final String rate = extraParams != null ? extraParams.getProperty(PARAM_VERIFICATION_SAMPLE_RATE) : null;
+		if (rate == null || rate.trim().isEmpty()) {
+			return DEFAULT_VERIFICATION_SAMPLE_RATE;
+		}
+		try {
+			final int sampleRate = Integer.parseInt(rate.trim());
+			if (sampleRate > 0) {
+				return sampleRate;
+			}
+		}
+		catch (final NumberFormatException e) {
+			// Se notifica a continuacion
+		}
+		LOGGER.warning("Frecuencia de verificacion del PKCS#1 no valida (" + rate + "), se usara " + DEFAULT_VERIFICATION_SAMPLE_RATE); //$NON-NLS-1$ //$NON-NLS-2$
+		return DEFAULT_VERIFICATION_SAMPLE_RATE;
+	}
+
 	@Override
 	public byte[] cosign(final byte[] data,
 			             final byte[] sign,
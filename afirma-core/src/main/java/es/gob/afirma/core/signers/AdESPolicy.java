@@ -12,11 +12,11 @@ package es.gob.afirma.core.signers;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
-import java.security.MessageDigest;
 import java.util.Base64;
 import java.util.Properties;
 
 import es.gob.afirma.core.misc.AOUtil;
+import es.gob.afirma.core.misc.CryptoInstancePool;
 
 /** Pol&iacute;tica de firma para AdES.
  * @author Tom&aacute;s Garc&iacute;a-Mer&aacute;s */
@@ -74,7 +74,7 @@ public final class AdESPolicy {
 
             try (InputStream is = new URI(identifier).toURL().openStream()) {
                 policyIdentifierHash =  Base64.getEncoder().encodeToString(
-            		MessageDigest.getInstance(policyIdentifierHashAlgorithm).digest(
+            		CryptoInstancePool.digest(policyIdentifierHashAlgorithm, 
         				AOUtil.getDataFromInputStream(is)
     				)
         		);
@@ -0,0 +1,158 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * You may contact the copyright holder at: soporte.afirma@seap.minhap.es
+ */
+
+package es.gob.afirma.core.signers;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import es.gob.afirma.core.AOException;
+
+/** Verificaci&oacute;n de los PKCS#1 generados contra la clave p&uacute;blica del certificado del
+ * firmante, seg&uacute;n la pol&iacute;tica de verificaci&oacute;n configurada. */
+final class Pkcs1SignatureVerifier {
+
+	/** N&uacute;mero m&aacute;ximo de verificaciones en segundo plano en espera. Si se alcanza,
+	 * la verificaci&oacute;n se realiza en el hilo que solicit&oacute; la firma. Cada
+	 * verificaci&oacute;n en espera conserva una copia de los datos firmados, por lo que este
+	 * l&iacute;mite acota tambi&eacute;n la memoria retenida. */
+	private static final int MAX_PENDING_VERIFICATIONS = 16;
+
+	private static final Logger LOGGER = Logger.getLogger(Pkcs1SignatureVerifier.class.getName());
+
+	/** Contador de firmas para la pol&iacute;tica de muestreo. Es com&uacute;n a todas las firmas
+	 * de la m&aacute;quina virtual, de modo que la frecuencia de muestreo se aplica sobre el
+	 * total de firmas con esta pol&iacute;tica y no sobre las de cada firmante. */
+	private static final AtomicLong SIGNATURE_COUNTER = new AtomicLong();
+
+	private static final LongAdder VERIFIED = new LongAdder();
+	private static final LongAdder FAILED = new LongAdder();
+	private static final LongAdder SKIPPED = new LongAdder();
+	private static final LongAdder PENDING = new LongAdder();
+	private static final LongAdder VERIFICATION_NANOS = new LongAdder();
+
+	private static ExecutorService executor = null;
+
+	private Pkcs1SignatureVerifier() {
+		// No permitimos la instanciacion
+	}
+
+	/** Verifica un PKCS#1 seg&uacute;n la pol&iacute;tica indicada.
+	 * @param algorithmName Nombre JCA del algoritmo de firma.
+	 * @param publicKey Clave p&uacute;blica del certificado del firmante.
+	 * @param data Datos firmados.
+	 * @param signature PKCS#1 generado.
+	 * @param policy Pol&iacute;tica de verificaci&oacute;n.
+	 * @param sampleRate Frecuencia de verificaci&oacute;n para la pol&iacute;tica de muestreo (se
+	 *                   verifica una de cada <code>sampleRate</code> firmas de toda la m&aacute;quina
+	 *                   virtual).
+	 * @throws AOException Si se verifica el PKCS#1 en el momento y no es v&aacute;lido o no
+	 *                     puede comprobarse. */
+	static void verify(final String algorithmName,
+			           final PublicKey publicKey,
+			           final byte[] data,
+			           final byte[] signature,
+			           final Pkcs1VerificationPolicy policy,
+			           final int sampleRate) throws AOException {
+		switch (policy) {
+			case SAMPLED:
+				if (SIGNATURE_COUNTER.getAndIncrement() % sampleRate == 0) {
+					doVerify(algorithmName, publicKey, data, signature);
+				}
+				else {
+					SKIPPED.increment();
+				}
+				break;
+			case ASYNC:
+				final byte[] dataCopy = data.clone();
+				final byte[] signatureCopy = signature.clone();
+				PENDING.increment();
+				getExecutor().execute(() -> {
+					try {
+						doVerify(algorithmName, publicKey, dataCopy, signatureCopy);
+					}
+					catch (final AOException e) {
+						LOGGER.log(Level.SEVERE, "La verificacion en segundo plano de un PKCS#1 ha fallado", e); //$NON-NLS-1$
+					}
+					finally {
+						PENDING.decrement();
+					}
+				});
+				break;
+			default:
+				doVerify(algorithmName, publicKey, data, signature);
+		}
+	}
+
+	private static void doVerify(final String algorithmName,
+			                     final PublicKey publicKey,
+			                     final byte[] data,
+			                     final byte[] signature) throws AOException {
+		final long start = System.nanoTime();
+		try {
+			final Signature sigVerifier = Signature.getInstance(algorithmName);
+			sigVerifier.initVerify(publicKey);
+			sigVerifier.update(data);
+			if (!sigVerifier.verify(signature)) {
+				FAILED.increment();
+				throw new AOException("El PKCS#1 de firma obtenido no se genero con el certificado indicado"); //$NON-NLS-1$
+			}
+			VERIFIED.increment();
+		}
+		catch (final NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
+			FAILED.increment();
+			throw new AOException("Error al verificar el PKCS#1 de la firma", e); //$NON-NLS-1$
+		}
+		finally {
+			VERIFICATION_NANOS.add(System.nanoTime() - start);
+		}
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = new ThreadPoolExecutor(
+				1,
+				1,
+				0L,
+				TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(MAX_PENDING_VERIFICATIONS),
+				r -> {
+					final Thread t = new Thread(r, "afirma-pkcs1-verifier"); //$NON-NLS-1$
+					t.setDaemon(true);
+					return t;
+				},
+				new ThreadPoolExecutor.CallerRunsPolicy()
+			);
+		}
+		return executor;
+	}
+
+	/** Obtiene una instant&aacute;nea de las estad&iacute;sticas de verificaci&oacute;n.
+	 * @return Estad&iacute;sticas de verificaci&oacute;n. */
+	static Pkcs1VerificationMetrics getMetrics() {
+		return new Pkcs1VerificationMetrics(
+			VERIFIED.sum(),
+			FAILED.sum(),
+			SKIPPED.sum(),
+			PENDING.sum(),
+			VERIFICATION_NANOS.sum()
+		);
+	}
+}
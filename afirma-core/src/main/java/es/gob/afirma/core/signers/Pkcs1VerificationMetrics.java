@@ -0,0 +1,73 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * You may contact the copyright holder at: soporte.afirma@seap.minhap.es
+ */
+
+package es.gob.afirma.core.signers;
+
+/** Instant&aacute;nea de las estad&iacute;sticas de verificaci&oacute;n de los PKCS#1
+ * generados por {@link AOPkcs1Signer}. */
+public final class Pkcs1VerificationMetrics {
+
+	private final long verified;
+	private final long failed;
+	private final long skipped;
+	private final long pending;
+	private final long verificationNanos;
+
+	Pkcs1VerificationMetrics(final long verified,
+			                 final long failed,
+			                 final long skipped,
+			                 final long pending,
+			                 final long verificationNanos) {
+		this.verified = verified;
+		this.failed = failed;
+		this.skipped = skipped;
+		this.pending = pending;
+		this.verificationNanos = verificationNanos;
+	}
+
+	/** Obtiene el n&uacute;mero de firmas verificadas correctamente.
+	 * @return N&uacute;mero de firmas verificadas correctamente. */
+	public long getVerified() {
+		return this.verified;
+	}
+
+	/** Obtiene el n&uacute;mero de firmas cuya verificaci&oacute;n fall&oacute; o no pudo realizarse.
+	 * @return N&uacute;mero de verificaciones fallidas. */
+	public long getFailed() {
+		return this.failed;
+	}
+
+	/** Obtiene el n&uacute;mero de firmas que se devolvieron sin verificar por la pol&iacute;tica
+	 * de muestreo.
+	 * @return N&uacute;mero de firmas no verificadas. */
+	public long getSkipped() {
+		return this.skipped;
+	}
+
+	/** Obtiene el n&uacute;mero de verificaciones en segundo plano que a&uacute;n no han terminado.
+	 * @return N&uacute;mero de verificaciones pendientes. */
+	public long getPending() {
+		return this.pending;
+	}
+
+	/** Obtiene el tiempo total dedicado a las verificaciones realizadas, en nanosegundos.
+	 * @return Tiempo total de verificaci&oacute;n en nanosegundos. */
+	public long getVerificationNanos() {
+		return this.verificationNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "Verificaciones PKCS#1: correctas=" + this.verified //$NON-NLS-1$
+				+ ", fallidas=" + this.failed //$NON-NLS-1$
+				+ ", omitidas=" + this.skipped //$NON-NLS-1$
+				+ ", pendientes=" + this.pending //$NON-NLS-1$
+				+ ", tiempo=" + this.verificationNanos / 1000000 + "ms"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
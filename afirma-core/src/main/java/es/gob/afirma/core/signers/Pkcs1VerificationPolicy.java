@@ -0,0 +1,44 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * You may contact the copyright holder at: soporte.afirma@seap.minhap.es
+ */
+
+package es.gob.afirma.core.signers;
+
+import java.util.Locale;
+
+/** Pol&iacute;tica de verificaci&oacute;n de los PKCS#1 generados por {@link AOPkcs1Signer}
+ * contra la clave p&uacute;blica del certificado del firmante. */
+public enum Pkcs1VerificationPolicy {
+
+	/** Se verifican todas las firmas antes de devolverlas. Es la pol&iacute;tica por defecto. */
+	ALWAYS,
+
+	/** Se verifica una de cada N firmas antes de devolverla. Las dem&aacute;s se devuelven
+	 * sin verificar. Las firmas se cuentan de forma conjunta para toda la m&aacute;quina
+	 * virtual, no por firmante, por lo que las firmas de un mismo firmante pueden quedar
+	 * todas sin verificar si se intercalan con las de otros. */
+	SAMPLED,
+
+	/** Las firmas se devuelven inmediatamente y se verifican en segundo plano. Los errores de
+	 * verificaci&oacute;n se registran y contabilizan, pero no se notifican a quien
+	 * solicit&oacute; la firma. Si hay demasiadas verificaciones en espera, la firma se
+	 * verifica antes de devolverla. */
+	ASYNC;
+
+	/** Obtiene la pol&iacute;tica correspondiente a un nombre, sin distinguir may&uacute;sculas
+	 * de min&uacute;sculas.
+	 * @param name Nombre de la pol&iacute;tica.
+	 * @return Pol&iacute;tica con ese nombre.
+	 * @throws IllegalArgumentException Si no hay ninguna pol&iacute;tica con ese nombre. */
+	public static Pkcs1VerificationPolicy fromName(final String name) {
+		if (name == null) {
+			throw new IllegalArgumentException("El nombre de la politica de verificacion no puede ser nulo"); //$NON-NLS-1$
+		}
+		return valueOf(name.trim().toUpperCase(Locale.US));
+	}
+}
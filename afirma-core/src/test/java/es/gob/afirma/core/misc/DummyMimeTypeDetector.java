@@ -0,0 +1,22 @@
+package es.gob.afirma.core.misc;
+
+import java.nio.charset.StandardCharsets;
+
+/** Detector de pruebas registrado como servicio que reconoce los datos que empiezan
+ * por {@link #MAGIC}. */
+public final class DummyMimeTypeDetector implements MimeTypeDetector {
+
+	/** Prefijo de los datos que reconoce este detector. */
+	static final String MAGIC = "AFIRMA-DUMMY"; //$NON-NLS-1$
+
+	/** MimeType que asigna este detector. */
+	static final String MIMETYPE = "application/x-afirma-dummy"; //$NON-NLS-1$
+
+	@Override
+	public DetectedMimeType detect(final byte[] head) {
+		if (new String(head, StandardCharsets.ISO_8859_1).startsWith(MAGIC)) {
+			return new DetectedMimeType(MIMETYPE, "dummy", "Datos de prueba"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		return null;
+	}
+}
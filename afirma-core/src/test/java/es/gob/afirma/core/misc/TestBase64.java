@@ -1,7 +1,12 @@
 package es.gob.afirma.core.misc;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
+import java.util.Properties;
 import java.util.zip.CRC32;
 
 import org.junit.jupiter.api.Assertions;
@@ -52,4 +57,68 @@ final class TestBase64 {
 			Assertions.assertEquals(crcl, crc.getValue());
 		}
 	}
+	/** Prueba la codificaci&oacute;n y descodificaci&oacute;n Base64 por flujos, la
+	 * conversi&oacute;n de propiedades y la validaci&oacute;n de Base64.
+	 * @throws Exception En cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	void testStreamingBase64() throws Exception {
+		final byte[] data;
+		try (InputStream is = ClassLoader.getSystemResourceAsStream("pdf.pdf")) { //$NON-NLS-1$
+			data = AOUtil.getDataFromInputStream(is);
+		}
+
+		// Codificacion por flujos, en ambos alfabetos
+		for (final boolean urlSafe : new boolean[] { false, true }) {
+			final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			try (OutputStream b64 = AOUtil.newBase64Encoder(baos, urlSafe)) {
+				b64.write(data, 0, 1000);
+				b64.write(data, 1000, data.length - 1000);
+			}
+			// El flujo de destino sigue abierto tras cerrar el codificador
+			baos.write('\n');
+			final String encoded = new String(baos.toByteArray(), StandardCharsets.US_ASCII).trim();
+			Assertions.assertEquals(
+				urlSafe ? Base64.getUrlEncoder().encodeToString(data) : Base64.getEncoder().encodeToString(data),
+				encoded
+			);
+			Assertions.assertTrue(AOUtil.isBase64(encoded));
+			Assertions.assertArrayEquals(data, AOUtil.getDataFromInputStream(AOUtil.newBase64Decoder(encoded)));
+			Assertions.assertArrayEquals(
+				data,
+				AOUtil.getDataFromInputStream(AOUtil.newBase64Decoder(new ByteArrayInputStream(baos.toByteArray())))
+			);
+		}
+
+		// Base64 con saltos de linea
+		Assertions.assertArrayEquals(
+			data,
+			AOUtil.getDataFromInputStream(AOUtil.newBase64Decoder(Base64.getMimeEncoder().encodeToString(data)))
+		);
+
+		// Propiedades
+		final Properties p = new Properties();
+		p.setProperty("format", "CAdES"); //$NON-NLS-1$ //$NON-NLS-2$
+		p.setProperty("signatureProductionCity", "M\u00E1laga"); //$NON-NLS-1$ //$NON-NLS-2$
+		final String b64Properties = AOUtil.properties2Base64(p);
+		Assertions.assertEquals(p, AOUtil.base642Properties(b64Properties));
+		Assertions.assertEquals(
+			p,
+			AOUtil.base642Properties(new ByteArrayInputStream(b64Properties.getBytes(StandardCharsets.US_ASCII)))
+		);
+
+		// JSON con los datos en Base64
+		final ByteArrayOutputStream json = new ByteArrayOutputStream();
+		AOUtil.writeBase64Json("result", data, json); //$NON-NLS-1$
+		Assertions.assertEquals(
+			"{\n    \"result\": \"" + Base64.getEncoder().encodeToString(data) + "\"\n}", //$NON-NLS-1$ //$NON-NLS-2$
+			new String(json.toByteArray(), StandardCharsets.US_ASCII)
+		);
+
+		// Validacion
+		Assertions.assertTrue(AOUtil.isBase64("QUJD\r\nREVG")); //$NON-NLS-1$
+		Assertions.assertFalse(AOUtil.isBase64("QUJ=REVG")); //$NON-NLS-1$
+		Assertions.assertFalse(AOUtil.isBase64("QUJ\u00F1")); //$NON-NLS-1$
+		Assertions.assertFalse(AOUtil.isBase64(new byte[] { 'Q', 'U', 'J', (byte) 0xC3 }));
+	}
 }
@@ -0,0 +1,73 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * You may contact the copyright holder at: soporte.afirma@seap.minhap.es
+ */
+
+package es.gob.afirma.core.misc;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.cert.CertificateFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import es.gob.afirma.core.misc.CryptoInstancePool.InstanceType;
+
+/** Pruebas de la reserva por hilo de instancias criptogr&aacute;ficas. */
+final class TestCryptoInstancePool {
+
+	/** Comprueba que las instancias se reutilizan en el mismo hilo, se reinicializan y
+	 * no se comparten entre hilos.
+	 * @throws Exception En cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	void testMessageDigestReuse() throws Exception {
+
+		final byte[] data = "Hola Mundo!!".getBytes(StandardCharsets.UTF_8); //$NON-NLS-1$
+		final byte[] expected = MessageDigest.getInstance("SHA-256").digest(data); //$NON-NLS-1$
+
+		final MessageDigest md = CryptoInstancePool.getMessageDigest("SHA-256"); //$NON-NLS-1$
+		md.update("datos que se descartan".getBytes(StandardCharsets.UTF_8)); //$NON-NLS-1$
+
+		final long hits = CryptoInstancePool.getHits(InstanceType.MESSAGE_DIGEST);
+		Assertions.assertArrayEquals(expected, CryptoInstancePool.digest("SHA-256", data)); //$NON-NLS-1$
+		Assertions.assertSame(md, CryptoInstancePool.getMessageDigest("SHA-256")); //$NON-NLS-1$
+		Assertions.assertEquals(hits + 2, CryptoInstancePool.getHits(InstanceType.MESSAGE_DIGEST));
+		Assertions.assertTrue(CryptoInstancePool.getHitRate(InstanceType.MESSAGE_DIGEST) > 0);
+
+		final AtomicReference<MessageDigest> other = new AtomicReference<>();
+		final Thread t = new Thread(() -> {
+			try {
+				other.set(CryptoInstancePool.getMessageDigest("SHA-256")); //$NON-NLS-1$
+			}
+			catch (final Exception e) {
+				// Se comprueba a continuacion
+			}
+		});
+		t.start();
+		t.join();
+		Assertions.assertNotNull(other.get());
+		Assertions.assertNotSame(md, other.get());
+	}
+
+	/** Comprueba que, tras liberar las instancias del hilo, se crean instancias nuevas.
+	 * @throws Exception En cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	void testClear() throws Exception {
+
+		final MessageDigest md = CryptoInstancePool.getMessageDigest("SHA-256"); //$NON-NLS-1$
+		final CertificateFactory cf = CryptoInstancePool.getCertificateFactory();
+
+		CryptoInstancePool.clear();
+
+		Assertions.assertNotSame(md, CryptoInstancePool.getMessageDigest("SHA-256")); //$NON-NLS-1$
+		Assertions.assertNotSame(cf, CryptoInstancePool.getCertificateFactory());
+	}
+}
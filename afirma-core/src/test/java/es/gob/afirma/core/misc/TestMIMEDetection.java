@@ -1,6 +1,9 @@
 package es.gob.afirma.core.misc;
 
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -57,4 +60,86 @@ final class TestMIMEDetection {
 		final String mime = new MimeHelper(file).getMimeType();
 		Assertions.assertEquals("application/x-rar-compressed", mime, "El MIME-Type obtenido no es correcto para un fichero RAR: " + mime); //$NON-NLS-1$ //$NON-NLS-2$
 	}
+	/** Prueba la tabla interna de n&uacute;meros m&aacute;gicos y los detectores registrados
+	 * como servicio.
+	 * @throws Exception En cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	void testRegisteredDetectors() throws Exception {
+		final byte[] pdf;
+		try (InputStream is = ClassLoader.getSystemResourceAsStream("pdf.pdf")) { //$NON-NLS-1$
+			pdf = AOUtil.getDataFromInputStream(is);
+		}
+		Assertions.assertEquals("application/pdf", MagicNumberDetector.INSTANCE.detect(pdf).getMimeType()); //$NON-NLS-1$
+
+		final byte[] bomXml = "\uFEFF<?xml version=\"1.0\"?><a/>".getBytes(StandardCharsets.UTF_8); //$NON-NLS-1$
+		Assertions.assertEquals("text/xml", MagicNumberDetector.INSTANCE.detect(bomXml).getMimeType()); //$NON-NLS-1$
+
+		// JMimeMagic no reconoce CMS, asi que la tabla interna tampoco debe hacerlo
+		final byte[] cms = new byte[] {
+			0x30, (byte) 0x80, 0x06, 0x09, 0x2A, (byte) 0x86, 0x48, (byte) 0x86, (byte) 0xF7, 0x0D, 0x01, 0x07, 0x02,
+			(byte) 0xA0, (byte) 0x80
+		};
+		Assertions.assertNull(MagicNumberDetector.INSTANCE.detect(cms));
+		Assertions.assertEquals("application/octet-stream", new MimeHelper(cms).getMimeType()); //$NON-NLS-1$
+		Assertions.assertNull(new MimeHelper(cms).getExtension());
+
+		final byte[] emptyZip = new byte[22];
+		emptyZip[0] = 'P';
+		emptyZip[1] = 'K';
+		emptyZip[2] = 0x05;
+		emptyZip[3] = 0x06;
+		Assertions.assertEquals("application/zip", new MimeHelper(emptyZip).getMimeType()); //$NON-NLS-1$
+
+		Assertions.assertNull(MagicNumberDetector.INSTANCE.detect("Hola Mundo!!".getBytes(StandardCharsets.UTF_8))); //$NON-NLS-1$
+
+		final byte[] dummy = (DummyMimeTypeDetector.MAGIC + " datos").getBytes(StandardCharsets.UTF_8); //$NON-NLS-1$
+		Assertions.assertEquals(DummyMimeTypeDetector.MIMETYPE, new MimeHelper(dummy).getMimeType());
+	}
+	/** Prueba las tablas de correspondencias entre OID y MimeType y la cach&eacute; de
+	 * resultados de an&aacute;lisis.
+	 * @throws Exception En cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	void testMimeOidTablesAndCache() throws Exception {
+		Assertions.assertEquals("1.2.840.10003.5.109.1", MimeHelper.transformMimeTypeToOid("application/pdf")); //$NON-NLS-1$ //$NON-NLS-2$
+		Assertions.assertEquals("text/xml", MimeHelper.transformOidToMimeType("1.2.840.10003.5.109.10")); //$NON-NLS-1$ //$NON-NLS-2$
+		Assertions.assertEquals(MimeHelper.DEFAULT_CONTENT_OID_DATA, MimeHelper.transformMimeTypeToOid("application/x-desconocido")); //$NON-NLS-1$
+		Assertions.assertEquals(MimeHelper.DEFAULT_MIMETYPE, MimeHelper.transformOidToMimeType(null));
+
+		final byte[] pdf;
+		try (InputStream is = ClassLoader.getSystemResourceAsStream("pdf.pdf")) { //$NON-NLS-1$
+			pdf = AOUtil.getDataFromInputStream(is);
+		}
+		final MimeHelper helper = new MimeHelper(pdf);
+		Assertions.assertEquals("application/pdf", helper.getMimeType()); //$NON-NLS-1$
+		Assertions.assertEquals("pdf", helper.getExtension()); //$NON-NLS-1$
+
+		// Los datos identificados por su cabecera no necesitan recorrerse, asi que no se guardan en cache
+		Assertions.assertNull(MimeHelper.getCachedMimeType(pdf));
+
+		// El resultado de las comprobaciones sobre los datos completos queda en cache y se
+		// reutiliza para los mismos datos
+		final byte[] xml = "<?xml version=\"1.0\"?><a>cache</a>".getBytes(StandardCharsets.UTF_8); //$NON-NLS-1$
+		Assertions.assertEquals("text/xml", new MimeHelper(xml).getMimeType()); //$NON-NLS-1$
+		Assertions.assertEquals("text/xml", MimeHelper.getCachedMimeType(xml.clone())); //$NON-NLS-1$
+		Assertions.assertEquals("xml", new MimeHelper(xml).getExtension()); //$NON-NLS-1$
+
+		// Los datos distintos no comparten resultado
+		Assertions.assertNull(MimeHelper.getCachedMimeType(Arrays.copyOf(xml, xml.length - 1)));
+
+		// Una huella proporcionada identifica los datos igual que la calculada internamente
+		final byte[] otherXml = "<?xml version=\"1.0\"?><b>cache</b>".getBytes(StandardCharsets.UTF_8); //$NON-NLS-1$
+		final byte[] digest = MessageDigest.getInstance("SHA-256").digest(otherXml); //$NON-NLS-1$
+		Assertions.assertEquals("text/xml", new MimeHelper(otherXml, "SHA256", digest).getMimeType()); //$NON-NLS-1$ //$NON-NLS-2$
+		Assertions.assertEquals("text/xml", MimeHelper.getCachedMimeType(otherXml)); //$NON-NLS-1$
+
+		// Una huella que no corresponde a los datos no asocia su resultado a otros datos
+		final byte[] victim = "datos sin analizar".getBytes(StandardCharsets.UTF_8); //$NON-NLS-1$
+		final byte[] forgedDigest = MessageDigest.getInstance("SHA-256").digest(victim); //$NON-NLS-1$
+		final byte[] thirdXml = "<?xml version=\"1.0\"?><c>cache</c>".getBytes(StandardCharsets.UTF_8); //$NON-NLS-1$
+		Assertions.assertEquals("text/xml", new MimeHelper(thirdXml, "SHA-256", forgedDigest).getMimeType()); //$NON-NLS-1$ //$NON-NLS-2$
+		Assertions.assertNull(MimeHelper.getCachedMimeType(victim));
+		Assertions.assertNull(MimeHelper.getCachedMimeType(thirdXml));
+	}
 }
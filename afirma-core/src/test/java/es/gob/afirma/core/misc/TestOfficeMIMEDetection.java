@@ -1,6 +1,14 @@
 package es.gob.afirma.core.misc;
 
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -86,4 +94,110 @@ final class TestOfficeMIMEDetection {
 		final String mime = new MimeHelper(file).getMimeType();
 		Assertions.assertEquals("application/vnd.visio", mime, "El MIME-Type obtenido no es correcto para el fichero Visio: " + mime); //$NON-NLS-1$ //$NON-NLS-2$
 	}
+	/** Prueba el an&aacute;lisis en memoria de documentos ODF y OOXML, con entradas
+	 * almacenadas y comprimidas.
+	 * @throws Exception En cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	void testInMemoryZipDetection() throws Exception {
+		final String odtMimeType = "application/vnd.oasis.opendocument.text"; //$NON-NLS-1$
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (ZipOutputStream zos = new ZipOutputStream(baos)) {
+			// La entrada "mimetype" de los ODF se almacena sin comprimir
+			final byte[] mimetype = odtMimeType.getBytes(StandardCharsets.US_ASCII);
+			final CRC32 crc = new CRC32();
+			crc.update(mimetype);
+			final ZipEntry mimetypeEntry = new ZipEntry("mimetype"); //$NON-NLS-1$
+			mimetypeEntry.setMethod(ZipEntry.STORED);
+			mimetypeEntry.setSize(mimetype.length);
+			mimetypeEntry.setCrc(crc.getValue());
+			zos.putNextEntry(mimetypeEntry);
+			zos.write(mimetype);
+			zos.closeEntry();
+			for (final String name : new String[] { "content.xml", "meta.xml", "settings.xml", "styles.xml", "META-INF/manifest.xml" }) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+				zos.putNextEntry(new ZipEntry(name));
+				zos.write("<?xml version=\"1.0\"?><a/>".getBytes(StandardCharsets.UTF_8)); //$NON-NLS-1$
+				zos.closeEntry();
+			}
+		}
+		final byte[] odt = baos.toByteArray();
+		Assertions.assertTrue(OfficeAnalizer.isODFDocument(odt));
+		Assertions.assertFalse(OfficeAnalizer.isOOXMLDocument(odt));
+		Assertions.assertEquals(odtMimeType, OfficeAnalizer.getMimeType(odt));
+
+		final byte[] docx;
+		try (InputStream is = ClassLoader.getSystemResourceAsStream("Nuevo_Documento_de_Microsoft_Word.docx")) { //$NON-NLS-1$
+			docx = AOUtil.getDataFromInputStream(is);
+		}
+		Assertions.assertTrue(OfficeAnalizer.isOOXMLDocument(docx));
+		Assertions.assertFalse(OfficeAnalizer.isODFDocument(docx));
+
+		// Datos que no son un Zip
+		final byte[] text = "No es un Zip".getBytes(StandardCharsets.UTF_8); //$NON-NLS-1$
+		Assertions.assertFalse(OfficeAnalizer.isOOXMLDocument(text));
+		Assertions.assertFalse(OfficeAnalizer.isODFDocument(text));
+		Assertions.assertEquals("application/octect-stream", OfficeAnalizer.getMimeType(text)); //$NON-NLS-1$
+	}
+	/** Prueba que un Zip cuyo campo extra Zip64 declara un tama&ntilde;o comprimido negativo
+	 * se trata como un Zip corrupto y no como un documento ofim&aacute;tico.
+	 * @throws Exception En cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	void testZip64NegativeCompressedSize() throws Exception {
+		final byte[] name = "mimetype".getBytes(StandardCharsets.US_ASCII); //$NON-NLS-1$
+		final byte[] content = "text".getBytes(StandardCharsets.US_ASCII); //$NON-NLS-1$
+		final int centralOffset = 30 + name.length + content.length;
+		final int centralSize = 46 + name.length + 12;
+		final ByteBuffer zip = ByteBuffer.allocate(centralOffset + centralSize + 22).order(ByteOrder.LITTLE_ENDIAN);
+
+		// Cabecera local y datos
+		zip.putInt(0x04034b50).putShort((short) 20).putShort((short) 0).putShort((short) 0)
+			.putInt(0).putInt(0).putInt(content.length).putInt(content.length)
+			.putShort((short) name.length).putShort((short) 0).put(name).put(content);
+
+		// Entrada del directorio central con el tamano comprimido en el campo extra Zip64
+		zip.putInt(0x02014b50).putShort((short) 45).putShort((short) 45).putShort((short) 0).putShort((short) 0)
+			.putInt(0).putInt(0).putInt(0xFFFFFFFF).putInt(content.length)
+			.putShort((short) name.length).putShort((short) 12).putShort((short) 0).putShort((short) 0)
+			.putShort((short) 0).putInt(0).putInt(0).put(name)
+			.putShort((short) 0x0001).putShort((short) 8).putLong(-1L);
+
+		// Final del directorio central
+		zip.putInt(0x06054b50).putShort((short) 0).putShort((short) 0).putShort((short) 1).putShort((short) 1)
+			.putInt(centralSize).putInt(centralOffset).putShort((short) 0);
+
+		final byte[] data = zip.array();
+		Assertions.assertThrows(ZipException.class, () -> ZipCentralDirectory.read(data));
+		Assertions.assertFalse(OfficeAnalizer.isODFDocument(data));
+		Assertions.assertEquals("application/octect-stream", OfficeAnalizer.getMimeType(data)); //$NON-NLS-1$
+	}
+
+	/** Prueba que los documentos de Microsoft Office 97-2003 se identifican aunque la
+	 * ventana de an&aacute;lisis no alcance al resumen de propiedades del documento.
+	 * @throws Exception En cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	void testOffice97DetectionWithSmallSample() throws Exception {
+		final String[][] files = new String[][] {
+			{ "excel.xls", "application/vnd.ms-excel" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "word.doc", "application/msword" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "powerpoint.ppt", "application/vnd.ms-powerpoint" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "project.mpp", "application/vnd.ms-project" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "visio.vsd", "application/vnd.visio" } //$NON-NLS-1$ //$NON-NLS-2$
+		};
+		System.setProperty(MimeHelper.SAMPLE_SIZE_PROPERTY, "512"); //$NON-NLS-1$
+		try {
+			for (final String[] file : files) {
+				final byte[] data;
+				try (InputStream is = ClassLoader.getSystemResourceAsStream(file[0])) {
+					data = AOUtil.getDataFromInputStream(is);
+				}
+				Assertions.assertEquals(file[1], OfficeAnalizer.getMimeType(data), "Fichero: " + file[0]); //$NON-NLS-1$
+				Assertions.assertEquals(file[1], new MimeHelper(data).getMimeType(), "Fichero: " + file[0]); //$NON-NLS-1$
+			}
+		}
+		finally {
+			System.clearProperty(MimeHelper.SAMPLE_SIZE_PROPERTY);
+		}
+	}
 }
@@ -7,6 +7,7 @@ import java.security.KeyStore.PrivateKeyEntry;
 import java.security.Signature;
 import java.security.cert.X509Certificate;
 import java.util.Base64;
+import java.util.Properties;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -67,6 +68,43 @@ class TestPkcs1Signer {
 		Assertions.assertTrue(sig.verify(pkcs1), "Error al verificar la firma ECDSA"); //$NON-NLS-1$
 	}
 
+	@SuppressWarnings("static-method")
+	@Test
+	void testPkcs1VerificationPolicies() throws Exception {
+
+		final byte[] data = "Hola Mundo!!".getBytes(StandardCharsets.UTF_8); //$NON-NLS-1$
+		final String algorithm = AOSignConstants.SIGN_ALGORITHM_SHA256WITHRSA;
+		final PrivateKeyEntry pke = loadPrivateKeyEntry(CERT_RSA_PATH, CERT_RSA_PASS, CERT_RSA_ALIAS);
+		final X509Certificate[] certChain = (X509Certificate[]) pke.getCertificateChain();
+		final AOPkcs1Signer signer = new AOPkcs1Signer();
+
+		// Con muestreo 1 de cada 4, de 8 firmas se verifican 2 y se omiten 6
+		final Properties sampledParams = new Properties();
+		sampledParams.setProperty(AOPkcs1Signer.PARAM_VERIFICATION_POLICY, "sampled"); //$NON-NLS-1$
+		sampledParams.setProperty(AOPkcs1Signer.PARAM_VERIFICATION_SAMPLE_RATE, "4"); //$NON-NLS-1$
+		final Pkcs1VerificationMetrics before = AOPkcs1Signer.getVerificationMetrics();
+		for (int i = 0; i < 8; i++) {
+			signer.sign(data, algorithm, pke.getPrivateKey(), certChain, sampledParams);
+		}
+		final Pkcs1VerificationMetrics sampled = AOPkcs1Signer.getVerificationMetrics();
+		Assertions.assertEquals(6, sampled.getSkipped() - before.getSkipped());
+		Assertions.assertEquals(2, sampled.getVerified() - before.getVerified());
+
+		// En segundo plano se verifican todas las firmas
+		final Properties asyncParams = new Properties();
+		asyncParams.setProperty(AOPkcs1Signer.PARAM_VERIFICATION_POLICY, "async"); //$NON-NLS-1$
+		for (int i = 0; i < 4; i++) {
+			signer.sign(data, algorithm, pke.getPrivateKey(), certChain, asyncParams);
+		}
+		for (int i = 0; i < 100 && AOPkcs1Signer.getVerificationMetrics().getPending() > 0; i++) {
+			Thread.sleep(50);
+		}
+		final Pkcs1VerificationMetrics async = AOPkcs1Signer.getVerificationMetrics();
+		Assertions.assertEquals(0, async.getPending());
+		Assertions.assertEquals(4, async.getVerified() - sampled.getVerified());
+		Assertions.assertEquals(before.getFailed(), async.getFailed());
+	}
+
 	private static PrivateKeyEntry loadPrivateKeyEntry(final String path, final char[] pass, final String alias) throws Exception {
 		final KeyStore ks = KeyStore.getInstance("PKCS12"); //$NON-NLS-1$
 		try (InputStream is = ClassLoader.getSystemResourceAsStream(path)) {
@@ -10,6 +10,10 @@
 package es.gob.afirma.signers.cades;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
 import java.util.GregorianCalendar;
@@ -17,6 +21,8 @@ import java.util.Locale;
 import java.util.Properties;
 import java.util.logging.Logger;
 
+import org.bouncycastle.asn1.cms.ContentInfo;
+
 import es.gob.afirma.core.AOCancelledOperationException;
 import es.gob.afirma.core.AOException;
 import es.gob.afirma.core.AOInvalidSignatureFormatException;
@@ -27,6 +33,7 @@ import es.gob.afirma.core.util.tree.AOTreeModel;
 import es.gob.afirma.signers.multi.cades.AOCAdESCoSigner;
 import es.gob.afirma.signers.pkcs7.ObtainContentSignedData;
 import es.gob.afirma.signers.pkcs7.ReadNodesTree;
+import es.gob.afirma.signers.pkcs7.StreamedSignedData;
 import es.gob.afirma.signers.tsp.pkcs7.CMSTimestamper;
 import es.gob.afirma.signers.tsp.pkcs7.TsaParams;
 
@@ -107,6 +114,295 @@ public final class AOCAdESSigner implements AOSigner {
         return applyTimeStamp(cadesSignedData, extraParams);
     }
 
+    /** Firma en formato CAdES expl&iacute;cito unos datos de los que &uacute;nicamente se
+     * proporciona su huella digital. Los atributos firmados se construyen directamente a partir
+     * de la huella, sin realizar ning&uacute;n tratamiento sobre los datos, por lo que el tipo
+     * de contenido declarado ser&aacute; el indicado en los par&aacute;metros o, en su defecto,
+     * el gen&eacute;rico de datos binarios.
+     * @param dataDigest Huella digital de los datos que deseamos firmar.
+     * @param digestAlgorithm Algoritmo con el que se calcul&oacute; la huella digital.
+     * @param algorithm Algoritmo a usar para la firma.
+     * @param key Clave privada a usar para firmar.
+     * @param certChain Cadena de certificaci&oacute;n.
+     * @param xParams Par&aacute;metros adicionales para la firma (<a href="doc-files/extraparams.html">detalle</a>).
+     * @return Firma en formato CAdES.
+     * @throws AOException Cuando ocurre cualquier problema durante el proceso. */
+    public byte[] signHash(final byte[] dataDigest,
+                           final String digestAlgorithm,
+                           final String algorithm,
+                           final PrivateKey key,
+                           final X509Certificate[] certChain,
+                           final Properties xParams) throws AOException {
+
+    	if (certChain == null || certChain.length < 1) {
+    	    throw new IllegalArgumentException("La cadena de certificados debe contener al menos un elemento"); //$NON-NLS-1$
+    	}
+
+        final Properties extraParams = getExtraParams(xParams);
+
+    	checkAlgorithm(algorithm, extraParams);
+
+    	noticeIncompatibleConfig(algorithm, extraParams);
+
+        final CAdESParameters cadesConfig = CAdESParameters.loadHash(
+    		dataDigest,
+    		digestAlgorithm,
+    		null,
+    		algorithm,
+    		extraParams
+		);
+
+        final byte[] cadesSignedData;
+        try {
+			cadesSignedData = GenCAdESEPESSignedData.generateSignedData(
+				algorithm,
+				key,
+				certChain,
+				cadesConfig
+			);
+        }
+        catch (final AOCancelledOperationException | AOException e) {
+            throw e;
+        }
+        catch (final Exception e) {
+            throw new AOException("Error al generar la firma CAdES", e); //$NON-NLS-1$
+        }
+
+        return applyTimeStamp(cadesSignedData, extraParams);
+    }
+
+    /** Cofirma en formato CAdES una firma CAdES o CMS a partir &uacute;nicamente de la huella
+     * digital de los datos firmados. Los atributos firmados se construyen directamente a partir
+     * de la huella, sin realizar ning&uacute;n tratamiento sobre los datos.
+     * @param dataDigest Huella digital de los datos firmados.
+     * @param digestAlgorithm Algoritmo con el que se calcul&oacute; la huella digital.
+     * @param sign Firma CAdES o CMS de los datos que se quiere cofirmar.
+     * @param algorithm Algoritmo a usar para la firma.
+     * @param key Clave privada a usar para firmar.
+     * @param certChain Cadena de certificaci&oacute;n del certificado de firma.
+     * @param xParams Par&aacute;metros adicionales para la firma (<a href="doc-files/extraparams.html">detalle</a>).
+     * @return Firma CAdES.
+     * @throws AOException Cuando ocurre cualquier problema durante el proceso. */
+    public byte[] cosignHash(final byte[] dataDigest,
+                             final String digestAlgorithm,
+                             final byte[] sign,
+                             final String algorithm,
+                             final PrivateKey key,
+                             final X509Certificate[] certChain,
+                             final Properties xParams) throws AOException {
+
+    	final Properties extraParams = getExtraParams(xParams);
+    	checkAlgorithm(algorithm, extraParams);
+
+        return new AOCAdESCoSigner().cosignHash(
+    		dataDigest,
+    		digestAlgorithm,
+    		sign,
+    		algorithm,
+    		key,
+    		certChain,
+    		extraParams
+		);
+    }
+
+    /** Firma en formato CAdES el contenido de un fichero sin cargarlo en memoria.
+     * La huella digital de los datos se calcula leyendo el fichero por bloques y, si la firma
+     * es impl&iacute;cita, el fichero se vuelve a leer para copiarlo en la salida, que se
+     * codifica con longitud indefinida (BER). No se admite la firma de huellas precalculadas.
+     * <p>
+     *  Los datos no se analizan para identificar su tipo, por lo que los atributos content-hint
+     *  y mimetype de la firma reflejar&aacute;n el tipo indicado en los par&aacute;metros
+     *  <code>contentTypeOid</code> y <code>mimeType</code> o, si no se indican, el de datos
+     *  binarios gen&eacute;ricos. Para obtener los mismos atributos que al firmar los datos en
+     *  memoria, el llamante debe proporcionar estos par&aacute;metros.
+     * </p>
+     * @param content Fichero con los datos que deseamos firmar.
+     * @param out Flujo en el que se escribir&aacute; la firma. No se cierra.
+     * @param algorithm Algoritmo a usar para la firma.
+     * @param key Clave privada a usar para firmar.
+     * @param certChain Cadena de certificaci&oacute;n.
+     * @param xParams Par&aacute;metros adicionales para la firma (<a href="doc-files/extraparams.html">detalle</a>).
+     * @throws AOException Cuando ocurre cualquier problema durante el proceso.
+     * @throws IOException Cuando ocurre un error en la lectura de los datos o en la escritura de la firma. */
+    public void sign(final Path content,
+                     final OutputStream out,
+                     final String algorithm,
+                     final PrivateKey key,
+                     final X509Certificate[] certChain,
+                     final Properties xParams) throws AOException, IOException {
+
+    	if (content == null) {
+    		throw new IllegalArgumentException("El fichero de datos no puede ser nulo"); //$NON-NLS-1$
+    	}
+
+    	final Properties extraParams = getStreamExtraParams(algorithm, certChain, out, xParams);
+
+    	final byte[] dataDigest;
+    	try (InputStream is = Files.newInputStream(content)) {
+    		dataDigest = CAdESStreamUtil.digest(
+				is,
+				AOSignConstants.getDigestAlgorithmName(algorithm),
+				null
+			);
+    	}
+
+    	signDigested(dataDigest, content, out, algorithm, key, certChain, extraParams);
+    }
+
+    /** Firma en formato CAdES los datos le&iacute;dos de un flujo sin cargarlos en memoria.
+     * La huella digital de los datos se calcula seg&uacute;n se leen. Si la firma es
+     * impl&iacute;cita, los datos se copian a la vez a un fichero temporal desde el que
+     * luego se escriben en la salida, que se codifica con longitud indefinida (BER).
+     * No se admite la firma de huellas precalculadas.
+     * <p>
+     *  Los datos no se analizan para identificar su tipo, por lo que los atributos content-hint
+     *  y mimetype de la firma reflejar&aacute;n el tipo indicado en los par&aacute;metros
+     *  <code>contentTypeOid</code> y <code>mimeType</code> o, si no se indican, el de datos
+     *  binarios gen&eacute;ricos. Para obtener los mismos atributos que al firmar los datos en
+     *  memoria, el llamante debe proporcionar estos par&aacute;metros.
+     * </p>
+     * @param content Flujo de lectura de los datos que deseamos firmar. No se cierra.
+     * @param out Flujo en el que se escribir&aacute; la firma. No se cierra.
+     * @param algorithm Algoritmo a usar para la firma.
+     * @param key Clave privada a usar para firmar.
+     * @param certChain Cadena de certificaci&oacute;n.
+     * @param xParams Par&aacute;metros adicionales para la firma (<a href="doc-files/extraparams.html">detalle</a>).
+     * @throws AOException Cuando ocurre cualquier problema durante el proceso.
+     * @throws IOException Cuando ocurre un error en la lectura de los datos o en la escritura de la firma. */
+    public void sign(final InputStream content,
+                     final OutputStream out,
+                     final String algorithm,
+                     final PrivateKey key,
+                     final X509Certificate[] certChain,
+                     final Properties xParams) throws AOException, IOException {
+
+    	if (content == null) {
+    		throw new IllegalArgumentException("El flujo de datos no puede ser nulo"); //$NON-NLS-1$
+    	}
+
+    	final Properties extraParams = getStreamExtraParams(algorithm, certChain, out, xParams);
+    	final String digestAlgorithm = AOSignConstants.getDigestAlgorithmName(algorithm);
+
+    	// En las firmas explicitas basta con calcular la huella de los datos
+    	if (AOSignConstants.SIGN_MODE_EXPLICIT.equalsIgnoreCase(
+    			extraParams.getProperty(CAdESExtraParams.MODE, AOSignConstants.DEFAULT_SIGN_MODE))) {
+    		signDigested(
+				CAdESStreamUtil.digest(content, digestAlgorithm, null),
+				null,
+				out,
+				algorithm,
+				key,
+				certChain,
+				extraParams
+			);
+    		return;
+    	}
+
+    	// En las implicitas, guardamos los datos para poder insertarlos despues de firmar
+    	final Path tempFile = Files.createTempFile("afirma_cades_", null); //$NON-NLS-1$
+    	try {
+    		final byte[] dataDigest;
+    		try (OutputStream tempOut = Files.newOutputStream(tempFile)) {
+    			dataDigest = CAdESStreamUtil.digest(content, digestAlgorithm, tempOut);
+    		}
+    		signDigested(dataDigest, tempFile, out, algorithm, key, certChain, extraParams);
+    	}
+    	finally {
+    		try {
+    			Files.deleteIfExists(tempFile);
+    		}
+    		catch (final IOException e) {
+    			LOGGER.warning("No se ha podido borrar el fichero temporal '" + tempFile + "': " + e); //$NON-NLS-1$ //$NON-NLS-2$
+    		}
+    	}
+    }
+
+    /** Comprueba los par&aacute;metros de una firma de datos le&iacute;dos como flujo y
+     * obtiene la configuraci&oacute;n que se debe usar.
+     * @param algorithm Algoritmo de firma.
+     * @param certChain Cadena de certificaci&oacute;n.
+     * @param out Flujo en el que se escribir&aacute; la firma.
+     * @param xParams Par&aacute;metros adicionales para la firma.
+     * @return Configuraci&oacute;n de la firma.
+     * @throws AOException Cuando el algoritmo de firma no es v&aacute;lido para CAdES. */
+    private static Properties getStreamExtraParams(final String algorithm,
+    		                                       final X509Certificate[] certChain,
+    		                                       final OutputStream out,
+    		                                       final Properties xParams) throws AOException {
+    	if (out == null) {
+    		throw new IllegalArgumentException("El flujo de salida de la firma no puede ser nulo"); //$NON-NLS-1$
+    	}
+    	if (certChain == null || certChain.length < 1) {
+    	    throw new IllegalArgumentException("La cadena de certificados debe contener al menos un elemento"); //$NON-NLS-1$
+    	}
+
+    	final Properties extraParams = getExtraParams(xParams);
+    	if (extraParams.containsKey(CAdESExtraParams.PRECALCULATED_HASH_ALGORITHM)) {
+    		throw new IllegalArgumentException(
+				"La firma de flujos de datos no admite el parametro '" + CAdESExtraParams.PRECALCULATED_HASH_ALGORITHM + "'" //$NON-NLS-1$ //$NON-NLS-2$
+			);
+    	}
+
+    	checkAlgorithm(algorithm, extraParams);
+
+    	noticeIncompatibleConfig(algorithm, extraParams);
+
+    	return extraParams;
+    }
+
+    /** Genera la firma CAdES de unos datos de los que ya se ha calculado la huella y la escribe
+     * en un flujo de salida.
+     * @param dataDigest Huella digital de los datos.
+     * @param content Fichero con los datos, necesario si la firma es impl&iacute;cita.
+     * @param out Flujo en el que se escribir&aacute; la firma.
+     * @param algorithm Algoritmo a usar para la firma.
+     * @param key Clave privada a usar para firmar.
+     * @param certChain Cadena de certificaci&oacute;n.
+     * @param extraParams Configuraci&oacute;n de la firma.
+     * @throws AOException Cuando ocurre cualquier problema durante el proceso.
+     * @throws IOException Cuando ocurre un error en la lectura de los datos o en la escritura de la firma. */
+    private static void signDigested(final byte[] dataDigest,
+    		                         final Path content,
+    		                         final OutputStream out,
+    		                         final String algorithm,
+    		                         final PrivateKey key,
+    		                         final X509Certificate[] certChain,
+    		                         final Properties extraParams) throws AOException, IOException {
+
+    	final CAdESParameters cadesConfig = CAdESParameters.loadDigested(
+			dataDigest,
+			algorithm,
+			extraParams
+		);
+
+    	// Generamos siempre la firma explicita, que es la que se sella, y solo despues
+    	// insertamos en ella los datos si es necesario
+        final byte[] cadesSignedData;
+        try {
+			cadesSignedData = GenCAdESEPESSignedData.generateSignedData(
+				algorithm,
+				key,
+				certChain,
+				cadesConfig
+			);
+        }
+        catch (final AOCancelledOperationException | AOException e) {
+            throw e;
+        }
+        catch (final Exception e) {
+            throw new AOException("Error al generar la firma CAdES", e); //$NON-NLS-1$
+        }
+
+        final byte[] signature = applyTimeStamp(cadesSignedData, extraParams);
+        if (cadesConfig.isContentNeeded()) {
+        	CAdESStreamUtil.writeImplicitSignature(signature, content, out);
+        }
+        else {
+        	out.write(signature);
+        }
+        out.flush();
+    }
+
 	/** Cofirma datos en formato CAdES a&ntilde;adiendo la nueva firma a una CAdES o CMS ya existente.
 	 * Para realizar la cofirma se necesitan los datos originales (que se firmar&aacute;n normalmente) y la firma
 	 * sobre la que se realiza la cofirma (a los que se agregar&aacute; el resultado de la nueva firma).
@@ -229,6 +525,56 @@ public final class AOCAdESSigner implements AOSigner {
     	return getSignersStructure(sign, null, asSimpleSignInfo);
     }
 
+    /** Recupera el &aacute;rbol de nodos de firma de una firma electr&oacute;nica CAdES almacenada en un
+     * fichero, ley&eacute;ndola como un flujo de datos. El contenido firmado que encapsule la firma no
+     * llega a cargarse en memoria, por lo que puede usarse con firmas impl&iacute;citas de gran tama&ntilde;o.
+     * @param sign Fichero con la firma electr&oacute;nica de la que se desea obtener la estructura.
+     * @param asSimpleSignInfo Si es <code>true</code> se devuelve un &aacute;rbol con la informaci&oacute;n b&aacute;sica
+     *                         de cada firma individual mediante objetos <code>AOSimpleSignInfo</code>, si es <code>false</code>
+     *                         un &aacute;rbol con los nombres comunes de los titulares de los certificados usados para cada firma.
+     * @return &Aacute;rbol de nodos de firma.
+     * @throws AOInvalidSignatureFormatException Cuando los datos introducidos no son una firma CAdES.
+     * @throws IOException Si ocurren problemas relacionados con la lectura de la firma */
+    public AOTreeModel getSignersStructure(final Path sign, final boolean asSimpleSignInfo) throws AOInvalidSignatureFormatException, IOException {
+    	// La firma se lee una unica vez y el arbol se construye a partir de lo leido
+    	final StreamedSignedData sd;
+    	try (InputStream is = Files.newInputStream(sign)) {
+    		try {
+    			sd = StreamedSignedData.read(is, null);
+    		}
+    		catch (final IOException e) {
+    			throw new AOInvalidSignatureFormatException("Los datos introducidos no se corresponden con un objeto de firma CAdES", e); //$NON-NLS-1$
+    		}
+    	}
+    	return new ReadNodesTree().readNodesTree(sd, asSimpleSignInfo);
+    }
+
+    /** Indica si un fichero contiene una firma compatible con los m&eacute;todos de firma, cofirma y
+     * contrafirma de esta clase, ley&eacute;ndolo como un flujo de datos sin cargar en memoria el
+     * contenido firmado.
+     * @param sign Fichero que deseamos comprobar.
+     * @return <code>true</code> si el fichero contiene una firma reconocida por esta clase (&uacute;nicamente CAdES),
+     *         <code>false</code> en caso contrario.
+     * @throws IOException Si ocurren problemas relacionados con la lectura del fichero. */
+    public boolean isSign(final Path sign) throws IOException {
+    	try (InputStream is = Files.newInputStream(sign)) {
+    		return CAdESValidator.isCAdESSignedData(is, true);
+    	}
+    }
+
+    /** Recupera los datos originalmente firmados de una firma almacenada en un fichero, copi&aacute;ndolos
+     * a un flujo seg&uacute;n se leen y sin cargarlos en memoria.
+     * @param sign Fichero con la firma CAdES o CMS.
+     * @param out Flujo al que se copian los datos firmados. No se cierra.
+     * @return <code>true</code> si la firma contiene los datos firmados, <code>false</code> en caso contrario.
+     * @throws AOInvalidSignatureFormatException Si el fichero no contiene una firma v&aacute;lida.
+     * @throws IOException Si ocurren problemas relacionados con la lectura de la firma o la escritura de los datos. */
+    public boolean getData(final Path sign, final OutputStream out) throws AOInvalidSignatureFormatException, IOException {
+    	try (InputStream is = Files.newInputStream(sign)) {
+    		return ObtainContentSignedData.obtainData(is, out);
+    	}
+    }
+
     /** Indica si un dato es una firma compatible con los m&eacute;todos de firma, cofirma y contrafirma de esta clase.
      * @param data Datos que deseamos comprobar.
      * @param params Par&aacute;metros de firma
@@ -282,10 +628,12 @@ public final class AOCAdESSigner implements AOSigner {
         if (sign == null) {
             throw new IllegalArgumentException("Se han introducido datos nulos para su comprobacion"); //$NON-NLS-1$
         }
-        if (!CAdESValidator.isCAdESValid(sign, false)) {
+        // Decodificamos la firma una unica vez para comprobarla y extraer los datos
+        final ContentInfo contentInfo = CAdESValidator.getContentInfo(sign);
+        if (contentInfo == null || !CAdESValidator.isCAdESValid(contentInfo, false)) {
             throw new AOInvalidSignatureFormatException("Los datos introducidos no se corresponden con un objeto de firma"); //$NON-NLS-1$
         }
-		return ObtainContentSignedData.obtainData(sign);
+		return ObtainContentSignedData.obtainData(contentInfo);
     }
 
     /** Devuelve el nombre de fichero de firma predeterminado que se recomienda usar para
@@ -215,6 +215,18 @@ public final class CAdESExtraParams {
      * las conexiones HTTPS. */
     public static final String TSA_SSL_PKCS12_FILE_PASSWORD_KEY = "tsaSslPkcs12FilePassword";//$NON-NLS-1$
 
+    /** Tiempo m&aacute;ximo de espera, en milisegundos, para establecer la conexi&oacute;n con la TSA
+     * (si no se establece no se limita). */
+    public static final String TSA_CONNECT_TIMEOUT = "tsaConnectTimeout";//$NON-NLS-1$
+
+    /** Tiempo m&aacute;ximo de espera, en milisegundos, de la respuesta de la TSA
+     * (si no se establece no se limita). */
+    public static final String TSA_READ_TIMEOUT = "tsaReadTimeout";//$NON-NLS-1$
+
+    /** N&uacute;mero de reintentos de la petici&oacute;n a la TSA ante errores de comunicaci&oacute;n
+     * (si no se establece no se reintenta). */
+    public static final String TSA_RETRIES = "tsaRetries";//$NON-NLS-1$
+
     /**
      *  Evita cualquier interacci&oacute;n con el usuario si se establece a <code>true</code>, si no se establece o se establece a <code>false</code>
      *  act&uacute;a normalmente (puede mostrar di&aacute;logos, por ejemplo, para solicitar las contrase&ntilde;as de los PDF cifrados). &Uacute;til para
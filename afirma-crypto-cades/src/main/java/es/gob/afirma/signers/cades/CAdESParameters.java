@@ -1,7 +1,6 @@
 package es.gob.afirma.signers.cades;
 
 import java.io.IOException;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Date;
@@ -22,6 +21,7 @@ import org.bouncycastle.cms.SignerInformation;
 import org.bouncycastle.cms.SignerInformationStore;
 
 import es.gob.afirma.core.AOException;
+import es.gob.afirma.core.misc.CryptoInstancePool;
 import es.gob.afirma.core.misc.MimeHelper;
 import es.gob.afirma.core.signers.AOSignConstants;
 import es.gob.afirma.core.signers.AdESPolicy;
@@ -97,6 +97,67 @@ public class CAdESParameters {
 			                           final CMSSignedData signedData,
 			                           final String algorithm,
 			                           final Properties config) throws AOException {
+		return load(data, null, signedData, algorithm, config);
+	}
+
+	/** Carga la configuraci&oacute;n de una firma CAdES expl&iacute;cita de la que &uacute;nicamente
+	 * se dispone de la huella digital de los datos. La configuraci&oacute;n se obtiene sin realizar
+	 * ning&uacute;n tratamiento sobre los datos, por lo que el tipo de contenido de la firma
+	 * ser&aacute; el indicado en los par&aacute;metros, el de las firmas previas o, en su defecto,
+	 * el gen&eacute;rico de datos binarios.
+	 * @param dataDigest Huella digital de los datos.
+	 * @param digestAlgorithm Algoritmo con el que se calcul&oacute; la huella digital.
+	 * @param signedData Firma previa que se va a cofirmar o <code>null</code> si no es una cofirma.
+	 * @param algorithm Algoritmo de firma.
+	 * @param config Par&aacute;metros extra de configuraci&oacute;n.
+	 * @return Par&aacute;metros para la creaci&oacute;n de la firma.
+	 * @throws AOException Cuando ocurre un error grave al procesasr los par&aacute;metros. */
+	public static CAdESParameters loadHash(final byte[] dataDigest,
+			                               final String digestAlgorithm,
+			                               final CMSSignedData signedData,
+			                               final String algorithm,
+			                               final Properties config) throws AOException {
+		if (dataDigest == null) {
+			throw new IllegalArgumentException("La huella digital de los datos no puede ser nula"); //$NON-NLS-1$
+		}
+		if (digestAlgorithm == null) {
+			throw new IllegalArgumentException("El algoritmo de huella digital no puede ser nulo"); //$NON-NLS-1$
+		}
+		final Properties hashConfig = config != null ? (Properties) config.clone() : new Properties();
+		hashConfig.setProperty(CAdESExtraParams.PRECALCULATED_HASH_ALGORITHM, digestAlgorithm);
+		hashConfig.remove(CAdESExtraParams.MODE);
+		return load(dataDigest, null, signedData, algorithm, hashConfig);
+	}
+
+	/** Carga la configuraci&oacute;n de firma CAdES de unos datos que se procesan como un flujo
+	 * y de los que ya se ha calculado la huella digital, sin necesidad de tenerlos en memoria.
+	 * Los datos no se asignan a la configuraci&oacute;n, por lo que, si la firma debe ser
+	 * impl&iacute;cita, ser&aacute; responsabilidad del llamante incluirlos en ella.
+	 * <p>
+	 *  Como los datos no se analizan, el tipo de contenido (atributos content-hint y mimetype)
+	 *  ser&aacute; el indicado en los par&aacute;metros <code>contentTypeOid</code> y
+	 *  <code>mimeType</code> o, en su defecto, el gen&eacute;rico de datos binarios.
+	 * </p>
+	 * @param dataDigest Huella digital de los datos calculada con el algoritmo de huella del
+	 *                   algoritmo de firma.
+	 * @param algorithm Algoritmo de firma.
+	 * @param config Par&aacute;metros extra de configuraci&oacute;n.
+	 * @return Par&aacute;metros para la creaci&oacute;n de la firma.
+	 * @throws AOException Cuando ocurre un error grave al procesasr los par&aacute;metros. */
+	public static CAdESParameters loadDigested(final byte[] dataDigest,
+			                                   final String algorithm,
+			                                   final Properties config) throws AOException {
+		if (dataDigest == null) {
+			throw new IllegalArgumentException("La huella digital de los datos no puede ser nula"); //$NON-NLS-1$
+		}
+		return load(null, dataDigest, null, algorithm, config);
+	}
+
+	private static CAdESParameters load(final byte[] data,
+			                            final byte[] streamDigest,
+			                            final CMSSignedData signedData,
+			                            final String algorithm,
+			                            final Properties config) throws AOException {
 
 		final CAdESParameters dataConfig = new CAdESParameters();
 
@@ -130,12 +191,18 @@ public class CAdESParameters {
 			dataDigest = data;
 			contentData = null;
 		}
+		else if (streamDigest != null) {
+			// Los datos se han procesado como flujo y solo disponemos de su huella
+			digestAlgorithmName = AOSignConstants.getDigestAlgorithmName(algorithm);
+			dataDigest = streamDigest;
+			contentData = null;
+		}
 		else {
 			digestAlgorithmName = AOSignConstants.getDigestAlgorithmName(algorithm);
 			contentData = omitContent ? null : data;
 			if (data != null) {
 				try {
-					dataDigest = MessageDigest.getInstance(digestAlgorithmName).digest(data);
+					dataDigest = CryptoInstancePool.digest(digestAlgorithmName, data);
 				}
 				catch (final NoSuchAlgorithmException e) {
 					throw new AOException("No se ha podido extraer un algoritmo de huella soportado del algoritmo de firma", e); //$NON-NLS-1$
@@ -272,12 +339,28 @@ public class CAdESParameters {
 				}
 			}
 
+			// Si los datos se han procesado como flujo no se analizan, asi que el tipo de contenido
+			// se obtiene del mimetype indicado, si lo hay
+			if (contentHintNeeded && contentTypeOid == null && mimeType != null && streamDigest != null) {
+				try {
+					contentTypeOid = MimeHelper.transformMimeTypeToOid(mimeType);
+					if (MimeHelper.DEFAULT_CONTENT_OID_DATA.equals(contentTypeOid)) {
+						contentTypeOid = null;
+					}
+				}
+				catch (final IOException e) {
+					LOGGER.warning("No se pudo cargar la tabla de correspondencias entre OIDs y MimeTypes: " + e); //$NON-NLS-1$
+				}
+			}
+
 			// Si aun nos falta informacion de la que necesitamos, pero tenemos los datos,
-			// tratamos de extraerla de ellos
+			// tratamos de extraerla de ellos. Si solo tenemos su huella, no hay nada que analizar
 			if ((contentHintNeeded && contentTypeOid == null
-					|| mimetypeNeeded && mimeType == null) && data != null) {
+					|| mimetypeNeeded && mimeType == null) && data != null && precalculatedDigestAlgorithm == null) {
 				try {
-					final MimeHelper mimeHelper = new MimeHelper(data);
+					// Se reutiliza la huella de los datos para identificarlos en la
+					// cache de analisis en lugar de volver a recorrerlos
+					final MimeHelper mimeHelper = new MimeHelper(data, digestAlgorithmName, dataDigest);
 					if (contentHintNeeded && contentTypeOid == null) {
 						contentTypeOid = MimeHelper.transformMimeTypeToOid(mimeHelper.getMimeType());
 						if (MimeHelper.DEFAULT_CONTENT_OID_DATA.equals(contentTypeOid)) {
@@ -0,0 +1,299 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * You may contact the copyright holder at: soporte.afirma@seap.minhap.es
+ */
+
+package es.gob.afirma.signers.cades;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSet;
+import org.bouncycastle.asn1.DERUTCTime;
+import org.bouncycastle.asn1.cms.Attribute;
+import org.bouncycastle.asn1.cms.CMSAttributes;
+
+import es.gob.afirma.core.AOException;
+import es.gob.afirma.core.misc.CryptoInstancePool;
+import es.gob.afirma.core.signers.AOPkcs1Signer;
+
+/** Perfil de firma CAdES precompilado para la firma repetida de documentos con una misma
+ * configuraci&oacute;n y un mismo certificado.
+ * <p>
+ *  Al compilar el perfil se construyen y codifican en DER una &uacute;nica vez todos los atributos
+ *  firmados que no dependen del documento (tipo de contenido, identificaci&oacute;n del firmante,
+ *  pol&iacute;tica, <i>content-hint</i>, compromisos, lugar de firma, roles y tipo MIME). Para
+ *  cada documento solo se codifican la huella digital de los datos y la fecha de firma, y se
+ *  insertan en el conjunto de atributos, que se obtiene con la misma codificaci&oacute;n que
+ *  genera {@link CAdESTriPhaseSigner#preSign(java.security.cert.Certificate[], CAdESParameters)}.
+ * </p>
+ * <p>
+ *  Como no se analizan los documentos, el tipo de contenido declarado ser&aacute; el indicado en
+ *  los par&aacute;metros de configuraci&oacute;n o, en su defecto, el gen&eacute;rico de datos
+ *  binarios. Las firmas generadas no incluyen sello de tiempo.
+ * </p>
+ * <p>Los perfiles son inmutables y pueden usarse simult&aacute;neamente desde varios hilos.</p> */
+public final class CAdESSignatureProfile {
+
+	/** Ordena las codificaciones de los atributos seg&uacute;n exige DER para los conjuntos. */
+	private static final Comparator<byte[]> DER_SET_ORDER = (a, b) -> {
+		final int len = Math.min(a.length, b.length);
+		for (int i = 0; i < len; i++) {
+			if (a[i] != b[i]) {
+				return (a[i] & 0xff) - (b[i] & 0xff);
+			}
+		}
+		return a.length - b.length;
+	};
+
+	private final String algorithm;
+	private final X509Certificate[] certChain;
+	private final Properties extraParams;
+	private final String digestAlgorithm;
+	private final int digestLength;
+	private final boolean contentNeeded;
+	private final boolean signingTimeNeeded;
+	private final List<byte[]> invariantAttributes;
+
+	private CAdESSignatureProfile(final String algorithm,
+			                      final X509Certificate[] certChain,
+			                      final CAdESParameters config,
+			                      final int digestLength,
+			                      final boolean signingTimeNeeded,
+			                      final List<byte[]> invariantAttributes) {
+		this.algorithm = algorithm;
+		this.certChain = certChain;
+		this.extraParams = config.getExtraParams();
+		this.digestAlgorithm = config.getDigestAlgorithm();
+		this.digestLength = digestLength;
+		this.contentNeeded = config.isContentNeeded();
+		this.signingTimeNeeded = signingTimeNeeded;
+		this.invariantAttributes = invariantAttributes;
+	}
+
+	/** Compila un perfil de firma a partir de la configuraci&oacute;n y el certificado de firma.
+	 * @param algorithm Algoritmo de firma.
+	 * @param certChain Cadena de certificaci&oacute;n del firmante.
+	 * @param xParams Par&aacute;metros adicionales para la firma (<a href="doc-files/extraparams.html">detalle</a>).
+	 * @return Perfil de firma.
+	 * @throws AOException Cuando la configuraci&oacute;n no es v&aacute;lida o no pueden generarse los atributos. */
+	public static CAdESSignatureProfile compile(final String algorithm,
+			                                    final X509Certificate[] certChain,
+			                                    final Properties xParams) throws AOException {
+
+		if (algorithm == null) {
+			throw new IllegalArgumentException("El algoritmo de firma no puede ser nulo"); //$NON-NLS-1$
+		}
+		if (certChain == null || certChain.length < 1) {
+			throw new IllegalArgumentException("La cadena de certificados debe contener al menos un elemento"); //$NON-NLS-1$
+		}
+
+		final Properties extraParams = xParams != null ? (Properties) xParams.clone() : new Properties();
+		if (extraParams.containsKey(CAdESExtraParams.PRECALCULATED_HASH_ALGORITHM)) {
+			throw new IllegalArgumentException(
+				"El perfil de firma no admite el parametro '" + CAdESExtraParams.PRECALCULATED_HASH_ALGORITHM + //$NON-NLS-1$
+					"', use la firma de huellas del perfil"); //$NON-NLS-1$
+		}
+
+		// Cargamos la configuracion sin datos, de forma que no dependa de ningun documento
+		final CAdESParameters config = CAdESParameters.load(null, algorithm, extraParams);
+		final boolean signingTimeNeeded = config.getSigningTime() != null;
+
+		// El perfil se reutiliza entre firmas, asi que guardamos una copia de la cadena para
+		// que las modificaciones posteriores del array del llamador no le afecten
+		final X509Certificate[] aplicableCertificateChain = config.isIncludedOnlySigningCertificate() ?
+        		new X509Certificate[] { certChain[0] } : certChain.clone();
+
+		final int digestLength;
+		final ASN1EncodableVector attributes;
+		try {
+			digestLength = CryptoInstancePool.getMessageDigest(config.getDigestAlgorithm()).getDigestLength();
+
+			// Generamos los atributos con una huella provisional y sin fecha, que se
+			// insertaran despues para cada documento
+			config.setDataDigest(new byte[digestLength]);
+			config.setSigningTime(null);
+			attributes = CAdESUtils.generateSignedAttributes(aplicableCertificateChain[0], config, false);
+		}
+		catch (final Exception e) {
+			throw new AOException("Error obteniendo los atributos a firmar", e); //$NON-NLS-1$
+		}
+		config.setDataDigest(null);
+
+		final List<byte[]> invariantAttributes = new ArrayList<>(attributes.size());
+		try {
+			for (int i = 0; i < attributes.size(); i++) {
+				final Attribute attribute = Attribute.getInstance(attributes.get(i));
+				if (!CMSAttributes.messageDigest.equals(attribute.getAttrType())) {
+					invariantAttributes.add(attribute.getEncoded(ASN1Encoding.DER));
+				}
+			}
+		}
+		catch (final IOException e) {
+			throw new AOException("Error al codificar los atributos a firmar", e); //$NON-NLS-1$
+		}
+
+		return new CAdESSignatureProfile(
+			algorithm,
+			aplicableCertificateChain,
+			config,
+			digestLength,
+			signingTimeNeeded,
+			invariantAttributes
+		);
+	}
+
+	/** Obtiene el nombre del algoritmo de huella digital con el que deben calcularse las huellas
+	 * de los datos que se firmen con este perfil.
+	 * @return Nombre del algoritmo de huella digital. */
+	public String getDigestAlgorithm() {
+		return this.digestAlgorithm;
+	}
+
+	/** Genera los atributos firmados (prefirma) de un documento usando la fecha actual como
+	 * fecha de firma.
+	 * @param dataDigest Huella digital de los datos calculada con el algoritmo del perfil.
+	 * @return Atributos CAdES a firmar codificados en ASN.1.
+	 * @throws AOException Cuando se produce un error al codificar los atributos.
+	 * @see #getDigestAlgorithm() */
+	public byte[] preSign(final byte[] dataDigest) throws AOException {
+		return preSign(dataDigest, new Date());
+	}
+
+	/** Genera los atributos firmados (prefirma) de un documento.
+	 * @param dataDigest Huella digital de los datos calculada con el algoritmo del perfil.
+	 * @param signingTime Fecha de firma. Se ignora si la configuraci&oacute;n del perfil
+	 *                    indica que no se incluya.
+	 * @return Atributos CAdES a firmar codificados en ASN.1.
+	 * @throws AOException Cuando se produce un error al codificar los atributos.
+	 * @see #getDigestAlgorithm() */
+	public byte[] preSign(final byte[] dataDigest, final Date signingTime) throws AOException {
+
+		if (dataDigest == null || dataDigest.length != this.digestLength) {
+			throw new IllegalArgumentException(
+				"La huella de los datos debe calcularse con el algoritmo " + this.digestAlgorithm //$NON-NLS-1$
+			);
+		}
+		if (this.signingTimeNeeded && signingTime == null) {
+			throw new IllegalArgumentException("Es necesario indicar la fecha de firma"); //$NON-NLS-1$
+		}
+
+		final byte[][] encodedAttributes = new byte[this.invariantAttributes.size() + 2][];
+		int count = 0;
+		for (final byte[] encodedAttribute : this.invariantAttributes) {
+			encodedAttributes[count++] = encodedAttribute;
+		}
+		try {
+			encodedAttributes[count++] = new Attribute(
+				CMSAttributes.messageDigest,
+				new DERSet(new DEROctetString(dataDigest))
+			).getEncoded(ASN1Encoding.DER);
+			if (this.signingTimeNeeded) {
+				encodedAttributes[count++] = new Attribute(
+					CMSAttributes.signingTime,
+					new DERSet(new DERUTCTime(signingTime))
+				).getEncoded(ASN1Encoding.DER);
+			}
+		}
+		catch (final IOException e) {
+			throw new AOException("Error al codificar los atributos a firmar", e); //$NON-NLS-1$
+		}
+		Arrays.sort(encodedAttributes, 0, count, DER_SET_ORDER);
+
+		int contentLength = 0;
+		for (int i = 0; i < count; i++) {
+			contentLength += encodedAttributes[i].length;
+		}
+
+		// SET OF Attribute codificado en DER
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream(contentLength + 6);
+		baos.write(0x31);
+		writeLength(baos, contentLength);
+		for (int i = 0; i < count; i++) {
+			baos.write(encodedAttributes[i], 0, encodedAttributes[i].length);
+		}
+		return baos.toByteArray();
+	}
+
+	/** Firma unos datos con este perfil. La firma ser&aacute; impl&iacute;cita o expl&iacute;cita
+	 * seg&uacute;n se configurase el perfil.
+	 * @param data Datos a firmar.
+	 * @param key Clave privada del firmante.
+	 * @return Firma CAdES.
+	 * @throws AOException Cuando ocurre cualquier problema durante el proceso. */
+	public byte[] sign(final byte[] data, final PrivateKey key) throws AOException {
+		if (data == null) {
+			throw new IllegalArgumentException("Los datos a firmar no pueden ser nulos"); //$NON-NLS-1$
+		}
+		final byte[] dataDigest;
+		try {
+			dataDigest = CryptoInstancePool.digest(this.digestAlgorithm, data);
+		}
+		catch (final NoSuchAlgorithmException e) {
+			throw new AOException("No se ha podido extraer un algoritmo de huella soportado del algoritmo de firma", e); //$NON-NLS-1$
+		}
+		return sign(dataDigest, this.contentNeeded ? data : null, key);
+	}
+
+	/** Firma en modo expl&iacute;cito unos datos de los que solo se proporciona su huella digital.
+	 * @param dataDigest Huella digital de los datos calculada con el algoritmo del perfil.
+	 * @param key Clave privada del firmante.
+	 * @return Firma CAdES expl&iacute;cita.
+	 * @throws AOException Cuando ocurre cualquier problema durante el proceso.
+	 * @see #getDigestAlgorithm() */
+	public byte[] signHash(final byte[] dataDigest, final PrivateKey key) throws AOException {
+		return sign(dataDigest, null, key);
+	}
+
+	private byte[] sign(final byte[] dataDigest, final byte[] content, final PrivateKey key) throws AOException {
+
+		final byte[] preSignature = preSign(dataDigest, this.signingTimeNeeded ? new Date() : null);
+
+		final byte[] signatureValue = new AOPkcs1Signer().sign(
+			preSignature,
+			this.algorithm,
+			key,
+			this.certChain,
+			this.extraParams
+		);
+
+		return CAdESTriPhaseSigner.postSign(
+			this.algorithm,
+			content,
+			this.certChain,
+			signatureValue,
+			preSignature
+		);
+	}
+
+	private static void writeLength(final ByteArrayOutputStream baos, final int length) {
+		if (length < 0x80) {
+			baos.write(length);
+			return;
+		}
+		int size = 1;
+		for (int val = length; (val >>>= 8) != 0;) {
+			size++;
+		}
+		baos.write(0x80 | size);
+		for (int i = (size - 1) * 8; i >= 0; i -= 8) {
+			baos.write(length >> i);
+		}
+	}
+}
@@ -0,0 +1,225 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * You may contact the copyright holder at: soporte.afirma@seap.minhap.es
+ */
+
+package es.gob.afirma.signers.cades;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.BEROctetStringGenerator;
+import org.bouncycastle.asn1.BERSequenceGenerator;
+
+import es.gob.afirma.core.AOException;
+
+/** Utilidades para la firma CAdES de contenidos tratados como flujos de datos, de forma que
+ * nunca sea necesario mantenerlos completos en memoria. */
+final class CAdESStreamUtil {
+
+	/** Tama&ntilde;o del b&uacute;fer de lectura y de los fragmentos en los que se escribe el contenido. */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private CAdESStreamUtil() {
+		// No permitimos la instanciacion
+	}
+
+	/** Calcula la huella digital de un contenido leyendo por bloques y, opcionalmente,
+	 * copi&aacute;ndolo a otro flujo.
+	 * @param content Flujo de lectura del contenido. No se cierra.
+	 * @param digestAlgorithm Nombre del algoritmo de huella digital.
+	 * @param copy Flujo al que copiar el contenido seg&uacute;n se lee o <code>null</code> si no
+	 *             se desea copiar.
+	 * @return Huella digital del contenido.
+	 * @throws IOException Si ocurre un error en la lectura o la copia del contenido.
+	 * @throws AOException Si el algoritmo de huella digital no est&aacute; soportado. */
+	static byte[] digest(final InputStream content,
+			             final String digestAlgorithm,
+			             final OutputStream copy) throws IOException, AOException {
+		// La instancia no se toma de la reserva del hilo, ya que se usa mientras se leen y
+		// escriben los flujos del llamante
+		final MessageDigest md;
+		try {
+			md = MessageDigest.getInstance(digestAlgorithm);
+		}
+		catch (final NoSuchAlgorithmException e) {
+			throw new AOException("No se ha podido extraer un algoritmo de huella soportado del algoritmo de firma", e); //$NON-NLS-1$
+		}
+
+		final byte[] buffer = new byte[BUFFER_SIZE];
+		int n;
+		while ((n = content.read(buffer)) != -1) {
+			md.update(buffer, 0, n);
+			if (copy != null) {
+				copy.write(buffer, 0, n);
+			}
+		}
+		return md.digest();
+	}
+
+	/** Escribe una firma CAdES impl&iacute;cita a partir de la firma expl&iacute;cita de un
+	 * contenido y del propio contenido. La firma se codifica con longitud indefinida (BER) y el
+	 * contenido se copia desde el fichero por fragmentos, sin cargarlo en memoria. El resto de
+	 * elementos de la firma expl&iacute;cita (tipo de contenido, certificados, CRL e
+	 * informaci&oacute;n de los firmantes) se copian con su codificaci&oacute;n original.
+	 * @param explicitSignature Firma CAdES expl&iacute;cita del contenido.
+	 * @param content Fichero con el contenido firmado.
+	 * @param out Flujo en el que escribir la firma impl&iacute;cita. No se cierra.
+	 * @throws IOException Si la firma expl&iacute;cita no es v&aacute;lida o si ocurre un error en
+	 *                     la lectura del contenido o en la escritura de la firma. */
+	static void writeImplicitSignature(final byte[] explicitSignature,
+			                           final Path content,
+			                           final OutputStream out) throws IOException {
+
+		// ContentInfo ::= SEQUENCE { contentType, [0] EXPLICIT SignedData }
+		final int contentTypeOffset = readHeader(explicitSignature, 0)[0];
+		final int taggedSignedDataOffset = getEnd(explicitSignature, contentTypeOffset);
+		final int signedDataOffset = readHeader(explicitSignature, taggedSignedDataOffset)[0];
+
+		// SignedData ::= SEQUENCE { version, digestAlgorithms, encapContentInfo, [0] certificates,
+		//                           [1] crls, signerInfos }
+		final List<int[]> signedDataElements = getElements(explicitSignature, signedDataOffset);
+		if (signedDataElements.size() < 4) {
+			throw new IOException("La firma explicita no contiene un SignedData valido"); //$NON-NLS-1$
+		}
+
+		// EncapsulatedContentInfo ::= SEQUENCE { eContentType, [0] EXPLICIT eContent OPTIONAL }
+		final int[] encapContentInfo = signedDataElements.get(2);
+		final ASN1ObjectIdentifier eContentType = ASN1ObjectIdentifier.getInstance(
+			ASN1Sequence.getInstance(
+				Arrays.copyOfRange(explicitSignature, encapContentInfo[0], encapContentInfo[1])
+			).getObjectAt(0)
+		);
+
+		final BERSequenceGenerator contentInfoGen = new BERSequenceGenerator(out);
+		contentInfoGen.getRawOutputStream().write(
+			explicitSignature, contentTypeOffset, taggedSignedDataOffset - contentTypeOffset
+		);
+
+		final BERSequenceGenerator signedDataGen = new BERSequenceGenerator(contentInfoGen.getRawOutputStream(), 0, true);
+		writeElement(explicitSignature, signedDataElements.get(0), signedDataGen.getRawOutputStream());
+		writeElement(explicitSignature, signedDataElements.get(1), signedDataGen.getRawOutputStream());
+
+		final BERSequenceGenerator encapContentGen = new BERSequenceGenerator(signedDataGen.getRawOutputStream());
+		encapContentGen.addObject(eContentType);
+		final BEROctetStringGenerator octetsGen = new BEROctetStringGenerator(encapContentGen.getRawOutputStream(), 0, true);
+		final byte[] buffer = new byte[BUFFER_SIZE];
+		try (InputStream is = Files.newInputStream(content);
+				OutputStream octetsOut = octetsGen.getOctetOutputStream(buffer)) {
+			final byte[] readBuffer = new byte[BUFFER_SIZE];
+			int n;
+			while ((n = is.read(readBuffer)) != -1) {
+				octetsOut.write(readBuffer, 0, n);
+			}
+		}
+		encapContentGen.close();
+
+		// Certificados, CRL e informacion de los firmantes tal cual estaban en la firma explicita
+		for (int i = 3; i < signedDataElements.size(); i++) {
+			writeElement(explicitSignature, signedDataElements.get(i), signedDataGen.getRawOutputStream());
+		}
+		signedDataGen.close();
+		contentInfoGen.close();
+	}
+
+	private static void writeElement(final byte[] encoded, final int[] element, final OutputStream out) throws IOException {
+		out.write(encoded, element[0], element[1] - element[0]);
+	}
+
+	/** Obtiene la posici&oacute;n de inicio y fin de cada uno de los elementos de una
+	 * estructura ASN.1 construida.
+	 * @param encoded Codificaci&oacute;n en la que se encuentra la estructura.
+	 * @param offset Posici&oacute;n de inicio de la estructura.
+	 * @return Posiciones de inicio y fin (excluida) de cada elemento.
+	 * @throws IOException Si la codificaci&oacute;n no es v&aacute;lida. */
+	private static List<int[]> getElements(final byte[] encoded, final int offset) throws IOException {
+		final int[] header = readHeader(encoded, offset);
+		final int end = header[1] >= 0 ? header[0] + header[1] : -1;
+		final List<int[]> elements = new ArrayList<>();
+		int pos = header[0];
+		while (end >= 0 ? pos < end : !isEndOfContents(encoded, pos)) {
+			final int elementEnd = getEnd(encoded, pos);
+			elements.add(new int[] { pos, elementEnd });
+			pos = elementEnd;
+		}
+		return elements;
+	}
+
+	/** Obtiene la posici&oacute;n siguiente al final de un elemento ASN.1, sea de longitud
+	 * definida o indefinida.
+	 * @param encoded Codificaci&oacute;n en la que se encuentra el elemento.
+	 * @param offset Posici&oacute;n de inicio del elemento.
+	 * @return Posici&oacute;n siguiente al final del elemento.
+	 * @throws IOException Si la codificaci&oacute;n no es v&aacute;lida. */
+	private static int getEnd(final byte[] encoded, final int offset) throws IOException {
+		final int[] header = readHeader(encoded, offset);
+		if (header[1] >= 0) {
+			return header[0] + header[1];
+		}
+		int pos = header[0];
+		while (!isEndOfContents(encoded, pos)) {
+			pos = getEnd(encoded, pos);
+		}
+		return pos + 2;
+	}
+
+	/** Lee la etiqueta y la longitud de un elemento ASN.1.
+	 * @param encoded Codificaci&oacute;n en la que se encuentra el elemento.
+	 * @param offset Posici&oacute;n de inicio del elemento.
+	 * @return Posici&oacute;n de inicio del contenido del elemento y su longitud, que
+	 *         ser&aacute; -1 si es indefinida.
+	 * @throws IOException Si la codificaci&oacute;n no es v&aacute;lida. */
+	private static int[] readHeader(final byte[] encoded, final int offset) throws IOException {
+		int pos = offset;
+		if ((readByte(encoded, pos++) & 0x1F) == 0x1F) {
+			// Numero de etiqueta codificado en varios octetos
+			while ((readByte(encoded, pos++) & 0x80) != 0) {
+				// Avanzamos hasta el ultimo octeto de la etiqueta
+			}
+		}
+		final int first = readByte(encoded, pos++);
+		if (first == 0x80) {
+			return new int[] { pos, -1 };
+		}
+		long length = first;
+		if (first > 0x80) {
+			final int lengthOctets = first & 0x7F;
+			if (lengthOctets > 4) {
+				throw new IOException("Longitud ASN.1 no soportada en la firma"); //$NON-NLS-1$
+			}
+			length = 0;
+			for (int i = 0; i < lengthOctets; i++) {
+				length = length << 8 | readByte(encoded, pos++);
+			}
+		}
+		if (length > encoded.length - pos) {
+			throw new IOException("La codificacion ASN.1 de la firma esta truncada"); //$NON-NLS-1$
+		}
+		return new int[] { pos, (int) length };
+	}
+
+	private static boolean isEndOfContents(final byte[] encoded, final int pos) throws IOException {
+		return readByte(encoded, pos) == 0 && readByte(encoded, pos + 1) == 0;
+	}
+
+	private static int readByte(final byte[] encoded, final int pos) throws IOException {
+		if (pos >= encoded.length) {
+			throw new IOException("La codificacion ASN.1 de la firma esta truncada"); //$NON-NLS-1$
+		}
+		return encoded[pos] & 0xFF;
+	}
+}
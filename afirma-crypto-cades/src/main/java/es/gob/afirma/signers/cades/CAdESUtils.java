@@ -36,16 +36,13 @@ import org.bouncycastle.asn1.ess.ESSCertIDv2;
 import org.bouncycastle.asn1.ess.SigningCertificate;
 import org.bouncycastle.asn1.ess.SigningCertificateV2;
 import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
-import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
 import org.bouncycastle.asn1.x509.CertificatePolicies;
 import org.bouncycastle.asn1.x509.DigestInfo;
-import org.bouncycastle.asn1.x509.GeneralName;
-import org.bouncycastle.asn1.x509.GeneralNames;
-import org.bouncycastle.asn1.x509.IssuerSerial;
 import org.bouncycastle.asn1.x509.PolicyInformation;
 import org.bouncycastle.asn1.x509.X509AttributeIdentifiers;
 
+import es.gob.afirma.core.misc.CryptoInstancePool;
 import es.gob.afirma.core.signers.AOSignConstants;
 import es.gob.afirma.core.signers.AdESPolicy;
 import es.gob.afirma.signers.pkcs7.AOAlgorithmID;
@@ -202,33 +199,17 @@ public final class CAdESUtils {
                                                      final boolean includePolicyOnSigningCertificate,
                                                      final boolean includeIssuerSerial) throws CertificateEncodingException,
     		                                                                                                      NoSuchAlgorithmException {
-    	// ALGORITMO DE HUELLA DIGITAL
-    	final String hashOid = AOAlgorithmID.getOID(digestAlgorithmName);
-    	// Si es SHA-256 ponemos el OID a null para que no incluya el campo (y tome su
-    	// valor por defecto).
-        final AlgorithmIdentifier digestAlgorithmOID =
-    		AOAlgorithmID.OID_SHA256.equals(hashOid) ?
-				null :
-					SigUtils.makeAlgId(hashOid);
+    	// Las estructuras derivadas del certificado se reutilizan entre firmas
+    	final SigningCertificateCache.CertificateAttributes certAttributes =
+			SigningCertificateCache.getAttributes(cert, digestAlgorithmName);
 
         // INICIO SINGING CERTIFICATE-V2
-
-        final GeneralNames gns = new GeneralNames(
-    		new GeneralName(X500Name.getInstance(cert.getIssuerX500Principal().getEncoded()))
-		);
-
-        IssuerSerial issuerSerial = null;
-        if (includeIssuerSerial) {
-        	issuerSerial = new IssuerSerial(gns, cert.getSerialNumber());
-        }
-
-        final byte[] certHash = MessageDigest.getInstance(digestAlgorithmName).digest(cert.getEncoded());
         final ESSCertIDv2[] essCertIDv2 = {
-            new ESSCertIDv2(digestAlgorithmOID, certHash, issuerSerial)
+            certAttributes.getEssCertIdV2(includeIssuerSerial)
         };
 
         final SigningCertificateV2 scv2;
-        final PolicyInformation[] polInfo = includePolicyOnSigningCertificate ? getPolicyInformation(cert) : null;
+        final PolicyInformation[] polInfo = includePolicyOnSigningCertificate ? certAttributes.getPolicies() : null;
 
         if (polInfo != null) {
             scv2 = new SigningCertificateV2(essCertIDv2, polInfo); // con politica
@@ -262,22 +243,14 @@ public final class CAdESUtils {
                                                                                                NoSuchAlgorithmException {
         // INICIO SINGNING CERTIFICATE
 
-        final GeneralName gn = new GeneralName(X500Name.getInstance(cert.getIssuerX500Principal().getEncoded()));
-        final GeneralNames gns = new GeneralNames(gn);
-
-        final IssuerSerial issuerSerial;
-        if (includeIssuerSerial) {
-        	issuerSerial = new IssuerSerial(gns, cert.getSerialNumber());
-        }
-        else {
-			issuerSerial = null;
-		}
+    	// Las estructuras derivadas del certificado se reutilizan entre firmas
+    	final SigningCertificateCache.CertificateAttributes certAttributes =
+			SigningCertificateCache.getAttributes(cert, digestAlgorithmName);
 
-        final byte[] certHash = MessageDigest.getInstance(digestAlgorithmName).digest(cert.getEncoded());
-        final ESSCertID essCertID = new ESSCertID(certHash, issuerSerial);
+        final ESSCertID essCertID = certAttributes.getEssCertId(includeIssuerSerial);
 
         final SigningCertificate scv;
-        final PolicyInformation[] polInfo = includePolicyOnSigningCertificate ? getPolicyInformation(cert) : null;
+        final PolicyInformation[] polInfo = includePolicyOnSigningCertificate ? certAttributes.getPolicies() : null;
 
         if (polInfo != null) {
 
@@ -384,7 +357,7 @@ public final class CAdESUtils {
 					new DEROctetString(
 						config.getDataDigest() != null ?
 							config.getDataDigest() :
-							MessageDigest.getInstance(config.getDigestAlgorithm()).digest(config.getContentData())
+							CryptoInstancePool.digest(config.getDigestAlgorithm(), config.getContentData())
 					)
 				)
 			)
@@ -627,7 +600,7 @@ public final class CAdESUtils {
      * @param cert Certificado del cual queremos describir su pol&iacute;tica.
      * @return Estructura con la pol&iacute;tica preparada para insertarla en la firma o
      *         <code>null</code> si el certificado no tiene declarada una pol&iacute;tica. */
-    private static PolicyInformation[] getPolicyInformation(final X509Certificate cert) {
+    static PolicyInformation[] getPolicyInformation(final X509Certificate cert) {
 
         if (cert == null) {
             throw new IllegalArgumentException("El certificado no puede ser nulo"); //$NON-NLS-1$
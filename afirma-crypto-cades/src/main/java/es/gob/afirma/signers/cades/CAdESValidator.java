@@ -10,17 +10,19 @@
 package es.gob.afirma.signers.cades;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Enumeration;
 import java.util.logging.Logger;
 
 import org.bouncycastle.asn1.ASN1InputStream;
 import org.bouncycastle.asn1.ASN1Integer;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.ASN1Primitive;
 import org.bouncycastle.asn1.ASN1Sequence;
 import org.bouncycastle.asn1.ASN1Set;
-import org.bouncycastle.asn1.ASN1TaggedObject;
-import org.bouncycastle.asn1.DEROctetString;
 import org.bouncycastle.asn1.cms.Attribute;
+import org.bouncycastle.asn1.cms.ContentInfo;
 import org.bouncycastle.asn1.cms.EncryptedContentInfo;
 import org.bouncycastle.asn1.cms.EnvelopedData;
 import org.bouncycastle.asn1.cms.SignedData;
@@ -30,10 +32,15 @@ import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
 import es.gob.afirma.core.signers.AOSignConstants;
 import es.gob.afirma.signers.pkcs7.DigestedData;
 import es.gob.afirma.signers.pkcs7.SignedAndEnvelopedData;
+import es.gob.afirma.signers.pkcs7.StreamedSignedData;
 
 /** Agrupa distintos m&eacute;todos de verificaci&oacute;n estructural de datos CAdES. Es importante rese&ntilde;ar que las
  * validaciones son &uacute;nicamente a nivel de estructura, y no a nivel de validez de la propia firma electr&oacute;ca o
- * los firmantes. */
+ * los firmantes.
+ * <p>
+ *  Los datos se decodifican una &uacute;nica vez para obtener su <i>ContentInfo</i> exterior y las
+ *  comprobaciones se realizan sobre la estructura ya decodificada seg&uacute;n el tipo de contenido declarado.
+ * </p> */
 public final class CAdESValidator {
 
     private static final Logger LOGGER = Logger.getLogger("es.gob.afima"); //$NON-NLS-1$
@@ -42,39 +49,48 @@ public final class CAdESValidator {
         // No permitimos la instanciacion
     }
 
-    private static Enumeration<?> getCAdESObjects(final byte[] data) throws IOException {
+    /** Decodifica la estructura <i>ContentInfo</i> exterior de unos datos PKCS#7/CMS/CAdES.
+     * @param data Datos PKCS#7/CMS/CAdES.
+     * @return <i>ContentInfo</i> de los datos o <code>null</code> si los datos no tienen esa estructura.
+     * @throws IOException Si los datos no son ASN.1 o hay problemas en su lectura. */
+    public static ContentInfo getContentInfo(final byte[] data) throws IOException {
+    	final ASN1Primitive obj;
     	try (ASN1InputStream is = new ASN1InputStream(data)) {
-    		final ASN1Sequence dsq = (ASN1Sequence) is.readObject();
-    		return dsq.getObjects();
+    		obj = is.readObject();
+    	}
+    	if (!(obj instanceof ASN1Sequence)) {
+    		LOGGER.fine("Los datos proporcionados no son una estructura ContentInfo"); //$NON-NLS-1$
+    		return null;
+    	}
+    	final ContentInfo contentInfo;
+    	try {
+    		contentInfo = ContentInfo.getInstance(obj);
     	}
+    	catch (final IllegalArgumentException | ClassCastException e) {
+    		// BouncyCastle lanza ClassCastException si el primer elemento de la secuencia no es un OID
+    		LOGGER.fine("Los datos proporcionados no son una estructura ContentInfo: " + e); //$NON-NLS-1$
+    		return null;
+    	}
+    	if (contentInfo.getContent() == null) {
+    		LOGGER.fine("La estructura ContentInfo de los datos proporcionados no tiene contenido"); //$NON-NLS-1$
+    		return null;
+    	}
+    	return contentInfo;
     }
 
-    /** Verifica si los datos proporcionados se corresponden con una estructura de tipo <i>Data</i>.
-     * @param data Datos PKCS#7/CMS/CAdES.
+    /** Verifica si el contenido de un <i>ContentInfo</i> se corresponde con una estructura de tipo <i>Data</i>.
+     * @param contentInfo <i>ContentInfo</i> de los datos PKCS#7/CMS/CAdES.
      * @return <code>true</code> si los datos proporcionados se corresponden con una estructura de tipo <i>Data</i>,
-     * <code>false</code> en caso contrario.
-     * @throws IOException En caso de problemas leyendo el fichero */
-	@SuppressWarnings("unused")
-	static boolean isCAdESData(final byte[] data) throws IOException {
-
-        // LEEMOS EL FICHERO QUE NOS INTRODUCEN
-        final Enumeration<?> e = getCAdESObjects(data);
+     * <code>false</code> en caso contrario. */
+	static boolean isCAdESData(final ContentInfo contentInfo) {
 
         // Elementos que contienen los elementos OID Data
-        final ASN1ObjectIdentifier doi = (ASN1ObjectIdentifier) e.nextElement();
-        if (!doi.equals(PKCSObjectIdentifiers.data)) {
+        if (!contentInfo.getContentType().equals(PKCSObjectIdentifiers.data)) {
             return false;
         }
 
-        // Contenido de Data
-        final ASN1TaggedObject doj = (ASN1TaggedObject) e.nextElement();
-
         try {
-            /* Los valores de retorno no se usan, solo es para verificar que la
-             * conversion ha sido correcta. De no ser asi, se pasaria al manejo
-             * de la excepcion. */
-            new DEROctetString(doj.getBaseObject());
-
+            ASN1OctetString.getInstance(contentInfo.getContent());
         }
         catch (final Exception ex) {
         	LOGGER.fine("Los datos proporcionados no son de tipo Data: " + ex); //$NON-NLS-1$
@@ -92,41 +108,82 @@ public final class CAdESValidator {
      * @return <code>true</code> si los datos proporcionados se corresponden con una estructura de tipo <i>SignedData</i>,
      * <code>false</code> en caso contrario. */
     public static boolean isCAdESSignedData(final byte[] data, final boolean enforceCAdES) {
+        final ContentInfo contentInfo;
         try {
-            // LEEMOS EL FICHERO QUE NOS INTRODUCEN
-            final Enumeration<?> e = getCAdESObjects(data);
-
-            // Elementos que contienen los elementos OID SignedData
-            final ASN1ObjectIdentifier doi = (ASN1ObjectIdentifier) e.nextElement();
-            if (!doi.equals(PKCSObjectIdentifiers.signedData)) {
-            	LOGGER.fine("Los datos proporcionados no son de tipo SignedData de CAdES (no esta declarado el OID de SignedData)"); //$NON-NLS-1$
-        		return false;
-            }
+        	contentInfo = getContentInfo(data);
+        }
+        catch (final Exception ex) {
+        	LOGGER.fine("Los datos proporcionados no son de tipo SignedData de CAdES: " + ex); //$NON-NLS-1$
+            return false;
+        }
+        return contentInfo != null && isCAdESSignedData(contentInfo, enforceCAdES);
+    }
 
-            // Contenido de SignedData
-            final ASN1TaggedObject doj = (ASN1TaggedObject) e.nextElement();
-            final ASN1Sequence datos = (ASN1Sequence) doj.getBaseObject();
-            final SignedData sd = SignedData.getInstance(datos);
+    /** Verifica si el contenido de un <i>ContentInfo</i> se corresponde con una estructura de tipo <i>SignedData</i>.
+     * @param contentInfo <i>ContentInfo</i> de los datos PKCS#7/CMS/CAdES.
+     * @param enforceCAdES Si se establece a <code>true</code> se comprueba que los SignerInfos sean expl&iacute;citamente
+     *                     de tipo CAdES, si se establece a <code>false</code> no se comprueba, por lo que se aceptan
+     *                     <code>SignedData</code> de CMS y PKCS#7.
+     * @return <code>true</code> si los datos proporcionados se corresponden con una estructura de tipo <i>SignedData</i>,
+     * <code>false</code> en caso contrario. */
+    static boolean isCAdESSignedData(final ContentInfo contentInfo, final boolean enforceCAdES) {
 
-            final ASN1Set signerInfosSd = sd.getSignerInfos();
+        // Elementos que contienen los elementos OID SignedData
+        if (!contentInfo.getContentType().equals(PKCSObjectIdentifiers.signedData)) {
+        	LOGGER.fine("Los datos proporcionados no son de tipo SignedData de CAdES (no esta declarado el OID de SignedData)"); //$NON-NLS-1$
+    		return false;
+        }
 
+        try {
+            final SignedData sd = SignedData.getInstance(contentInfo.getContent());
             if (enforceCAdES) {
-	            for (int i = 0; i < signerInfosSd.size(); i++) {
-	            	if (!verifySignerInfo(SignerInfo.getInstance(signerInfosSd.getObjectAt(i)))) {
-	            		LOGGER.fine(
-	        				"Los datos proporcionados no son de tipo SignedData de CAdES (al menos un SignerInfo no se ha declarado de tipo CAdES)" //$NON-NLS-1$
-	    				);
-	            		return false;
-	            	}
-	            }
+            	return verifySignerInfos(sd.getSignerInfos());
             }
+        }
+        catch (final Exception ex) {
+        	LOGGER.fine("Los datos proporcionados no son de tipo SignedData de CAdES: " + ex); //$NON-NLS-1$
+            return false;
+        }
+
+        return true;
+    }
 
+    /** Verifica si los datos proporcionados se corresponden con una estructura de tipo <i>SignedData</i>,
+     * leyendo los datos como un flujo. El contenido firmado que encapsule la firma se descarta
+     * seg&uacute;n se lee, por lo que la comprobaci&oacute;n no depende de su tama&ntilde;o.
+     * @param data Flujo con los datos PKCS#7/CMS/CAdES. No se cierra.
+     * @param enforceCAdES Si se establece a <code>true</code> se comprueba que los SignerInfos sean expl&iacute;citamente
+     *                     de tipo CAdES, si se establece a <code>false</code> no se comprueba, por lo que se aceptan
+     *                     <code>SignedData</code> de CMS y PKCS#7.
+     * @return <code>true</code> si los datos proporcionados se corresponden con una estructura de tipo <i>SignedData</i>,
+     * <code>false</code> en caso contrario. */
+    public static boolean isCAdESSignedData(final InputStream data, final boolean enforceCAdES) {
+        try {
+            final StreamedSignedData sd = StreamedSignedData.read(data, null);
+            if (enforceCAdES) {
+            	return verifySignerInfos(sd.getSignerInfos());
+            }
         }
         catch (final Exception ex) {
         	LOGGER.fine("Los datos proporcionados no son de tipo SignedData de CAdES: " + ex); //$NON-NLS-1$
             return false;
         }
+        return true;
+    }
 
+    /** Verifica que todos los <code>SignerInfo</code> de un conjunto se hayan declarado
+     * expl&iacute;citamente de tipo CAdES.
+     * @param signerInfos Conjunto de <code>SignerInfo</code>.
+     * @return <code>true</code> si todos los <code>SignerInfo</code> son de tipo CAdES. */
+    private static boolean verifySignerInfos(final ASN1Set signerInfos) {
+        for (int i = 0; i < signerInfos.size(); i++) {
+        	if (!verifySignerInfo(SignerInfo.getInstance(signerInfos.getObjectAt(i)))) {
+        		LOGGER.fine(
+    				"Los datos proporcionados no son de tipo SignedData de CAdES (al menos un SignerInfo no se ha declarado de tipo CAdES)" //$NON-NLS-1$
+				);
+        		return false;
+        	}
+        }
         return true;
     }
 
@@ -155,31 +212,22 @@ public final class CAdESValidator {
         return isSignerValid;
     }
 
-    /** Verifica si los datos proporcionados se corresponden con una estructura de tipo <i>DigestedData</i>.
-     * @param data Datos PKCS#7/CMS/CAdES.
+    /** Verifica si el contenido de un <i>ContentInfo</i> se corresponde con una estructura de tipo <i>DigestedData</i>.
+     * @param contentInfo <i>ContentInfo</i> de los datos PKCS#7/CMS/CAdES.
      * @return <code>true</code> si los datos proporcionados se corresponden con una estructura de tipo <i>DigestedData</i>,
-     * <code>false</code> en caso contrario.
-     * @throws IOException Si ocurren problemas relacionados con la lectura de los datos */
-    @SuppressWarnings("unused")
-	static boolean isCAdESDigestedData(final byte[] data) throws IOException {
-        boolean isValid = false;
-
-        // LEEMOS EL FICHERO QUE NOS INTRODUCEN
-        final Enumeration<?> e = getCAdESObjects(data);
+     * <code>false</code> en caso contrario. */
+    static boolean isCAdESDigestedData(final ContentInfo contentInfo) {
 
         // Elementos que contienen los elementos OID Data
-        final ASN1ObjectIdentifier doi = (ASN1ObjectIdentifier) e.nextElement();
-        if (doi.equals(PKCSObjectIdentifiers.digestedData)) {
-            isValid = true;
+        if (!contentInfo.getContentType().equals(PKCSObjectIdentifiers.digestedData)) {
+            return false;
         }
-        // Contenido de Data
-        final ASN1TaggedObject doj = (ASN1TaggedObject) e.nextElement();
 
         try {
             /* Los resultados no se usan, solo es para verificar que la
              * conversion ha sido correcta. De no ser asi, se pasaria al manejo
              * de la excepcion. */
-            new DigestedData((ASN1Sequence) doj.getBaseObject());
+            new DigestedData((ASN1Sequence) contentInfo.getContent());
 
         }
         catch (final Exception ex) {
@@ -187,29 +235,19 @@ public final class CAdESValidator {
             return false;
         }
 
-        return isValid;
+        return true;
     }
 
-    /** Verifica si los datos proporcionados se corresponden con una estructura de tipo <i>EncryptedData</i>.
-     * @param data Datos PKCS#7/CMS/CAdES.
+    /** Verifica si el contenido de un <i>ContentInfo</i> se corresponde con una estructura de tipo <i>EncryptedData</i>.
+     * @param contentInfo <i>ContentInfo</i> de los datos PKCS#7/CMS/CAdES.
      * @return <code>true</code> si los datos proporcionados se corresponden con una estructura de tipo <i>EncryptedData</i>,
-     * <code>false</code> en caso contrario.
-     * @throws IOException Si ocurren problemas relacionados con la lectura de los datos */
-    static boolean isCAdESEncryptedData(final byte[] data) throws IOException {
-        boolean isValid = false;
-
-        // LEEMOS EL FICHERO QUE NOS INTRODUCEN
-        final Enumeration<?> e = getCAdESObjects(data);
+     * <code>false</code> en caso contrario. */
+    static boolean isCAdESEncryptedData(final ContentInfo contentInfo) {
 
         // Elementos que contienen los elementos OID Data
-        final ASN1ObjectIdentifier doi = (ASN1ObjectIdentifier) e.nextElement();
-        if (doi.equals(PKCSObjectIdentifiers.encryptedData)) {
-            isValid = true;
+        if (!contentInfo.getContentType().equals(PKCSObjectIdentifiers.encryptedData)) {
+            return false;
         }
-        // Contenido de Data
-        final ASN1TaggedObject doj = (ASN1TaggedObject) e.nextElement();
-
-        final ASN1Sequence asq = (ASN1Sequence) doj.getBaseObject();
 
         try {
 
@@ -217,6 +255,7 @@ public final class CAdESValidator {
              * conversion ha sido correcta. De no ser asi, se pasaria al manejo
              * de la excepcion. */
 
+        	final ASN1Sequence asq = (ASN1Sequence) contentInfo.getContent();
         	ASN1Integer.getInstance(asq.getObjectAt(0));
             EncryptedContentInfo.getInstance(asq.getObjectAt(1));
 
@@ -230,65 +269,46 @@ public final class CAdESValidator {
             return false;
         }
 
-        return isValid;
+        return true;
     }
 
-    /** Verifica si los datos proporcionados se corresponden con una estructura de tipo <i>EnvelopedData</i>.
-     * @param data Datos PKCS#7/CMS/CAdES.
+    /** Verifica si el contenido de un <i>ContentInfo</i> se corresponde con una estructura de tipo <i>EnvelopedData</i>.
+     * @param contentInfo <i>ContentInfo</i> de los datos PKCS#7/CMS/CAdES.
      * @return <code>true</code> si los datos proporcionados se corresponden con una estructura de tipo <i>EnvelopedData</i>,
-     * <code>false</code> en caso contrario.
-     * @throws IOException Si ocurren problemas relacionados con la lectura de los datos */
-	static boolean isCAdESEnvelopedData(final byte[] data) throws IOException {
-        boolean isValid = false;
-
-        // LEEMOS EL FICHERO QUE NOS INTRODUCEN
-        final Enumeration<?> e = getCAdESObjects(data);
+     * <code>false</code> en caso contrario. */
+	static boolean isCAdESEnvelopedData(final ContentInfo contentInfo) {
 
         // Elementos que contienen los elementos OID Data
-        final ASN1ObjectIdentifier doi = (ASN1ObjectIdentifier) e.nextElement();
-        if (doi.equals(PKCSObjectIdentifiers.envelopedData)) {
-            isValid = true;
+        if (!contentInfo.getContentType().equals(PKCSObjectIdentifiers.envelopedData)) {
+            return false;
         }
-        // Contenido de Data
-        final ASN1TaggedObject doj = (ASN1TaggedObject) e.nextElement();
 
         try {
             /* los retornos no se usan, solo es para verificar que la conversion
              * ha sido correcta. De no ser asi, se pasaria al manejo de la
              * excepcion. */
-            EnvelopedData.getInstance(doj.getBaseObject());
+            EnvelopedData.getInstance(contentInfo.getContent());
         }
         catch (final Exception ex) {
         	LOGGER.fine("Los datos proporcionados no son de tipo EnvelopedData: " + ex); //$NON-NLS-1$
             return false;
         }
 
-        return isValid;
+        return true;
     }
 
-    /** Verifica si los datos proporcionados se corresponden con una estructura de tipo <i>SignedAndEnvelopedData</i>.
-     * @param data Datos PKCS#7/CMS/CAdES.
+    /** Verifica si el contenido de un <i>ContentInfo</i> se corresponde con una estructura de tipo <i>SignedAndEnvelopedData</i>.
+     * @param contentInfo <i>ContentInfo</i> de los datos PKCS#7/CMS/CAdES.
      * @return <code>true</code> si los datos proporcionados se corresponden con una estructura de tipo <i>SignedAndEnvelopedData</i>,
-     * <code>false</code> en caso contrario.
-     * @throws IOException Si ocurren problemas relacionados con la lectura de los datos. */
-    static boolean isCAdESSignedAndEnvelopedData(final byte[] data) throws IOException {
-        boolean isValid = false;
-
-        // LEEMOS EL FICHERO QUE NOS INTRODUCEN
-        final Enumeration<?> e = getCAdESObjects(data);
+     * <code>false</code> en caso contrario. */
+    static boolean isCAdESSignedAndEnvelopedData(final ContentInfo contentInfo) {
 
         // Elementos que contienen los elementos OID Data
-        final ASN1ObjectIdentifier doi = (ASN1ObjectIdentifier) e.nextElement();
-        if (doi.equals(PKCSObjectIdentifiers.signedData)) {
-            isValid = true;
-        }
-        // Contenido de SignedData
-        final ASN1TaggedObject doj = (ASN1TaggedObject) e.nextElement();
-        final ASN1Sequence datos = (ASN1Sequence) doj.getBaseObject();
+        boolean isValid = contentInfo.getContentType().equals(PKCSObjectIdentifiers.signedData);
 
         final SignedAndEnvelopedData sd;
         try {
-        	sd = new SignedAndEnvelopedData(datos);
+        	sd = new SignedAndEnvelopedData((ASN1Sequence) contentInfo.getContent());
         }
         catch(final Exception ex) {
         	LOGGER.fine("Los datos proporcionados no son de tipo SignedAndEnvelopedData: " + ex); //$NON-NLS-1$
@@ -333,26 +353,31 @@ public final class CAdESValidator {
      *         indicada, <code>false</code> en caso contrario.
      * @throws IOException Si ocurren problemas en la lectura de la firma */
     public static boolean isCAdESValid(final byte[] signData, final String type, final boolean enforceCAdESSignedData) throws IOException {
-        if (type != null) {
-			switch (type) {
-			case AOSignConstants.CMS_CONTENTTYPE_DATA:
-				return CAdESValidator.isCAdESData(signData);
-			case AOSignConstants.CMS_CONTENTTYPE_SIGNEDDATA:
-				return CAdESValidator.isCAdESSignedData(signData, enforceCAdESSignedData);
-			case AOSignConstants.CMS_CONTENTTYPE_DIGESTEDDATA:
-				return CAdESValidator.isCAdESDigestedData(signData);
-			case AOSignConstants.CMS_CONTENTTYPE_ENCRYPTEDDATA:
-				return CAdESValidator.isCAdESEncryptedData(signData);
-			case AOSignConstants.CMS_CONTENTTYPE_ENVELOPEDDATA:
-				return CAdESValidator.isCAdESEnvelopedData(signData);
-			case AOSignConstants.CMS_CONTENTTYPE_SIGNEDANDENVELOPEDDATA:
-				return CAdESValidator.isCAdESSignedAndEnvelopedData(signData);
-			default:
-				break;
-			}
+        if (type == null) {
+        	LOGGER.fine("Tipo de contenido CADES no reconocido"); //$NON-NLS-1$
+        	return false;
+        }
+        final ContentInfo contentInfo = getContentInfo(signData);
+        if (contentInfo == null) {
+        	return false;
+        }
+		switch (type) {
+		case AOSignConstants.CMS_CONTENTTYPE_DATA:
+			return isCAdESData(contentInfo);
+		case AOSignConstants.CMS_CONTENTTYPE_SIGNEDDATA:
+			return isCAdESSignedData(contentInfo, enforceCAdESSignedData);
+		case AOSignConstants.CMS_CONTENTTYPE_DIGESTEDDATA:
+			return isCAdESDigestedData(contentInfo);
+		case AOSignConstants.CMS_CONTENTTYPE_ENCRYPTEDDATA:
+			return isCAdESEncryptedData(contentInfo);
+		case AOSignConstants.CMS_CONTENTTYPE_ENVELOPEDDATA:
+			return isCAdESEnvelopedData(contentInfo);
+		case AOSignConstants.CMS_CONTENTTYPE_SIGNEDANDENVELOPEDDATA:
+			return isCAdESSignedAndEnvelopedData(contentInfo);
+		default:
+	        LOGGER.fine("Tipo de contenido CADES no reconocido"); //$NON-NLS-1$
+	        return false;
 		}
-        LOGGER.fine("Tipo de contenido CADES no reconocido"); //$NON-NLS-1$
-        return false;
     }
 
     /** Comprueba que un archivo cumple con una estructura de tipo CAdES.
@@ -380,28 +405,41 @@ public final class CAdESValidator {
             LOGGER.warning("Se han introducido datos nulos para su comprobacion"); //$NON-NLS-1$
             return false;
         }
+        final ContentInfo contentInfo = getContentInfo(data);
+        return contentInfo != null && isCAdESValid(contentInfo, enforceCAdESSignedData);
+    }
 
-		// Comprobamos si su contenido es de tipo DATA
-        boolean valido = CAdESValidator.isCAdESData(data);
-        // Comprobamos si su contenido es de tipo SIGNEDDATA
-        if (!valido) {
-			valido = CAdESValidator.isCAdESSignedData(data, enforceCAdESSignedData);
-        }
-        // Comprobamos si su contenido es de tipo DIGESTDATA
-        if (!valido) {
-			valido = CAdESValidator.isCAdESDigestedData(data);
-        }
-        // Comprobamos si su contenido es de tipo ENCRYPTEDDATA
-        if (!valido) {
-			valido = CAdESValidator.isCAdESEncryptedData(data);
-        }
-        // Comprobamos si su contenido es de tipo ENVELOPEDDATA
-        if (!valido) {
-			valido = CAdESValidator.isCAdESEnvelopedData(data);
-        }
+    /** Comprueba que una estructura <i>ContentInfo</i> ya decodificada cumple con una estructura de tipo CAdES.
+     * La comprobaci&oacute;n se realiza seg&uacute;n el tipo de contenido declarado, sin volver a decodificar los datos.
+     * @param contentInfo <i>ContentInfo</i> de los datos que se desean comprobar.
+     * @param enforceCAdESSignedData Si se establece a <code>true</code> se comprueba que los SignerInfos sean
+     *                               expl&iacute;citamente de tipo CAdES, si se establece a <code>false</code> no
+     *                               se comprueba, por lo que se aceptan <code>SignedData</code> de CMS y PKCS#7.
+     *                               Solo aplica a comprobaciones de <code>SignedData</code>.
+     * @return <code>true</code> si los datos proporcionados se corresponden con alguna estructura CAdES,
+     *         <code>false</code> en caso contrario.
+     * @see #getContentInfo(byte[]) */
+    public static boolean isCAdESValid(final ContentInfo contentInfo, final boolean enforceCAdESSignedData) {
+    	final ASN1ObjectIdentifier contentType = contentInfo.getContentType();
+    	boolean valido = false;
+    	if (PKCSObjectIdentifiers.data.equals(contentType)) {
+    		valido = isCAdESData(contentInfo);
+    	}
+    	else if (PKCSObjectIdentifiers.signedData.equals(contentType)) {
+    		valido = isCAdESSignedData(contentInfo, enforceCAdESSignedData);
+    	}
+    	else if (PKCSObjectIdentifiers.digestedData.equals(contentType)) {
+    		valido = isCAdESDigestedData(contentInfo);
+    	}
+    	else if (PKCSObjectIdentifiers.encryptedData.equals(contentType)) {
+    		valido = isCAdESEncryptedData(contentInfo);
+    	}
+    	else if (PKCSObjectIdentifiers.envelopedData.equals(contentType)) {
+    		valido = isCAdESEnvelopedData(contentInfo);
+    	}
         // Comprobamos si su contenido es de tipo SIGNEDANDENVELOPED
         if (!valido) {
-			valido = CAdESValidator.isCAdESSignedAndEnvelopedData(data);
+			valido = isCAdESSignedAndEnvelopedData(contentInfo);
         }
         return valido;
     }
@@ -4,6 +4,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
 import java.security.Security;
@@ -19,6 +20,8 @@ import java.util.logging.Logger;
 import org.bouncycastle.jcajce.provider.asymmetric.x509.CertificateFactory;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
+import es.gob.afirma.core.misc.AOUtil;
+
 /** Envoltura de firma trif&aacute;sica CAdES con tipos b&aacute;sicos (para ser invocada desde Swift u Objective-C).
  * @author Tom&aacute;s Garc&iacute;a-Mer&aacute;s. */
 public final class CadesTriWrapper {
@@ -37,13 +40,38 @@ public final class CadesTriWrapper {
                                     final String fileTbsAsBase64,
                                     final String certChainAsPem,
                                     final String extraParamsAsString) {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try {
+			writePresign(signAlgorithm, fileTbsAsBase64, certChainAsPem, extraParamsAsString, baos);
+			return baos.toString(StandardCharsets.UTF_8.name());
+		}
+		catch (final IOException e) {
+			return getErrorResult("Error codificando la prefirma CAdES", e); //$NON-NLS-1$
+		}
+	}
+
+	/** Escribe la prefirma (en Base64 dentro de un JSON) de una firma CAdES. A diferencia de
+	 * {@link #getPresign(String, String, String, String)}, el resultado se escribe directamente en
+	 * el flujo de salida, sin generar una cadena con el mismo.
+	 * @param signAlgorithm Algoritmo de firma.
+	 * @param fileTbsAsBase64 Documento a firmar (como Base64).
+	 * @param certChainAsPem Cadena de certificados del firmante (como PEM).
+	 * @param extraParamsAsString Par&aacute;metros adicionales de la firma.
+	 * @param out Flujo en el que escribir el JSON con la prefirma o con el error producido. No se cierra.
+	 * @throws IOException Si hay problemas en la escritura del resultado. */
+	public static void writePresign(final String signAlgorithm,
+                                    final String fileTbsAsBase64,
+                                    final String certChainAsPem,
+                                    final String extraParamsAsString,
+                                    final OutputStream out) throws IOException {
 		// Contenido a firmar
 		final byte[] fileTbs;
 		try {
 			fileTbs = Base64.getDecoder().decode(fileTbsAsBase64);
 		}
 		catch(final Exception e) {
-			return getErrorResult("Error decodificando el Base64 de los datos a firmar", e); //$NON-NLS-1$
+			writeErrorResult(out, "Error decodificando el Base64 de los datos a firmar", e); //$NON-NLS-1$
+			return;
 		}
 
 		// Cadena de certificados
@@ -52,7 +80,8 @@ public final class CadesTriWrapper {
 			certs = generateCertificates(is);
 		}
 		catch (final Exception e) {
-			return getErrorResult("Error conviertiendo la cadena de certificados PEM", e); //$NON-NLS-1$
+			writeErrorResult(out, "Error conviertiendo la cadena de certificados PEM", e); //$NON-NLS-1$
+			return;
 		}
 		final X509Certificate[] certChain = certs.toArray(new X509Certificate[0]);
 
@@ -62,7 +91,8 @@ public final class CadesTriWrapper {
 			extraParams.load(new ByteArrayInputStream(extraParamsAsString.getBytes()));
 		}
 		catch (final Exception e) {
-			return getErrorResult("Los parametros adicionales de firma no estan en el formato esperado", e); //$NON-NLS-1$
+			writeErrorResult(out, "Los parametros adicionales de firma no estan en el formato esperado", e); //$NON-NLS-1$
+			return;
 		}
 
 		final CAdESParameters cadesParams;
@@ -70,21 +100,18 @@ public final class CadesTriWrapper {
 			cadesParams = CAdESParameters.load(fileTbs, signAlgorithm, extraParams);
 		}
 		catch (final Exception e) {
-			return getErrorResult("Error cargando la configuracion de firma CAdES", e); //$NON-NLS-1$
+			writeErrorResult(out, "Error cargando la configuracion de firma CAdES", e); //$NON-NLS-1$
+			return;
 		}
 		final byte[] preSign;
 		try {
 			preSign = CAdESTriPhaseSigner.preSign(certChain, cadesParams);
 		}
 		catch (final Exception e) {
-			return getErrorResult("Error obteniendo la prefirma CAdES", e); //$NON-NLS-1$
+			writeErrorResult(out, "Error obteniendo la prefirma CAdES", e); //$NON-NLS-1$
+			return;
 		}
-		return String.format(
-			"{\n" + //$NON-NLS-1$
-			"    \"result\": \"%s\"\n" + //$NON-NLS-1$
-			"}", //$NON-NLS-1$
-			Base64.getEncoder().encodeToString(preSign)
-		);
+		AOUtil.writeBase64Json("result", preSign, out); //$NON-NLS-1$
 	}
 
 	/** Obtiene la postfirma (en Base64) de una firma CAdES.
@@ -99,13 +126,40 @@ public final class CadesTriWrapper {
                                      final String certChainAsPem,
                                      final String signatureAsBase64,
                                      final String preSignAsBase64) {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try {
+			writePostsign(signAlgorithm, fileTbsAsBase64, certChainAsPem, signatureAsBase64, preSignAsBase64, baos);
+			return baos.toString(StandardCharsets.UTF_8.name());
+		}
+		catch (final IOException e) {
+			return getErrorResult("Error codificando la firma CAdES", e); //$NON-NLS-1$
+		}
+	}
+
+	/** Escribe la postfirma (en Base64 dentro de un JSON) de una firma CAdES. A diferencia de
+	 * {@link #getPostsign(String, String, String, String, String)}, la firma se codifica
+	 * directamente en el flujo de salida, sin generar una cadena con la misma.
+	 * @param signAlgorithm Algoritmo de firma.
+	 * @param fileTbsAsBase64 Documento a firmar (como Base64).
+	 * @param certChainAsPem Cadena de certificados del firmante (como PEM).
+	 * @param signatureAsBase64 Firma de los atributos firmados CAdES.
+	 * @param preSignAsBase64 Prefirma (como Base64).
+	 * @param out Flujo en el que escribir el JSON con la firma o con el error producido. No se cierra.
+	 * @throws IOException Si hay problemas en la escritura del resultado. */
+	public static void writePostsign(final String signAlgorithm,
+                                     final String fileTbsAsBase64,
+                                     final String certChainAsPem,
+                                     final String signatureAsBase64,
+                                     final String preSignAsBase64,
+                                     final OutputStream out) throws IOException {
 		// Contenido a firmado
 		final byte[] fileTbs;
 		try {
 			fileTbs = Base64.getDecoder().decode(fileTbsAsBase64);
 		}
 		catch(final Exception e) {
-			return getErrorResult("Error decodificando el Base64 de los datos firmados", e); //$NON-NLS-1$
+			writeErrorResult(out, "Error decodificando el Base64 de los datos firmados", e); //$NON-NLS-1$
+			return;
 		}
 
 		// Cadena de certificados
@@ -114,7 +168,8 @@ public final class CadesTriWrapper {
 			certs = generateCertificates(is);
 		}
 		catch (final Exception e) {
-			return getErrorResult("Error conviertiendo la cadena de certificados PEM", e); //$NON-NLS-1$
+			writeErrorResult(out, "Error conviertiendo la cadena de certificados PEM", e); //$NON-NLS-1$
+			return;
 		}
 		final X509Certificate[] certChain = certs.toArray(new X509Certificate[0]);
 
@@ -124,7 +179,8 @@ public final class CadesTriWrapper {
 			signature = Base64.getDecoder().decode(signatureAsBase64);
 		}
 		catch(final Exception e) {
-			return getErrorResult("Error decodificando el Base64 de la firma", e); //$NON-NLS-1$
+			writeErrorResult(out, "Error decodificando el Base64 de la firma", e); //$NON-NLS-1$
+			return;
 		}
 
 		// Prefirma
@@ -133,7 +189,8 @@ public final class CadesTriWrapper {
 			preSign = Base64.getDecoder().decode(preSignAsBase64);
 		}
 		catch(final Exception e) {
-			return getErrorResult("Error decodificando el Base64 de la prefirma", e); //$NON-NLS-1$
+			writeErrorResult(out, "Error decodificando el Base64 de la prefirma", e); //$NON-NLS-1$
+			return;
 		}
 
 		final byte[] postSign;
@@ -141,14 +198,10 @@ public final class CadesTriWrapper {
 			postSign = CAdESTriPhaseSigner.postSign(signAlgorithm, fileTbs, certChain, signature, preSign);
 		}
 		catch (final Exception e) {
-			return getErrorResult("Error obteniendo la prefirma CAdES", e); //$NON-NLS-1$
+			writeErrorResult(out, "Error obteniendo la prefirma CAdES", e); //$NON-NLS-1$
+			return;
 		}
-		return String.format(
-			"{\n" + //$NON-NLS-1$
-			"    \"result\": \"%s\"\n" + //$NON-NLS-1$
-			"}", //$NON-NLS-1$
-			Base64.getEncoder().encodeToString(postSign)
-		);
+		AOUtil.writeBase64Json("result", postSign, out); //$NON-NLS-1$
 	}
 
 	private static Collection<? extends Certificate> generateCertificates(final InputStream is) throws CertificateException {
@@ -159,6 +212,10 @@ public final class CadesTriWrapper {
 		return new CertificateFactory().engineGenerateCertificates(is);
 	}
 
+	private static void writeErrorResult(final OutputStream out, final String desc, final Throwable cause) throws IOException {
+		out.write(getErrorResult(desc, cause).getBytes(StandardCharsets.UTF_8));
+	}
+
 	private static String getErrorResult(final String desc, final Throwable cause) {
 		return String.format(
 			"{\n" + //$NON-NLS-1$
@@ -0,0 +1,174 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * You may contact the copyright holder at: soporte.afirma@seap.minhap.es
+ */
+
+package es.gob.afirma.signers.cades;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.bouncycastle.asn1.ess.ESSCertID;
+import org.bouncycastle.asn1.ess.ESSCertIDv2;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.IssuerSerial;
+import org.bouncycastle.asn1.x509.PolicyInformation;
+
+import es.gob.afirma.core.misc.CryptoInstancePool;
+import es.gob.afirma.signers.pkcs7.AOAlgorithmID;
+import es.gob.afirma.signers.pkcs7.SigUtils;
+
+/** Cach&eacute; de las estructuras ASN.1 que se derivan del certificado del firmante para los
+ * atributos <i>SigningCertificate</i> y <i>SigningCertificateV2</i>.
+ * <p>
+ *  Las estructuras se identifican por la codificaci&oacute;n del certificado y el algoritmo de
+ *  huella digital, de forma que las firmas sucesivas con un mismo certificado no necesitan volver
+ *  a calcular su huella ni a analizar sus extensiones. La cach&eacute; est&aacute; limitada a
+ *  los {@value #MAX_ENTRIES} &uacute;ltimos certificados usados y puede usarse desde varios hilos.
+ * </p> */
+final class SigningCertificateCache {
+
+	/** N&uacute;mero m&aacute;ximo de entradas que se conservan en cach&eacute;. */
+	static final int MAX_ENTRIES = 32;
+
+	private static final Map<CacheKey, CertificateAttributes> CACHE = new LinkedHashMap<CacheKey, CertificateAttributes>(MAX_ENTRIES, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<CacheKey, CertificateAttributes> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	private SigningCertificateCache() {
+		// No permitimos la instanciacion
+	}
+
+	/** Obtiene las estructuras derivadas de un certificado para un algoritmo de huella,
+	 * gener&aacute;ndolas si no se encontraban en cach&eacute;.
+	 * @param cert Certificado del firmante.
+	 * @param digestAlgorithmName Nombre del algoritmo de huella digital.
+	 * @return Estructuras derivadas del certificado.
+	 * @throws CertificateEncodingException Si el certificado proporcionado no es v&aacute;lido.
+	 * @throws NoSuchAlgorithmException Si no se soporta el algoritmo de huella indicado. */
+	static CertificateAttributes getAttributes(final X509Certificate cert,
+			                                   final String digestAlgorithmName) throws CertificateEncodingException,
+	                                                                                    NoSuchAlgorithmException {
+		final byte[] encoded = cert.getEncoded();
+		final CacheKey key = new CacheKey(encoded, digestAlgorithmName);
+		synchronized (CACHE) {
+			final CertificateAttributes attributes = CACHE.get(key);
+			if (attributes != null) {
+				return attributes;
+			}
+		}
+
+		// Generamos las estructuras fuera del bloqueo. Si dos hilos lo hacen a la vez,
+		// el resultado es el mismo y basta con conservar uno de ellos
+		final CertificateAttributes attributes = new CertificateAttributes(cert, encoded, digestAlgorithmName);
+		synchronized (CACHE) {
+			final CertificateAttributes previous = CACHE.putIfAbsent(key, attributes);
+			return previous != null ? previous : attributes;
+		}
+	}
+
+	/** Estructuras ASN.1 derivadas de un certificado para un algoritmo de huella. */
+	static final class CertificateAttributes {
+
+		private final ESSCertIDv2 essCertIdV2;
+		private final ESSCertIDv2 essCertIdV2WithIssuerSerial;
+		private final ESSCertID essCertId;
+		private final ESSCertID essCertIdWithIssuerSerial;
+		private final PolicyInformation[] policies;
+
+		CertificateAttributes(final X509Certificate cert,
+				              final byte[] encoded,
+				              final String digestAlgorithmName) throws NoSuchAlgorithmException {
+
+			// Si es SHA-256 ponemos el OID a null para que no incluya el campo (y tome su
+			// valor por defecto)
+			final String hashOid = AOAlgorithmID.getOID(digestAlgorithmName);
+			final AlgorithmIdentifier digestAlgorithmOID =
+				AOAlgorithmID.OID_SHA256.equals(hashOid) ?
+					null :
+						SigUtils.makeAlgId(hashOid);
+
+			final byte[] certHash = CryptoInstancePool.digest(digestAlgorithmName, encoded);
+
+			final IssuerSerial issuerSerial = new IssuerSerial(
+				new GeneralNames(new GeneralName(X500Name.getInstance(cert.getIssuerX500Principal().getEncoded()))),
+				cert.getSerialNumber()
+			);
+			this.essCertIdV2 = new ESSCertIDv2(digestAlgorithmOID, certHash, null);
+			this.essCertIdV2WithIssuerSerial = new ESSCertIDv2(digestAlgorithmOID, certHash, issuerSerial);
+			this.essCertId = new ESSCertID(certHash, null);
+			this.essCertIdWithIssuerSerial = new ESSCertID(certHash, issuerSerial);
+			this.policies = CAdESUtils.getPolicyInformation(cert);
+		}
+
+		/** Obtiene la identificaci&oacute;n del certificado para el atributo <i>SigningCertificateV2</i>.
+		 * @param includeIssuerSerial Indica si debe incluirse el emisor y n&uacute;mero de serie del certificado.
+		 * @return Identificaci&oacute;n del certificado. */
+		ESSCertIDv2 getEssCertIdV2(final boolean includeIssuerSerial) {
+			return includeIssuerSerial ? this.essCertIdV2WithIssuerSerial : this.essCertIdV2;
+		}
+
+		/** Obtiene la identificaci&oacute;n del certificado para el atributo <i>SigningCertificate</i>.
+		 * @param includeIssuerSerial Indica si debe incluirse el emisor y n&uacute;mero de serie del certificado.
+		 * @return Identificaci&oacute;n del certificado. */
+		ESSCertID getEssCertId(final boolean includeIssuerSerial) {
+			return includeIssuerSerial ? this.essCertIdWithIssuerSerial : this.essCertId;
+		}
+
+		/** Obtiene las pol&iacute;ticas de certificaci&oacute;n que declara el certificado.
+		 * @return Pol&iacute;ticas del certificado o <code>null</code> si no declara ninguna. */
+		PolicyInformation[] getPolicies() {
+			return this.policies != null ? this.policies.clone() : null;
+		}
+	}
+
+	/** Clave de la cach&eacute;: codificaci&oacute;n del certificado y algoritmo de huella. */
+	private static final class CacheKey {
+
+		private final byte[] encoded;
+		private final String digestAlgorithmName;
+		private final int hash;
+
+		CacheKey(final byte[] encoded, final String digestAlgorithmName) {
+			this.encoded = encoded;
+			this.digestAlgorithmName = digestAlgorithmName;
+			this.hash = 31 * Arrays.hashCode(encoded) + digestAlgorithmName.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof CacheKey)) {
+				return false;
+			}
+			final CacheKey other = (CacheKey) obj;
+			return this.hash == other.hash
+					&& this.digestAlgorithmName.equals(other.digestAlgorithmName)
+					&& Arrays.equals(this.encoded, other.encoded);
+		}
+	}
+}
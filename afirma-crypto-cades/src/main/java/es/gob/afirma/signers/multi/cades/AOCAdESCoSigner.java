@@ -49,13 +49,61 @@ public final class AOCAdESCoSigner implements AOCoSigner {
                          final X509Certificate[] certChain,
                          final Properties xParams) throws AOException {
 
+		return cosign(data, null, sign, algorithm, key, certChain, xParams);
+	}
+
+	/** Cofirma en formato CAdES una firma CAdES o CMS a partir &uacute;nicamente de la huella
+	 * digital de los datos firmados, sin realizar ning&uacute;n tratamiento sobre los datos.
+	 * @param dataDigest Huella digital de los datos.
+	 * @param digestAlgorithm Algoritmo con el que se calcul&oacute; la huella digital.
+	 * @param sign Firma CAdES o CMS de los datos que se quiere cofirmar.
+	 * @param algorithm Algoritmo a usar para la firma.
+	 * @param key Clave privada a usar para firmar.
+	 * @param certChain Cadena de certificaci&oacute;n del certificado de firma.
+	 * @param xParams Par&aacute;metros adicionales para la firma.
+	 * @return Firma CAdES.
+	 * @throws AOException Cuando ocurre cualquier problema durante el proceso. */
+	public byte[] cosignHash(final byte[] dataDigest,
+			                 final String digestAlgorithm,
+			                 final byte[] sign,
+			                 final String algorithm,
+			                 final PrivateKey key,
+			                 final X509Certificate[] certChain,
+			                 final Properties xParams) throws AOException {
+
+		if (dataDigest == null) {
+			throw new IllegalArgumentException("La huella digital de los datos no puede ser nula"); //$NON-NLS-1$
+		}
+		if (digestAlgorithm == null) {
+			throw new IllegalArgumentException("El algoritmo de huella digital no puede ser nulo"); //$NON-NLS-1$
+		}
+		return cosign(dataDigest, digestAlgorithm, sign, algorithm, key, certChain, xParams);
+	}
+
+	private static byte[] cosign(final byte[] data,
+			                     final String digestAlgorithm,
+			                     final byte[] sign,
+			                     final String algorithm,
+			                     final PrivateKey key,
+			                     final X509Certificate[] certChain,
+			                     final Properties xParams) throws AOException {
+
         final Properties extraParams = getExtraParams(xParams);
 
+        // Decodificamos la firma una unica vez y compartimos el resultado con el resto del proceso
+        final CMSSignedData signedData;
+        try {
+        	signedData = new CMSSignedData(sign);
+        }
+        catch (final Exception e) {
+        	throw new AOInvalidSignatureFormatException("La firma proporcionada no es CMS/CAdES", e); //$NON-NLS-1$
+		}
+
 		// Comprobamos que no haya firmas de archivo, salvo que nos indiquen que debe firmarse incluso en ese caso
 		final String allowSignLts = extraParams.getProperty(CAdESExtraParams.ALLOW_SIGN_LTS_SIGNATURES);
 		if (allowSignLts == null || !Boolean.parseBoolean(allowSignLts)) {
 			try {
-				CAdESMultiUtil.checkLongTermAttributes(sign);
+				CAdESMultiUtil.checkLongTermAttributes(signedData);
 			}
 			catch (final SigningLTSException e) {
 				// Si se indico expresamente que no se debia permitir la cofirma de
@@ -71,19 +119,14 @@ public final class AOCAdESCoSigner implements AOCoSigner {
         // Purgamos e informamos de las compatibilidades de la configuracion establecida
         noticeIncompatibleConfig(algorithm, extraParams);
 
-        final CMSSignedData signedData;
-        try {
-        	signedData = new CMSSignedData(sign);
-        }
-        catch (final Exception e) {
-        	throw new AOInvalidSignatureFormatException("La firma proporcionada no es CMS/CAdES", e); //$NON-NLS-1$
-		}
-
-        final CAdESParameters parameters = CAdESParameters.load(data, signedData, algorithm, extraParams);
+        // Si solo tenemos la huella de los datos, la configuracion se obtiene sin analizarlos
+        final CAdESParameters parameters = digestAlgorithm != null ?
+    		CAdESParameters.loadHash(data, digestAlgorithm, signedData, algorithm, extraParams) :
+    			CAdESParameters.load(data, signedData, algorithm, extraParams);
 
 		try {
 			return CAdESCoSigner.coSigner(
-				sign,
+				signedData,
 				algorithm,
 				key,
 				certChain,
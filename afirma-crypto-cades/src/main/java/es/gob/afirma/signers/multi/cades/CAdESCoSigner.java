@@ -11,8 +11,6 @@ package es.gob.afirma.signers.multi.cades;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.cert.CertificateException;
@@ -44,9 +42,10 @@ import org.bouncycastle.asn1.x509.TBSCertificate;
 import org.bouncycastle.cms.CMSException;
 import org.bouncycastle.cms.CMSProcessable;
 import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.cms.CMSSignedData;
 
 import es.gob.afirma.core.AOException;
-import es.gob.afirma.core.misc.AOUtil;
+import es.gob.afirma.core.misc.CryptoInstancePool;
 import es.gob.afirma.core.signers.AOPkcs1Signer;
 import es.gob.afirma.core.signers.AOSignConstants;
 import es.gob.afirma.signers.cades.CAdESParameters;
@@ -119,7 +118,7 @@ final class CAdESCoSigner {
 
 	/** Se crea una cofirma a partir de los datos del firmante, el archivo
 	 * que se firma y el archivo que contiene las firmas.
-	 * @param signature Archivo que contiene las firmas.
+	 * @param signature Firma que se va a cofirmar, ya decodificada.
 	 * @param signatureAlgorithm Algoritmo de firma.
 	 * @param key Clave privada usada para firmar.
 	 * @param certChain Cadena de certificados del firmante.
@@ -133,7 +132,7 @@ final class CAdESCoSigner {
      * @throws AOException Cuando ocurre un error durante la generacion de PKCS#1 de la firma.
      */
 	static byte[] coSigner(
-			final byte[] signature,
+			final CMSSignedData signature,
 			final String signatureAlgorithm,
 			final PrivateKey key,
 			final X509Certificate[] certChain,
@@ -141,8 +140,8 @@ final class CAdESCoSigner {
 			                                     NoSuchAlgorithmException,
 			                                     CertificateException,
 			                                     AOException {
-		// Leemos la firma de entrada
-		final SignedData sd = CAdESMultiUtil.readData(signature);
+		// Reutilizamos la estructura de la firma de entrada ya decodificada
+		final SignedData sd = CAdESMultiUtil.getSignedData(signature);
 		return coSigner(sd, signatureAlgorithm, key, certChain, config);
 	}
 
@@ -194,15 +193,10 @@ final class CAdESCoSigner {
 			encInfo = signedData.getEncapContentInfo();
 
 			if (config.getDataDigest() == null) {
-				final DEROctetString contentData = (DEROctetString) encInfo.getContent();
+				final ASN1OctetString contentData = (ASN1OctetString) encInfo.getContent();
 				if (contentData != null) {
-					final byte[] data;
-					try (
-						final InputStream is = contentData.getOctetStream()
-					) {
-						data = AOUtil.getDataFromInputStream(is);
-					}
-					config.setDataDigest(MessageDigest.getInstance(config.getDigestAlgorithm()).digest(data));
+					// Los octetos ya estan decodificados, no es necesario copiarlos de nuevo
+					config.setDataDigest(CryptoInstancePool.digest(config.getDigestAlgorithm(), contentData.getOctets()));
 				}
 			}
 		}
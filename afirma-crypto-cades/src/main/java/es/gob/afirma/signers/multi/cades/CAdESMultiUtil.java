@@ -17,23 +17,18 @@ import java.util.List;
 
 import org.bouncycastle.asn1.ASN1Encodable;
 import org.bouncycastle.asn1.ASN1EncodableVector;
-import org.bouncycastle.asn1.ASN1InputStream;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.ASN1Primitive;
-import org.bouncycastle.asn1.ASN1Sequence;
 import org.bouncycastle.asn1.ASN1Set;
-import org.bouncycastle.asn1.ASN1TaggedObject;
 import org.bouncycastle.asn1.BERSet;
 import org.bouncycastle.asn1.cms.AttributeTable;
 import org.bouncycastle.asn1.cms.SignedData;
 import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
 import org.bouncycastle.asn1.x509.Certificate;
-import org.bouncycastle.cms.CMSException;
 import org.bouncycastle.cms.CMSSignedData;
 import org.bouncycastle.cms.SignerInformation;
 import org.bouncycastle.cms.SignerInformationStore;
 
-import es.gob.afirma.core.AOInvalidSignatureFormatException;
 import es.gob.afirma.core.SigningLTSException;
 
 /** Utilidades para las multifirmas CAdES. */
@@ -82,24 +77,10 @@ final class CAdESMultiUtil {
 	}
 
 	/** Comprueba si hay atributos no soportados en un <code>SignedData</code> de CMS.
-	 * @param signedDataBytes <code>SignedData</code> de CMS.
+	 * @param signedData <code>SignedData</code> de CMS ya decodificado.
 	 * @throws SigningLTSException Si hay atributos no soportados en el <code>SignedData</code> proporcionado.
-	 * @throws AOInvalidSignatureFormatException Cuando los datos proporcionados no tengan un formato de firma v&aacute;lido.
 	 */
-	static void checkLongTermAttributes(final byte[] signedDataBytes) throws SigningLTSException, AOInvalidSignatureFormatException {
-		final CMSSignedData signedData;
-		try {
-			signedData = new CMSSignedData(signedDataBytes);
-		}
-		catch (final CMSException e) {
-			throw new AOInvalidSignatureFormatException(
-				"La firma proporcionada no es un SignedData compatible CMS", e //$NON-NLS-1$
-			);
-		}
-		checkLongTermAttributes(signedData);
-	}
-
-	private static void checkLongTermAttributes(final CMSSignedData signedData) throws SigningLTSException {
+	static void checkLongTermAttributes(final CMSSignedData signedData) throws SigningLTSException {
 		final SignerInformationStore signerInfos = signedData.getSignerInfos();
 		for (final SignerInformation element : signerInfos) {
 			checkLongTermAttributes(element);
@@ -137,25 +118,12 @@ final class CAdESMultiUtil {
     }
 
     /**
-     * Carga datos firmados.
-     * @param signature Datos firmados.
+     * Obtiene la estructura ASN.1 de un <code>SignedData</code> ya decodificado, sin volver
+     * a decodificar la firma.
+     * @param signedData <code>SignedData</code> de CMS.
      * @return Estructura de datos firmados.
-     * @throws IOException Cuando falla la carga de la firma
      */
-	static SignedData readData(final byte[] signature) throws IOException {
-		final ASN1Sequence dsq;
-		try (
-			final ASN1InputStream is = new ASN1InputStream(signature);
-		) {
-			dsq = (ASN1Sequence) is.readObject();
-		}
-		final Enumeration<?> e = dsq.getObjects();
-		// Elementos que contienen los elementos OID SignedData
-		e.nextElement();
-		// Contenido de SignedData
-		final ASN1TaggedObject doj = (ASN1TaggedObject) e.nextElement();
-		final ASN1Sequence contentSignedData = (ASN1Sequence) doj.getBaseObject(); // contenido del SignedData
-
-		return SignedData.getInstance(contentSignedData);
+	static SignedData getSignedData(final CMSSignedData signedData) {
+		return SignedData.getInstance(signedData.toASN1Structure().getContent());
 	}
 }
@@ -9,11 +9,16 @@
 
 package es.gob.afirma.test.cades;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.KeyStore;
 import java.security.KeyStore.PrivateKeyEntry;
 import java.security.cert.X509Certificate;
@@ -23,10 +28,18 @@ import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.bouncycastle.asn1.cms.Attribute;
+import org.bouncycastle.asn1.cms.CMSAttributes;
+import org.bouncycastle.asn1.ess.ContentHints;
+import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import es.gob.afirma.core.misc.AOUtil;
+import es.gob.afirma.core.misc.MimeHelper;
 import es.gob.afirma.core.signers.AOSignConstants;
 import es.gob.afirma.core.signers.AOSigner;
 import es.gob.afirma.core.signers.AOSimpleSignInfo;
@@ -236,4 +249,194 @@ final class TestCAdES {
 		}
 		System.out.println("Temporal para comprobacion manual: " + saveFile.getAbsolutePath()); //$NON-NLS-1$
 	}
+
+	/** Prueba de firma de datos le&iacute;dos como flujo o desde fichero en modo
+	 * impl&iacute;cito y expl&iacute;cito.
+	 * @throws Exception en cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	void testStreamSignature() throws Exception {
+
+		Logger.getLogger("es.gob.afirma").setLevel(Level.WARNING); //$NON-NLS-1$
+
+		final KeyStore ks = KeyStore.getInstance("PKCS12"); //$NON-NLS-1$
+		try (InputStream is = ClassLoader.getSystemResourceAsStream(CERT_PATH)) {
+			ks.load(is, CERT_PASS.toCharArray());
+		}
+		final PrivateKeyEntry pke = (PrivateKeyEntry) ks.getEntry(CERT_ALIAS, new KeyStore.PasswordProtection(CERT_PASS.toCharArray()));
+		final X509Certificate cert = (X509Certificate) ks.getCertificate(CERT_ALIAS);
+
+		// Datos de mas de un bloque de lectura para que la copia se fragmente
+		final byte[] data = new byte[200 * 1024 + 7];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (i % 251);
+		}
+		final Path dataFile = Files.createTempFile("CAdES-Stream-", ".bin"); //$NON-NLS-1$ //$NON-NLS-2$
+		Files.write(dataFile, data);
+
+		final AOCAdESSigner signer = new AOCAdESSigner();
+		try {
+			for (final String mode : new String[] { AOSignConstants.SIGN_MODE_IMPLICIT, AOSignConstants.SIGN_MODE_EXPLICIT }) {
+
+				final Properties extraParams = new Properties();
+				extraParams.setProperty(CAdESExtraParams.MODE, mode);
+
+				final ByteArrayOutputStream fromFile = new ByteArrayOutputStream();
+				signer.sign(
+					dataFile, fromFile, AOSignConstants.SIGN_ALGORITHM_SHA512WITHRSA,
+					pke.getPrivateKey(), (X509Certificate[]) pke.getCertificateChain(), extraParams
+				);
+
+				final ByteArrayOutputStream fromStream = new ByteArrayOutputStream();
+				try (InputStream is = new ByteArrayInputStream(data)) {
+					signer.sign(
+						is, fromStream, AOSignConstants.SIGN_ALGORITHM_SHA512WITHRSA,
+						pke.getPrivateKey(), (X509Certificate[]) pke.getCertificateChain(), extraParams
+					);
+				}
+
+				for (final byte[] result : new byte[][] { fromFile.toByteArray(), fromStream.toByteArray() }) {
+					Assertions.assertTrue(signer.isSign(result), "Firma '" + mode + "' no reconocida"); //$NON-NLS-1$ //$NON-NLS-2$
+
+					final CMSSignedData signedData;
+					if (AOSignConstants.SIGN_MODE_IMPLICIT.equals(mode)) {
+						// La firma implicita se codifica con longitud indefinida
+						Assertions.assertEquals((byte) 0x80, result[1]);
+						Assertions.assertArrayEquals(data, signer.getData(result));
+						signedData = new CMSSignedData(result);
+					}
+					else {
+						Assertions.assertNull(signer.getData(result));
+						signedData = new CMSSignedData(new CMSProcessableByteArray(data), result);
+					}
+
+					final SignerInformation signerInfo = signedData.getSignerInfos().getSigners().iterator().next();
+					Assertions.assertTrue(signerInfo.verify(new JcaSimpleSignerInfoVerifierBuilder().build(cert.getPublicKey())));
+				}
+			}
+		}
+		finally {
+			Files.deleteIfExists(dataFile);
+		}
+	}
+
+	/** Prueba que la firma de datos le&iacute;dos como flujo no identifica el tipo de los datos
+	 * a partir de su contenido, sino que usa el indicado en la configuraci&oacute;n.
+	 * @throws Exception en cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	void testStreamSignatureContentType() throws Exception {
+
+		Logger.getLogger("es.gob.afirma").setLevel(Level.WARNING); //$NON-NLS-1$
+
+		final KeyStore ks = KeyStore.getInstance("PKCS12"); //$NON-NLS-1$
+		try (InputStream is = ClassLoader.getSystemResourceAsStream(CERT_PATH)) {
+			ks.load(is, CERT_PASS.toCharArray());
+		}
+		final PrivateKeyEntry pke = (PrivateKeyEntry) ks.getEntry(CERT_ALIAS, new KeyStore.PasswordProtection(CERT_PASS.toCharArray()));
+
+		// XML de mas de 64 KB, que no se puede identificar solo por su inicio
+		final StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><datos>"); //$NON-NLS-1$
+		for (int i = 0; xml.length() < 100 * 1024; i++) {
+			xml.append("<elemento id=\"").append(i).append("\">Contenido del elemento</elemento>"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		xml.append("</datos>"); //$NON-NLS-1$
+		final byte[] data = xml.toString().getBytes(StandardCharsets.UTF_8);
+
+		final Path dataFile = Files.createTempFile("CAdES-Stream-", ".xml"); //$NON-NLS-1$ //$NON-NLS-2$
+		Files.write(dataFile, data);
+
+		final AOCAdESSigner signer = new AOCAdESSigner();
+		try {
+			final Properties extraParams = new Properties();
+			extraParams.setProperty(CAdESExtraParams.MODE, AOSignConstants.SIGN_MODE_EXPLICIT);
+
+			// En memoria se analizan los datos completos
+			final String xmlOid = getContentHintOid(signer.sign(
+				data, AOSignConstants.SIGN_ALGORITHM_SHA256WITHRSA,
+				pke.getPrivateKey(), (X509Certificate[]) pke.getCertificateChain(), extraParams
+			));
+			Assertions.assertEquals(MimeHelper.transformMimeTypeToOid("text/xml"), xmlOid); //$NON-NLS-1$
+
+			// Desde fichero, si no se indica el tipo se usa el generico
+			final ByteArrayOutputStream generic = new ByteArrayOutputStream();
+			signer.sign(
+				dataFile, generic, AOSignConstants.SIGN_ALGORITHM_SHA256WITHRSA,
+				pke.getPrivateKey(), (X509Certificate[]) pke.getCertificateChain(), extraParams
+			);
+			Assertions.assertEquals(MimeHelper.DEFAULT_CONTENT_OID_DATA, getContentHintOid(generic.toByteArray()));
+
+			// Si se indica el mimetype, se obtiene el mismo tipo que al firmar en memoria
+			extraParams.setProperty(CAdESExtraParams.CONTENT_MIME_TYPE, "text/xml"); //$NON-NLS-1$
+			final ByteArrayOutputStream typed = new ByteArrayOutputStream();
+			try (InputStream is = Files.newInputStream(dataFile)) {
+				signer.sign(
+					is, typed, AOSignConstants.SIGN_ALGORITHM_SHA256WITHRSA,
+					pke.getPrivateKey(), (X509Certificate[]) pke.getCertificateChain(), extraParams
+				);
+			}
+			Assertions.assertEquals(xmlOid, getContentHintOid(typed.toByteArray()));
+		}
+		finally {
+			Files.deleteIfExists(dataFile);
+		}
+	}
+
+	private static String getContentHintOid(final byte[] signature) throws Exception {
+		final SignerInformation signerInfo = new CMSSignedData(signature).getSignerInfos().getSigners().iterator().next();
+		final Attribute contentHint = signerInfo.getSignedAttributes().get(CMSAttributes.contentHint);
+		return ContentHints.getInstance(contentHint.getAttributeValues()[0]).getContentType().getId();
+	}
+
+	/** Prueba la lectura en flujo de una firma impl&iacute;cita almacenada en fichero.
+	 * @throws Exception en cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	void testStreamSignersStructure() throws Exception {
+
+		Logger.getLogger("es.gob.afirma").setLevel(Level.WARNING); //$NON-NLS-1$
+
+		final KeyStore ks = KeyStore.getInstance("PKCS12"); //$NON-NLS-1$
+		try (InputStream is = ClassLoader.getSystemResourceAsStream(CERT_PATH)) {
+			ks.load(is, CERT_PASS.toCharArray());
+		}
+		final PrivateKeyEntry pke = (PrivateKeyEntry) ks.getEntry(CERT_ALIAS, new KeyStore.PasswordProtection(CERT_PASS.toCharArray()));
+
+		final byte[] data = new byte[300 * 1024];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (i % 253);
+		}
+
+		final Properties extraParams = new Properties();
+		extraParams.setProperty(CAdESExtraParams.MODE, AOSignConstants.SIGN_MODE_IMPLICIT);
+
+		final AOCAdESSigner signer = new AOCAdESSigner();
+		final Path signFile = Files.createTempFile("CAdES-Stream-", ".csig"); //$NON-NLS-1$ //$NON-NLS-2$
+		try {
+			try (InputStream is = new ByteArrayInputStream(data);
+					OutputStream os = Files.newOutputStream(signFile)) {
+				signer.sign(
+					is, os, AOSignConstants.SIGN_ALGORITHM_SHA256WITHRSA,
+					pke.getPrivateKey(), (X509Certificate[]) pke.getCertificateChain(), extraParams
+				);
+			}
+
+			Assertions.assertTrue(signer.isSign(signFile));
+
+			final AOTreeModel tree = signer.getSignersStructure(signFile, false);
+			final AOTreeNode root = (AOTreeNode) tree.getRoot();
+			Assertions.assertEquals(1, root.getChildCount());
+			Assertions.assertEquals(
+				((AOTreeNode) signer.getSignersStructure(Files.readAllBytes(signFile), false).getRoot()).getChildAt(0).getUserObject(),
+				root.getChildAt(0).getUserObject()
+			);
+
+			final ByteArrayOutputStream content = new ByteArrayOutputStream();
+			Assertions.assertTrue(signer.getData(signFile, content));
+			Assertions.assertArrayEquals(data, content.toByteArray());
+		}
+		finally {
+			Files.deleteIfExists(signFile);
+		}
+	}
 }
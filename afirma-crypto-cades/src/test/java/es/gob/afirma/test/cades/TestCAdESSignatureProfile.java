@@ -0,0 +1,140 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * You may contact the copyright holder at: soporte.afirma@seap.minhap.es
+ */
+
+package es.gob.afirma.test.cades;
+
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.security.KeyStore.PrivateKeyEntry;
+import java.security.MessageDigest;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import es.gob.afirma.core.signers.AOSignConstants;
+import es.gob.afirma.signers.cades.AOCAdESSigner;
+import es.gob.afirma.signers.cades.CAdESExtraParams;
+import es.gob.afirma.signers.cades.CAdESParameters;
+import es.gob.afirma.signers.cades.CAdESSignatureProfile;
+import es.gob.afirma.signers.cades.CAdESTriPhaseSigner;
+
+/** Pruebas de los perfiles de firma CAdES precompilados. */
+final class TestCAdESSignatureProfile {
+
+	private static final String CERT_PATH = "ANF_PF_Activo.pfx"; //$NON-NLS-1$
+	private static final String CERT_PASS = "12341234"; //$NON-NLS-1$
+	private static final String CERT_ALIAS = "anf usuario activo"; //$NON-NLS-1$
+
+	private PrivateKeyEntry pke = null;
+
+	/** Carga el almac&eacute;n de claves.
+	 * @throws Exception En cualquier error. */
+	@BeforeEach
+	void loadResources() throws Exception {
+
+		Logger.getLogger("es.gob.afirma").setLevel(Level.WARNING); //$NON-NLS-1$
+
+		final KeyStore ks = KeyStore.getInstance("PKCS12"); //$NON-NLS-1$
+		try (InputStream is = ClassLoader.getSystemResourceAsStream(CERT_PATH)) {
+			ks.load(is, CERT_PASS.toCharArray());
+		}
+		this.pke = (PrivateKeyEntry) ks.getEntry(CERT_ALIAS, new KeyStore.PasswordProtection(CERT_PASS.toCharArray()));
+	}
+
+	private static Properties getExtraParams() {
+		final Properties extraParams = new Properties();
+		extraParams.setProperty(CAdESExtraParams.MODE, AOSignConstants.SIGN_MODE_IMPLICIT);
+		extraParams.setProperty(CAdESExtraParams.POLICY_IDENTIFIER, "urn:oid:2.16.724.1.3.1.1.2.1.9"); //$NON-NLS-1$
+		extraParams.setProperty(CAdESExtraParams.POLICY_IDENTIFIER_HASH, "G7roucf600+f03r/o0bAOQ6WAs0="); //$NON-NLS-1$
+		extraParams.setProperty("policyIdentifierHashAlgorithm", "SHA1"); //$NON-NLS-1$ //$NON-NLS-2$
+		extraParams.setProperty(CAdESExtraParams.SIGNER_CLAIMED_ROLES, "Director de proyecto"); //$NON-NLS-1$
+		extraParams.setProperty(CAdESExtraParams.CONTENT_TYPE_OID, "1.2.840.10003.5.109.10"); //$NON-NLS-1$
+		extraParams.setProperty(CAdESExtraParams.CONTENT_DESCRIPTION, "XML"); //$NON-NLS-1$
+		extraParams.setProperty(CAdESExtraParams.INCLUDE_MIMETYPE_ATTRIBUTE, "true"); //$NON-NLS-1$
+		extraParams.setProperty("commitmentTypeIndications", "1"); //$NON-NLS-1$ //$NON-NLS-2$
+		extraParams.setProperty("commitmentTypeIndication0Identifier", "1"); //$NON-NLS-1$ //$NON-NLS-2$
+		extraParams.setProperty("signatureProductionCity", "Madrid"); //$NON-NLS-1$ //$NON-NLS-2$
+		return extraParams;
+	}
+
+	/** Comprueba que la prefirma del perfil es id&eacute;ntica a la de la firma trif&aacute;sica
+	 * con la misma configuraci&oacute;n.
+	 * @throws Exception en cualquier error. */
+	@Test
+	void testPreSignMatchesTriPhase() throws Exception {
+
+		final X509Certificate[] certChain = (X509Certificate[]) this.pke.getCertificateChain();
+		final Properties extraParams = getExtraParams();
+
+		final CAdESSignatureProfile profile = CAdESSignatureProfile.compile(
+			AOSignConstants.SIGN_ALGORITHM_SHA512WITHRSA,
+			certChain,
+			extraParams
+		);
+
+		for (int i = 0; i < 3; i++) {
+			final byte[] digest = MessageDigest.getInstance(profile.getDigestAlgorithm()).digest(
+				("Documento " + i).getBytes() //$NON-NLS-1$
+			);
+			final Date signingTime = new Date();
+
+			final CAdESParameters config = CAdESParameters.loadHash(
+				digest,
+				profile.getDigestAlgorithm(),
+				null,
+				AOSignConstants.SIGN_ALGORITHM_SHA512WITHRSA,
+				extraParams
+			);
+			config.setSigningTime(signingTime);
+
+			Assertions.assertArrayEquals(
+				CAdESTriPhaseSigner.preSign(certChain, config),
+				profile.preSign(digest, signingTime)
+			);
+		}
+	}
+
+	/** Firma varios documentos con un mismo perfil y comprueba las firmas, incluso
+	 * despu&eacute;s de alterar la cadena de certificados usada para compilarlo.
+	 * @throws Exception en cualquier error. */
+	@Test
+	void testSignWithProfile() throws Exception {
+
+		final X509Certificate[] certChain = (X509Certificate[]) this.pke.getCertificateChain();
+		final X509Certificate signingCert = certChain[0];
+		final CAdESSignatureProfile profile = CAdESSignatureProfile.compile(
+			AOSignConstants.SIGN_ALGORITHM_SHA256WITHRSA,
+			certChain,
+			getExtraParams()
+		);
+		Arrays.fill(certChain, null);
+
+		final AOCAdESSigner signer = new AOCAdESSigner();
+		for (int i = 0; i < 3; i++) {
+			final byte[] data = ("Documento " + i).getBytes(); //$NON-NLS-1$
+			final byte[] signature = profile.sign(data, this.pke.getPrivateKey());
+
+			Assertions.assertTrue(signer.isSign(signature));
+			Assertions.assertArrayEquals(data, signer.getData(signature));
+
+			final SignerInformation signerInfo = new CMSSignedData(signature).getSignerInfos().getSigners().iterator().next();
+			Assertions.assertTrue(signerInfo.verify(new JcaSimpleSignerInfoVerifierBuilder().build(signingCert.getPublicKey())));
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package es.gob.afirma.test.cades;
+
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.security.KeyStore.PrivateKeyEntry;
+import java.security.MessageDigest;
+import java.security.cert.X509Certificate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.bouncycastle.asn1.ess.ESSCertID;
+import org.bouncycastle.asn1.ess.ESSCertIDv2;
+import org.bouncycastle.asn1.ess.SigningCertificate;
+import org.bouncycastle.asn1.ess.SigningCertificateV2;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.SignerInformation;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import es.gob.afirma.core.signers.AOSignConstants;
+import es.gob.afirma.signers.cades.AOCAdESSigner;
+
+/** Pruebas de los atributos <i>SigningCertificate</i> y <i>SigningCertificateV2</i>. */
+final class TestCAdESSigningCertificate {
+
+	private static final String CERT_PATH = "ANF_PF_Activo.pfx"; //$NON-NLS-1$
+	private static final String CERT_PASS = "12341234"; //$NON-NLS-1$
+	private static final String CERT_ALIAS = "anf usuario activo"; //$NON-NLS-1$
+
+	private static final String DATA = "Hola mundo"; //$NON-NLS-1$
+
+	private PrivateKeyEntry pke = null;
+
+	/** Carga el almac&eacute;n de claves.
+	 * @throws Exception En cualquier error. */
+	@BeforeEach
+	void loadResources() throws Exception {
+
+		Logger.getLogger("es.gob.afirma").setLevel(Level.WARNING); //$NON-NLS-1$
+
+		final KeyStore ks = KeyStore.getInstance("PKCS12"); //$NON-NLS-1$
+		try (InputStream is = ClassLoader.getSystemResourceAsStream(CERT_PATH)) {
+			ks.load(is, CERT_PASS.toCharArray());
+		}
+		this.pke = (PrivateKeyEntry) ks.getEntry(CERT_ALIAS, new KeyStore.PasswordProtection(CERT_PASS.toCharArray()));
+	}
+
+	/** Prueba que las firmas sucesivas con un mismo certificado identifican correctamente al
+	 * firmante en los atributos <i>SigningCertificate</i> y <i>SigningCertificateV2</i>.
+	 * @throws Exception en cualquier error. */
+	@Test
+	void testSigningCertificateAttributes() throws Exception {
+
+		final X509Certificate cert = (X509Certificate) this.pke.getCertificateChain()[0];
+		final AOCAdESSigner signer = new AOCAdESSigner();
+
+		for (int i = 0; i < 2; i++) {
+			for (final String algorithm : new String[] {
+					AOSignConstants.SIGN_ALGORITHM_SHA1WITHRSA,
+					AOSignConstants.SIGN_ALGORITHM_SHA512WITHRSA }) {
+
+				final String hashAlgorithm = AOSignConstants.getDigestAlgorithmName(algorithm);
+				final byte[] signature = signer.signHash(
+					MessageDigest.getInstance(hashAlgorithm).digest(DATA.getBytes()),
+					hashAlgorithm,
+					algorithm,
+					this.pke.getPrivateKey(),
+					(X509Certificate[]) this.pke.getCertificateChain(),
+					null
+				);
+
+				final SignerInformation signerInfo = new CMSSignedData(signature).getSignerInfos().getSigners().iterator().next();
+				final byte[] expectedHash = MessageDigest.getInstance(hashAlgorithm).digest(cert.getEncoded());
+				if (AOSignConstants.SIGN_ALGORITHM_SHA1WITHRSA.equals(algorithm)) {
+					final ESSCertID essCertId = SigningCertificate.getInstance(
+						signerInfo.getSignedAttributes().get(PKCSObjectIdentifiers.id_aa_signingCertificate).getAttributeValues()[0]
+					).getCerts()[0];
+					Assertions.assertArrayEquals(expectedHash, essCertId.getCertHash());
+					Assertions.assertEquals(cert.getSerialNumber(), essCertId.getIssuerSerial().getSerial().getValue());
+				}
+				else {
+					final ESSCertIDv2 essCertIdV2 = SigningCertificateV2.getInstance(
+						signerInfo.getSignedAttributes().get(PKCSObjectIdentifiers.id_aa_signingCertificateV2).getAttributeValues()[0]
+					).getCerts()[0];
+					Assertions.assertArrayEquals(expectedHash, essCertIdV2.getCertHash());
+					Assertions.assertEquals(cert.getSerialNumber(), essCertIdV2.getIssuerSerial().getSerial().getValue());
+				}
+			}
+		}
+	}
+}
@@ -2,6 +2,11 @@ package es.gob.afirma.test.cades;
 
 import java.io.InputStream;
 
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.cms.ContentInfo;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -63,4 +68,35 @@ class TestCadesValidator {
 			);
 		}
 	}
+
+	/** Comprueba la clasificaci&oacute;n de los datos a partir de su <i>ContentInfo</i> decodificado
+	 * una sola vez.
+	 * @throws Exception Cuando se produce cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	void testContentInfoClassification() throws Exception {
+		final byte[] cades;
+		try (InputStream is = ClassLoader.getSystemResourceAsStream(CADES_IMPLICIT_FILE)) {
+			cades = AOUtil.getDataFromInputStream(is);
+		}
+		final ContentInfo contentInfo = CAdESValidator.getContentInfo(cades);
+		Assertions.assertNotNull(contentInfo);
+		Assertions.assertTrue(CAdESValidator.isCAdESValid(contentInfo, true));
+		Assertions.assertTrue(CAdESValidator.isCAdESValid(cades, true));
+		Assertions.assertFalse(CAdESValidator.isCAdESValid(cades, AOSignConstants.CMS_CONTENTTYPE_DIGESTEDDATA, false));
+
+		// Datos ASN.1 que no son un ContentInfo
+		final byte[] octets = new DEROctetString("Hola Mundo!!".getBytes()).getEncoded(); //$NON-NLS-1$
+		Assertions.assertNull(CAdESValidator.getContentInfo(octets));
+		Assertions.assertFalse(CAdESValidator.isCAdESValid(octets, false));
+
+		// Secuencia cuyo primer elemento no es un OID
+		final byte[] sequence = new DERSequence(new ASN1Encodable[] {
+			new ASN1Integer(1),
+			new DEROctetString("Hola Mundo!!".getBytes()) //$NON-NLS-1$
+		}).getEncoded();
+		Assertions.assertNull(CAdESValidator.getContentInfo(sequence));
+		Assertions.assertFalse(CAdESValidator.isCAdESValid(sequence, false));
+		Assertions.assertFalse(CAdESValidator.isCAdESSignedData(sequence, false));
+	}
 }
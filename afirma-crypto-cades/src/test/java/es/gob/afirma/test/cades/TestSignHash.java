@@ -12,14 +12,22 @@ import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.bouncycastle.asn1.cms.CMSAttributes;
+import org.bouncycastle.asn1.ess.ContentHints;
+import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import es.gob.afirma.core.misc.AOUtil;
+import es.gob.afirma.core.misc.MimeHelper;
 import es.gob.afirma.core.signers.AOSignConstants;
 import es.gob.afirma.core.signers.AOSigner;
 import es.gob.afirma.signers.cades.AOCAdESSigner;
+import es.gob.afirma.signers.cades.CAdESExtraParams;
 
 /** Pruebas de firma de huellas. */
 final class TestSignHash {
@@ -114,4 +122,58 @@ final class TestSignHash {
 
 		System.out.println("La firma de hash " + HASH_ALGORITHM + " se ha guardado en el fichero: " + outFile.getAbsolutePath()); //$NON-NLS-1$ //$NON-NLS-2$
 	}
+
+	/** Prueba de firma y cofirma en modo de solo huella, sin tratamiento de los datos.
+	 * @throws Exception en cualquier error. */
+	@Test
+	void testSignAndCosignHashOnly() throws Exception {
+
+		final String HASH_ALGORITHM = "SHA-512"; //$NON-NLS-1$
+
+		final byte[] data;
+		try (InputStream is = TestCAdES.class.getResourceAsStream(TestSignHash.DATA_FILE)) {
+			data = AOUtil.getDataFromInputStream(is);
+		}
+		final byte[] hash = MessageDigest.getInstance(HASH_ALGORITHM).digest(data);
+
+		final Properties config = new Properties();
+		config.setProperty(CAdESExtraParams.MODE, AOSignConstants.SIGN_MODE_IMPLICIT);
+
+		final AOCAdESSigner signer = new AOCAdESSigner();
+		final X509Certificate[] certChain = (X509Certificate[]) this.pke.getCertificateChain();
+		final byte[] signature = signer.signHash(
+			hash,
+			HASH_ALGORITHM,
+			AOSignConstants.SIGN_ALGORITHM_SHA512WITHRSA,
+			this.pke.getPrivateKey(),
+			certChain,
+			config
+		);
+
+		// La firma es siempre explicita y el tipo de contenido es el generico, ya que no se analizan los datos
+		Assertions.assertNull(signer.getData(signature));
+		final CMSSignedData signedData = new CMSSignedData(new CMSProcessableByteArray(data), signature);
+		final SignerInformation signerInfo = signedData.getSignerInfos().getSigners().iterator().next();
+		Assertions.assertTrue(signerInfo.verify(new JcaSimpleSignerInfoVerifierBuilder().build(certChain[0].getPublicKey())));
+		final ContentHints contentHints = ContentHints.getInstance(
+			signerInfo.getSignedAttributes().get(CMSAttributes.contentHint).getAttributeValues()[0]
+		);
+		Assertions.assertEquals(MimeHelper.DEFAULT_CONTENT_OID_DATA, contentHints.getContentType().getId());
+
+		final byte[] cosignature = signer.cosignHash(
+			hash,
+			HASH_ALGORITHM,
+			signature,
+			AOSignConstants.SIGN_ALGORITHM_SHA512WITHRSA,
+			this.pke.getPrivateKey(),
+			certChain,
+			null
+		);
+
+		final CMSSignedData coSignedData = new CMSSignedData(new CMSProcessableByteArray(data), cosignature);
+		Assertions.assertEquals(2, coSignedData.getSignerInfos().size());
+		for (final SignerInformation si : coSignedData.getSignerInfos().getSigners()) {
+			Assertions.assertTrue(si.verify(new JcaSimpleSignerInfoVerifierBuilder().build(certChain[0].getPublicKey())));
+		}
+	}
 }
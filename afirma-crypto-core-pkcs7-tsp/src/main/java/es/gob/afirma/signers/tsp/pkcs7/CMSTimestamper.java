@@ -11,19 +11,20 @@ package es.gob.afirma.signers.tsp.pkcs7;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.math.BigInteger;
 import java.net.URI;
-import java.net.URLConnection;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.Base64;
 import java.util.Calendar;
-import java.util.Collection;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import org.bouncycastle.asn1.ASN1InputStream;
@@ -42,7 +43,7 @@ import org.bouncycastle.tsp.TimeStampResponse;
 import org.bouncycastle.tsp.TimeStampToken;
 
 import es.gob.afirma.core.AOException;
-import es.gob.afirma.core.misc.AOUtil;
+import es.gob.afirma.core.misc.CryptoInstancePool;
 import es.gob.afirma.core.signers.AOSignConstants;
 import es.gob.afirma.signers.pkcs7.AOAlgorithmID;
 
@@ -53,10 +54,17 @@ public final class CMSTimestamper {
 
 	static final Logger LOGGER = Logger.getLogger(CMSTimestamper.class.getName());
 
+	/** N&uacute;mero m&aacute;ximo de hilos con los que se env&iacute;an peticiones a las TSA,
+	 * compartidos por todos los estampadores. */
+	static final int MAX_REQUEST_THREADS = 16;
+
+	/** Ejecutor compartido para el env&iacute;o de peticiones a las TSA. Sus hilos se crean bajo
+	 * demanda y terminan tras un minuto sin uso. */
+	private static final ExecutorService REQUEST_EXECUTOR = createRequestExecutor();
+
     private final TimeStampRequestGenerator tsqGenerator;
     private final URI tsaURL;
-    private final String tsaUsername;
-    private final String tsaPassword;
+    private final TsaTransport transport;
 
     /** Construye un estampador de sellos de tiempo para estructuras CMS y CAdES.
      * @param requireCert <code>true</code> si la TSA requiere certificado, <code>false</code> en caso contrario.
@@ -71,7 +79,26 @@ public final class CMSTimestamper {
                      	  final String tsaUsr,
                      	  final String tsaPwd,
                      	  final TsaRequestExtension[] extensions) {
+    	this(new TsaParams(requireCert, policy, tsa, tsaUsr, tsaPwd, extensions, null));
+    }
+
+    /** Construye un estampador de sellos de tiempo para estructuras CMS y CAdES.
+     * @param params Par&aacute;metros de configuraci&oacute;n de una Autoridad de Sellado de Tiempo. */
+    public CMSTimestamper(final TsaParams params) {
+    	this(params, null);
+    }
+
+    /** Construye un estampador de sellos de tiempo para estructuras CMS y CAdES que
+     * comunica con la TSA mediante un transporte concreto.
+     * @param params Par&aacute;metros de configuraci&oacute;n de una Autoridad de Sellado de Tiempo.
+     * @param transport Transporte de las peticiones a la TSA, por ejemplo, para dirigirlas a una TSA
+     *                  local en las pruebas o para notificar su resultado mediante
+     *                  {@link HttpTsaTransport#withRequestListener(HttpTsaTransport.RequestListener)}.
+     *                  Si es <code>null</code> se usa el transporte HTTP compartido para la
+     *                  configuraci&oacute;n indicada. */
+    public CMSTimestamper(final TsaParams params, final TsaTransport transport) {
         tsqGenerator = new TimeStampRequestGenerator();
+        final TsaRequestExtension[] extensions = params.getExtensions();
         if (extensions != null) {
         	for (final TsaRequestExtension ext : extensions) {
         		tsqGenerator.addExtension(
@@ -82,26 +109,30 @@ public final class CMSTimestamper {
         		LOGGER.info(()-> "Anadida extension a la solicitud de sello de tiempo: " + ext); //$NON-NLS-1$
         	}
         }
-        tsqGenerator.setCertReq(requireCert);
-        if (policy != null) {
-			tsqGenerator.setReqPolicy(new ASN1ObjectIdentifier(policy));
+        tsqGenerator.setCertReq(params.doTsaRequireCert());
+        if (params.getTsaPolicy() != null) {
+			tsqGenerator.setReqPolicy(new ASN1ObjectIdentifier(params.getTsaPolicy()));
 		}
-        tsaURL = tsa;
-        tsaPassword = tsaPwd;
-        tsaUsername = tsaUsr;
+        tsaURL = params.getTsaUrl();
+        this.transport = transport != null ? transport : HttpTsaTransport.getInstance(params);
     }
 
-    /** Construye un estampador de sellos de tiempo para estructuras CMS y CAdES.
-     * @param params Par&aacute;metros de configuraci&oacute;n de una Autoridad de Sellado de Tiempo. */
-    public CMSTimestamper(final TsaParams params) {
-    	this(
-			params.doTsaRequireCert(),
-			params.getTsaPolicy(),
-			params.getTsaUrl(),
-			params.getTsaUsr(),
-			params.getTsaPwd(),
-			params.getExtensions()
+    private static ExecutorService createRequestExecutor() {
+    	final AtomicInteger threadCount = new AtomicInteger();
+    	final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+			MAX_REQUEST_THREADS,
+			MAX_REQUEST_THREADS,
+			60,
+			TimeUnit.SECONDS,
+			new LinkedBlockingQueue<>(),
+			r -> {
+				final Thread t = new Thread(r, "afirma-tsp-" + threadCount.incrementAndGet()); //$NON-NLS-1$
+				t.setDaemon(true);
+				return t;
+			}
 		);
+    	executor.allowCoreThreadTimeOut(true);
+    	return executor;
     }
 
     /** A&ntilde;ade un sello de tiempo a las firmas encontradas dentro de una estructura PKCS#7.
@@ -126,22 +157,23 @@ public final class CMSTimestamper {
 
         final SignerInformationStore origSignerInfoStore =  signedData.getSignerInfos();
 
-        // Insertamos un sello de tiempo en cada una de las firmas encontradas en el PKCS#7
-        final List<SignerInformation> vNewSigners = new ArrayList<>();
+        final List<SignerInformation> signers = new ArrayList<>(origSignerInfoStore.getSigners());
 
-        final Collection<?> ovSigners = origSignerInfoStore.getSigners();
-        for (final Object name : ovSigners) {
+        // Calculamos las huellas de todas las firmas y pedimos sus sellos de tiempo a la vez
+        final List<byte[]> imprints = new ArrayList<>(signers.size());
+        for (final SignerInformation si : signers) {
+        	imprints.add(CryptoInstancePool.digest(digestAlgorithm, si.getSignature()));
+        }
+        final List<byte[]> tsTokens = getTimeStampTokens(imprints, digestAlgorithm, time);
 
-             final SignerInformation si = (SignerInformation) name;
+        // Insertamos cada sello de tiempo en su firma, respetando el orden original
+        final List<SignerInformation> vNewSigners = new ArrayList<>(signers.size());
+        for (int i = 0; i < signers.size(); i++) {
 
-             final byte[] tsToken = getTimeStampToken(
-        		 MessageDigest.getInstance(digestAlgorithm).digest(si.getSignature()),
-        		 digestAlgorithm,
-        		 time
-    		 );
+             final SignerInformation si = signers.get(i);
 
              final ASN1Primitive derObj;
-             try (ASN1InputStream is = new ASN1InputStream(new ByteArrayInputStream(tsToken))) {
+             try (ASN1InputStream is = new ASN1InputStream(new ByteArrayInputStream(tsTokens.get(i)))) {
             	 derObj = is.readObject();
              }
              final DERSet derSet = new DERSet(derObj);
@@ -156,45 +188,75 @@ public final class CMSTimestamper {
         return CMSSignedData.replaceSigners(signedData, new SignerInformationStore(vNewSigners)).getEncoded();
     }
 
-    /** Obtiene el <i>token</i> de sello de tiempo por HTTP.
-     * @param requestBytes Petici&oacute;n a TSA en ASN.1 binario
-     * @param conn Conexi&oacute;n a trav&eacute;s de la cual enviar la petici&oacute;n.
-     * @return Respuesta de la TSA (array de bytes seg&uacute;n RFC 3161)
-     * @throws IOException Si hay problemas de dentrada / salida */
-    private static byte[] getTSAResponse(final byte[] requestBytes, final URLConnection conn) throws IOException {
-
-    	try (OutputStream out = conn.getOutputStream()) {
-	         out.write(requestBytes);
-    	}
-    	final byte[] respBytes;
-    	try (InputStream is = conn.getInputStream()) {
-    		respBytes = AOUtil.getDataFromInputStream(is);
+    /** Obtiene los <i>tokens</i> de sello de tiempo de un conjunto de huellas digitales.
+     * Las peticiones a la TSA se generan en el hilo llamante y se env&iacute;an de forma
+     * concurrente desde este y desde los hilos compartidos por todos los estampadores, sin
+     * superar el n&uacute;mero m&aacute;ximo de peticiones simult&aacute;neas configurado para la
+     * TSA, de modo que el tiempo total es aproximadamente el de la petici&oacute;n m&aacute;s lenta
+     * y no la suma de todas ellas.
+     * @param imprints Huellas digitales de los datos sobre los que se quieren obtener los sellos de tiempo.
+     * @param hashAlgorithm Algoritmo de huella digital usado para calcular las huellas.
+     * @param time Tiempo de solicitud de los sellos.
+     * @return <i>Tokens</i> de sello de tiempo seg&uacute;n RFC3161, en el mismo orden que las huellas.
+     * @throws AOException Si se produce un error en el protocolo TSA o en ASN.1.
+     * @throws IOException Si hay errores en la comunicaci&oacute;n o en la lectura de datos con la TSA. */
+    public List<byte[]> getTimeStampTokens(final List<byte[]> imprints,
+    		                               final String hashAlgorithm,
+    		                               final Calendar time) throws AOException, IOException {
+
+    	// Generamos todas las peticiones en este hilo antes de enviarlas, de forma que los hilos
+    	// compartidos solo se ocupen de la comunicacion con la TSA
+    	final List<TimeStampRequest> requests = new ArrayList<>(imprints.size());
+    	for (final byte[] imprint : imprints) {
+    		requests.add(createRequest(imprint, hashAlgorithm, time));
     	}
-        final String encoding = conn.getContentEncoding();
-        if (encoding != null && "base64".equalsIgnoreCase(encoding)) { //$NON-NLS-1$
-             return Base64.getDecoder().decode(new String(respBytes));
-        }
-        return respBytes;
-     }
 
-    /** Crea una conexi&oacute;n contra la TSA.
-     * @return Conex&iacute;n contra la TSA.
-     * @throws IOException Cuando ocurre un error al abrir la conexi&oacute;n o si la URL no es v&aacute;lida. */
-    private URLConnection prepareConnection() throws IOException {
-
-    	final URLConnection tsaConnection = tsaURL.toURL().openConnection();
-        tsaConnection.setDoInput(true);
-        tsaConnection.setDoOutput(true);
-        tsaConnection.setUseCaches(false);
-        tsaConnection.setRequestProperty("Content-Type", "application/timestamp-query"); //$NON-NLS-1$ //$NON-NLS-2$
-        tsaConnection.setRequestProperty("Content-Transfer-Encoding", "binary"); //$NON-NLS-1$ //$NON-NLS-2$
-
-        if (tsaUsername != null && !tsaUsername.isEmpty()) {
-            final String userPassword = tsaUsername + ":" + tsaPassword; //$NON-NLS-1$
-            tsaConnection.setRequestProperty("Authorization", "Basic " + Base64.getEncoder().encodeToString(userPassword.getBytes())); //$NON-NLS-1$ //$NON-NLS-2$
-        }
+    	// Con una unica huella no merece la pena usar otros hilos
+    	if (requests.size() <= 1) {
+    		final List<byte[]> tokens = new ArrayList<>(requests.size());
+    		for (final TimeStampRequest request : requests) {
+    			tokens.add(getTimeStampToken(request));
+    		}
+    		return tokens;
+    	}
 
-        return tsaConnection;
+    	// La primera peticion se envia desde este mismo hilo y el resto desde los hilos compartidos
+    	final List<Future<byte[]>> futures = new ArrayList<>(requests.size() - 1);
+    	try {
+    		for (final TimeStampRequest request : requests.subList(1, requests.size())) {
+    			futures.add(REQUEST_EXECUTOR.submit(() -> getTimeStampToken(request)));
+    		}
+
+    		// Recogemos los sellos en el mismo orden en el que se pidieron
+    		final List<byte[]> tokens = new ArrayList<>(requests.size());
+    		tokens.add(getTimeStampToken(requests.get(0)));
+    		for (final Future<byte[]> future : futures) {
+    			try {
+    				tokens.add(future.get());
+    			}
+    			catch (final ExecutionException e) {
+    				final Throwable cause = e.getCause();
+    				if (cause instanceof AOException) {
+    					throw (AOException) cause;
+    				}
+    				if (cause instanceof IOException) {
+    					throw (IOException) cause;
+    				}
+    				throw new AOException("Error en la generacion del sello de tiempo", cause); //$NON-NLS-1$
+    			}
+    			catch (final InterruptedException e) {
+    				Thread.currentThread().interrupt();
+    				throw new AOException("Se interrumpio la obtencion de los sellos de tiempo", e); //$NON-NLS-1$
+    			}
+    		}
+    		return tokens;
+    	}
+    	finally {
+    		// Si se produjo algun error, cancelamos las peticiones pendientes
+    		for (final Future<byte[]> future : futures) {
+    			future.cancel(true);
+    		}
+    	}
     }
 
     /** Obtiene directamente el <i>token</i> de sello de tiempo seg&uacute;n RFC3161.
@@ -205,18 +267,37 @@ public final class CMSTimestamper {
      * @throws AOException Si se produce un error en el protocolo TSA o en ASN.1.
      * @throws IOException Si hay errores en la comunicaci&oacute;n o en la lectura de datos con la TSA. */
     public byte[] getTimeStampToken(final byte[] imprint, final String hashAlgorithm, final Calendar time) throws AOException, IOException {
+    	return getTimeStampToken(createRequest(imprint, hashAlgorithm, time));
+    }
 
-		final TimeStampRequest request = tsqGenerator.generate(
-			new ASN1ObjectIdentifier(AOAlgorithmID.getOID(hashAlgorithm)),
-			imprint,
-			BigInteger.valueOf(time != null ? time.getTimeInMillis() : System.currentTimeMillis())
-		);
+    /** Genera una petici&oacute;n de sello de tiempo. El generador de peticiones es compartido
+     * por todas las peticiones del estampador, por lo que se sincroniza su uso.
+     * @param imprint Huella digital de los datos sobre los que se quiere obtener el sello de tiempo
+     * @param hashAlgorithm Algoritmo de huella digital usado para calcular la huella indicada en <code>imprint</code>.
+     * @param time Tiempo de solicitud del sello.
+     * @return Petici&oacute;n de sello de tiempo. */
+    private TimeStampRequest createRequest(final byte[] imprint, final String hashAlgorithm, final Calendar time) {
+    	synchronized (tsqGenerator) {
+			return tsqGenerator.generate(
+				new ASN1ObjectIdentifier(AOAlgorithmID.getOID(hashAlgorithm)),
+				imprint,
+				BigInteger.valueOf(time != null ? time.getTimeInMillis() : System.currentTimeMillis())
+			);
+    	}
+    }
+
+    /** Env&iacute;a una petici&oacute;n de sello de tiempo a la TSA y obtiene su <i>token</i>.
+     * @param request Petici&oacute;n de sello de tiempo.
+     * @return <i>Token</i> de sello de tiempo seg&uacute;n RFC3161.
+     * @throws AOException Si se produce un error en el protocolo TSA o en ASN.1.
+     * @throws IOException Si hay errores en la lectura de datos de la petici&oacute;n. */
+    private byte[] getTimeStampToken(final TimeStampRequest request) throws AOException, IOException {
 
 		final byte[] requestBytes = request.getEncoded();
 
 		final byte[] rawResponse;
 		try {
-			rawResponse = getTSAResponse(requestBytes, prepareConnection());
+			rawResponse = this.transport.send(requestBytes);
 		}
 		catch (final IOException e) {
 			throw new AOException("No se ha podido conectar con el servicio o la respuesta de la TSA no tiene un formato valido", e); //$NON-NLS-1$
@@ -0,0 +1,322 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * You may contact the copyright holder at: soporte.afirma@seap.minhap.es
+ */
+
+package es.gob.afirma.signers.tsp.pkcs7;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import es.gob.afirma.core.misc.AOUtil;
+import es.gob.afirma.core.misc.CryptoInstancePool;
+
+/** Transporte HTTP(S) de peticiones de sello de tiempo.
+ * <p>
+ *  Se mantiene una &uacute;nica instancia por configuraci&oacute;n de TSA (URL, credenciales,
+ *  tiempos de espera y reintentos), de forma que la cabecera de autenticaci&oacute;n se calcula
+ *  una sola vez y las conexiones se reutilizan entre peticiones. Para ello, la respuesta se lee
+ *  siempre por completo y la conexi&oacute;n se cierra sin desconectarla, lo que permite a la
+ *  m&aacute;quina virtual mantenerla viva (<i>keep-alive</i>) para las siguientes peticiones a la
+ *  misma TSA y reutilizar la sesi&oacute;n TLS en HTTPS.
+ * </p>
+ * <p>
+ *  Las instancias compartidas se identifican por la huella de las credenciales, nunca por las
+ *  credenciales en claro, y solo se conservan las {@value #MAX_INSTANCES} &uacute;ltimas usadas.
+ *  Cada instancia limita el n&uacute;mero de peticiones simult&aacute;neas que env&iacute;a a la TSA,
+ *  por lo que el l&iacute;mite lo comparten todos los estampadores que usan la misma configuraci&oacute;n.
+ *  Como se comparten entre todos los usuarios de una misma TSA, las instancias son inmutables. Quien
+ *  necesite conocer el resultado de sus peticiones debe usar el transporte que devuelve
+ *  {@link #withRequestListener(RequestListener)}, que solo le notifica las suyas.
+ * </p> */
+public final class HttpTsaTransport implements TsaTransport {
+
+	private static final Logger LOGGER = Logger.getLogger(HttpTsaTransport.class.getName());
+
+	/** N&uacute;mero m&aacute;ximo de transportes compartidos que se conservan. */
+	static final int MAX_INSTANCES = 16;
+
+	/** Transportes compartidos para cada configuraci&oacute;n de TSA. */
+	private static final Map<InstanceKey, HttpTsaTransport> INSTANCES = new LinkedHashMap<InstanceKey, HttpTsaTransport>(MAX_INSTANCES, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<InstanceKey, HttpTsaTransport> eldest) {
+			return size() > MAX_INSTANCES;
+		}
+	};
+
+	private final URI tsaURL;
+	private final String authorization;
+	private final int connectTimeout;
+	private final int readTimeout;
+	private final int retries;
+	private final Semaphore permits;
+
+	/** Crea un transporte HTTP hacia una TSA.
+	 * @param tsaURL URL de la TSA.
+	 * @param tsaUsr Nombre de usuario si la TSA requiere autenticaci&oacute;n (puede ser <code>null</code>).
+	 * @param tsaPwd Contrase&ntilde;a del usuario de la TSA (puede ser <code>null</code>).
+	 * @param connectTimeout Tiempo m&aacute;ximo de espera para establecer la conexi&oacute;n en milisegundos
+	 *                       (0 para no limitarlo).
+	 * @param readTimeout Tiempo m&aacute;ximo de espera de la respuesta en milisegundos (0 para no limitarlo).
+	 * @param retries N&uacute;mero de reintentos ante errores de comunicaci&oacute;n. */
+	public HttpTsaTransport(final URI tsaURL,
+			                final String tsaUsr,
+			                final String tsaPwd,
+			                final int connectTimeout,
+			                final int readTimeout,
+			                final int retries) {
+		this(tsaURL, tsaUsr, tsaPwd, connectTimeout, readTimeout, retries, TsaParams.DEFAULT_MAX_CONCURRENT_REQUESTS);
+	}
+
+	/** Crea un transporte HTTP hacia una TSA.
+	 * @param tsaURL URL de la TSA.
+	 * @param tsaUsr Nombre de usuario si la TSA requiere autenticaci&oacute;n (puede ser <code>null</code>).
+	 * @param tsaPwd Contrase&ntilde;a del usuario de la TSA (puede ser <code>null</code>).
+	 * @param connectTimeout Tiempo m&aacute;ximo de espera para establecer la conexi&oacute;n en milisegundos
+	 *                       (0 para no limitarlo).
+	 * @param readTimeout Tiempo m&aacute;ximo de espera de la respuesta en milisegundos (0 para no limitarlo).
+	 * @param retries N&uacute;mero de reintentos ante errores de comunicaci&oacute;n.
+	 * @param maxConcurrentRequests N&uacute;mero m&aacute;ximo de peticiones simult&aacute;neas a la TSA. */
+	public HttpTsaTransport(final URI tsaURL,
+			                final String tsaUsr,
+			                final String tsaPwd,
+			                final int connectTimeout,
+			                final int readTimeout,
+			                final int retries,
+			                final int maxConcurrentRequests) {
+		if (tsaURL == null) {
+			throw new IllegalArgumentException("La URL del servidor de sello de tiempo no puede ser nula"); //$NON-NLS-1$
+		}
+		this.tsaURL = tsaURL;
+		this.authorization = tsaUsr != null && !tsaUsr.isEmpty() ?
+			"Basic " + Base64.getEncoder().encodeToString((tsaUsr + ":" + tsaPwd).getBytes()) : //$NON-NLS-1$ //$NON-NLS-2$
+				null;
+		this.connectTimeout = Math.max(0, connectTimeout);
+		this.readTimeout = Math.max(0, readTimeout);
+		this.retries = Math.max(0, retries);
+		this.permits = new Semaphore(Math.max(1, maxConcurrentRequests));
+	}
+
+	/** Obtiene el transporte compartido para una configuraci&oacute;n de TSA.
+	 * @param params Par&aacute;metros de configuraci&oacute;n de la TSA.
+	 * @return Transporte HTTP hacia la TSA. */
+	public static HttpTsaTransport getInstance(final TsaParams params) {
+		final InstanceKey key;
+		try {
+			key = new InstanceKey(params);
+		}
+		catch (final NoSuchAlgorithmException e) {
+			LOGGER.warning("No se puede identificar la configuracion de la TSA, no se compartira el transporte: " + e); //$NON-NLS-1$
+			return newInstance(params);
+		}
+		synchronized (INSTANCES) {
+			return INSTANCES.computeIfAbsent(key, k -> newInstance(params));
+		}
+	}
+
+	private static HttpTsaTransport newInstance(final TsaParams params) {
+		return new HttpTsaTransport(
+			params.getTsaUrl(),
+			params.getTsaUsr(),
+			params.getTsaPwd(),
+			params.getTsaConnectTimeout(),
+			params.getTsaReadTimeout(),
+			params.getTsaRetries(),
+			params.getTsaMaxConcurrentRequests()
+		);
+	}
+
+	/** Obtiene un transporte que env&iacute;a las peticiones mediante este y notifica el resultado
+	 * y la duraci&oacute;n de cada una de ellas. Solo se notifican las peticiones enviadas a
+	 * trav&eacute;s del transporte devuelto, no las del resto de usuarios de este.
+	 * @param listener Objeto al que notificar las peticiones.
+	 * @return Transporte que notifica sus peticiones. */
+	public TsaTransport withRequestListener(final RequestListener listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("El receptor de las peticiones no puede ser nulo"); //$NON-NLS-1$
+		}
+		return request -> send(request, listener);
+	}
+
+	@Override
+	public byte[] send(final byte[] request) throws IOException {
+		return send(request, null);
+	}
+
+	private byte[] send(final byte[] request, final RequestListener listener) throws IOException {
+
+		// Limitamos el numero de peticiones simultaneas a la TSA
+		try {
+			this.permits.acquire();
+		}
+		catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Se interrumpio la espera para conectar con la TSA"); //$NON-NLS-1$
+		}
+		try {
+			final long start = System.nanoTime();
+			int attempt = 0;
+			while (true) {
+				attempt++;
+				try {
+					final byte[] response = doSend(request);
+					notifyRequest(listener, attempt, System.nanoTime() - start, null);
+					return response;
+				}
+				catch (final IOException e) {
+					if (attempt > this.retries) {
+						notifyRequest(listener, attempt, System.nanoTime() - start, e);
+						throw e;
+					}
+					LOGGER.warning("Error en la peticion a la TSA '" + this.tsaURL + "', se reintentara: " + e); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+			}
+		}
+		finally {
+			this.permits.release();
+		}
+	}
+
+	private byte[] doSend(final byte[] request) throws IOException {
+
+		final URLConnection conn = this.tsaURL.toURL().openConnection();
+		conn.setDoInput(true);
+		conn.setDoOutput(true);
+		conn.setUseCaches(false);
+		conn.setConnectTimeout(this.connectTimeout);
+		conn.setReadTimeout(this.readTimeout);
+		conn.setRequestProperty("Content-Type", "application/timestamp-query"); //$NON-NLS-1$ //$NON-NLS-2$
+		conn.setRequestProperty("Content-Transfer-Encoding", "binary"); //$NON-NLS-1$ //$NON-NLS-2$
+		if (this.authorization != null) {
+			conn.setRequestProperty("Authorization", this.authorization); //$NON-NLS-1$
+		}
+
+		try (OutputStream out = conn.getOutputStream()) {
+			out.write(request);
+		}
+
+		if (conn instanceof HttpURLConnection) {
+			final HttpURLConnection httpConn = (HttpURLConnection) conn;
+			final int responseCode = httpConn.getResponseCode();
+			if (responseCode >= 400) {
+				// Consumimos la respuesta de error para que la conexion pueda reutilizarse
+				try (InputStream es = httpConn.getErrorStream()) {
+					if (es != null) {
+						AOUtil.getDataFromInputStream(es);
+					}
+				}
+				throw new IOException("La TSA ha respondido con el codigo HTTP " + responseCode); //$NON-NLS-1$
+			}
+		}
+
+		final byte[] respBytes;
+		try (InputStream is = conn.getInputStream()) {
+			respBytes = AOUtil.getDataFromInputStream(is);
+		}
+		final String encoding = conn.getContentEncoding();
+		if (encoding != null && "base64".equalsIgnoreCase(encoding)) { //$NON-NLS-1$
+			return Base64.getDecoder().decode(new String(respBytes, StandardCharsets.US_ASCII));
+		}
+		return respBytes;
+	}
+
+	private void notifyRequest(final RequestListener listener,
+			                   final int attempts,
+			                   final long elapsedNanos,
+			                   final IOException error) {
+		LOGGER.fine(() -> "Peticion a la TSA '" + this.tsaURL + "' " + //$NON-NLS-1$ //$NON-NLS-2$
+			(error == null ? "completada" : "fallida") + " en " + //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + " ms (" + attempts + " intentos)"); //$NON-NLS-1$ //$NON-NLS-2$
+		if (listener != null) {
+			listener.requestFinished(this.tsaURL, attempts, elapsedNanos, error);
+		}
+	}
+
+	/** Receptor de la informaci&oacute;n de las peticiones realizadas a una TSA. */
+	public interface RequestListener {
+
+		/** Notifica la finalizaci&oacute;n de una petici&oacute;n a la TSA.
+		 * @param tsaURL URL de la TSA.
+		 * @param attempts N&uacute;mero de intentos realizados.
+		 * @param elapsedNanos Tiempo total de la petici&oacute;n, incluidos los reintentos, en nanosegundos.
+		 * @param error Error de la petici&oacute;n o <code>null</code> si se complet&oacute; correctamente. */
+		void requestFinished(URI tsaURL, int attempts, long elapsedNanos, IOException error);
+	}
+
+	/** Identificador de una configuraci&oacute;n de TSA: URL, usuario, huella SHA-256 de las
+	 * credenciales, tiempos de espera, reintentos y n&uacute;mero m&aacute;ximo de peticiones
+	 * simult&aacute;neas. */
+	private static final class InstanceKey {
+
+		private final URI tsaURL;
+		private final String tsaUsr;
+		private final byte[] credentialsHash;
+		private final int connectTimeout;
+		private final int readTimeout;
+		private final int retries;
+		private final int maxConcurrentRequests;
+		private final int hash;
+
+		InstanceKey(final TsaParams params) throws NoSuchAlgorithmException {
+			this.tsaURL = params.getTsaUrl();
+			this.tsaUsr = params.getTsaUsr();
+			this.credentialsHash = CryptoInstancePool.digest(
+				"SHA-256", //$NON-NLS-1$
+				(this.tsaUsr + ":" + params.getTsaPwd()).getBytes(StandardCharsets.UTF_8) //$NON-NLS-1$
+			);
+			this.connectTimeout = params.getTsaConnectTimeout();
+			this.readTimeout = params.getTsaReadTimeout();
+			this.retries = params.getTsaRetries();
+			this.maxConcurrentRequests = params.getTsaMaxConcurrentRequests();
+			this.hash = Objects.hash(this.tsaURL, this.tsaUsr, Integer.valueOf(Arrays.hashCode(this.credentialsHash)),
+					Integer.valueOf(this.connectTimeout), Integer.valueOf(this.readTimeout), Integer.valueOf(this.retries),
+					Integer.valueOf(this.maxConcurrentRequests));
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof InstanceKey)) {
+				return false;
+			}
+			final InstanceKey other = (InstanceKey) obj;
+			return this.hash == other.hash
+					&& this.connectTimeout == other.connectTimeout
+					&& this.readTimeout == other.readTimeout
+					&& this.retries == other.retries
+					&& this.maxConcurrentRequests == other.maxConcurrentRequests
+					&& Objects.equals(this.tsaURL, other.tsaURL)
+					&& Objects.equals(this.tsaUsr, other.tsaUsr)
+					&& Arrays.equals(this.credentialsHash, other.credentialsHash);
+		}
+	}
+}
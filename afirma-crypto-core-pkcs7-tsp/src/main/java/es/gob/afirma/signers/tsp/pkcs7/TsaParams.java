@@ -33,6 +33,13 @@ public final class TsaParams {
 
 	private static final String PARAM_TSA_POLICY = "tsaPolicy"; //$NON-NLS-1$
 	private static final String PARAM_TSA_HASH_ALGORITHM = "tsaHashAlgorithm"; //$NON-NLS-1$
+	private static final String PARAM_TSA_CONNECT_TIMEOUT = "tsaConnectTimeout"; //$NON-NLS-1$
+	private static final String PARAM_TSA_READ_TIMEOUT = "tsaReadTimeout"; //$NON-NLS-1$
+	private static final String PARAM_TSA_RETRIES = "tsaRetries"; //$NON-NLS-1$
+	private static final String PARAM_TSA_MAX_CONCURRENT_REQUESTS = "tsaMaxConcurrentRequests"; //$NON-NLS-1$
+
+	/** N&uacute;mero m&aacute;ximo de peticiones simult&aacute;neas a una misma TSA por defecto. */
+	static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
 
 	private final boolean tsaRequireCert;
 	private final String tsaPolicy;
@@ -41,6 +48,10 @@ public final class TsaParams {
 	private final String tsaPwd;
 	private final TsaRequestExtension[] extensions;
 	private final String tsaHashAlgorithm;
+	private final int tsaConnectTimeout;
+	private final int tsaReadTimeout;
+	private final int tsaRetries;
+	private final int tsaMaxConcurrentRequests;
 
 	private static final Logger LOGGER = Logger.getLogger(TsaParams.class.getName());
 
@@ -70,6 +81,10 @@ public final class TsaParams {
         this.extensions = exts != null ? exts.clone() : null;
         this.tsaHashAlgorithm = hashAlgorithm != null ? hashAlgorithm : DEFAULT_DIGEST_ALGO;
         this.tsaRequireCert = requireCert;
+        this.tsaConnectTimeout = 0;
+        this.tsaReadTimeout = 0;
+        this.tsaRetries = 0;
+        this.tsaMaxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
 	}
 
 	/** Construye los par&aacute;metros de configuraci&oacute;n de una Autoridad de Sellado de Tiempo.
@@ -102,6 +117,11 @@ public final class TsaParams {
         this.tsaUsr = extraParams.getProperty("tsaUsr"); //$NON-NLS-1$
         this.tsaPwd = extraParams.getProperty("tsaPwd"); //$NON-NLS-1$
         this.extensions = getExtensions(extraParams);
+        this.tsaConnectTimeout = getNonNegativeInt(extraParams, PARAM_TSA_CONNECT_TIMEOUT);
+        this.tsaReadTimeout = getNonNegativeInt(extraParams, PARAM_TSA_READ_TIMEOUT);
+        this.tsaRetries = getNonNegativeInt(extraParams, PARAM_TSA_RETRIES);
+        final int maxConcurrentRequests = getNonNegativeInt(extraParams, PARAM_TSA_MAX_CONCURRENT_REQUESTS);
+        this.tsaMaxConcurrentRequests = maxConcurrentRequests > 0 ? maxConcurrentRequests : DEFAULT_MAX_CONCURRENT_REQUESTS;
 	}
 
 	boolean doTsaRequireCert() {
@@ -130,6 +150,48 @@ public final class TsaParams {
 		return this.extensions;
 	}
 
+	/** Obtiene el tiempo m&aacute;ximo de espera para establecer la conexi&oacute;n con la TSA.
+	 * @return Tiempo de espera en milisegundos o 0 si no hay l&iacute;mite. */
+	int getTsaConnectTimeout() {
+		return this.tsaConnectTimeout;
+	}
+
+	/** Obtiene el tiempo m&aacute;ximo de espera de la respuesta de la TSA.
+	 * @return Tiempo de espera en milisegundos o 0 si no hay l&iacute;mite. */
+	int getTsaReadTimeout() {
+		return this.tsaReadTimeout;
+	}
+
+	/** Obtiene el n&uacute;mero de reintentos ante errores de comunicaci&oacute;n con la TSA.
+	 * @return N&uacute;mero de reintentos. */
+	int getTsaRetries() {
+		return this.tsaRetries;
+	}
+
+	/** Obtiene el n&uacute;mero m&aacute;ximo de peticiones simult&aacute;neas a la TSA.
+	 * @return N&uacute;mero m&aacute;ximo de peticiones simult&aacute;neas. */
+	int getTsaMaxConcurrentRequests() {
+		return this.tsaMaxConcurrentRequests;
+	}
+
+	private static int getNonNegativeInt(final Properties config, final String paramName) {
+		final String value = config.getProperty(paramName);
+		if (value == null || value.trim().isEmpty()) {
+			return 0;
+		}
+		try {
+			final int n = Integer.parseInt(value.trim());
+			if (n >= 0) {
+				return n;
+			}
+		}
+		catch (final NumberFormatException e) {
+			// Se notifica a continuacion
+		}
+		LOGGER.warning("Se ignorara el valor no valido del parametro '" + paramName + "': " + value); //$NON-NLS-1$ //$NON-NLS-2$
+		return 0;
+	}
+
 	/** Obtiene el listado de extensiones configuradas.
 	 * @param config Configuraci&oacute;n en la que se pueden haber declarado las extensiones.
 	 * @return Listado de extensiones. */
@@ -190,6 +252,18 @@ public final class TsaParams {
 		if (getTsaHashAlgorithm() != null && !getTsaHashAlgorithm().isEmpty()) {
 			p.put(PARAM_TSA_HASH_ALGORITHM, getTsaHashAlgorithm());
 		}
+		if (getTsaConnectTimeout() > 0) {
+			p.put(PARAM_TSA_CONNECT_TIMEOUT, Integer.toString(getTsaConnectTimeout()));
+		}
+		if (getTsaReadTimeout() > 0) {
+			p.put(PARAM_TSA_READ_TIMEOUT, Integer.toString(getTsaReadTimeout()));
+		}
+		if (getTsaRetries() > 0) {
+			p.put(PARAM_TSA_RETRIES, Integer.toString(getTsaRetries()));
+		}
+		if (getTsaMaxConcurrentRequests() != DEFAULT_MAX_CONCURRENT_REQUESTS) {
+			p.put(PARAM_TSA_MAX_CONCURRENT_REQUESTS, Integer.toString(getTsaMaxConcurrentRequests()));
+		}
 		return p;
 	}
 
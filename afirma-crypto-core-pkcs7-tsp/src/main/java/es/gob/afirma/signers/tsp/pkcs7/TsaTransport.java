@@ -0,0 +1,26 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * You may contact the copyright holder at: soporte.afirma@seap.minhap.es
+ */
+
+package es.gob.afirma.signers.tsp.pkcs7;
+
+import java.io.IOException;
+
+/** Medio de transporte de las peticiones de sello de tiempo RFC 3161 hacia una TSA.
+ * <p>
+ *  Las implementaciones deben permitir el env&iacute;o de peticiones concurrentes, ya que
+ *  una misma instancia puede compartirse entre varios estampadores y varios hilos.
+ * </p> */
+public interface TsaTransport {
+
+	/** Env&iacute;a una petici&oacute;n de sello de tiempo a la TSA y obtiene su respuesta.
+	 * @param request Petici&oacute;n a la TSA en ASN.1 binario (<i>TimeStampReq</i>).
+	 * @return Respuesta de la TSA en ASN.1 binario (<i>TimeStampResp</i>).
+	 * @throws IOException Si hay errores en la comunicaci&oacute;n con la TSA. */
+	byte[] send(byte[] request) throws IOException;
+}
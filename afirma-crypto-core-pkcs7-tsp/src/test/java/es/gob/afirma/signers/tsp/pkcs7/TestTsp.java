@@ -2,14 +2,52 @@ package es.gob.afirma.signers.tsp.pkcs7;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
 import java.net.URI;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
 import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.cms.AttributeTable;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.cert.jcajce.JcaCertStore;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.CMSSignedDataGenerator;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoGeneratorBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.bouncycastle.tsp.TSPAlgorithms;
+import org.bouncycastle.tsp.TimeStampRequest;
+import org.bouncycastle.tsp.TimeStampResponseGenerator;
+import org.bouncycastle.tsp.TimeStampToken;
+import org.bouncycastle.tsp.TimeStampTokenGenerator;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
+import com.sun.net.httpserver.HttpServer;
+
 /** Pruebas de sellos de tiempo.
  * @author Tom&aacute;s Garc&iacute;a-Mer&aacute;s */
 class TestTsp {
@@ -47,4 +85,198 @@ class TestTsp {
 		Assertions.assertNotNull(tspToken);
 		System.out.println(new String(tspToken));
 	}
+
+	/** Prueba del sellado de una firma CMS con varios firmantes a trav&eacute;s de un
+	 * transporte que simula localmente una TSA.
+	 * @throws Exception En cualquier error */
+	@SuppressWarnings("static-method")
+	@Test
+	void testAddTimestampWithLocalTransport() throws Exception {
+
+		final KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA"); //$NON-NLS-1$
+		kpg.initialize(2048);
+		final KeyPair keyPair = kpg.generateKeyPair();
+		final X509Certificate tsaCert = createTsaCertificate(keyPair);
+
+		final TimeStampTokenGenerator tokenGenerator = new TimeStampTokenGenerator(
+			new JcaSimpleSignerInfoGeneratorBuilder().build("SHA256withRSA", keyPair.getPrivate(), tsaCert), //$NON-NLS-1$
+			new JcaDigestCalculatorProviderBuilder().build().get(
+				new AlgorithmIdentifier(TSPAlgorithms.SHA1)
+			),
+			new ASN1ObjectIdentifier("1.2.3.4.1") //$NON-NLS-1$
+		);
+		final TimeStampResponseGenerator responseGenerator = new TimeStampResponseGenerator(tokenGenerator, TSPAlgorithms.ALLOWED);
+
+		// TSA local que cuenta las peticiones recibidas
+		final AtomicInteger serial = new AtomicInteger();
+		final TsaTransport localTsa = request -> {
+			try {
+				return responseGenerator.generate(
+					new TimeStampRequest(request),
+					BigInteger.valueOf(serial.incrementAndGet()),
+					new Date()
+				).getEncoded();
+			}
+			catch (final Exception e) {
+				throw new IOException(e);
+			}
+		};
+
+		final CMSTimestamper cmsTsp = new CMSTimestamper(
+			new TsaParams(TSP_REQUIRECERT, null, new URI("http://localhost/tsa"), null, null, null, null), //$NON-NLS-1$
+			localTsa
+		);
+
+		// Firma CMS con varios firmantes
+		final CMSSignedDataGenerator gen = new CMSSignedDataGenerator();
+		final int signersCount = 6;
+		for (int i = 0; i < signersCount; i++) {
+			gen.addSignerInfoGenerator(
+				new JcaSimpleSignerInfoGeneratorBuilder().build(
+					"SHA256withRSA", //$NON-NLS-1$
+					keyPair.getPrivate(),
+					tsaCert
+				)
+			);
+		}
+		gen.addCertificates(new JcaCertStore(Collections.singletonList(tsaCert)));
+		final CMSSignedData signedData = gen.generate(new CMSProcessableByteArray("Hola".getBytes()), false); //$NON-NLS-1$
+
+		final byte[] stamped = cmsTsp.addTimestamp(signedData.getEncoded(), "SHA-256", null); //$NON-NLS-1$
+
+		Assertions.assertEquals(signersCount, serial.get(), "No se ha pedido un sello por firmante"); //$NON-NLS-1$
+
+		final List<SignerInformation> original = new ArrayList<>(signedData.getSignerInfos().getSigners());
+		final List<SignerInformation> result = new ArrayList<>(new CMSSignedData(stamped).getSignerInfos().getSigners());
+		Assertions.assertEquals(original.size(), result.size());
+		for (int i = 0; i < result.size(); i++) {
+			final SignerInformation si = result.get(i);
+			Assertions.assertArrayEquals(original.get(i).getSignature(), si.getSignature(), "Se ha alterado el orden de los firmantes"); //$NON-NLS-1$
+
+			final AttributeTable unsigned = si.getUnsignedAttributes();
+			Assertions.assertNotNull(unsigned);
+			final TimeStampToken token = new TimeStampToken(new CMSSignedData(
+				unsigned.get(new ASN1ObjectIdentifier("1.2.840.113549.1.9.16.2.14")).getAttrValues().getObjectAt(0).toASN1Primitive().getEncoded() //$NON-NLS-1$
+			));
+			Assertions.assertArrayEquals(
+				MessageDigest.getInstance("SHA-256").digest(si.getSignature()), //$NON-NLS-1$
+				token.getTimeStampInfo().getMessageImprintDigest(),
+				"El sello no corresponde a la firma en la que se ha insertado" //$NON-NLS-1$
+			);
+		}
+	}
+
+	/** Comprueba que los transportes HTTP se comparten por configuraci&oacute;n de TSA y que
+	 * solo se conservan los &uacute;ltimos usados.
+	 * @throws Exception En cualquier error */
+	@SuppressWarnings("static-method")
+	@Test
+	void testSharedHttpTransports() throws Exception {
+		final URI url = new URI("http://localhost/tsa"); //$NON-NLS-1$
+		final HttpTsaTransport transport = HttpTsaTransport.getInstance(
+			new TsaParams(TSP_REQUIRECERT, null, url, "usuario", "clave", null, null) //$NON-NLS-1$ //$NON-NLS-2$
+		);
+		Assertions.assertSame(
+			transport,
+			HttpTsaTransport.getInstance(new TsaParams(TSP_REQUIRECERT, null, url, "usuario", "clave", null, null)) //$NON-NLS-1$ //$NON-NLS-2$
+		);
+		Assertions.assertNotSame(
+			transport,
+			HttpTsaTransport.getInstance(new TsaParams(TSP_REQUIRECERT, null, url, "usuario", "otraClave", null, null)) //$NON-NLS-1$ //$NON-NLS-2$
+		);
+
+		// Al superar el maximo de configuraciones se descartan las menos usadas
+		for (int i = 0; i < HttpTsaTransport.MAX_INSTANCES; i++) {
+			HttpTsaTransport.getInstance(new TsaParams(TSP_REQUIRECERT, null, new URI("http://localhost/tsa" + i), null, null, null, null)); //$NON-NLS-1$
+		}
+		Assertions.assertNotSame(
+			transport,
+			HttpTsaTransport.getInstance(new TsaParams(TSP_REQUIRECERT, null, url, "usuario", "clave", null, null)) //$NON-NLS-1$ //$NON-NLS-2$
+		);
+	}
+
+	/** Comprueba que el n&uacute;mero m&aacute;ximo de peticiones simult&aacute;neas a la TSA se
+	 * configura mediante los par&aacute;metros adicionales y forma parte de la configuraci&oacute;n
+	 * que identifica a los transportes compartidos.
+	 * @throws Exception En cualquier error */
+	@SuppressWarnings("static-method")
+	@Test
+	void testMaxConcurrentRequests() throws Exception {
+		final Properties config = new Properties();
+		config.setProperty("tsaURL", "http://localhost/tsa"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		final TsaParams defaultParams = new TsaParams(config);
+		Assertions.assertEquals(TsaParams.DEFAULT_MAX_CONCURRENT_REQUESTS, defaultParams.getTsaMaxConcurrentRequests());
+
+		config.setProperty("tsaMaxConcurrentRequests", "8"); //$NON-NLS-1$ //$NON-NLS-2$
+		final TsaParams params = new TsaParams(config);
+		Assertions.assertEquals(8, params.getTsaMaxConcurrentRequests());
+		Assertions.assertEquals(8, new TsaParams(params.getExtraParams()).getTsaMaxConcurrentRequests());
+
+		Assertions.assertNotSame(
+			HttpTsaTransport.getInstance(defaultParams),
+			HttpTsaTransport.getInstance(params)
+		);
+	}
+
+	/** Comprueba que el receptor de las peticiones de un transporte HTTP compartido solo
+	 * recibe las peticiones de quien lo registr&oacute;.
+	 * @throws Exception En cualquier error */
+	@SuppressWarnings("static-method")
+	@Test
+	void testRequestListenerPerCaller() throws Exception {
+		final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0); //$NON-NLS-1$
+		server.createContext("/tsa", exchange -> { //$NON-NLS-1$
+			exchange.getRequestBody().readAllBytes();
+			final byte[] response = "respuesta".getBytes(); //$NON-NLS-1$
+			exchange.sendResponseHeaders(200, response.length);
+			try (OutputStream os = exchange.getResponseBody()) {
+				os.write(response);
+			}
+		});
+		server.start();
+		try {
+			final HttpTsaTransport shared = HttpTsaTransport.getInstance(new TsaParams(
+				TSP_REQUIRECERT,
+				null,
+				new URI("http://localhost:" + server.getAddress().getPort() + "/tsa"), //$NON-NLS-1$ //$NON-NLS-2$
+				null,
+				null,
+				null,
+				null
+			));
+			final AtomicInteger firstCount = new AtomicInteger();
+			final AtomicInteger secondCount = new AtomicInteger();
+			final TsaTransport first = shared.withRequestListener((url, attempts, elapsed, error) -> firstCount.incrementAndGet());
+			shared.withRequestListener((url, attempts, elapsed, error) -> secondCount.incrementAndGet());
+
+			first.send("peticion".getBytes()); //$NON-NLS-1$
+			shared.send("peticion".getBytes()); //$NON-NLS-1$
+
+			Assertions.assertEquals(1, firstCount.get());
+			Assertions.assertEquals(0, secondCount.get());
+		}
+		finally {
+			server.stop(0);
+		}
+	}
+
+	private static X509Certificate createTsaCertificate(final KeyPair keyPair) throws Exception {
+		final X500Name name = new X500Name("CN=TSA de pruebas"); //$NON-NLS-1$
+		final long now = System.currentTimeMillis();
+		final JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+			name,
+			BigInteger.ONE,
+			new Date(now - 60000),
+			new Date(now + 3600000),
+			name,
+			keyPair.getPublic()
+		);
+		builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(false));
+		builder.addExtension(Extension.extendedKeyUsage, true, new ExtendedKeyUsage(KeyPurposeId.id_kp_timeStamping));
+		final PrivateKey key = keyPair.getPrivate();
+		return new JcaX509CertificateConverter().getCertificate(
+			builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(key)) //$NON-NLS-1$
+		);
+	}
 }
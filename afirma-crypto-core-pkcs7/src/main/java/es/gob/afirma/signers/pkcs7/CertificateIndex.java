@@ -0,0 +1,127 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * You may contact the copyright holder at: soporte.afirma@seap.minhap.es
+ */
+
+package es.gob.afirma.signers.pkcs7;
+
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.ASN1Set;
+import org.bouncycastle.asn1.cms.IssuerAndSerialNumber;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Certificate;
+
+import es.gob.afirma.core.misc.AOUtil;
+import es.gob.afirma.core.misc.CryptoInstancePool;
+
+/** &Iacute;ndice de los certificados de un <i>SignedData</i> por emisor y n&uacute;mero de serie.
+ * <p>
+ *  Cada certificado se decodifica una &uacute;nica vez al construir el &iacute;ndice, de forma que
+ *  localizar el certificado de cada firmante no requiere recorrer de nuevo el conjunto de
+ *  certificados. Una vez construido, el &iacute;ndice puede consultarse desde varios hilos.
+ * </p> */
+final class CertificateIndex {
+
+	private static final Logger LOGGER = Logger.getLogger(CertificateIndex.class.getName());
+
+	private final Map<IssuerSerial, X509Certificate> byIssuerSerial = new HashMap<>();
+	private final Map<BigInteger, X509Certificate> bySerial = new HashMap<>();
+
+	/** Construye el &iacute;ndice de un conjunto de certificados.
+	 * @param certificates Conjunto de certificados del <i>SignedData</i>. Puede ser <code>null</code>. */
+	CertificateIndex(final ASN1Set certificates) {
+		if (certificates == null) {
+			return;
+		}
+		for (final ASN1Encodable element : certificates) {
+			final X509Certificate cert;
+			final Certificate certStructure;
+			try {
+				certStructure = Certificate.getInstance(ASN1Sequence.getInstance(element));
+				cert = CryptoInstancePool.generateCertificate(certStructure.getEncoded());
+			}
+			catch(final Exception e) {
+				LOGGER.severe("Error extrayendo los certificados del Set ASN.1, puede que se haya omitido un elemento valido" + e); //$NON-NLS-1$
+				continue;
+			}
+			final BigInteger serial = cert.getSerialNumber();
+			this.byIssuerSerial.putIfAbsent(new IssuerSerial(certStructure.getIssuer(), serial), cert);
+			this.bySerial.putIfAbsent(serial, cert);
+		}
+	}
+
+	/** Obtiene el certificado identificado por un emisor y n&uacute;mero de serie. Si ning&uacute;n
+	 * certificado coincide con el emisor, se devuelve el primero con el mismo n&uacute;mero de serie.
+	 * @param issuerSerial Emisor y n&uacute;mero de serie del certificado.
+	 * @return Certificado o <code>null</code> si no se encuentra. */
+	X509Certificate getCertificate(final IssuerAndSerialNumber issuerSerial) {
+		final BigInteger serial = issuerSerial.getSerialNumber().getValue();
+		final X509Certificate cert = this.byIssuerSerial.get(new IssuerSerial(issuerSerial.getName(), serial));
+		return cert != null ? cert : this.bySerial.get(serial);
+	}
+
+	/** Obtiene un array con el certificado identificado por un emisor y n&uacute;mero de serie.
+	 * @param issuerSerial Emisor y n&uacute;mero de serie del certificado.
+	 * @return Array con el certificado o array vac&iacute;o si no se encuentra. */
+	X509Certificate[] searchCert(final IssuerAndSerialNumber issuerSerial) {
+		final X509Certificate cert = getCertificate(issuerSerial);
+		if (cert == null) {
+			LOGGER.severe("El certificados pedido no estaba en la lista, se devolvera un array vacio"); //$NON-NLS-1$
+			return new X509Certificate[0];
+		}
+		return new X509Certificate[] { cert };
+	}
+
+	/** Obtiene el nombre com&uacute;n (CN) del certificado identificado por un emisor y n&uacute;mero
+	 * de serie. De no existir el CN, devolver&aacute; el nombre de la unidad organizativa.
+	 * @param issuerSerial Emisor y n&uacute;mero de serie del certificado.
+	 * @return Nombre com&uacute;n o cadena vac&iacute;a si no se encuentra el certificado. */
+	String searchName(final IssuerAndSerialNumber issuerSerial) {
+		final X509Certificate cert = getCertificate(issuerSerial);
+		if (cert == null) {
+			LOGGER.info("No se ha encontrado el certificado indicado, se devolvera una cadena vacia"); //$NON-NLS-1$
+			return ""; //$NON-NLS-1$
+		}
+		return AOUtil.getCN(cert);
+	}
+
+	/** Clave del &iacute;ndice: nombre del emisor y n&uacute;mero de serie. */
+	private static final class IssuerSerial {
+
+		private final X500Name issuer;
+		private final BigInteger serial;
+
+		IssuerSerial(final X500Name issuer, final BigInteger serial) {
+			this.issuer = issuer;
+			this.serial = serial;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * this.issuer.hashCode() + this.serial.hashCode();
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof IssuerSerial)) {
+				return false;
+			}
+			final IssuerSerial other = (IssuerSerial) obj;
+			return this.serial.equals(other.serial) && this.issuer.equals(other.issuer);
+		}
+	}
+}
@@ -10,11 +10,14 @@
 package es.gob.afirma.signers.pkcs7;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Enumeration;
 import java.util.logging.Logger;
 
 import org.bouncycastle.asn1.ASN1InputStream;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1OctetString;
 import org.bouncycastle.asn1.ASN1Sequence;
 import org.bouncycastle.asn1.ASN1Set;
 import org.bouncycastle.asn1.ASN1TaggedObject;
@@ -46,32 +49,34 @@ public final class ObtainContentSignedData {
 	 * @throws AOInvalidSignatureFormatException Cuando los datos proporcionados no tienen la estructura
 	 *                                  b&aacute;sica de firma ASN.1. */
 	public static byte[] obtainData(final byte[] data) throws AOInvalidSignatureFormatException {
-		final ASN1ObjectIdentifier doi;
-		final ASN1TaggedObject doj;
+		final ContentInfo contentInfo;
 		try {
 			final ASN1Sequence dsq;
 			try (ASN1InputStream is = new ASN1InputStream(data)) {
 				dsq  = (ASN1Sequence) is.readObject();
 			}
-
-			final Enumeration<?> e = dsq.getObjects();
-			// Elementos que contienen los elementos OID Data
-			doi = (ASN1ObjectIdentifier) e.nextElement();
-			// Contenido a obtener informacion
-			doj = (ASN1TaggedObject) e.nextElement();
+			contentInfo = ContentInfo.getInstance(dsq);
 		}
 		catch (final Exception e) {
 			throw new AOInvalidSignatureFormatException("Error al parsear la firma ASN.1", e); //$NON-NLS-1$
 		}
+		return obtainData(contentInfo);
+	}
+
+	/** Obtiene el contenido firmado de un tipo Signed Data ya decodificado, tanto en CADES como en CMS.
+	 * Si la firma no contiene los datos, devuelve <code>null</code>.
+	 * @param contentInfo Estructura <i>ContentInfo</i> de la firma.
+	 * @return El contenido firmado o {@code null} si no es una firma con contenido. */
+	public static byte[] obtainData(final ContentInfo contentInfo) {
 
 		// buscamos si es signedData
-		if (doi.equals(PKCSObjectIdentifiers.signedData)) {
+		if (PKCSObjectIdentifiers.signedData.equals(contentInfo.getContentType())) {
 			// obtenemos el signed Data
-			final SignedData sd = SignedData.getInstance(doj.getBaseObject());
+			final SignedData sd = SignedData.getInstance(contentInfo.getContent());
 			final ContentInfo ci = sd.getEncapContentInfo();
 			// obtenemos el contenido si lo tiene.
 			if (ci.getContent() != null) {
-				return ((DEROctetString) ci.getContent()).getOctets();
+				return ASN1OctetString.getInstance(ci.getContent()).getOctets();
 			}
 			LOGGER.info("No existe contenido en esta firma. Se devolvera null"); //$NON-NLS-1$
 		}
@@ -82,6 +87,32 @@ public final class ObtainContentSignedData {
 		return null;
 	}
 
+	/** Obtiene el contenido firmado de un tipo Signed Data, tanto en CADES como en CMS, leyendo la
+	 * firma como un flujo de datos y copiando el contenido a otro flujo seg&uacute;n se lee, sin
+	 * cargarlo en memoria.
+	 * @param signature Flujo con la firma. No se cierra.
+	 * @param content Flujo al que se copia el contenido firmado. No se cierra.
+	 * @return {@code true} si la firma contiene los datos firmados, {@code false} en caso contrario.
+	 * @throws AOInvalidSignatureFormatException Cuando los datos proporcionados no tienen la estructura
+	 *                                           b&aacute;sica de firma ASN.1.
+	 * @throws IOException Si los datos no son un <i>SignedData</i> o hay errores en la lectura de la
+	 *                     firma o la escritura del contenido. */
+	public static boolean obtainData(final InputStream signature,
+			                         final OutputStream content) throws AOInvalidSignatureFormatException,
+	                                                                    IOException {
+		final StreamedSignedData sd;
+		try {
+			sd = StreamedSignedData.read(signature, content);
+		}
+		catch (final RuntimeException e) {
+			throw new AOInvalidSignatureFormatException("Error al parsear la firma ASN.1", e); //$NON-NLS-1$
+		}
+		if (!sd.isContentPresent()) {
+			LOGGER.info("No existe contenido en esta firma"); //$NON-NLS-1$
+		}
+		return sd.isContentPresent();
+	}
+
 	/** Obtiene la huella digital de los datos firmados en una firma CMS/CAdES.
 	 * La huella se obtenida estar&aacute; generada con el algoritmo de huella indicado, si este
 	 * algoritmo es el que se utiliz&oacute; en alguna de las operaci&oacute;nes de firma con la
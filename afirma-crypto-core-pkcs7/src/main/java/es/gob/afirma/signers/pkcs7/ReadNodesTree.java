@@ -11,7 +11,7 @@ package es.gob.afirma.signers.pkcs7;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.security.cert.CertificateFactory;
+import java.io.InputStream;
 import java.security.cert.X509Certificate;
 import java.text.ParseException;
 import java.util.ArrayList;
@@ -20,24 +20,21 @@ import java.util.Date;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.bouncycastle.asn1.ASN1Encodable;
 import org.bouncycastle.asn1.ASN1GeneralizedTime;
-import org.bouncycastle.asn1.ASN1InputStream;
-import org.bouncycastle.asn1.ASN1Integer;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.ASN1Sequence;
 import org.bouncycastle.asn1.ASN1Set;
-import org.bouncycastle.asn1.ASN1TaggedObject;
 import org.bouncycastle.asn1.ASN1UTCTime;
 import org.bouncycastle.asn1.cms.Attribute;
 import org.bouncycastle.asn1.cms.CMSAttributes;
 import org.bouncycastle.asn1.cms.IssuerAndSerialNumber;
-import org.bouncycastle.asn1.cms.SignedData;
 import org.bouncycastle.asn1.cms.SignerInfo;
 import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
 
-import es.gob.afirma.core.misc.AOUtil;
 import es.gob.afirma.core.signers.AOSimpleSignInfo;
 import es.gob.afirma.core.util.tree.AOTreeModel;
 import es.gob.afirma.core.util.tree.AOTreeNode;
@@ -48,6 +45,9 @@ public final class ReadNodesTree {
 
     private static final Logger LOGGER = Logger.getLogger(ReadNodesTree.class.getName());
 
+    /** N&uacute;mero m&iacute;nimo de firmantes a partir del cual sus ramas se procesan en paralelo. */
+    private static final int PARALLEL_THRESHOLD = 8;
+
     private String stringRetorn = ""; //$NON-NLS-1$
 
     private int[] seleccionados;
@@ -76,66 +76,47 @@ public final class ReadNodesTree {
      * @return Un modelo de &aacute;rbol.
      * @throws IOException Si ocurre alg&uacute;n problema leyendo o escribiendo los datos */
     public AOTreeModel readNodesTree(final byte[] data, final boolean asSimpleSignInfo) throws IOException {
+    	return readNodesTree(new ByteArrayInputStream(data), asSimpleSignInfo);
+    }
 
-        // LEEMOS EL FICHERO QUE NOS INTRODUCEN
-    	final ASN1Sequence dsq;
-    	try (ASN1InputStream is = new ASN1InputStream(data)) {
-    		dsq = (ASN1Sequence) is.readObject();
-    	}
-        final Enumeration<?> contentsData = dsq.getObjects();
-
-        // Elementos que contienen los elementos OID SignedData
-        contentsData.nextElement();
-
-        // Contenido de SignedData
-        final ASN1TaggedObject doj = (ASN1TaggedObject) contentsData.nextElement();
-        final ASN1Sequence contentSignedData = (ASN1Sequence) doj.getBaseObject();
-
-        // Raiz de la secuencia de SignerInfo
-        // Obtenemos los signerInfos del SignedData
-        ASN1Set signerInfosSd = null;
-        ASN1Set certificates = null;
-        try {
-            final SignedData sd = SignedData.getInstance(contentSignedData);
-            signerInfosSd = sd.getSignerInfos();
-            certificates = sd.getCertificates();
-        }
-        catch (final Exception e) {
-            LOGGER.severe("Error obteniendo los SignerInfos del SignedData: " + e); //$NON-NLS-1$
-        }
+    /** Genera el &aacute;rbol que representa las firmas leyendo la firma como un flujo de datos.
+     * El contenido firmado que encapsule la firma se descarta seg&uacute;n se lee, por lo que no
+     * llega a cargarse en memoria.
+     * @param signature Flujo con la firma. No se cierra.
+     * @param asSimpleSignInfo Indica si deben extraerse informacion b&aacute;sica de la firma o solo los nombres.
+     * @return Un modelo de &aacute;rbol.
+     * @throws IOException Si ocurre alg&uacute;n problema leyendo los datos o si no son una firma <i>SignedData</i>. */
+    public AOTreeModel readNodesTree(final InputStream signature, final boolean asSimpleSignInfo) throws IOException {
+        // Obtenemos los signerInfos y los certificados del SignedData sin cargar el contenido
+        return readNodesTree(StreamedSignedData.read(signature, null), asSimpleSignInfo);
+    }
+
+    /** Genera el &aacute;rbol que representa las firmas de un <i>SignedData</i> ya le&iacute;do.
+     * @param sd <i>SignedData</i> le&iacute;do como flujo.
+     * @param asSimpleSignInfo Indica si deben extraerse informacion b&aacute;sica de la firma o solo los nombres.
+     * @return Un modelo de &aacute;rbol. */
+    public AOTreeModel readNodesTree(final StreamedSignedData sd, final boolean asSimpleSignInfo) {
+
+        final ASN1Set signerInfos = sd.getSignerInfos();
 
         // Para la creacion del arbol
         final AOTreeNode raiz = new AOTreeNode("Datos"); //$NON-NLS-1$
 
-        // introducimos el nuevo SignerInfo del firmante actual.
-
-        if (asSimpleSignInfo && signerInfosSd != null) {
-            for (int i = 0; i < signerInfosSd.size(); i++) {
-                final ASN1Sequence atribute = (ASN1Sequence) signerInfosSd.getObjectAt(i);
-                final IssuerAndSerialNumber issuerSerial = IssuerAndSerialNumber.getInstance(atribute.getObjectAt(1));
-                final X509Certificate[] nameSigner = searchCert(certificates, issuerSerial.getSerialNumber());
-                final SignerInfo si = SignerInfo.getInstance(atribute);
-                final Date signingTime = getSigningTime(si);
-                final AOSimpleSignInfo aossi = new AOSimpleSignInfo(nameSigner, signingTime);
-                aossi.setPkcs1(si.getEncryptedDigest().getOctets());
-                aossi.setSignAlgorithm(getSignatureAlgorithm(si));
-            	final AOTreeNode rama = new AOTreeNode(aossi);
-                this.listaCert.add(nameSigner);
-                getUnsignedAtributes(true, si.getUnauthenticatedAttributes(), rama, certificates);
-                raiz.add(rama);
-            }
+        // Los certificados se decodifican una unica vez y las ramas de cada firmante, que son
+        // independientes entre si, se procesan en paralelo cuando hay suficientes firmantes
+        final CertificateIndex certIndex = new CertificateIndex(sd.getCertificates());
+        IntStream indexes = IntStream.range(0, signerInfos.size());
+        if (signerInfos.size() >= PARALLEL_THRESHOLD) {
+            indexes = indexes.parallel();
         }
-        else if (signerInfosSd != null) {
-            for (int i = 0; i < signerInfosSd.size(); i++) {
-                final ASN1Sequence atribute = (ASN1Sequence) signerInfosSd.getObjectAt(i);
-                final IssuerAndSerialNumber issuerSerial = IssuerAndSerialNumber.getInstance(atribute.getObjectAt(1));
-                final String nameSigner = searchName(certificates, issuerSerial.getSerialNumber());
-                final SignerInfo si = SignerInfo.getInstance(atribute);
-                final AOTreeNode rama = new AOTreeNode(nameSigner);
-                this.lista.add(nameSigner);
-                getUnsignedAtributes(false, si.getUnauthenticatedAttributes(), rama, certificates);
-                raiz.add(rama);
-            }
+        final List<Branch> branches = indexes
+    		.mapToObj(i -> readBranch((ASN1Sequence) signerInfos.getObjectAt(i), asSimpleSignInfo, certIndex))
+    		.collect(Collectors.toList());
+
+        for (final Branch branch : branches) {
+            raiz.add(branch.node);
+            this.lista.addAll(branch.names);
+            this.listaCert.addAll(branch.certs);
         }
 
         return new AOTreeModel(raiz);
@@ -182,17 +163,65 @@ public final class ReadNodesTree {
     	return oidString;
     }
 
+    /** Genera la rama de un firmante y de todas sus contrafirmas.
+     * @param signerInfo <i>SignerInfo</i> del firmante.
+     * @param withCertificates <code>true</code> para hacer la obtenci&oacute;n con certificados, <code>false</code>
+     *                         en caso contrario.
+     * @param certIndex &Iacute;ndice de los certificados de la firma.
+     * @return Rama del firmante. */
+    private static Branch readBranch(final ASN1Sequence signerInfo,
+    		                         final boolean withCertificates,
+    		                         final CertificateIndex certIndex) {
+    	final Branch branch = new Branch();
+    	branch.node = createNode(signerInfo, withCertificates, certIndex, branch);
+    	return branch;
+    }
+
+    /** Crea el nodo de un firmante, registra su nombre o certificado en la rama y a&ntilde;ade
+     * como hijos los nodos de sus contrafirmas.
+     * @param signerInfo <i>SignerInfo</i> del firmante.
+     * @param withCertificates <code>true</code> para hacer la obtenci&oacute;n con certificados, <code>false</code>
+     *                         en caso contrario.
+     * @param certIndex &Iacute;ndice de los certificados de la firma.
+     * @param branch Rama en la que se registran los firmantes en el orden en el que se recorren.
+     * @return Nodo del firmante. */
+    private static AOTreeNode createNode(final ASN1Sequence signerInfo,
+    		                             final boolean withCertificates,
+    		                             final CertificateIndex certIndex,
+    		                             final Branch branch) {
+        final IssuerAndSerialNumber issuerSerial = IssuerAndSerialNumber.getInstance(signerInfo.getObjectAt(1));
+        final SignerInfo si = SignerInfo.getInstance(signerInfo);
+        final AOTreeNode node;
+        if (withCertificates) {
+            final X509Certificate[] nameSigner = certIndex.searchCert(issuerSerial);
+            final Date signingTime = getSigningTime(si);
+            final AOSimpleSignInfo aossi = new AOSimpleSignInfo(nameSigner, signingTime);
+            aossi.setPkcs1(si.getEncryptedDigest().getOctets());
+            aossi.setSignAlgorithm(getSignatureAlgorithm(si));
+            node = new AOTreeNode(aossi);
+            branch.certs.add(nameSigner);
+        }
+        else {
+            final String nameSigner = certIndex.searchName(issuerSerial);
+            node = new AOTreeNode(nameSigner);
+            branch.names.add(nameSigner);
+        }
+        getUnsignedAtributes(withCertificates, si.getUnauthenticatedAttributes(), node, certIndex, branch);
+        return node;
+    }
+
     /** Obtiene las contrafirmas.
      * @param withCertificates <code>true</code> para hacer la obtenci&oacute;n con certificados, <code>false</code>
      *                         en caso contrario.
      * @param signerInfouAtrib Atributos en los que puede estar la contrafirma.
      * @param ramahija Rama hija donde buscar los siguientes nodos.
-     * @param certificates Certificados. */
-    private void getUnsignedAtributes(final boolean withCertificates,
-    		                          final ASN1Set signerInfouAtrib,
-    		                          final AOTreeNode ramahija,
-    		                          final ASN1Set certificates) {
-        AOTreeNode rama2;
+     * @param certIndex &Iacute;ndice de los certificados de la firma.
+     * @param branch Rama en la que se registran los firmantes en el orden en el que se recorren. */
+    private static void getUnsignedAtributes(final boolean withCertificates,
+    		                                 final ASN1Set signerInfouAtrib,
+    		                                 final AOTreeNode ramahija,
+    		                                 final CertificateIndex certIndex,
+    		                                 final Branch branch) {
         if (signerInfouAtrib != null) {
             final Enumeration<?> eAtributes = signerInfouAtrib.getObjects();
             while (eAtributes.hasMoreElements()) {
@@ -203,27 +232,7 @@ public final class ReadNodesTree {
                     while (eAtributesData.hasMoreElements()) {
                         final Object obj = eAtributesData.nextElement();
                         if (obj instanceof ASN1Sequence) {
-                            final ASN1Sequence atrib = (ASN1Sequence) obj;
-                            final IssuerAndSerialNumber issuerSerial = IssuerAndSerialNumber.getInstance(atrib.getObjectAt(1));
-                            final SignerInfo si = SignerInfo.getInstance(atrib);
-                            if (withCertificates) {
-                                final X509Certificate[] nameSigner = searchCert(certificates, issuerSerial.getSerialNumber());
-                                final Date signingTime = getSigningTime(si);
-                                final AOSimpleSignInfo aossi = new AOSimpleSignInfo(nameSigner, signingTime);
-                                aossi.setPkcs1(si.getEncryptedDigest().getOctets());
-                                aossi.setSignAlgorithm(getSignatureAlgorithm(si));
-                                rama2 = new AOTreeNode(aossi);
-                                this.listaCert.add(nameSigner);
-                                ramahija.add(rama2);
-                                getUnsignedAtributes(true, si.getUnauthenticatedAttributes(), rama2, certificates);
-                            }
-                            else {
-                                final String nameSigner = searchName(certificates, issuerSerial.getSerialNumber());
-                                rama2 = new AOTreeNode(nameSigner);
-                                this.lista.add(nameSigner);
-                                ramahija.add(rama2);
-                                getUnsignedAtributes(false, si.getUnauthenticatedAttributes(), rama2, certificates);
-                            }
+                            ramahija.add(createNode((ASN1Sequence) obj, withCertificates, certIndex, branch));
                         }
                     }
                 }
@@ -295,56 +304,6 @@ public final class ReadNodesTree {
         return simplificado;
     }
 
-    /** A partir de un numero de serie de un certificado,
-     * devuelve su nombre com&uacute;n (CN). De no existir el CN,
-     * devolver&aacute; el nombre de la unidad organizativa.
-     * @param certificates Certificados de los firmantes.
-     * @param serialNumber N&uacute;mero de serie del certificado a firmar.
-     * @return El nombre com&uacute;n. */
-    private static String searchName(final ASN1Set certificates, final ASN1Integer serialNumber) {
-        final Enumeration<?> certSet = certificates.getObjects();
-        while (certSet.hasMoreElements()) {
-            final X509Certificate c;
-            try {
-                c = (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(new ByteArrayInputStream(((ASN1Sequence) certSet.nextElement()).getEncoded())); //$NON-NLS-1$
-            }
-            catch(final Exception e) {
-                LOGGER.severe("Error extrayendo los certificados del Set ASN.1, puede que se haya omitido un elemento valido" + e); //$NON-NLS-1$
-                continue;
-            }
-            if (c.getSerialNumber().equals(serialNumber.getValue())) {
-                return AOUtil.getCN(c);
-            }
-        }
-        LOGGER.info("No se ha encontrado el certificado indicado, se devolvera una cadena vacia"); //$NON-NLS-1$
-        return ""; //$NON-NLS-1$
-    }
-
-    /** A partir de un numero de serie de un certificado, devuelve un array con el certificado y su cadena de confianza.
-     * @param certificates Certificados de los firmantes.
-     * @param serialNumber N&uacute;mero de serie del certificado a firmar.
-     * @return El certificado (en la posici&oacute;n 0 y su cadena de confianza en orden). */
-    private static X509Certificate[] searchCert(final ASN1Set certificates, final ASN1Integer serialNumber) {
-    	if (certificates != null) {
-    		final Enumeration<?> certSet = certificates.getObjects();
-	        while (certSet.hasMoreElements()) {
-	            final X509Certificate c;
-	            try {
-	                c = (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(new ByteArrayInputStream(((ASN1Sequence) certSet.nextElement()).getEncoded())); //$NON-NLS-1$
-	            }
-	            catch(final Exception e) {
-	                LOGGER.severe("Error extrayendo los certificados del Set ASN.1, puede que se haya omitido un elemento valido" + e); //$NON-NLS-1$
-	                continue;
-	            }
-	            if (c.getSerialNumber().equals(serialNumber.getValue())) {
-	                return new X509Certificate[] { c };
-	            }
-	        }
-    	}
-        LOGGER.severe("El certificados pedido no estaba en la lista, se devolvera un array vacio"); //$NON-NLS-1$
-        return new X509Certificate[0];
-    }
-
     private static Date getSigningTime(final SignerInfo si) {
         if (si.getAuthenticatedAttributes() != null) {
             final Enumeration<?> eAtributes = si.getAuthenticatedAttributes().getObjects();
@@ -380,4 +339,12 @@ public final class ReadNodesTree {
         }
         return null;
     }
+
+    /** Rama del &aacute;rbol de firmantes correspondiente a un firmante y sus contrafirmas, junto
+     * con los nombres o certificados de sus firmantes en el orden en el que se recorren. */
+    private static final class Branch {
+    	AOTreeNode node;
+    	final List<String> names = new ArrayList<>();
+    	final List<X509Certificate[]> certs = new ArrayList<>();
+    }
 }
@@ -0,0 +1,155 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * You may contact the copyright holder at: soporte.afirma@seap.minhap.es
+ */
+
+package es.gob.afirma.signers.pkcs7;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1OctetStringParser;
+import org.bouncycastle.asn1.ASN1SequenceParser;
+import org.bouncycastle.asn1.ASN1Set;
+import org.bouncycastle.asn1.ASN1SetParser;
+import org.bouncycastle.asn1.ASN1StreamParser;
+import org.bouncycastle.asn1.BERTags;
+import org.bouncycastle.asn1.cms.ContentInfoParser;
+import org.bouncycastle.asn1.cms.SignedDataParser;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+
+/** Lectura en flujo de un <i>SignedData</i> de CMS/CAdES.
+ * <p>
+ *  El contenido encapsulado, que puede ser de gran tama&ntilde;o, no llega a cargarse en memoria:
+ *  se descarta o se copia a un flujo de salida seg&uacute;n se lee. &Uacute;nicamente se
+ *  construyen como objetos ASN.1 los algoritmos de huella, los certificados y la
+ *  informaci&oacute;n de los firmantes, por lo que el consumo de memoria no depende del
+ *  tama&ntilde;o de los datos firmados.
+ * </p> */
+public final class StreamedSignedData {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final ASN1Set digestAlgorithms;
+	private final ASN1ObjectIdentifier contentType;
+	private final boolean contentPresent;
+	private final ASN1Set certificates;
+	private final ASN1Set signerInfos;
+
+	private StreamedSignedData(final ASN1Set digestAlgorithms,
+			                   final ASN1ObjectIdentifier contentType,
+			                   final boolean contentPresent,
+			                   final ASN1Set certificates,
+			                   final ASN1Set signerInfos) {
+		this.digestAlgorithms = digestAlgorithms;
+		this.contentType = contentType;
+		this.contentPresent = contentPresent;
+		this.certificates = certificates;
+		this.signerInfos = signerInfos;
+	}
+
+	/** Lee un <i>SignedData</i> de un flujo de datos.
+	 * @param signature Flujo con la firma. No se cierra.
+	 * @param content Flujo al que copiar el contenido encapsulado seg&uacute;n se lee o
+	 *                <code>null</code> para descartarlo.
+	 * @return Estructura del <i>SignedData</i> sin su contenido encapsulado.
+	 * @throws IOException Si los datos no son un <i>SignedData</i> o hay errores en su lectura. */
+	public static StreamedSignedData read(final InputStream signature,
+			                              final OutputStream content) throws IOException {
+
+		final ContentInfoParser contentInfo;
+		final SignedDataParser signedData;
+		try {
+			contentInfo = new ContentInfoParser(
+				(ASN1SequenceParser) new ASN1StreamParser(signature).readObject()
+			);
+			if (!PKCSObjectIdentifiers.signedData.equals(contentInfo.getContentType())) {
+				throw new IOException("Los datos no son un SignedData de CMS: " + contentInfo.getContentType()); //$NON-NLS-1$
+			}
+			signedData = SignedDataParser.getInstance(contentInfo.getContent(BERTags.SEQUENCE));
+		}
+		catch (final ClassCastException | IllegalArgumentException | NullPointerException e) {
+			throw new IOException("Los datos no son un SignedData de CMS: " + e, e); //$NON-NLS-1$
+		}
+
+		// Los elementos del SignedData deben leerse en orden
+		signedData.getVersion();
+		final ASN1Set digestAlgorithms = ASN1Set.getInstance(signedData.getDigestAlgorithms().toASN1Primitive());
+
+		final ContentInfoParser encapContentInfo = signedData.getEncapContentInfo();
+		final ASN1ObjectIdentifier contentType = encapContentInfo.getContentType();
+		final ASN1Encodable encapContent = encapContentInfo.getContent(BERTags.OCTET_STRING);
+		if (encapContent instanceof ASN1OctetStringParser) {
+			try (InputStream is = ((ASN1OctetStringParser) encapContent).getOctetStream()) {
+				final byte[] buffer = new byte[BUFFER_SIZE];
+				int n;
+				while ((n = is.read(buffer)) != -1) {
+					if (content != null) {
+						content.write(buffer, 0, n);
+					}
+				}
+			}
+		}
+		else if (encapContent != null && content != null) {
+			// Contenido que no se ha codificado como OCTET STRING (PKCS#7)
+			content.write(encapContent.toASN1Primitive().getEncoded());
+		}
+
+		final ASN1SetParser certificatesParser = signedData.getCertificates();
+		final ASN1Set certificates = certificatesParser != null ?
+			ASN1Set.getInstance(certificatesParser.toASN1Primitive()) :
+				null;
+
+		final ASN1SetParser crlsParser = signedData.getCrls();
+		if (crlsParser != null) {
+			crlsParser.toASN1Primitive();
+		}
+
+		final ASN1Set signerInfos = ASN1Set.getInstance(signedData.getSignerInfos().toASN1Primitive());
+
+		return new StreamedSignedData(
+			digestAlgorithms,
+			contentType,
+			encapContent != null,
+			certificates,
+			signerInfos
+		);
+	}
+
+	/** Obtiene los algoritmos de huella declarados en el <i>SignedData</i>.
+	 * @return Conjunto de algoritmos de huella. */
+	public ASN1Set getDigestAlgorithms() {
+		return this.digestAlgorithms;
+	}
+
+	/** Obtiene el tipo del contenido encapsulado.
+	 * @return OID del tipo de contenido. */
+	public ASN1ObjectIdentifier getContentType() {
+		return this.contentType;
+	}
+
+	/** Indica si el <i>SignedData</i> encapsula el contenido firmado.
+	 * @return <code>true</code> si la firma contiene los datos firmados, <code>false</code> en caso contrario. */
+	public boolean isContentPresent() {
+		return this.contentPresent;
+	}
+
+	/** Obtiene el conjunto de certificados del <i>SignedData</i>.
+	 * @return Conjunto de certificados o <code>null</code> si no los incluye. */
+	public ASN1Set getCertificates() {
+		return this.certificates;
+	}
+
+	/** Obtiene la informaci&oacute;n de los firmantes del <i>SignedData</i>.
+	 * @return Conjunto de <i>SignerInfo</i>. */
+	public ASN1Set getSignerInfos() {
+		return this.signerInfos;
+	}
+}
@@ -3,10 +3,31 @@ package es.gob.afirma.signers.pkcs7;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaCertStore;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.CMSSignedDataGenerator;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.cms.jcajce.JcaSignerInfoGeneratorBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import es.gob.afirma.core.signers.AOSimpleSignInfo;
 import es.gob.afirma.core.util.tree.AOTreeModel;
 import es.gob.afirma.core.util.tree.AOTreeNode;
 
@@ -79,6 +100,75 @@ final class TestGetSignersStructure {
 		System.out.println("=========================="); //$NON-NLS-1$
 	}
 
+	/** Prueba a extraer los nodos de una firma con muchos firmantes, cuyas ramas se procesan
+	 * en paralelo, comprobando que se conserva su orden.
+	 * @throws Exception Cuando ocurre cualquier error. */
+	@SuppressWarnings("static-method")
+	@Test
+	void testGetStructureManySigners() throws Exception {
+
+		final int signersCount = 40;
+		final int certsCount = 3;
+
+		final KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC"); //$NON-NLS-1$
+		kpg.initialize(256);
+
+		final CMSSignedDataGenerator gen = new CMSSignedDataGenerator();
+		final List<X509Certificate> certs = new ArrayList<>();
+		final List<ContentSigner> signers = new ArrayList<>();
+		for (int i = 0; i < certsCount; i++) {
+			final KeyPair kp = kpg.generateKeyPair();
+			final X500Name name = new X500Name("CN=Firmante " + i); //$NON-NLS-1$
+			final ContentSigner signer = new JcaContentSignerBuilder("SHA256withECDSA").build(kp.getPrivate()); //$NON-NLS-1$
+			certs.add(new JcaX509CertificateConverter().getCertificate(
+				new JcaX509v3CertificateBuilder(
+					name,
+					BigInteger.valueOf(i + 1),
+					new Date(),
+					new Date(System.currentTimeMillis() + 3600000),
+					name,
+					kp.getPublic()
+				).build(signer)
+			));
+			signers.add(signer);
+		}
+		for (int i = 0; i < signersCount; i++) {
+			gen.addSignerInfoGenerator(
+				new JcaSignerInfoGeneratorBuilder(new JcaDigestCalculatorProviderBuilder().build())
+					.build(signers.get(i % certsCount), certs.get(i % certsCount))
+			);
+		}
+		gen.addCertificates(new JcaCertStore(certs));
+		final byte[] data = gen.generate(new CMSProcessableByteArray("Hola Mundo!!".getBytes()), true).getEncoded(); //$NON-NLS-1$
+
+		final AOTreeNode namesRoot = (AOTreeNode) new ReadNodesTree().readNodesTree(data, false).getRoot();
+		final AOTreeNode certsRoot = (AOTreeNode) new ReadNodesTree().readNodesTree(data, true).getRoot();
+		Assertions.assertEquals(signersCount, namesRoot.getChildCount());
+		Assertions.assertEquals(signersCount, certsRoot.getChildCount());
+
+		// Los SignerInfo se codifican como SET DER, asi que su orden es el de la codificacion
+		final List<Integer> expectedNodes = new ArrayList<>();
+		int i = 0;
+		for (final SignerInformation si : new CMSSignedData(data).getSignerInfos().getSigners()) {
+			final int certIndex = si.getSID().getSerialNumber().intValue() - 1;
+			Assertions.assertEquals("Firmante " + certIndex, namesRoot.getChildAt(i).getUserObject()); //$NON-NLS-1$
+			Assertions.assertEquals(
+				certs.get(certIndex),
+				((AOSimpleSignInfo) certsRoot.getChildAt(i).getUserObject()).getCerts()[0]
+			);
+			if (certIndex == 1) {
+				expectedNodes.add(Integer.valueOf(i));
+			}
+			i++;
+		}
+
+		final int[] nodes = new ReadNodesTree().readNodesFromSigners(new String[] { "Firmante 1" }, data); //$NON-NLS-1$
+		Assertions.assertEquals(expectedNodes.size(), nodes.length);
+		for (int j = 0; j < nodes.length; j++) {
+			Assertions.assertEquals(expectedNodes.get(j).intValue(), nodes[j]);
+		}
+	}
+
 	private static void printTreeBranch(final AOTreeNode node, final int lv) {
 
 		// Escalonamos el nodo
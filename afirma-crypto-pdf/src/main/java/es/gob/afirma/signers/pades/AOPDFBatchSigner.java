@@ -0,0 +1,495 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * You may contact the copyright holder at: soporte.afirma@seap.minhap.es
+ */
+
+package es.gob.afirma.signers.pades;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import es.gob.afirma.core.AOException;
+import es.gob.afirma.core.signers.AOPkcs1Signer;
+import es.gob.afirma.core.signers.AOSignConstants;
+
+/** Firmador por lotes de documentos PDF en formato PAdES con una misma clave.
+ * <p>
+ *  La firma de cada documento se divide en las mismas fases que la firma trif&aacute;sica:
+ * </p>
+ * <ol>
+ *  <li>Preparaci&oacute;n del PDF y c&aacute;lculo de la huella de los datos firmados (prefirma).</li>
+ *  <li>Firma PKCS#1 de los atributos firmados.</li>
+ *  <li>Composici&oacute;n de la firma e inserci&oacute;n en el PDF (postfirma).</li>
+ * </ol>
+ * <p>
+ *  La prefirma y la postfirma de los distintos documentos se ejecutan en paralelo sobre un
+ *  conjunto acotado de hilos, mientras que todas las firmas PKCS#1 se realizan, una tras otra,
+ *  desde un &uacute;nico hilo, de forma que el almac&eacute;n de claves (por ejemplo, un HSM) no
+ *  recibe operaciones concurrentes. El n&uacute;mero de documentos en proceso simult&aacute;neamente
+ *  tambi&eacute;n est&aacute; acotado, para limitar el consumo de memoria con lotes muy grandes.
+ * </p>
+ * <p>
+ *  El error en la firma de un documento no interrumpe la del resto del lote, sino que se
+ *  informa en el resultado de ese documento.
+ * </p> */
+public final class AOPDFBatchSigner {
+
+	private static final Logger LOGGER = Logger.getLogger(AOPDFBatchSigner.class.getName());
+
+	/** N&uacute;mero de hilos usados para la preparaci&oacute;n y la postfirma de los documentos. */
+	private final int parallelism;
+
+	/** N&uacute;mero m&aacute;ximo de documentos en proceso simult&aacute;neamente. */
+	private final int maxInFlight;
+
+	/** Crea un firmador por lotes que usa tantos hilos como procesadores disponibles. */
+	public AOPDFBatchSigner() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/** Crea un firmador por lotes que procesa simult&aacute;neamente hasta el doble de
+	 * documentos que hilos de trabajo.
+	 * @param parallelism N&uacute;mero de hilos usados para la preparaci&oacute;n y la postfirma
+	 *                    de los documentos. */
+	public AOPDFBatchSigner(final int parallelism) {
+		this(parallelism, parallelism * 2);
+	}
+
+	/** Crea un firmador por lotes.
+	 * @param parallelism N&uacute;mero de hilos usados para la preparaci&oacute;n y la postfirma
+	 *                    de los documentos.
+	 * @param maxInFlight N&uacute;mero m&aacute;ximo de documentos en proceso simult&aacute;neamente. */
+	public AOPDFBatchSigner(final int parallelism, final int maxInFlight) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("El numero de hilos debe ser mayor que cero: " + parallelism); //$NON-NLS-1$
+		}
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("El numero de documentos simultaneos debe ser mayor que cero: " + maxInFlight); //$NON-NLS-1$
+		}
+		this.parallelism = parallelism;
+		this.maxInFlight = maxInFlight;
+	}
+
+	/** Firma en formato PAdES un lote de documentos PDF en memoria.
+	 * @param pdfs Documentos PDF a firmar.
+	 * @param signAlgorithm Algoritmo a usar para la firma.
+	 * @param key Clave privada a usar para firmar.
+	 * @param certChain Cadena de certificados del firmante.
+	 * @param xParams Par&aacute;metros adicionales para la firma (<a href="doc-files/extraparams.html">detalle</a>),
+	 *                comunes a todos los documentos.
+	 * @return Resultado de la firma del lote, con los PDF firmados. */
+	public PdfBatchResult sign(final List<byte[]> pdfs,
+			                   final String signAlgorithm,
+			                   final PrivateKey key,
+			                   final X509Certificate[] certChain,
+			                   final Properties xParams) {
+
+		final List<BatchDocument> documents = new ArrayList<>(pdfs.size());
+		for (int i = 0; i < pdfs.size(); i++) {
+			documents.add(new MemoryDocument(i, pdfs.get(i)));
+		}
+		return signDocuments(documents, signAlgorithm, key, certChain, xParams);
+	}
+
+	/** Firma en formato PAdES un lote de documentos PDF almacenados en fichero. Cada documento
+	 * firmado se guarda en el directorio de salida con el nombre que le asigna
+	 * {@link AOPDFSigner#getSignedName(String)}, sobrescribiendo el fichero si ya exist&iacute;a.
+	 * Los documentos se firman directamente de fichero a fichero, tal como lo hace
+	 * {@link AOPDFSigner#sign(Path, Path, String, PrivateKey, X509Certificate[], Properties)}.
+	 * @param inPdfs Ficheros con los documentos PDF a firmar.
+	 * @param outDir Directorio en el que guardar los documentos firmados.
+	 * @param signAlgorithm Algoritmo a usar para la firma.
+	 * @param key Clave privada a usar para firmar.
+	 * @param certChain Cadena de certificados del firmante.
+	 * @param xParams Par&aacute;metros adicionales para la firma (<a href="doc-files/extraparams.html">detalle</a>),
+	 *                comunes a todos los documentos.
+	 * @return Resultado de la firma del lote, con los ficheros generados.
+	 * @throws IllegalArgumentException Si el directorio de salida no existe o si varios
+	 *                                  documentos del lote se guardar&iacute;an en el mismo fichero,
+	 *                                  como ocurre con ficheros de igual nombre en distintos directorios. */
+	public PdfBatchResult sign(final List<Path> inPdfs,
+			                   final Path outDir,
+			                   final String signAlgorithm,
+			                   final PrivateKey key,
+			                   final X509Certificate[] certChain,
+			                   final Properties xParams) {
+
+		if (!Files.isDirectory(outDir)) {
+			throw new IllegalArgumentException("El directorio de salida no existe: " + outDir); //$NON-NLS-1$
+		}
+
+		// Cada documento debe tener su propio fichero de salida, ya que los documentos se
+		// escriben en paralelo y el fichero de un documento fallido se elimina
+		final Set<Path> outPdfs = new HashSet<>();
+		final List<BatchDocument> documents = new ArrayList<>(inPdfs.size());
+		for (int i = 0; i < inPdfs.size(); i++) {
+			final Path inPdf = inPdfs.get(i);
+			final Path outPdf = outDir.resolve(AOPDFSigner.getSignedName(inPdf.getFileName().toString()));
+			if (!outPdfs.add(outPdf.toAbsolutePath().normalize())) {
+				throw new IllegalArgumentException(
+					"Varios documentos del lote se guardarian en el mismo fichero de salida: " + outPdf //$NON-NLS-1$
+				);
+			}
+			documents.add(new FileDocument(i, inPdf, outPdf));
+		}
+		return signDocuments(documents, signAlgorithm, key, certChain, xParams);
+	}
+
+	private PdfBatchResult signDocuments(final List<BatchDocument> documents,
+			                             final String signAlgorithm,
+			                             final PrivateKey key,
+			                             final X509Certificate[] certChain,
+			                             final Properties xParams) {
+
+		final String algorithm = signAlgorithm != null ? signAlgorithm : AOSignConstants.DEFAULT_SIGN_ALGO;
+		final Properties extraParams = AOPDFSigner.getExtraParams(xParams);
+
+		AOPDFSigner.checkParams(algorithm, extraParams);
+
+		final X509Certificate[] certificateChain = Boolean.parseBoolean(extraParams.getProperty(PdfExtraParams.INCLUDE_ONLY_SIGNNING_CERTIFICATE, Boolean.FALSE.toString())) ?
+			new X509Certificate[] { certChain[0] } :
+				certChain;
+
+		final PdfBatchResult.DocumentResult[] results = new PdfBatchResult.DocumentResult[documents.size()];
+		final Semaphore inFlight = new Semaphore(this.maxInFlight);
+		final AOPkcs1Signer pkcs1Signer = new AOPkcs1Signer();
+
+		final ExecutorService workers = Executors.newFixedThreadPool(this.parallelism, new BatchThreadFactory("afirma-pades-batch")); //$NON-NLS-1$
+		final ExecutorService signingStage = Executors.newSingleThreadExecutor(new BatchThreadFactory("afirma-pades-batch-pkcs1")); //$NON-NLS-1$
+
+		final long start = System.nanoTime();
+		try {
+			for (final BatchDocument document : documents) {
+				inFlight.acquire();
+				CompletableFuture
+					.runAsync(() -> preSign(document, algorithm, certificateChain, extraParams), workers)
+					.thenRunAsync(() -> signPkcs1(document, pkcs1Signer, algorithm, key, certificateChain), signingStage)
+					.thenApplyAsync(v -> postSign(document, algorithm, certificateChain), workers)
+					.whenComplete((signed, e) -> {
+						results[document.index] = finish(document, signed, e);
+						inFlight.release();
+					});
+			}
+			// Esperamos a que terminen los documentos en proceso
+			inFlight.acquire(this.maxInFlight);
+		}
+		catch (final InterruptedException e) {
+			LOGGER.warning("Se ha interrumpido la firma del lote, se esperara a los documentos en proceso: " + e); //$NON-NLS-1$
+			inFlight.acquireUninterruptibly(this.maxInFlight);
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			workers.shutdown();
+			signingStage.shutdown();
+		}
+
+		// Los documentos que no se llegaron a procesar por una interrupcion se notifican como error
+		for (int i = 0; i < results.length; i++) {
+			if (results[i] == null) {
+				results[i] = documents.get(i).toResult(
+					null,
+					new AOException("Se interrumpio la firma del lote antes de procesar el documento"), //$NON-NLS-1$
+					0
+				);
+			}
+		}
+
+		final PdfBatchResult result = new PdfBatchResult(Arrays.asList(results), System.nanoTime() - start);
+		LOGGER.info(result::toString);
+		return result;
+	}
+
+	private static void preSign(final BatchDocument document,
+			                    final String algorithm,
+			                    final X509Certificate[] certChain,
+			                    final Properties extraParams) {
+		document.startNanos = System.nanoTime();
+		document.extraParams = (Properties) extraParams.clone();
+		try {
+			final GregorianCalendar signTime = PdfUtil.getSignTime(document.extraParams.getProperty(PdfExtraParams.SIGN_TIME));
+			final PdfTriPhaseSession session = document.openSession(certChain, signTime, document.extraParams);
+			document.session = session;
+			document.preSign = PAdESTriPhaseSigner.preSign(
+				algorithm,
+				session,
+				certChain,
+				signTime,
+				document.extraParams
+			);
+		}
+		catch (final Exception e) {
+			throw new CompletionException(e);
+		}
+	}
+
+	private static void signPkcs1(final BatchDocument document,
+			                      final AOPkcs1Signer pkcs1Signer,
+			                      final String algorithm,
+			                      final PrivateKey key,
+			                      final X509Certificate[] certChain) {
+		try {
+			document.pkcs1 = pkcs1Signer.sign(
+				document.preSign.getSign(),
+				algorithm,
+				key,
+				certChain,
+				document.extraParams
+			);
+		}
+		catch (final Exception e) {
+			throw new CompletionException(e);
+		}
+	}
+
+	private static byte[] postSign(final BatchDocument document,
+			                       final String algorithm,
+			                       final X509Certificate[] certChain) {
+		try {
+			return PAdESTriPhaseSigner.postSign(
+				algorithm,
+				document.session,
+				certChain,
+				document.pkcs1,
+				document.preSign
+			);
+		}
+		catch (final Exception e) {
+			throw new CompletionException(e);
+		}
+	}
+
+	private static PdfBatchResult.DocumentResult finish(final BatchDocument document,
+			                                            final byte[] signed,
+			                                            final Throwable error) {
+		try {
+			if (error != null) {
+				document.abort();
+			}
+			else {
+				document.close();
+			}
+		}
+		catch (final Exception e) {
+			LOGGER.warning("No se han podido liberar los recursos del documento " + document.index + " del lote: " + e); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+
+		Throwable cause = error;
+		while (cause instanceof CompletionException && cause.getCause() != null) {
+			cause = cause.getCause();
+		}
+		final Exception e;
+		if (cause == null || cause instanceof Exception) {
+			e = (Exception) cause;
+		}
+		else {
+			e = new AOException("Error grave en la firma del documento", cause); //$NON-NLS-1$
+		}
+		if (e != null) {
+			LOGGER.warning("No se ha podido firmar el documento " + document.index + " del lote: " + e); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+
+		return document.toResult(
+			e == null ? signed : null,
+			e,
+			document.startNanos > 0 ? System.nanoTime() - document.startNanos : 0
+		);
+	}
+
+	/** Documento de un lote y estado de su firma entre las distintas etapas. */
+	private abstract static class BatchDocument {
+
+		final int index;
+
+		long startNanos = 0;
+		Properties extraParams;
+		PdfTriPhaseSession session;
+		PdfSignResult preSign;
+		byte[] pkcs1;
+
+		BatchDocument(final int index) {
+			this.index = index;
+		}
+
+		/** Aplica el sello de tiempo de documento si se solicit&oacute; y abre la sesi&oacute;n PDF de firma. */
+		abstract PdfTriPhaseSession openSession(X509Certificate[] certChain,
+				                                GregorianCalendar signTime,
+				                                Properties xParams) throws AOException, IOException;
+
+		/** Compone el resultado de la firma del documento. */
+		abstract PdfBatchResult.DocumentResult toResult(byte[] signed, Exception error, long elapsedNanos);
+
+		/** Libera los recursos asociados a la firma del documento.
+		 * @throws IOException Si no se pueden liberar los recursos. */
+		void close() throws IOException {
+			this.session = null;
+			this.preSign = null;
+			this.pkcs1 = null;
+		}
+
+		/** Descarta la firma del documento tras un error, cerrando sin completarla la
+		 * sesi&oacute;n PDF si se lleg&oacute; a abrir, y libera sus recursos.
+		 * @throws IOException Si no se pueden liberar los recursos. */
+		void abort() throws IOException {
+			try {
+				if (this.session != null) {
+					this.session.abort();
+				}
+			}
+			finally {
+				close();
+			}
+		}
+	}
+
+	/** Documento de un lote proporcionado en memoria. */
+	private static final class MemoryDocument extends BatchDocument {
+
+		private byte[] pdf;
+
+		MemoryDocument(final int index, final byte[] pdf) {
+			super(index);
+			this.pdf = pdf;
+		}
+
+		@Override
+		PdfTriPhaseSession openSession(final X509Certificate[] certChain,
+				                       final GregorianCalendar signTime,
+				                       final Properties xParams) throws AOException, IOException {
+			final byte[] data;
+			try {
+				data = PdfTimestamper.timestampPdf(this.pdf, xParams, signTime);
+			}
+			catch (final IOException e) {
+				throw new AOException("Error en la composicion del sello de tiempo de la firma", e); //$NON-NLS-1$
+			}
+			// Ya no necesitamos el original, que puede liberarse mientras el documento se firma
+			this.pdf = null;
+			return PdfSessionManager.getSessionData(
+				data,
+				certChain,
+				signTime,
+				xParams,
+				AOPDFSigner.SECURE_MODE
+			);
+		}
+
+		@Override
+		PdfBatchResult.DocumentResult toResult(final byte[] signed, final Exception error, final long elapsedNanos) {
+			return new PdfBatchResult.DocumentResult(this.index, null, null, signed, error, elapsedNanos);
+		}
+
+		@Override
+		void close() throws IOException {
+			super.close();
+			this.pdf = null;
+		}
+	}
+
+	/** Documento de un lote almacenado en fichero. */
+	private static final class FileDocument extends BatchDocument {
+
+		private final Path inPdf;
+		private final Path outPdf;
+		private Path stampedPdf = null;
+		private boolean outputOpened = false;
+
+		FileDocument(final int index, final Path inPdf, final Path outPdf) {
+			super(index);
+			this.inPdf = inPdf;
+			this.outPdf = outPdf;
+		}
+
+		@Override
+		PdfTriPhaseSession openSession(final X509Certificate[] certChain,
+				                       final GregorianCalendar signTime,
+				                       final Properties xParams) throws AOException, IOException {
+			if (Files.exists(this.outPdf) && Files.isSameFile(this.inPdf, this.outPdf)) {
+				throw new IllegalArgumentException("El fichero de salida debe ser distinto del de entrada"); //$NON-NLS-1$
+			}
+			try {
+				this.stampedPdf = PdfTimestamper.timestampPdf(this.inPdf, xParams, signTime);
+			}
+			catch (final IOException e) {
+				throw new AOException("Error en la composicion del sello de tiempo de la firma", e); //$NON-NLS-1$
+			}
+			// A partir de aqui el fichero de salida se sobrescribe con el PDF firmado
+			this.outputOpened = true;
+			return PdfSessionManager.getSessionData(
+				this.stampedPdf,
+				certChain,
+				signTime,
+				xParams,
+				AOPDFSigner.SECURE_MODE,
+				this.outPdf.toFile()
+			);
+		}
+
+		@Override
+		PdfBatchResult.DocumentResult toResult(final byte[] signed, final Exception error, final long elapsedNanos) {
+			return new PdfBatchResult.DocumentResult(this.index, this.inPdf, error == null ? this.outPdf : null, null, error, elapsedNanos);
+		}
+
+		@Override
+		void close() throws IOException {
+			super.close();
+			// Eliminamos el temporal con el PDF sellado, si se llego a crear
+			if (this.stampedPdf != null && !this.stampedPdf.equals(this.inPdf)) {
+				Files.deleteIfExists(this.stampedPdf);
+			}
+			this.stampedPdf = null;
+		}
+
+		@Override
+		void abort() throws IOException {
+			try {
+				super.abort();
+			}
+			finally {
+				// El fichero de salida queda incompleto, por lo que se elimina
+				if (this.outputOpened) {
+					Files.deleteIfExists(this.outPdf);
+				}
+			}
+		}
+	}
+
+	/** Factor&iacute;a de los hilos del firmador por lotes. */
+	private static final class BatchThreadFactory implements ThreadFactory {
+
+		private final String prefix;
+		private final AtomicInteger count = new AtomicInteger();
+
+		BatchThreadFactory(final String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(final Runnable r) {
+			final Thread t = new Thread(r, this.prefix + "-" + this.count.incrementAndGet()); //$NON-NLS-1$
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
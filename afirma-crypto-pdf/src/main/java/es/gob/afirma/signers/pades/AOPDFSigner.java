@@ -11,6 +11,8 @@ package es.gob.afirma.signers.pades;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.PrivateKey;
 import java.security.Provider;
 import java.security.Security;
@@ -77,7 +79,7 @@ public final class AOPDFSigner implements AOSigner {
 
 	/** Modo seguro. Si no esta activado se permiten algunas operaciones, como el uso de rutas a los
 	 * datos en algunos extraParams en lugar de proporcionar estos datos en Base64. */
-	private static final boolean SECURE_MODE = true;
+	static final boolean SECURE_MODE = true;
 
 	// iText tiene ciertos problemas reconociendo ECDSA y a veces usa su OID, por lo que declaramos alias de los
 	// algoritmos de firma en los proveedores mas comunes
@@ -150,9 +152,8 @@ public final class AOPDFSigner implements AOSigner {
 			throw new AOException("Error en la composicion del sello de tiempo de la firma", e); //$NON-NLS-1$
 		}
 
-		// Prefirma
-        final PdfSignResult pre = PAdESTriPhaseSigner.preSign(
-			algorithm,
+		// Al firmar en una unica fase, la misma sesion PDF se usa en la prefirma y en la postfirma
+		final PdfTriPhaseSession session = PdfSessionManager.getSessionData(
 			data,
 			certificateChain,
 			signTime,
@@ -160,6 +161,15 @@ public final class AOPDFSigner implements AOSigner {
 			SECURE_MODE
 		);
 
+		// Prefirma
+        final PdfSignResult pre = PAdESTriPhaseSigner.preSign(
+			algorithm,
+			session,
+			certificateChain,
+			signTime,
+			extraParams
+		);
+
         // Firma PKCS#1
         final byte[] interSign = new AOPkcs1Signer().sign(
     		pre.getSign(),
@@ -172,14 +182,131 @@ public final class AOPDFSigner implements AOSigner {
         // Postfirma
         return PAdESTriPhaseSigner.postSign(
 			algorithm,
-			data,
+			session,
 			certificateChain,
 			interSign,
-			pre,
-			SECURE_MODE
+			pre
 		);
     }
 
+    /**
+     * Firma en formato PAdES un documento PDF almacenado en fichero, generando el PDF firmado
+     * directamente en otro fichero.
+     * <p>
+     *  El PDF de entrada se lee mediante acceso aleatorio al fichero y el PDF firmado se escribe
+     *  directamente en el fichero de salida, por lo que el documento no llega a cargarse completo
+     *  en memoria. Esto permite firmar documentos de gran tama&ntilde;o con un consumo de memoria
+     *  reducido. Se except&uacute;an los PDF protegidos con contrase&ntilde;a y los PDF/A sin firmas
+     *  previas, que se cargan en memoria para su tratamiento. Si la firma no llega a completarse,
+     *  se elimina el fichero de salida incompleto.
+     * </p>
+     * <p>
+     *  Salvo por el origen y el destino del documento, el comportamiento es el mismo que el de
+     *  {@link #sign(byte[], String, PrivateKey, X509Certificate[], Properties)}.
+     * </p>
+     * @param inPdf Fichero con el documento PDF a firmar.
+     * @param outPdf Fichero en el que almacenar el documento PDF firmado. Debe ser distinto del de entrada.
+     * @param signAlgorithm Algoritmo a usar para la firma.
+     * @param key Clave privada a usar para firmar.
+     * @param certChain Cadena de certificados del firmante.
+     * @param xParams Par&aacute;metros adicionales para la firma (<a href="doc-files/extraparams.html">detalle</a>).
+     * @throws AOException Cuando ocurre cualquier problema durante el proceso.
+     * @throws IOException Cuando hay errores en el tratamiento de datos.
+     */
+	public void sign(final Path inPdf,
+			         final Path outPdf,
+			         final String signAlgorithm,
+			         final PrivateKey key,
+			         final X509Certificate[] certChain,
+			         final Properties xParams) throws AOException,
+			                                          IOException {
+
+		if (Files.exists(outPdf) && Files.isSameFile(inPdf, outPdf)) {
+			throw new IllegalArgumentException("El fichero de salida debe ser distinto del de entrada"); //$NON-NLS-1$
+		}
+
+		final String algorithm = signAlgorithm != null ? signAlgorithm : AOSignConstants.DEFAULT_SIGN_ALGO;
+        final Properties extraParams = getExtraParams(xParams);
+
+        checkParams(algorithm, extraParams);
+
+        final X509Certificate[] certificateChain = Boolean.parseBoolean(extraParams.getProperty(PdfExtraParams.INCLUDE_ONLY_SIGNNING_CERTIFICATE, Boolean.FALSE.toString())) ?
+    		new X509Certificate[] { certChain[0] } :
+    			certChain;
+
+    	final GregorianCalendar signTime = PdfUtil.getSignTime(extraParams.getProperty(PdfExtraParams.SIGN_TIME));
+
+        // Sello de tiempo
+        final Path data;
+    	try {
+    		data = PdfTimestamper.timestampPdf(inPdf, extraParams, signTime);
+    	}
+    	catch (final IOException e) {
+			throw new AOException("Error en la composicion del sello de tiempo de la firma", e); //$NON-NLS-1$
+		}
+
+    	PdfTriPhaseSession session = null;
+    	try {
+			session = PdfSessionManager.getSessionData(
+				data,
+				certificateChain,
+				signTime,
+				extraParams,
+				SECURE_MODE,
+				outPdf.toFile()
+			);
+
+			// Prefirma
+	        final PdfSignResult pre = PAdESTriPhaseSigner.preSign(
+				algorithm,
+				session,
+				certificateChain,
+				signTime,
+				extraParams
+			);
+
+	        // Firma PKCS#1
+	        final byte[] interSign = new AOPkcs1Signer().sign(
+	    		pre.getSign(),
+	    		algorithm,
+	    		key,
+	    		certificateChain,
+	    		extraParams
+			);
+
+	        // Postfirma, que deja el PDF firmado en el fichero de salida
+	        PAdESTriPhaseSigner.postSign(
+				algorithm,
+				session,
+				certificateChain,
+				interSign,
+				pre
+			);
+    	}
+    	catch (final Exception e) {
+    		// Si se llego a abrir la sesion, el fichero de salida queda incompleto, por lo que
+    		// se cierra la sesion sin completar la firma y se elimina
+    		if (session != null) {
+    			try {
+    				session.abort();
+    			}
+    			catch (final Exception e2) {
+    				e.addSuppressed(e2);
+    			}
+    			finally {
+    				Files.deleteIfExists(outPdf);
+    			}
+    		}
+    		throw e;
+    	}
+    	finally {
+    		// Eliminamos el temporal con el PDF sellado, si se llego a crear
+    		if (!data.equals(inPdf)) {
+    			Files.deleteIfExists(data);
+    		}
+    	}
+    }
+
     /**
      * A&ntilde;ade una firma PAdES a un documento PDF. El comportamiento es exactamente el mismo que una llamada a <code>sign(...)</code>
      * puesto que las multifirmas en los ficheros PDF se limitan a firmas independientes "en serie", pero no implementando los mecanismos de
@@ -321,24 +448,23 @@ public final class AOPDFSigner implements AOSigner {
     @Override
     public AOTreeModel getSignersStructure(final byte[] sign, final Properties params, final boolean asSimpleSignInfo) {
 
-    	final AOTreeNode root = new AOTreeNode("Datos"); //$NON-NLS-1$
-
-    	if (!isPdfFile(sign)) {
-    		return new AOTreeModel(root);
+    	final PdfReader pdfReader = readPdf(sign, params);
+    	if (pdfReader == null) {
+    		return new AOTreeModel(new AOTreeNode("Datos")); //$NON-NLS-1$
     	}
+    	return getSignersStructure(pdfReader, asSimpleSignInfo);
+    }
 
-    	final PdfReader pdfReader;
-    	try {
-			pdfReader = PdfUtil.getPdfReader(sign, params);
-    	}
-    	catch (final BadPdfPasswordException | PdfIsPasswordProtectedException e) {
-    		LOGGER.info("El PDF necesita contrasena. Se devolvera el arbol vacio: " + e); //$NON-NLS-1$
-    		return new AOTreeModel(root);
-    	}
-    	catch (final Exception e) {
-    		LOGGER.severe("No se ha podido leer el PDF, se devolvera un arbol vacio: " + e); //$NON-NLS-1$
-    		return new AOTreeModel(root);
-    	}
+    /** Recupera el &aacute;rbol de nodos de firma de un PDF ya cargado.
+     * @param pdfReader Lector del PDF.
+     * @param asSimpleSignInfo Si es <code>true</code> se devuelve un &aacute;rbol con la
+     *                         informaci&oacute;n b&aacute;sica de cada firma individual
+     *                         mediante objetos <code>AOSimpleSignInfo</code>, si es <code>false</code>
+     *                         un &aacute;rbol con los nombres (CN X.500) de los titulares certificados.
+     * @return &Aacute;rbol de nodos de firma. */
+    private static AOTreeModel getSignersStructure(final PdfReader pdfReader, final boolean asSimpleSignInfo) {
+
+    	final AOTreeNode root = new AOTreeNode("Datos"); //$NON-NLS-1$
 
     	final AcroFields af;
     	try {
@@ -428,23 +554,45 @@ public final class AOPDFSigner implements AOSigner {
             LOGGER.warning("Se han introducido datos nulos para su comprobacion"); //$NON-NLS-1$
             return false;
         }
-        if (!isPdfFile(data)) {
-        	return false;
-        }
-        final Object root = getSignersStructure(data, params, false).getRoot();
-        if (root instanceof AOTreeNode) {
-        	// Si el arbol contiene firmas...
-        	if (AOTreeModel.getChildCount(root) > 0) {
-        		return true;
-        	}
-        	// Si no las contiene aun puede haber firmas no registradas
-
-        	final Properties extraParams = System.getProperties();
+        final PdfReader pdfReader = readPdf(data, params);
+        return pdfReader != null && isSign(pdfReader);
+    }
+
+    /** Comprueba si un PDF ya cargado contiene firmas. Para ello basta con encontrar la primera
+     * firma legible, sin necesidad de procesar el resto. Comprobar que una firma es legible
+     * supone cargarla con iText, que calcula la huella de los datos que firma, por lo que el
+     * coste de esta comprobaci&oacute;n depende del tama&ntilde;o de la revisi&oacute;n firmada
+     * por la primera firma legible.
+     * @param pdfReader Lector del PDF.
+     * @return <code>true</code> si el PDF contiene alguna firma, <code>false</code> en caso contrario. */
+    static boolean isSign(final PdfReader pdfReader) {
+
+    	final AcroFields af;
+    	try {
+    		af = pdfReader.getAcroFields();
+    	}
+    	catch (final Exception e) {
+    		LOGGER.severe("No se ha podido obtener la informacion de los firmantes del PDF: " + e); //$NON-NLS-1$
+    		return false;
+    	}
+
+    	for (final String signatureName : af.getSignatureNames()) {
+
+    		// Ignoramos los sellos
+    		final PdfDictionary pdfDictionary = af.getSignatureDictionary(signatureName);
+    		if (PDFNAME_ETSI_RFC3161.equals(pdfDictionary.get(PdfName.SUBFILTER)) || PDFNAME_DOCTIMESTAMP.equals(pdfDictionary.get(PdfName.SUBFILTER))) {
+    			continue;
+    		}
+
+    		if (isReadableSignature(af, signatureName)) {
+    			return true;
+    		}
+    	}
+
+    	// Si no las contiene aun puede haber firmas no registradas
+    	if (Boolean.TRUE.toString().equalsIgnoreCase(System.getProperty(PdfExtraParams.ALLOW_COSIGNING_UNREGISTERED_SIGNATURES))) {
         	try {
-				if (PdfUtil.pdfHasUnregisteredSignatures(data, extraParams) &&
-						Boolean.TRUE.toString().equalsIgnoreCase(extraParams.getProperty(PdfExtraParams.ALLOW_COSIGNING_UNREGISTERED_SIGNATURES))) {
-					return true;
-				}
+        		return PdfUtil.pdfHasUnregisteredSignatures(PdfSignatureIndex.build(pdfReader));
 			}
         	catch (final Exception e) {
 				LOGGER.severe("No se han podido comprobar las firmas no registradas del PDF: " + e); //$NON-NLS-1$
@@ -453,7 +601,53 @@ public final class AOPDFSigner implements AOSigner {
         return false;
     }
 
-    private static boolean isPdfFile(final byte[] data) {
+    /** Comprueba si una firma del PDF puede leerse. La firma se carga con iText, que recorre
+     * los datos firmados para calcular su huella.
+     * @param af Campos del PDF.
+     * @param signatureName Nombre del campo de firma.
+     * @return <code>true</code> si la firma puede leerse, <code>false</code> en caso contrario. */
+    private static boolean isReadableSignature(final AcroFields af, final String signatureName) {
+		try {
+			af.verifySignature(signatureName);
+		}
+		catch(final Exception e) {
+			LOGGER.log(
+				Level.SEVERE,
+				"El PDF contiene una firma corrupta o con un formato desconocido (" + //$NON-NLS-1$
+					signatureName +
+						"), se continua con las siguientes si las hubiese: " + e, //$NON-NLS-1$
+				e
+			);
+			return false;
+		}
+		return true;
+    }
+
+    /** Carga un PDF para su inspecci&oacute;n, comprobando antes su cabecera para descartar
+     * sin analizarlos los datos que no son PDF.
+     * @param data Datos a cargar.
+     * @param params Par&aacute;metros con las contrase&ntilde;as del PDF, si las hubiese.
+     * @return Lector del PDF o <code>null</code> si los datos no son un PDF o no se pudo cargar. */
+    private static PdfReader readPdf(final byte[] data, final Properties params) {
+    	if (!hasPdfHeader(data)) {
+    		return null;
+    	}
+    	try {
+			return PdfUtil.getPdfReader(data, params);
+    	}
+    	catch (final BadPdfPasswordException | PdfIsPasswordProtectedException e) {
+    		LOGGER.info("El PDF necesita contrasena: " + e); //$NON-NLS-1$
+    	}
+    	catch (final InvalidPdfException e) {
+    		LOGGER.fine("Los datos no son un PDF valido: " + e); //$NON-NLS-1$
+    	}
+    	catch (final Exception e) {
+    		LOGGER.severe("No se ha podido leer el PDF: " + e); //$NON-NLS-1$
+    	}
+		return null;
+    }
+
+    private static boolean hasPdfHeader(final byte[] data) {
 		if (data == null || data.length < PDF_MIN_FILE_SIZE) {
 			return false;
 		}
@@ -467,9 +661,13 @@ public final class AOPDFSigner implements AOSigner {
         }
 
         // Comprobamos que cuente con una cabecera PDF
-        if (!PDF_FILE_HEADER.equals(new String(buffer))) {
-            return false;
-        }
+        return PDF_FILE_HEADER.equals(new String(buffer));
+    }
+
+    private static boolean isPdfFile(final byte[] data) {
+		if (!hasPdfHeader(data)) {
+			return false;
+		}
 
         try {
             // Si lanza una excepcion al crear la instancia, no es un fichero PDF
@@ -586,27 +784,40 @@ public final class AOPDFSigner implements AOSigner {
     public static void configureRespectfulProperties(final byte[] data, final Properties config) {
 
     	if (config != null && !config.containsKey(PdfExtraParams.SIGNATURE_SUBFILTER)) {
-    		String filter;
+    		final PdfSignatureIndex signatureIndex;
     		try {
-    			filter = PdfUtil.getFirstSupportedSignSubFilter(data, config);
+    			final PdfReader pdfReader = PdfUtil.getPdfReader(data, config);
+    			signatureIndex = PdfSignatureIndex.build(pdfReader);
+    			pdfReader.close();
     		}
     		catch (final Exception e) {
     			LOGGER.warning("Error al configurar la firma PDF para que sea igual a las existentes: " + e); //$NON-NLS-1$
     			return;
     		}
+    		configureRespectfulProperties(signatureIndex, config);
+    	}
+    }
 
+    /** Configura, cuando no lo est&eacute; ya, el subfiltro de firma para que coincida con el
+     * de las firmas ya indexadas de un PDF.
+     * @param signatureIndex &Iacute;ndice de las firmas del PDF.
+     * @param config Configuraci&oacute;n establecida. */
+    static void configureRespectfulProperties(final PdfSignatureIndex signatureIndex, final Properties config) {
+
+    	if (config != null && !config.containsKey(PdfExtraParams.SIGNATURE_SUBFILTER)) {
+    		final String filter = PdfUtil.getFirstSupportedSignSubFilter(signatureIndex);
     		if (filter != null) {
     			config.setProperty(PdfExtraParams.SIGNATURE_SUBFILTER, filter.substring(filter.indexOf('/') + 1));
     		}
     	}
     }
 
-    private static Properties getExtraParams(final Properties extraParams) {
+    static Properties getExtraParams(final Properties extraParams) {
     	return extraParams != null ?
     			(Properties) extraParams.clone() : new Properties();
     }
 
-    private static void checkParams(final String algorithm, final Properties extraParams) {
+    static void checkParams(final String algorithm, final Properties extraParams) {
 
     	if (algorithm.toUpperCase(Locale.US).startsWith("MD")) { //$NON-NLS-1$
     		throw new IllegalArgumentException("PAdES no permite huellas digitales MD2 o MD5 (Decision 130/2011 CE)"); //$NON-NLS-1$
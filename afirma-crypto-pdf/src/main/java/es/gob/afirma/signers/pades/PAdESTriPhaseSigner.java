@@ -11,9 +11,7 @@ package es.gob.afirma.signers.pades;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
@@ -27,7 +25,6 @@ import com.aowagie.text.pdf.PdfSignatureAppearance;
 import com.aowagie.text.pdf.PdfString;
 
 import es.gob.afirma.core.AOException;
-import es.gob.afirma.core.misc.AOUtil;
 import es.gob.afirma.signers.cades.CAdESParameters;
 import es.gob.afirma.signers.cades.CAdESTriPhaseSigner;
 
@@ -172,21 +169,44 @@ public final class PAdESTriPhaseSigner {
 
         final PdfTriPhaseSession ptps = PdfSessionManager.getSessionData(inPDF, signerCertificateChain, signTime, extraParams, secureMode);
 
-        // Rango de bytes del PDF que debe firmarse
-        final byte[] pdfRangeBytes;
-        try (InputStream is = ptps.getSAP().getRangeStream()) {
-        	pdfRangeBytes = AOUtil.getDataFromInputStream(is);
-        }
+        return preSign(signatureAlgorithm, ptps, signerCertificateChain, signTime, extraParams);
+    }
+
+    /** Obtiene la pre-firma PAdES/CAdES de un PDF (atributos CAdES a firmar) a partir de una sesi&oacute;n
+     * de firma PDF ya abierta.
+     * <p>
+     *  La sesi&oacute;n no se cierra, de forma que en las firmas monof&aacute;sicas puede reutilizarse
+     *  en la post-firma mediante {@link #postSign(String, PdfTriPhaseSession, X509Certificate[], byte[], PdfSignResult)}
+     *  sin necesidad de volver a procesar el PDF.
+     * </p>
+     * @param signatureAlgorithm Nombre del algoritmo de firma.
+     *                            Debe usarse exactamente el mismo valor en la post-firma.
+     * @param ptps Sesi&oacute;n de firma PDF obtenida mediante <code>PdfSessionManager.getSessionData(...)</code>.
+     * @param signerCertificateChain Cadena de certificados del firmante (la misma usada al abrir la sesi&oacute;n).
+     * @param signTime Momento de la firma (el mismo usado al abrir la sesi&oacute;n).
+     * @param xParams Par&aacute;metros adicionales para la firma (<a href="doc-files/extraparams.html">detalle</a>).
+     *                Deben ser los mismos usados al abrir la sesi&oacute;n.
+     * @return pre-firma CAdES/PAdES (atributos CAdES a firmar).
+     * @throws IOException En caso de errores de entrada / salida.
+     * @throws AOException En caso de cualquier otro tipo de error. */
+    public static PdfSignResult preSign(final String signatureAlgorithm,
+                                        final PdfTriPhaseSession ptps,
+                                        final X509Certificate[] signerCertificateChain,
+                                        final GregorianCalendar signTime,
+                                        final Properties xParams) throws IOException, AOException {
+
+        final Properties extraParams = xParams != null ? xParams : new Properties();
 
         final CAdESParameters parameters = CAdESParameters.load(null, signatureAlgorithm, extraParams);
 
         // --- INICIO: Particularidades de las firmas CAdES introducidas en PAdES ---
 
         // Los datos a firmar son el rango procesable del PDF (que no va incluido en la firma) y la
-        // huella de la firma CAdES debe ser la huella de este rango
+        // huella de la firma CAdES debe ser la huella de este rango, que se calcula segun se lee
+        // sin llegar a cargarlo completo en memoria
         final byte[] md;
         try {
-            md = MessageDigest.getInstance(parameters.getDigestAlgorithm()).digest(pdfRangeBytes);
+            md = PdfUtil.getRangeDigest(ptps.getSAP(), parameters.getDigestAlgorithm());
         }
         catch (final NoSuchAlgorithmException e) {
             throw new AOException("El algoritmo de huella digital no es valido", e); //$NON-NLS-1$
@@ -257,6 +277,47 @@ public final class PAdESTriPhaseSigner {
 		);
     }
 
+    /** Post-firma en PAdES un documento PDF reutilizando la sesi&oacute;n de firma PDF abierta en la pre-firma,
+     * generando un PDF final completo.
+     * <p>
+     *  Este modo evita volver a procesar el PDF (registro XMP, lectura, comprobaci&oacute;n de firmas no registradas
+     *  y estampado), por lo que s&oacute;lo es aplicable cuando la pre-firma y la post-firma se realizan en el mismo
+     *  proceso (firma monof&aacute;sica). La sesi&oacute;n queda cerrada tras la llamada y no puede reutilizarse.
+     * </p>
+     * @param signatureAlgorithm Nombre del algoritmo de firma electr&oacute;nica (debe ser el mismo que el usado en la pre-firma).
+     * @param ptps Sesi&oacute;n de firma PDF usada en la pre-firma.
+     * @param signerCertificateChain Cadena de certificados del firmante (debe ser la misma que la usado en la pre-firma).
+     * @param pkcs1Signature Resultado de la firma PKCS#1 v1.5 de los datos de la pre-firma.
+     * @param preSign Resultado de la pre-firma.
+     * @return PDF firmado o <code>null</code> si la sesi&oacute;n genera el PDF firmado directamente
+     *         en fichero (ver {@link PdfTriPhaseSession#getOutputFile()}).
+     * @throws AOException en caso de cualquier tipo de error.
+     * @throws IOException Cuando ocurre algun error en la conversi&oacute;n o generaci&oacute;n de estructuras. */
+    public static byte[] postSign(final String signatureAlgorithm,
+                                  final PdfTriPhaseSession ptps,
+                                  final X509Certificate[] signerCertificateChain,
+                                  final byte[] pkcs1Signature,
+                                  final PdfSignResult preSign) throws AOException, IOException {
+    	// Obtenemos la firma
+    	final PdfSignResult completePdfSSignature = generatePdfSignature(
+    		signatureAlgorithm,
+    		signerCertificateChain,
+    		preSign.getExtraParams(),
+    		pkcs1Signature,
+    		preSign.getSign(),
+    		preSign.getFileID(true),
+    		preSign.getTimestamp(),
+    		preSign.getSignTime()
+		);
+
+        // Insertamos la firma en el PDF de la sesion
+    	return closeSession(
+			ptps,
+			buildSignatureUpdate(completePdfSSignature),
+			completePdfSSignature.getFileID(true)
+		);
+    }
+
     private static PdfSignResult generatePdfSignature(final String signatureAlgorithm,
                                                       final Certificate[] signerCertificateChain,
                                                       final Properties xParams,
@@ -302,6 +363,19 @@ public final class PAdESTriPhaseSigner {
     		                                   final PdfSignResult signature,
     		                                   final boolean secureMode) throws AOException, IOException {
 
+        final PdfDictionary dic2 = buildSignatureUpdate(signature);
+
+        final PdfTriPhaseSession pts = PdfSessionManager.getSessionData(inPdf, signerCertificateChain, signature.getSignTime(), signature.getExtraParams(), secureMode);
+
+        return closeSession(pts, dic2, signature.getFileID(true));
+    }
+
+    /** Construye el diccionario con el que se actualiza el espacio reservado para la firma en el PDF.
+     * @param signature Firma que se desea insertar.
+     * @return Diccionario de actualizaci&oacute;n con la firma.
+     * @throws AOException Si la firma no cabe en el espacio reservado. */
+    private static PdfDictionary buildSignatureUpdate(final PdfSignResult signature) throws AOException {
+
     	final int reservedSize = PdfSessionManager.getReservedSignatureSized(signature.getExtraParams());
         final byte[] outc = new byte[reservedSize];
 
@@ -314,20 +388,53 @@ public final class PAdESTriPhaseSigner {
         final PdfDictionary dic2 = new PdfDictionary();
         System.arraycopy(signature.getSign(), 0, outc, 0, signature.getSign().length);
         dic2.put(PdfName.CONTENTS, new PdfString(outc).setHexWriting(true));
+        return dic2;
+    }
 
-        final PdfTriPhaseSession pts = PdfSessionManager.getSessionData(inPdf, signerCertificateChain, signature.getSignTime(), signature.getExtraParams(), secureMode);
+    /** Cierra la sesi&oacute;n de firma PDF insertando la firma y fija el identificador del PDF.
+     * @param pts Sesi&oacute;n de firma PDF.
+     * @param dic2 Diccionario de actualizaci&oacute;n con la firma.
+     * @param fileID Identificador de PDF que debe figurar en el documento firmado.
+     * @return PDF firmado o <code>null</code> si se gener&oacute; directamente en fichero.
+     * @throws AOException Si no se puede cerrar el PDF.
+     * @throws IOException Si hay errores en el tratamiento de datos. */
+    private static byte[] closeSession(final PdfTriPhaseSession pts,
+    		                           final PdfDictionary dic2,
+    		                           final String fileID) throws AOException, IOException {
         final PdfSignatureAppearance sap = pts.getSAP();
 
+        // Si el PDF se genera directamente en fichero, queda completo en el al cerrar la sesion. Como
+        // no se tiene en memoria, solo se admite cerrarlo desde la misma sesion de la prefirma
+        if (pts.getOutputFile() != null) {
+        	if (!pts.getFileID().equals(fileID)) {
+        		throw new AOException("La sesion de firma en fichero no se corresponde con la de la prefirma"); //$NON-NLS-1$
+        	}
+		    try {
+		       sap.close(dic2);
+		    }
+		    catch (final IOException | DocumentException e) {
+		        throw new AOException("Error al cerrar el PDF para finalizar el proceso de firma", e); //$NON-NLS-1$
+		    }
+		    return null;
+        }
+
         final byte[] ret;
         try (ByteArrayOutputStream baos = pts.getBAOS()) {
 		    final String badFileID = pts.getFileID();
 		    try {
-		       sap.close(dic2);
+		       PdfSessionOutputStream.closeSignature(sap, dic2, baos);
 		    }
 		    catch (final IOException | DocumentException e) {
 		        throw new AOException("Error al cerrar el PDF para finalizar el proceso de firma", e); //$NON-NLS-1$
 		    }
-		    ret = new String(baos.toByteArray(), StandardCharsets.ISO_8859_1).replace(badFileID, signature.getFileID(true)).getBytes(StandardCharsets.ISO_8859_1);
+		    ret = baos.toByteArray();
+
+		    // Si la sesion es la misma de la prefirma, el identificador ya es el correcto. Si no, lo
+		    // sustituimos directamente sobre el PDF generado, y solo si no es posible (identificadores
+		    // de distinta longitud) recurrimos a la sustitucion textual sobre el documento completo
+		    if (!badFileID.equals(fileID) && !PdfUtil.replaceFileId(ret, pts.getRevisionOffset(), badFileID, fileID)) {
+		    	return new String(ret, StandardCharsets.ISO_8859_1).replace(badFileID, fileID).getBytes(StandardCharsets.ISO_8859_1);
+		    }
         }
 	    return ret;
     }
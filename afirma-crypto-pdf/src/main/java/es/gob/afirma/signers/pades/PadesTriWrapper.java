@@ -4,6 +4,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
 import java.security.Security;
@@ -22,6 +23,8 @@ import java.util.logging.Logger;
 import org.bouncycastle.jcajce.provider.asymmetric.x509.CertificateFactory;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
+import es.gob.afirma.core.misc.AOUtil;
+
 /** Envoltura de firma trif&aacute;sica PAdES con tipos b&aacute;sicos (para ser invocada desde Swift u Objective-C).
  * @author Tom&aacute;s Garc&iacute;a-Mer&aacute;s. */
 public final class PadesTriWrapper {
@@ -44,13 +47,40 @@ public final class PadesTriWrapper {
                                     final String certChainAsPem,
                                     final String signTimeAsString,
                                     final String extraParamsAsString) {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try {
+			writePresign(signAlgorithm, pdfTbsAsBase64, certChainAsPem, signTimeAsString, extraParamsAsString, baos);
+			return baos.toString(StandardCharsets.UTF_8.name());
+		}
+		catch (final IOException e) {
+			return getErrorResult("Error codificando la prefirma", e); //$NON-NLS-1$
+		}
+	}
+
+	/** Escribe la prefirma (como XML) de una firma PAdES. A diferencia de
+	 * {@link #getPresign(String, String, String, String, String)}, el XML se escribe directamente
+	 * en el flujo de salida, sin generar una cadena con el mismo.
+	 * @param signAlgorithm Algoritmo de firma.
+	 * @param pdfTbsAsBase64 PDF a firmar (como Base64).
+	 * @param certChainAsPem Cadena de certificados del firmante (como PEM).
+	 * @param signTimeAsString Fecha de firma (en formato 'dd/MM/yyyy HH:mm:ss').
+	 * @param extraParamsAsString Par&aacute;metros adicionales de la firma.
+	 * @param out Flujo en el que escribir el XML de la prefirma o el JSON con el error producido. No se cierra.
+	 * @throws IOException Si hay problemas en la escritura del resultado. */
+	public static void writePresign(final String signAlgorithm,
+			                        final String pdfTbsAsBase64,
+                                    final String certChainAsPem,
+                                    final String signTimeAsString,
+                                    final String extraParamsAsString,
+                                    final OutputStream out) throws IOException {
 		// PDF a firmar
 		final byte[] pdfTbs;
 		try {
 			pdfTbs = Base64.getDecoder().decode(pdfTbsAsBase64);
 		}
 		catch(final Exception e) {
-			return getErrorResult("Error decodificando el Base64 del PDF a firmar", e); //$NON-NLS-1$
+			writeErrorResult(out, "Error decodificando el Base64 del PDF a firmar", e); //$NON-NLS-1$
+			return;
 		}
 
 		// Cadena de certificados
@@ -59,7 +89,8 @@ public final class PadesTriWrapper {
 			certs = generateCertificates(is);
 		}
 		catch (final Exception e) {
-			return getErrorResult("Error conviertiendo la cadena de certificados PEM", e); //$NON-NLS-1$
+			writeErrorResult(out, "Error conviertiendo la cadena de certificados PEM", e); //$NON-NLS-1$
+			return;
 		}
 		final X509Certificate[] certChain = certs.toArray(new X509Certificate[0]);
 
@@ -70,7 +101,8 @@ public final class PadesTriWrapper {
 			date = sdf.parse(signTimeAsString);
 		}
 		catch (final Exception e) {
-			return getErrorResult("La fecha no esta en el formato esperado de 'dd/MM/yyyy HH:mm:ss' (" + signTimeAsString + ")", e); //$NON-NLS-1$ //$NON-NLS-2$
+			writeErrorResult(out, "La fecha no esta en el formato esperado de 'dd/MM/yyyy HH:mm:ss' (" + signTimeAsString + ")", e); //$NON-NLS-1$ //$NON-NLS-2$
+			return;
 		}
 		final GregorianCalendar signTime = new GregorianCalendar();
 		signTime.setTime(date);
@@ -81,15 +113,19 @@ public final class PadesTriWrapper {
 			extraParams.load(new ByteArrayInputStream(extraParamsAsString.getBytes()));
 		}
 		catch (final Exception e) {
-			return getErrorResult("Los parametros adicionales de firma no estan en el formato esperado", e); //$NON-NLS-1$
+			writeErrorResult(out, "Los parametros adicionales de firma no estan en el formato esperado", e); //$NON-NLS-1$
+			return;
 		}
 
+		final PdfSignResult preSign;
 		try {
-			return PAdESTriPhaseSigner.preSign(signAlgorithm, pdfTbs, certChain, signTime, extraParams, true).toString();
+			preSign = PAdESTriPhaseSigner.preSign(signAlgorithm, pdfTbs, certChain, signTime, extraParams, true);
 		}
 		catch (final Exception e) {
-			return getErrorResult("Error obteniendo la prefirma", e); //$NON-NLS-1$
+			writeErrorResult(out, "Error obteniendo la prefirma", e); //$NON-NLS-1$
+			return;
 		}
+		preSign.writeTo(out);
 	}
 
 	/** Obtiene (en Base64) de una prefirma los datos a firmar.
@@ -119,13 +155,41 @@ public final class PadesTriWrapper {
                                      final String certChainAsPem,
                                      final String signatureAsBase64,
                                      final String preSignAsXml) {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try {
+			writePostSign(signAlgorithm, pdfTbsAsBase64, certChainAsPem, signatureAsBase64, preSignAsXml, baos);
+			return baos.toString(StandardCharsets.UTF_8.name());
+		}
+		catch (final IOException e) {
+			return getErrorResult("Error codificando la postfirma", e); //$NON-NLS-1$
+		}
+	}
+
+	/** Escribe una postfirma PAdES a partir de una prefirma y la firma, generando un PDF final completo.
+	 * A diferencia de {@link #getPostSign(String, String, String, String, String)}, el PDF firmado se
+	 * codifica directamente en el flujo de salida, sin generar una cadena con el mismo.
+	 * @param signAlgorithm Nombre del algoritmo de firma electr&oacute;nica (debe ser el mismo que el usado en la prefirma).
+	 * @param pdfTbsAsBase64 PDF a firmar (como Base64, debe ser el mismo que el usado en la prefirma).
+	 * @param certChainAsPem Cadena de certificados del firmante (como PEM, debe ser la misma que la usado en la prefirma).
+	 * @param signatureAsBase64 Resultado de la firma de los datos de la prefirma (como Base64).
+	 * @param preSignAsXml Prefirma (como XML).
+	 * @param out Flujo en el que escribir el JSON con el documento PDF firmado (como Base64) o con
+	 *            el error producido. No se cierra.
+	 * @throws IOException Si hay problemas en la escritura del resultado. */
+	public static void writePostSign(final String signAlgorithm,
+                                     final String pdfTbsAsBase64,
+                                     final String certChainAsPem,
+                                     final String signatureAsBase64,
+                                     final String preSignAsXml,
+                                     final OutputStream out) throws IOException {
 		// PDF firmado
 		final byte[] pdfTbs;
 		try {
 			pdfTbs = Base64.getDecoder().decode(pdfTbsAsBase64);
 		}
 		catch(final Exception e) {
-			return getErrorResult("Error decodificando el Base64 del PDF a firmar", e); //$NON-NLS-1$
+			writeErrorResult(out, "Error decodificando el Base64 del PDF a firmar", e); //$NON-NLS-1$
+			return;
 		}
 
 		// Cadena de certificados
@@ -134,7 +198,8 @@ public final class PadesTriWrapper {
 			certs = generateCertificates(is);
 		}
 		catch (final Exception e) {
-			return getErrorResult("Error conviertiendo la cadena de certificados PEM", e); //$NON-NLS-1$
+			writeErrorResult(out, "Error conviertiendo la cadena de certificados PEM", e); //$NON-NLS-1$
+			return;
 		}
 		final X509Certificate[] certChain = certs.toArray(new X509Certificate[0]);
 
@@ -144,7 +209,8 @@ public final class PadesTriWrapper {
 			signature = Base64.getDecoder().decode(signatureAsBase64);
 		}
 		catch(final Exception e) {
-			return getErrorResult("Error decodificando el Base64 de la firma", e); //$NON-NLS-1$
+			writeErrorResult(out, "Error decodificando el Base64 de la firma", e); //$NON-NLS-1$
+			return;
 		}
 
 		// Prefirma
@@ -153,19 +219,18 @@ public final class PadesTriWrapper {
 			preSign = new PdfSignResult(preSignAsXml);
 		}
 		catch (final Exception e) {
-			return getErrorResult("Error decodificando la prefirma", e); //$NON-NLS-1$
+			writeErrorResult(out, "Error decodificando la prefirma", e); //$NON-NLS-1$
+			return;
 		}
+		final byte[] signedPdf;
 		try {
-			return String.format(
-				"{\n" + //$NON-NLS-1$
-				"    \"result\": \"%s\"\n" + //$NON-NLS-1$
-				"}", //$NON-NLS-1$
-				Base64.getEncoder().encodeToString(PAdESTriPhaseSigner.postSign(signAlgorithm, pdfTbs, certChain, signature, preSign, true))
-			);
+			signedPdf = PAdESTriPhaseSigner.postSign(signAlgorithm, pdfTbs, certChain, signature, preSign, true);
 		}
 		catch (final Exception e) {
-			return getErrorResult("Error obteniendo la postfirma", e); //$NON-NLS-1$
+			writeErrorResult(out, "Error obteniendo la postfirma", e); //$NON-NLS-1$
+			return;
 		}
+		AOUtil.writeBase64Json("result", signedPdf, out); //$NON-NLS-1$
 	}
 
 	private static Collection<? extends Certificate> generateCertificates(final InputStream is) throws CertificateException {
@@ -176,6 +241,10 @@ public final class PadesTriWrapper {
 		return new CertificateFactory().engineGenerateCertificates(is);
 	}
 
+	private static void writeErrorResult(final OutputStream out, final String desc, final Throwable cause) throws IOException {
+		out.write(getErrorResult(desc, cause).getBytes(StandardCharsets.UTF_8));
+	}
+
 	private static String getErrorResult(final String desc, final Throwable cause) {
 		return String.format(
 			"{\n" + //$NON-NLS-1$
@@ -0,0 +1,143 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * You may contact the copyright holder at: soporte.afirma@seap.minhap.es
+ */
+
+package es.gob.afirma.signers.pades;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Resultado de la firma por lotes de documentos PDF. Contiene el resultado de cada uno
+ * de los documentos, en el mismo orden en el que se proporcionaron, y el tiempo total
+ * empleado en el proceso. */
+public final class PdfBatchResult {
+
+	private final List<DocumentResult> results;
+	private final long elapsedNanos;
+
+	PdfBatchResult(final List<DocumentResult> results, final long elapsedNanos) {
+		this.results = Collections.unmodifiableList(results);
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/** Obtiene el resultado de cada uno de los documentos del lote.
+	 * @return Resultados de los documentos en el orden en el que se proporcionaron. */
+	public List<DocumentResult> getDocumentResults() {
+		return this.results;
+	}
+
+	/** Obtiene el n&uacute;mero de documentos firmados correctamente.
+	 * @return N&uacute;mero de documentos firmados. */
+	public int getSignedCount() {
+		int count = 0;
+		for (final DocumentResult result : this.results) {
+			if (result.isSigned()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/** Obtiene el n&uacute;mero de documentos que no se pudieron firmar.
+	 * @return N&uacute;mero de documentos con error. */
+	public int getErrorCount() {
+		return this.results.size() - getSignedCount();
+	}
+
+	/** Obtiene el tiempo total empleado en la firma del lote.
+	 * @return Tiempo en milisegundos. */
+	public long getElapsedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(this.elapsedNanos);
+	}
+
+	/** Obtiene el rendimiento obtenido en la firma del lote.
+	 * @return N&uacute;mero de documentos firmados por segundo. */
+	public double getThroughput() {
+		if (this.elapsedNanos <= 0) {
+			return 0;
+		}
+		return getSignedCount() * (double) TimeUnit.SECONDS.toNanos(1) / this.elapsedNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "Lote de " + this.results.size() + " documentos PDF: " + getSignedCount() + //$NON-NLS-1$ //$NON-NLS-2$
+				" firmados, " + getErrorCount() + " con error, " + getElapsedMillis() + //$NON-NLS-1$ //$NON-NLS-2$
+					" ms (" + String.format("%.2f", Double.valueOf(getThroughput())) + " documentos/s)"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	/** Resultado de la firma de un documento de un lote. */
+	public static final class DocumentResult {
+
+		private final int index;
+		private final Path input;
+		private final Path output;
+		private final byte[] signedPdf;
+		private final Exception error;
+		private final long elapsedNanos;
+
+		DocumentResult(final int index,
+				       final Path input,
+				       final Path output,
+				       final byte[] signedPdf,
+				       final Exception error,
+				       final long elapsedNanos) {
+			this.index = index;
+			this.input = input;
+			this.output = output;
+			this.signedPdf = signedPdf;
+			this.error = error;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		/** Obtiene la posici&oacute;n del documento dentro del lote.
+		 * @return Posici&oacute;n del documento, empezando en 0. */
+		public int getIndex() {
+			return this.index;
+		}
+
+		/** Obtiene el fichero de entrada del documento.
+		 * @return Fichero de entrada o <code>null</code> si el documento se proporcion&oacute; en memoria. */
+		public Path getInput() {
+			return this.input;
+		}
+
+		/** Obtiene el fichero en el que se almacen&oacute; el documento firmado.
+		 * @return Fichero de salida o <code>null</code> si el documento se proporcion&oacute; en memoria. */
+		public Path getOutput() {
+			return this.output;
+		}
+
+		/** Obtiene el documento PDF firmado cuando el documento se proporcion&oacute; en memoria.
+		 * @return PDF firmado o <code>null</code> si no se pudo firmar o se firm&oacute; en fichero. */
+		public byte[] getSignedPdf() {
+			return this.signedPdf;
+		}
+
+		/** Obtiene el error que impidi&oacute; firmar el documento.
+		 * @return Error producido o <code>null</code> si el documento se firm&oacute; correctamente. */
+		public Exception getError() {
+			return this.error;
+		}
+
+		/** Indica si el documento se firm&oacute; correctamente.
+		 * @return <code>true</code> si el documento se firm&oacute;, <code>false</code> en caso contrario. */
+		public boolean isSigned() {
+			return this.error == null;
+		}
+
+		/** Obtiene el tiempo transcurrido desde que se empez&oacute; a preparar el documento
+		 * hasta que se termin&oacute; su firma, incluidas las esperas a otras etapas.
+		 * @return Tiempo en milisegundos. */
+		public long getElapsedMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(this.elapsedNanos);
+		}
+	}
+}
@@ -620,6 +620,18 @@ public final class PdfExtraParams {
 	 * ignora si no se ha establecido adem&aacute;s <code>tsaUsr</code>. */
 	static final String TSA_EXTENSION_CRITICAL = "tsaExtensionCritical";//$NON-NLS-1$
 
+	/** Tiempo m&aacute;ximo de espera, en milisegundos, para establecer la conexi&oacute;n con la TSA
+	 * (si no se establece no se limita). */
+	static final String TSA_CONNECT_TIMEOUT = "tsaConnectTimeout";//$NON-NLS-1$
+
+	/** Tiempo m&aacute;ximo de espera, en milisegundos, de la respuesta de la TSA
+	 * (si no se establece no se limita). */
+	static final String TSA_READ_TIMEOUT = "tsaReadTimeout";//$NON-NLS-1$
+
+	/** N&uacute;mero de reintentos de la petici&oacute;n a la TSA ante errores de comunicaci&oacute;n
+	 * (si no se establece no se reintenta). */
+	static final String TSA_RETRIES = "tsaRetries";//$NON-NLS-1$
+
 	/** Si se indica a <code>true</code> se utilizar&aacute; SigningCertificateV2, si
 	 * se indica cualquier otra cosa SigningCertificateV1. Si no se indica nada, se
 	 * utilizar&aacute; V1 para las firmas SHA1 y V2 para el resto (propiedad compartida con CAdES). */
@@ -10,7 +10,10 @@
 package es.gob.afirma.signers.pades;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.cert.X509Certificate;
 import java.util.Calendar;
 import java.util.HashMap;
@@ -82,12 +85,106 @@ public final class PdfSessionManager {
                                                     final boolean secureMode) throws IOException,
                                                                                      AOException {
 
+		final Properties extraParams = xParams != null ? xParams : new Properties();
+
+		final byte[] inPDF = addSignHistory(pdfBytes, signTime, extraParams);
+
+		final PdfReader pdfReader = PdfUtil.getPdfReader(inPDF, extraParams);
+
+		return getSessionData(pdfReader, certChain, signTime, extraParams, secureMode, null);
+	}
+
+    /** Obtiene los datos PDF relevantes en cuanto a las firmas electr&oacute;nicas a partir de un PDF
+     * almacenado en fichero. El PDF de entrada se lee mediante acceso aleatorio al fichero y el PDF
+     * firmado se genera directamente en el fichero de salida indicado, de forma que el documento no
+     * llega a cargarse completo en memoria.
+     * <p>
+     *  Se except&uacute;an los PDF protegidos con contrase&ntilde;a y los PDF/A sin firmas previas (cuyo
+     *  hist&oacute;rico XMP debe actualizarse), que se cargan en memoria para su tratamiento.
+     * </p>
+     * <p>
+     *  El PDF firmado queda en el fichero de salida al cerrar la sesi&oacute;n, por lo que este fichero
+     *  debe ser distinto del de entrada.
+     * </p>
+     * @param pdfFile Fichero con el documento PDF que se desea firmar.
+     * @param certChain Cadena de certificados del firmante
+     * @param signTime Hora de la firma
+     * @param xParams Par&aacute;metros adicionales de la firma
+     * @param secureMode Modo seguro.
+     * @param outputFile Fichero en el que se generar&aacute; el PDF firmado.
+     * @return Datos PDF relevantes en cuanto a las firmas electr&oacute;nicas
+     * @throws IOException En caso de errores de entrada / salida.
+     * @throws InvalidPdfException Si el formato del documento no es v&aacute;lido.
+     * @throws AOException En caso de que ocurra cualquier otro tipo de error.
+     */
+    public static PdfTriPhaseSession getSessionData(final Path pdfFile,
+                                                    final X509Certificate[] certChain,
+                                                    final Calendar signTime,
+                                                    final Properties xParams,
+                                                    final boolean secureMode,
+                                                    final File outputFile) throws IOException,
+                                                                                  AOException {
+
+		final Properties extraParams = xParams != null ? xParams : new Properties();
+
+		PdfReader pdfReader = PdfUtil.getPdfReader(pdfFile, extraParams);
+
+		// Solo se registra la firma en el historico XMP de los PDF/A sin firmas previas. Como
+		// en ese caso hay que reescribir el documento, unicamente entonces se carga en memoria
+		if (PdfUtil.isPdfAx(pdfReader.getMetadata()) && !AOPDFSigner.isSign(pdfReader)) {
+			pdfReader.close();
+			final byte[] inPDF = addSignHistory(Files.readAllBytes(pdfFile), signTime, extraParams);
+			pdfReader = PdfUtil.getPdfReader(inPDF, extraParams);
+		}
+
+		return getSessionData(pdfReader, certChain, signTime, extraParams, secureMode, outputFile);
+	}
+
+    /** Registra la firma en el hist&oacute;rico XMP del PDF cuando este lo requiera.
+     * @param pdfBytes Documento PDF que se desea firmar.
+     * @param signTime Hora de la firma.
+     * @param extraParams Par&aacute;metros adicionales de la firma.
+     * @return Documento PDF con la firma registrada en su hist&oacute;rico o el documento de
+     *         entrada si no se pudo o no fue necesario registrarla.
+     * @throws BadPdfPasswordException Si la contrase&ntilde;a indicada para el PDF es incorrecta.
+     * @throws PdfIsPasswordProtectedException Si el PDF est&aacute; protegido con contrase&ntilde;a
+     *                                         y no se indic&oacute;. */
+    private static byte[] addSignHistory(final byte[] pdfBytes,
+    		                             final Calendar signTime,
+    		                             final Properties extraParams) throws BadPdfPasswordException,
+    		                                                                  PdfIsPasswordProtectedException {
+		byte[] inPDF;
+		try {
+			inPDF = XmpHelper.addSignHistoryToXmp(pdfBytes, signTime, extraParams);
+		}
+		catch (final BadPasswordException e) {
+			// Devolvemos una excepcion u otra segun si se nos proporciono
+			// contrasena o no
+			if (extraParams.containsKey(PdfExtraParams.OWNER_PASSWORD_STRING) || extraParams.containsKey(PdfExtraParams.USER_PASSWORD_STRING)) {
+				throw new BadPdfPasswordException("La contrasena del PDF es incorrecta", e); //$NON-NLS-1$
+			}
+			throw new PdfIsPasswordProtectedException("El PDF esta protegido contra lectura", e); //$NON-NLS-1$
+		}
+		catch (final Exception e) {
+			LOGGER.warning("No ha podido registrarse la firma en el historico XMP: " + e); //$NON-NLS-1$
+			inPDF = pdfBytes;
+		}
+
+		return inPDF;
+	}
+
+    private static PdfTriPhaseSession getSessionData(final PdfReader pdfReader,
+                                                     final X509Certificate[] certChain,
+                                                     final Calendar signTime,
+                                                     final Properties extraParams,
+                                                     final boolean secureMode,
+                                                     final File outputFile) throws IOException,
+                                                                                   AOException {
+
 		// *********************************************************************************************************************
 		// **************** LECTURA PARAMETROS ADICIONALES *********************************************************************
 		// *********************************************************************************************************************
 
-		final Properties extraParams = xParams != null ? xParams : new Properties();
-
 		// Omision de informacion del firmante diccionario o estructura de apariencia PDF.
 		final boolean doNotUseCertChainOnPostSign = Boolean
 				.parseBoolean(extraParams.getProperty(PdfExtraParams.DO_NOT_USE_CERTCHAIN_ON_POSTSIGN));
@@ -111,24 +208,11 @@ public final class PdfSessionManager {
 		// Datos de contacto (correo electronico) del firmante
 		final String signerContact = extraParams.getProperty(PdfExtraParams.SIGNER_CONTACT);
 
-		byte[] inPDF;
-		try {
-			inPDF = XmpHelper.addSignHistoryToXmp(pdfBytes, signTime, extraParams);
-		}
-		catch (final BadPasswordException e) {
-			// Devolvemos una excepcion u otra segun si se nos proporciono
-			// contrasena o no
-			if (extraParams.containsKey(PdfExtraParams.OWNER_PASSWORD_STRING) || extraParams.containsKey(PdfExtraParams.USER_PASSWORD_STRING)) {
-				throw new BadPdfPasswordException("La contrasena del PDF es incorrecta", e); //$NON-NLS-1$
-			}
-			throw new PdfIsPasswordProtectedException("El PDF esta protegido contra lectura", e); //$NON-NLS-1$
-		}
-		catch (final Exception e) {
-			LOGGER.warning("No ha podido registrarse la firma en el historico XMP: " + e); //$NON-NLS-1$
-			inPDF = pdfBytes;
-		}
+		// Indexamos una unica vez las firmas previas del PDF para todas las comprobaciones sobre ellas
+		final PdfSignatureIndex signatureIndex = PdfSignatureIndex.build(pdfReader);
 
-		final PdfReader pdfReader = PdfUtil.getPdfReader(inPDF, extraParams);
+		// Si no se indico, las nuevas firmas usan el mismo subfiltro que las existentes
+		AOPDFSigner.configureRespectfulProperties(signatureIndex, extraParams);
 
 		// Nombre del subfiltro de firma en el diccionario PDF
 		String signatureSubFilter = extraParams.getProperty(PdfExtraParams.SIGNATURE_SUBFILTER);
@@ -301,7 +385,7 @@ public final class PdfSessionManager {
 
 		// En caso de que no se hayan permitido expresamente las firmas no registradas y se encuentren, valoramos que hacer
 		final String allowUnregisteredSignatureValue = extraParams.getProperty(PdfExtraParams.ALLOW_COSIGNING_UNREGISTERED_SIGNATURES);
-		if (!Boolean.parseBoolean(allowUnregisteredSignatureValue) && PdfUtil.pdfHasUnregisteredSignatures(pdfReader)) {
+		if (!Boolean.parseBoolean(allowUnregisteredSignatureValue) && PdfUtil.pdfHasUnregisteredSignatures(signatureIndex)) {
 			// Creamos la excepcion para notificar el problema
 			final PdfHasUnregisteredSignaturesException e = new PdfHasUnregisteredSignaturesException("El PDF contiene firmas sin registrar"); //$NON-NLS-1$
 			// Si expresamente se indico que no estan permitido agregar nuevas firmas en esta situacion, marcamos la excepcion para que
@@ -316,7 +400,9 @@ public final class PdfSessionManager {
 		// es mejor quitarlos
 		pdfReader.removeUsageRights();
 
-		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		// Si se ha indicado fichero de salida, el PDF firmado se genera directamente en el. Si no,
+		// se genera en memoria reutilizando el buffer en el que iText compone el documento
+		final ByteArrayOutputStream baos = outputFile == null ? new PdfSessionOutputStream() : null;
 
 		// Activar el atributo de "agregar firma" (quinto parametro del metodo
 		// "PdfStamper.createSignature") hace que se cree una nueva revision del
@@ -345,14 +431,19 @@ public final class PdfSessionManager {
 		// el parametro "alwaysCreateRevision".
 		// Aplicamos todos los atributos de firma
 
+		// Si la firma se agrega como nueva revision, iText copia el PDF de entrada y la escribe a
+		// continuacion. Si no, reescribe el documento completo
+		final boolean appendMode = PdfUtil.getAppendMode(extraParams, pdfReader);
+		final int revisionOffset = appendMode ? pdfReader.getFileLength() : 0;
+
 		final PdfStamper stp;
 		try {
 			stp = PdfStamper.createSignature(pdfReader, // PDF de entrada
 				baos, // Salida
 				pdfVersion == UNDEFINED ? '\0' /* Mantener version */
 						: Integer.toString(pdfVersion).toCharArray()[0] /* Version a medida */,
-				null, // No crear temporal
-				PdfUtil.getAppendMode(extraParams, pdfReader), // Append Mode
+				outputFile, // Fichero en el que generar el PDF, si se indico
+				appendMode, // Append Mode
 				signTime // Momento de la firma
 			);
 		}
@@ -586,7 +677,7 @@ public final class PdfSessionManager {
 
 		final PdfObject pdfObject = ((com.aowagie.text.pdf.PdfStamperImp) stp.getWriter()).getFileID();
 
-		return new PdfTriPhaseSession(sap, baos, new String(pdfObject.getBytes()));
+		return new PdfTriPhaseSession(sap, baos, outputFile, new String(pdfObject.getBytes()), revisionOffset);
 	}
 
     private static String getDefaultLayer2Text(final boolean hasReason, final boolean hasLocation) {
@@ -0,0 +1,152 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * You may contact the copyright holder at: soporte.afirma@seap.minhap.es
+ */
+
+package es.gob.afirma.signers.pades;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+import com.aowagie.text.DocumentException;
+import com.aowagie.text.pdf.PdfDictionary;
+import com.aowagie.text.pdf.PdfSignatureAppearance;
+
+/** Flujo de salida en memoria del PDF firmado en una sesi&oacute;n de firma.
+ * <p>
+ *  Al cerrar la firma con <code>PdfSignatureAppearance.close(PdfDictionary)</code>, la
+ *  versi&oacute;n de iText incluida vuelca el documento completo (revisiones previas m&aacute;s la
+ *  nueva revisi&oacute;n) en una &uacute;nica escritura desde su propio buffer interno, que ya no
+ *  vuelve a modificar ni a reutilizar. En lugar de copiar esos octetos en el buffer de este flujo
+ *  (haci&eacute;ndolo crecer sucesivamente), se conserva la referencia al buffer de iText y solo se
+ *  copia una vez, al obtener el resultado.
+ * </p>
+ * <p>
+ *  Conservar la referencia incumple el contrato general de <code>OutputStream</code>, por lo que
+ *  solo se hace con la primera escritura que se produce dentro de
+ *  {@link #closeSignature(PdfSignatureAppearance, PdfDictionary, OutputStream)}, que es donde se
+ *  cumple esa condici&oacute;n. El resto de escrituras se copian como en un
+ *  <code>ByteArrayOutputStream</code> normal. Esta clase solo debe usarse como salida de las
+ *  sesiones de firma de <code>PdfSessionManager</code> y de <code>PdfTimestamper</code>.
+ * </p> */
+final class PdfSessionOutputStream extends ByteArrayOutputStream {
+
+	/** Buffer externo con el contenido del flujo o <code>null</code> si el contenido est&aacute;
+	 * en el buffer propio. */
+	private byte[] ref = null;
+
+	/** Longitud de los datos v&aacute;lidos en el buffer externo. */
+	private int refLen = 0;
+
+	/** Indica si la siguiente escritura es el volcado final de iText, cuyo buffer puede
+	 * conservarse sin copiarlo. */
+	private boolean handOff = false;
+
+	/** Cierra una firma PDF en curso. Si el flujo de salida de la firma es un
+	 * <code>PdfSessionOutputStream</code>, este conserva el buffer con el que iText vuelca el
+	 * documento en lugar de copiarlo.
+	 * @param sap Apariencia de la firma PDF en curso, ya pre-cerrada.
+	 * @param update Diccionario de actualizaci&oacute;n con la firma.
+	 * @param out Flujo de salida de la firma o <code>null</code> si se genera en fichero.
+	 * @throws IOException Si hay errores en la escritura del PDF.
+	 * @throws DocumentException Si hay errores en la composici&oacute;n del PDF. */
+	static void closeSignature(final PdfSignatureAppearance sap,
+			                   final PdfDictionary update,
+			                   final OutputStream out) throws IOException, DocumentException {
+		if (!(out instanceof PdfSessionOutputStream)) {
+			sap.close(update);
+			return;
+		}
+		final PdfSessionOutputStream sessionOut = (PdfSessionOutputStream) out;
+		synchronized (sessionOut) {
+			sessionOut.handOff = true;
+		}
+		try {
+			sap.close(update);
+		}
+		finally {
+			synchronized (sessionOut) {
+				sessionOut.handOff = false;
+			}
+		}
+	}
+
+	@Override
+	public synchronized void write(final byte[] b, final int off, final int len) {
+		final boolean keepReference = this.handOff;
+		this.handOff = false;
+		if (keepReference && off == 0 && this.ref == null && this.count == 0) {
+			this.ref = b;
+			this.refLen = len;
+			return;
+		}
+		materialize();
+		super.write(b, off, len);
+	}
+
+	@Override
+	public synchronized void write(final int b) {
+		this.handOff = false;
+		materialize();
+		super.write(b);
+	}
+
+	@Override
+	public synchronized void writeTo(final OutputStream out) throws IOException {
+		if (this.ref != null) {
+			out.write(this.ref, 0, this.refLen);
+		}
+		else {
+			super.writeTo(out);
+		}
+	}
+
+	@Override
+	public synchronized void reset() {
+		this.ref = null;
+		this.refLen = 0;
+		super.reset();
+	}
+
+	@Override
+	public synchronized byte[] toByteArray() {
+		if (this.ref != null) {
+			return Arrays.copyOf(this.ref, this.refLen);
+		}
+		return super.toByteArray();
+	}
+
+	@Override
+	public synchronized int size() {
+		return this.ref != null ? this.refLen : super.size();
+	}
+
+	@Override
+	public synchronized String toString() {
+		materialize();
+		return super.toString();
+	}
+
+	@Override
+	public synchronized String toString(final String charsetName) throws UnsupportedEncodingException {
+		materialize();
+		return super.toString(charsetName);
+	}
+
+	/** Copia el contenido del buffer externo, si lo hay, al buffer propio del flujo. */
+	private void materialize() {
+		if (this.ref != null) {
+			final byte[] b = this.ref;
+			this.ref = null;
+			super.write(b, 0, this.refLen);
+			this.refLen = 0;
+		}
+	}
+}
@@ -10,7 +10,9 @@
 package es.gob.afirma.signers.pades;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.GregorianCalendar;
@@ -152,32 +154,48 @@ public final class PdfSignResult {
 
     @Override
 	public String toString() {
-    	final String base64Properties;
+    	final ByteArrayOutputStream baos = new ByteArrayOutputStream();
 		try {
-			base64Properties = AOUtil.properties2Base64(getExtraParams());
+			writeTo(baos);
+			return baos.toString(StandardCharsets.UTF_8.name());
 		}
 		catch (final IOException e) {
 			throw new IllegalStateException(e);
 		}
-    	return new StringBuilder()
-			.append("<signResult>\n") //$NON-NLS-1$
-			.append(" <extraParams>\n") //$NON-NLS-1$
-			.append(base64Properties).append('\n')
-			.append(" </extraParams>\n") //$NON-NLS-1$
-			.append(" <pdfId>\n") //$NON-NLS-1$
-			.append(getFileID(false)).append('\n')
-			.append(" </pdfId>\n") //$NON-NLS-1$
-			.append(" <sign>\n") //$NON-NLS-1$
-			.append(Base64.getEncoder().encodeToString(getSign())).append('\n')
-			.append(" </sign>\n") //$NON-NLS-1$
-			.append(" <timestamp>\n") //$NON-NLS-1$
-			.append(this.timestamp != null ? Base64.getEncoder().encodeToString(getTimestamp()) : "").append('\n') //$NON-NLS-1$
-			.append(" </timestamp>\n") //$NON-NLS-1$
-			.append(" <signTime>\n") //$NON-NLS-1$
-			.append(getSignTime().getTimeInMillis()).append('\n')
-			.append(" </signTime>\n") //$NON-NLS-1$
-			.append("</signResult>") //$NON-NLS-1$
-		.toString();
+    }
+
+    /** Escribe el resultado serializado como XML (el mismo que devuelve {@link #toString()}),
+     * codificando en Base64 la firma y el sello de tiempo directamente sobre el flujo de salida.
+     * @param out Flujo en el que escribir el XML en UTF-8. No se cierra.
+     * @throws IOException Si hay problemas en la escritura. */
+    public void writeTo(final OutputStream out) throws IOException {
+    	write(out, "<signResult>\n"); //$NON-NLS-1$
+    	write(out, " <extraParams>\n"); //$NON-NLS-1$
+    	AOUtil.properties2Base64(getExtraParams(), out);
+    	write(out, "\n </extraParams>\n"); //$NON-NLS-1$
+    	write(out, " <pdfId>\n"); //$NON-NLS-1$
+    	write(out, getFileID(false));
+    	write(out, "\n </pdfId>\n"); //$NON-NLS-1$
+    	write(out, " <sign>\n"); //$NON-NLS-1$
+    	try (OutputStream b64 = AOUtil.newBase64Encoder(out, false)) {
+    		b64.write(this.sign);
+    	}
+    	write(out, "\n </sign>\n"); //$NON-NLS-1$
+    	write(out, " <timestamp>\n"); //$NON-NLS-1$
+    	if (this.timestamp != null) {
+    		try (OutputStream b64 = AOUtil.newBase64Encoder(out, false)) {
+    			b64.write(this.timestamp);
+    		}
+    	}
+    	write(out, "\n </timestamp>\n"); //$NON-NLS-1$
+    	write(out, " <signTime>\n"); //$NON-NLS-1$
+    	write(out, Long.toString(getSignTime().getTimeInMillis()));
+    	write(out, "\n </signTime>\n"); //$NON-NLS-1$
+    	write(out, "</signResult>"); //$NON-NLS-1$
+    }
+
+    private static void write(final OutputStream out, final String text) throws IOException {
+    	out.write(text.getBytes(StandardCharsets.UTF_8));
     }
 
 	/** Busca el siguiente nodo de tipo elemento del listado.
@@ -0,0 +1,159 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * You may contact the copyright holder at: soporte.afirma@seap.minhap.es
+ */
+
+package es.gob.afirma.signers.pades;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.aowagie.text.pdf.PdfArray;
+import com.aowagie.text.pdf.PdfDictionary;
+import com.aowagie.text.pdf.PdfName;
+import com.aowagie.text.pdf.PdfNumber;
+import com.aowagie.text.pdf.PdfObject;
+import com.aowagie.text.pdf.PdfReader;
+import com.aowagie.text.pdf.PdfString;
+
+/** &Iacute;ndice de los diccionarios de firma (<code>/Type /Sig</code>) de un PDF.
+ * <p>
+ *  El &iacute;ndice se construye recorriendo una &uacute;nica vez la tabla de referencias
+ *  cruzadas del documento, de forma que las distintas comprobaciones que se hagan sobre las
+ *  firmas del documento durante una misma operaci&oacute;n (firmas no registradas, subfiltros
+ *  existentes, etc.) se resuelven sobre las firmas encontradas sin volver a recorrer todos
+ *  los objetos del PDF. Quien construye el &iacute;ndice es el responsable de reutilizarlo
+ *  durante la operaci&oacute;n.
+ * </p>
+ * <p>
+ *  El &iacute;ndice no mantiene referencias al lector del PDF y refleja el documento tal como
+ *  se ley&oacute;, por lo que no incluye las firmas que se agreguen despu&eacute;s mediante
+ *  un estampador sobre el mismo lector.
+ * </p> */
+final class PdfSignatureIndex {
+
+	private final List<SignatureEntry> signatures;
+
+	private PdfSignatureIndex(final List<SignatureEntry> signatures) {
+		this.signatures = Collections.unmodifiableList(signatures);
+	}
+
+	/** Obtiene las firmas del PDF en el orden en el que aparecen en su tabla de referencias cruzadas.
+	 * @return Firmas del PDF. */
+	List<SignatureEntry> getSignatures() {
+		return this.signatures;
+	}
+
+	/** Construye el &iacute;ndice de firmas de un PDF recorriendo todos sus objetos.
+	 * @param pdfReader Lector del PDF.
+	 * @return &Iacute;ndice de firmas del PDF. */
+	static PdfSignatureIndex build(final PdfReader pdfReader) {
+
+		final List<SignatureEntry> entries = new ArrayList<>();
+		for (int i = 0; i < pdfReader.getXrefSize(); i++) {
+			final PdfObject pdfobj = pdfReader.getPdfObject(i);
+			if (pdfobj != null && pdfobj.isDictionary()) {
+				final PdfDictionary d = (PdfDictionary) pdfobj;
+				if (PdfName.SIG.equals(d.get(PdfName.TYPE))) {
+					entries.add(new SignatureEntry(
+						d.get(PdfName.SUBFILTER) != null ? d.get(PdfName.SUBFILTER).toString() : null,
+						getCertificate(d),
+						getByteRange(d)
+					));
+				}
+			}
+		}
+
+		// La revision de cada firma viene dada por el orden de los rangos firmados,
+		// ya que cada revision cubre por completo a las anteriores
+		final List<SignatureEntry> byRevision = new ArrayList<>(entries);
+		byRevision.sort(Comparator.comparingLong(SignatureEntry::getSignedLength));
+		int revision = 0;
+		for (final SignatureEntry entry : byRevision) {
+			entry.revision = entry.getSignedLength() > 0 ? ++revision : 0;
+		}
+
+		return new PdfSignatureIndex(entries);
+	}
+
+	private static int[] getByteRange(final PdfDictionary sigDictionary) {
+		final PdfArray array = sigDictionary.getAsArray(PdfName.BYTERANGE);
+		if (array == null) {
+			return null;
+		}
+		final int[] byteRange = new int[array.size()];
+		for (int i = 0; i < byteRange.length; i++) {
+			final PdfNumber n = array.getAsNumber(i);
+			byteRange[i] = n != null ? n.intValue() : 0;
+		}
+		return byteRange;
+	}
+
+	/** Obtiene la codificaci&oacute;n del certificado del firmante declarado en la entrada
+	 * <code>/Cert</code> de un diccionario de firma. Si la entrada contiene varios
+	 * certificados, se devuelve el primero.
+	 * @param sigDictionary Diccionario de firma.
+	 * @return Certificado codificado o <code>null</code> si no se declara o no es v&aacute;lido. */
+	private static byte[] getCertificate(final PdfDictionary sigDictionary) {
+		PdfObject cert = PdfReader.getPdfObject(sigDictionary.get(PdfName.CERT));
+		if (cert instanceof PdfArray && ((PdfArray) cert).size() > 0) {
+			cert = PdfReader.getPdfObject(((PdfArray) cert).getPdfObject(0));
+		}
+		return cert instanceof PdfString ? ((PdfString) cert).getOriginalBytes() : null;
+	}
+
+	/** Datos de un diccionario de firma de un PDF. */
+	static final class SignatureEntry {
+
+		private final String subFilter;
+		private final byte[] cert;
+		private final int[] byteRange;
+		private int revision = 0;
+
+		SignatureEntry(final String subFilter, final byte[] cert, final int[] byteRange) {
+			this.subFilter = subFilter;
+			this.cert = cert;
+			this.byteRange = byteRange;
+		}
+
+		/** Obtiene el subfiltro de la firma.
+		 * @return Subfiltro de la firma o <code>null</code> si no lo declara. */
+		String getSubFilter() {
+			return this.subFilter;
+		}
+
+		/** Obtiene el certificado declarado en la entrada <code>/Cert</code> del diccionario de firma.
+		 * @return Certificado del firmante codificado o <code>null</code> si no lo declara. */
+		byte[] getCert() {
+			return this.cert != null ? this.cert.clone() : null;
+		}
+
+		/** Obtiene el rango de octetos firmado.
+		 * @return Rango de octetos firmado o <code>null</code> si no lo declara. */
+		int[] getByteRange() {
+			return this.byteRange != null ? this.byteRange.clone() : null;
+		}
+
+		/** Obtiene la longitud del documento cubierta por la firma, que es la de la
+		 * revisi&oacute;n en la que se agreg&oacute;.
+		 * @return Longitud del documento firmada o 0 si la firma no declara un rango v&aacute;lido. */
+		long getSignedLength() {
+			if (this.byteRange == null || this.byteRange.length < 4) {
+				return 0;
+			}
+			return (long) this.byteRange[this.byteRange.length - 2] + this.byteRange[this.byteRange.length - 1];
+		}
+
+		/** Obtiene el n&uacute;mero de revisi&oacute;n firmada, empezando por 1 para la primera firma.
+		 * @return Revisi&oacute;n firmada o 0 si la firma no declara un rango v&aacute;lido. */
+		int getRevision() {
+			return this.revision;
+		}
+	}
+}
@@ -10,9 +10,11 @@
 package es.gob.afirma.signers.pades;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.security.MessageDigest;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
 import java.util.Calendar;
 import java.util.HashMap;
@@ -31,7 +33,6 @@ import com.aowagie.text.pdf.PdfStamper;
 import com.aowagie.text.pdf.PdfString;
 
 import es.gob.afirma.core.AOException;
-import es.gob.afirma.core.misc.AOUtil;
 import es.gob.afirma.signers.tsp.pkcs7.CMSTimestamper;
 import es.gob.afirma.signers.tsp.pkcs7.TsaParams;
 
@@ -74,141 +75,190 @@ public final class PdfTimestamper {
 	 * @throws IOException Si hay problemas en el tratamiento de datos. */
 	public static byte[] timestampPdf(final byte[] inPDF, final Properties extraParams, final Calendar signTime) throws AOException,
 	                                                                                                                    IOException {
+		if (!isDocumentTimestampRequested(extraParams)) {
+			return inPDF;
+		}
+
+        // Y procesamos normalmente el PDF
+        final PdfReader pdfReader = PdfUtil.getPdfReader(inPDF, extraParams);
+
+		try (ByteArrayOutputStream baos = new PdfSessionOutputStream()) {
+			timestampPdf(pdfReader, extraParams, signTime, baos, null);
+			return baos.toByteArray();
+		}
+	}
+
+	/** Aplica un sello de tiempo a un PDF almacenado en fichero. El PDF de entrada se lee mediante
+	 * acceso aleatorio al fichero y el PDF sellado se genera directamente en un fichero temporal, de
+	 * forma que el documento no llega a cargarse completo en memoria.
+	 * @param inPdf Fichero con el PDF de entrada.
+	 * @param extraParams Par&aacute;metros de la TSA.
+	 * @param signTime Tiempo para el sello.
+	 * @return Fichero temporal con el PDF con el sello de tiempo aplicado, que debe eliminar quien
+	 *         lo solicita, o el propio fichero de entrada si no se ha pedido sello a nivel de documento.
+	 * @throws AOException Si hay problemas durante el proceso.
+	 * @throws IOException Si hay problemas en el tratamiento de datos. */
+	public static Path timestampPdf(final Path inPdf, final Properties extraParams, final Calendar signTime) throws AOException,
+	                                                                                                                IOException {
+		if (!isDocumentTimestampRequested(extraParams)) {
+			return inPdf;
+		}
+
+        final PdfReader pdfReader = PdfUtil.getPdfReader(inPdf, extraParams);
+
+        final Path outPdf = Files.createTempFile("afirma_ts_", ".pdf"); //$NON-NLS-1$ //$NON-NLS-2$
+        try {
+        	timestampPdf(pdfReader, extraParams, signTime, null, outPdf.toFile());
+        }
+        catch (final AOException | IOException | RuntimeException e) {
+        	Files.deleteIfExists(outPdf);
+        	throw e;
+        }
+        return outPdf;
+	}
+
+	/** Indica si se ha pedido un sello de tiempo a nivel de documento.
+	 * @param extraParams Par&aacute;metros de la TSA.
+	 * @return <code>true</code> si se ha pedido sello de tiempo a nivel de documento,
+	 *         <code>false</code> en caso contrario. */
+	private static boolean isDocumentTimestampRequested(final Properties extraParams) {
     	// Comprobamos si se ha pedido un sello de tiempo
-    	if (extraParams != null) {
-    		final String tsa = extraParams.getProperty(PdfExtraParams.TSA_URL);
-    		final String tsType = extraParams.getProperty(PdfExtraParams.TS_TYPE);
-
-    		// Solo hacemos este tipo de sello en esta situacion:
-    		// Han establecido URL de TSA y nos piden sello de tipo 2 (a nivel de documento) o de tipo 3
-    		// (a nivel de documento y tambien a nivel de firma). Si el tipo del sello solicitado es null
-    		// no se aplica este sello (pero si se hace el sello a nivel de firma).
-    		// 1.- Solo sello firma.
-    		// 2.- Solo sello de documento.
-    		// 3.- Ambos sellos, documento y firma.
-            if (tsa != null && (TS_LEVEL_DOC.equals(tsType) || TS_LEVEL_SIGN_DOC.equals(tsType))) {
-
-                // Y procesamos normalmente el PDF
-                final PdfReader pdfReader = PdfUtil.getPdfReader(inPDF, extraParams);
-
-            	// Comprobamos el nivel de certificacion del PDF
-                PdfUtil.checkPdfCertification(pdfReader.getCertificationLevel(), extraParams);
-
-        		// Establecimiento de version PDF
-        		int pdfVersion;
-        		try {
-        			pdfVersion = extraParams.getProperty(PdfExtraParams.PDF_VERSION) != null ?
-        				Integer.parseInt(extraParams.getProperty(PdfExtraParams.PDF_VERSION).trim()) :
-        					PDF_MAX_VERSION;
-        		}
-        		catch(final Exception e) {
-        			LOGGER.warning("Error en el establecimiento de la version PDF, se usara " + PDF_MAX_VERSION + ": " + e); //$NON-NLS-1$ //$NON-NLS-2$
-        			pdfVersion = PDF_MAX_VERSION;
-        		}
-        		if (pdfVersion != UNDEFINED && (pdfVersion < PDF_MIN_VERSION || pdfVersion > PDF_MAX_VERSION)) {
-        			LOGGER.warning("Se ha establecido un valor invalido para version, se ignorara: " + pdfVersion); //$NON-NLS-1$
-        			pdfVersion = UNDEFINED;
-        		}
-
-        		try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-	        		final PdfStamper stp;
-	        		try {
-	        			stp = PdfStamper.createSignature(
-	        				pdfReader, // PDF de entrada
-	        				baos,      // Salida
-	        				pdfVersion == UNDEFINED ? '\0' /* Mantener version */ : Integer.toString(pdfVersion).toCharArray()[0] /* Version a medida */,
-	        				null,      // No crear temporal
-	        				PdfUtil.getAppendMode(extraParams, pdfReader), // Append Mode
-	        				signTime   // Momento de la firma
-	        			);
-	        		}
-	        		catch(final BadPasswordException e) {
-	        			throw new PdfIsPasswordProtectedException(e);
-	        		}
-	        		catch (final DocumentException e) {
-						throw new AOException("El estado del PDF de entrada es inconsistente", e); //$NON-NLS-1$
-					}
-	        		catch (final IOException e) {
-	        			throw new AOException("Error en la composicion del documento firmado", e); //$NON-NLS-1$
-					}
-
-	        		// Aplicamos todos los atributos de firma
-	        		final PdfSignatureAppearance sap = stp.getSignatureAppearance();
-
-	        		// La compresion solo para versiones 5 y superiores
-	        		// Hacemos la comprobacion a "false", porque es el valor que deshabilita esta opcion
-	        		if (pdfVersion >= PDF_MIN_COMPRESABLE_VERSION && !"false".equalsIgnoreCase(extraParams.getProperty(PdfExtraParams.COMPRESS_PDF))) { //$NON-NLS-1$
-	        			stp.setFullCompression();
-	        		}
-
-	        		PdfUtil.enableLtv(stp);
-
-	        		sap.setAcro6Layers(true);
-	        		sap.setRender(PdfSignatureAppearance.SignatureRenderDescription);
-	        		sap.setSignDate(signTime);
-
-	        		final PdfSignature pdfSignature = new PdfSignature(
-        				new PdfName("DocTimeStamp"), //$NON-NLS-1$
-	    				PdfName.ADOBE_PPKLITE,
-	    				new PdfName(TIMESTAMP_SUBFILTER)
-	    			);
-
-	        		pdfSignature.setDate(new PdfDate(signTime));
-	        		sap.setCryptoDictionary(pdfSignature);
-
-	        		// Reservamos el espacio necesario en el PDF para insertar la firma
-	        		final HashMap<PdfName, Integer> exc = PdfSessionManager.reserveSignSizes(extraParams);
-
-	        		try {
-						sap.preClose(exc, signTime, null);
-					}
-	        		catch (final DocumentException e) {
-						throw new AOException("Error en el procesado del PDF", e); //$NON-NLS-1$
-					}
-
-	        		// Obtenemos el rango procesable
-	        		final byte[] original;
-	        		try (InputStream is = sap.getRangeStream()) {
-	        			original = AOUtil.getDataFromInputStream(is);
-	        		}
-
-	        		// Obtenemos el sello
-	        		final byte[] tspToken;
-					try {
-						tspToken = getTspToken(extraParams, original, signTime);
-					}
-					catch (final NoSuchAlgorithmException | AOException | IOException e) {
-						throw new IOException("Error obteniendo el sello de tiempo desde la TSA", e); //$NON-NLS-1$
-					}
-	                if (tspToken.length > CSIZE) {
-	                	throw new AOException(
-	            			"El tamano del sello de tiempo (" + tspToken.length + ") supera el maximo permitido para un PDF (" + CSIZE + ")" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-	        			);
-	                }
-
-	            	// Y lo insertamos en el PDF
-	        		final byte[] outc = new byte[CSIZE];
-
-	        		final PdfDictionary dic2 = new PdfDictionary();
-	        		System.arraycopy(tspToken, 0, outc, 0, tspToken.length);
-	                dic2.put(PdfName.CONTENTS, new PdfString(outc).setHexWriting(true));
-
-	        	    try {
-	    		       sap.close(dic2);
-	    		    }
-	    		    catch (final Exception e) {
-	    		        throw new AOException("Error al cerrar el PDF para finalizar el proceso de firma", e); //$NON-NLS-1$
-	    		    }
-
-	        	    return baos.toByteArray();
-        		}
-            }
+    	if (extraParams == null) {
+    		return false;
     	}
-		return inPDF;
+		final String tsa = extraParams.getProperty(PdfExtraParams.TSA_URL);
+		final String tsType = extraParams.getProperty(PdfExtraParams.TS_TYPE);
+
+		// Solo hacemos este tipo de sello en esta situacion:
+		// Han establecido URL de TSA y nos piden sello de tipo 2 (a nivel de documento) o de tipo 3
+		// (a nivel de documento y tambien a nivel de firma). Si el tipo del sello solicitado es null
+		// no se aplica este sello (pero si se hace el sello a nivel de firma).
+		// 1.- Solo sello firma.
+		// 2.- Solo sello de documento.
+		// 3.- Ambos sellos, documento y firma.
+        return tsa != null && (TS_LEVEL_DOC.equals(tsType) || TS_LEVEL_SIGN_DOC.equals(tsType));
+	}
+
+	/** Aplica un sello de tiempo a nivel de documento a un PDF.
+	 * @param pdfReader Lector del PDF de entrada.
+	 * @param extraParams Par&aacute;metros de la TSA.
+	 * @param signTime Tiempo para el sello.
+	 * @param os Flujo al que se escribe el PDF sellado o <code>null</code> si se genera en fichero.
+	 * @param outputFile Fichero en el que se genera el PDF sellado o <code>null</code> si se genera
+	 *                   en el flujo de salida.
+	 * @throws AOException Si hay problemas durante el proceso.
+	 * @throws IOException Si hay problemas en el tratamiento de datos. */
+	private static void timestampPdf(final PdfReader pdfReader,
+			                         final Properties extraParams,
+			                         final Calendar signTime,
+			                         final OutputStream os,
+			                         final File outputFile) throws AOException, IOException {
+
+    	// Comprobamos el nivel de certificacion del PDF
+        PdfUtil.checkPdfCertification(pdfReader.getCertificationLevel(), extraParams);
+
+		// Establecimiento de version PDF
+		int pdfVersion;
+		try {
+			pdfVersion = extraParams.getProperty(PdfExtraParams.PDF_VERSION) != null ?
+				Integer.parseInt(extraParams.getProperty(PdfExtraParams.PDF_VERSION).trim()) :
+					PDF_MAX_VERSION;
+		}
+		catch(final Exception e) {
+			LOGGER.warning("Error en el establecimiento de la version PDF, se usara " + PDF_MAX_VERSION + ": " + e); //$NON-NLS-1$ //$NON-NLS-2$
+			pdfVersion = PDF_MAX_VERSION;
+		}
+		if (pdfVersion != UNDEFINED && (pdfVersion < PDF_MIN_VERSION || pdfVersion > PDF_MAX_VERSION)) {
+			LOGGER.warning("Se ha establecido un valor invalido para version, se ignorara: " + pdfVersion); //$NON-NLS-1$
+			pdfVersion = UNDEFINED;
+		}
+
+		final PdfStamper stp;
+		try {
+			stp = PdfStamper.createSignature(
+				pdfReader,  // PDF de entrada
+				os,         // Salida
+				pdfVersion == UNDEFINED ? '\0' /* Mantener version */ : Integer.toString(pdfVersion).toCharArray()[0] /* Version a medida */,
+				outputFile, // Fichero en el que generar el PDF, si se indico
+				PdfUtil.getAppendMode(extraParams, pdfReader), // Append Mode
+				signTime    // Momento de la firma
+			);
+		}
+		catch(final BadPasswordException e) {
+			throw new PdfIsPasswordProtectedException(e);
+		}
+		catch (final DocumentException e) {
+			throw new AOException("El estado del PDF de entrada es inconsistente", e); //$NON-NLS-1$
+		}
+		catch (final IOException e) {
+			throw new AOException("Error en la composicion del documento firmado", e); //$NON-NLS-1$
+		}
+
+		// Aplicamos todos los atributos de firma
+		final PdfSignatureAppearance sap = stp.getSignatureAppearance();
+
+		// La compresion solo para versiones 5 y superiores
+		// Hacemos la comprobacion a "false", porque es el valor que deshabilita esta opcion
+		if (pdfVersion >= PDF_MIN_COMPRESABLE_VERSION && !"false".equalsIgnoreCase(extraParams.getProperty(PdfExtraParams.COMPRESS_PDF))) { //$NON-NLS-1$
+			stp.setFullCompression();
+		}
+
+		PdfUtil.enableLtv(stp);
+
+		sap.setAcro6Layers(true);
+		sap.setRender(PdfSignatureAppearance.SignatureRenderDescription);
+		sap.setSignDate(signTime);
+
+		final PdfSignature pdfSignature = new PdfSignature(
+			new PdfName("DocTimeStamp"), //$NON-NLS-1$
+			PdfName.ADOBE_PPKLITE,
+			new PdfName(TIMESTAMP_SUBFILTER)
+		);
+
+		pdfSignature.setDate(new PdfDate(signTime));
+		sap.setCryptoDictionary(pdfSignature);
+
+		// Reservamos el espacio necesario en el PDF para insertar la firma
+		final HashMap<PdfName, Integer> exc = PdfSessionManager.reserveSignSizes(extraParams);
+
+		try {
+			sap.preClose(exc, signTime, null);
+		}
+		catch (final DocumentException e) {
+			throw new AOException("Error en el procesado del PDF", e); //$NON-NLS-1$
+		}
+
+		// Obtenemos el sello sobre la huella del rango procesable
+		final byte[] tspToken;
+		try {
+			tspToken = getTspToken(extraParams, sap, signTime);
+		}
+		catch (final NoSuchAlgorithmException | AOException | IOException e) {
+			throw new IOException("Error obteniendo el sello de tiempo desde la TSA", e); //$NON-NLS-1$
+		}
+        if (tspToken.length > CSIZE) {
+        	throw new AOException(
+    			"El tamano del sello de tiempo (" + tspToken.length + ") supera el maximo permitido para un PDF (" + CSIZE + ")" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			);
+        }
+
+    	// Y lo insertamos en el PDF
+		final byte[] outc = new byte[CSIZE];
+
+		final PdfDictionary dic2 = new PdfDictionary();
+		System.arraycopy(tspToken, 0, outc, 0, tspToken.length);
+        dic2.put(PdfName.CONTENTS, new PdfString(outc).setHexWriting(true));
+
+	    try {
+	       PdfSessionOutputStream.closeSignature(sap, dic2, os);
+	    }
+	    catch (final Exception e) {
+	        throw new AOException("Error al cerrar el PDF para finalizar el proceso de firma", e); //$NON-NLS-1$
+	    }
 	}
 
 	private static byte[] getTspToken(final Properties extraParams,
-			                          final byte[] original,
+			                          final PdfSignatureAppearance sap,
 			                          final Calendar signTime) throws NoSuchAlgorithmException, AOException, IOException {
 		// Cargamos los parametros
 		final TsaParams tsaParams = new TsaParams(extraParams);
@@ -219,7 +269,7 @@ public final class PdfTimestamper {
 		// Obtenemos el algoritmo de hash del sello
 		final String tsaHashAlgorithm = tsaParams.getTsaHashAlgorithm();
 
-		final byte[] tsDigest = MessageDigest.getInstance(tsaHashAlgorithm).digest(original);
+		final byte[] tsDigest = PdfUtil.getRangeDigest(sap, tsaHashAlgorithm);
 
 		// Obtenemos el token TSP
 		return timestamper.getTimeStampToken(tsDigest, tsaHashAlgorithm, signTime);
@@ -10,7 +10,11 @@
 package es.gob.afirma.signers.pades;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
 
+import com.aowagie.text.DocumentException;
+import com.aowagie.text.pdf.PdfDictionary;
 import com.aowagie.text.pdf.PdfSignatureAppearance;
 
 /** Datos PDF relevantes en cuanto a las firmas electr&oacute;nicas, consistentes en los datos
@@ -20,7 +24,9 @@ public final class PdfTriPhaseSession {
 
     private final PdfSignatureAppearance sap;
     private final ByteArrayOutputStream baos;
+    private final File outputFile;
     private final String fileID;
+    private final int revisionOffset;
 
     @Override
 	public String toString() {
@@ -28,17 +34,35 @@ public final class PdfTriPhaseSession {
     }
 
     PdfTriPhaseSession(final PdfSignatureAppearance s, final ByteArrayOutputStream b, final String fid) {
+        this(s, b, null, fid, 0);
+    }
+
+    PdfTriPhaseSession(final PdfSignatureAppearance s,
+    		           final ByteArrayOutputStream b,
+    		           final File f,
+    		           final String fid,
+    		           final int revOffset) {
         this.sap = s;
         this.baos = b;
+        this.outputFile = f;
         this.fileID = fid;
+        this.revisionOffset = revOffset;
     }
 
     /** Obtiene el flujo de datos del propio PDF firmado.
-     * @return Flujo de datos del propio PDF firmado */
+     * @return Flujo de datos del propio PDF firmado o <code>null</code> si el PDF firmado
+     *         se vuelca directamente a fichero. */
     public ByteArrayOutputStream getBAOS() {
         return this.baos;
     }
 
+    /** Obtiene el fichero en el que se vuelca directamente el PDF firmado.
+     * @return Fichero de salida del PDF firmado o <code>null</code> si el PDF firmado
+     *         se genera en memoria. */
+    public File getOutputFile() {
+        return this.outputFile;
+    }
+
     /** Devuelve el <code>PdfSignatureAppearance</code> de la firma PDF en curso.
      * @return <code>PdfSignatureAppearance</code> de la firma PDF en curso */
     public PdfSignatureAppearance getSAP() {
@@ -51,4 +75,30 @@ public final class PdfTriPhaseSession {
         return this.fileID;
     }
 
+    /** Obtiene la posici&oacute;n del PDF firmado en la que comienza la revisi&oacute;n que
+     * contiene la firma. Si la firma se agrega como nueva revisi&oacute;n, es la longitud del
+     * PDF de entrada seg&uacute;n lo ley&oacute; iText, ya que este se copia sin cambios antes de
+     * ella. Si el documento se reescribe por completo, es 0.
+     * @return Posici&oacute;n de inicio de la revisi&oacute;n con la firma. */
+    int getRevisionOffset() {
+        return this.revisionOffset;
+    }
+
+    /** Cierra la sesi&oacute;n sin completar la firma, liberando el fichero o el flujo en el que
+     * se estaba generando el PDF firmado, que queda incompleto y debe descartarse.
+     * @throws IOException Si no se puede cerrar la salida del PDF. */
+    void abort() throws IOException {
+    	// iText solo libera la salida al cerrar la firma. Con un diccionario de actualizacion vacio
+    	// rechaza completarla, ya que no rellena el espacio reservado, pero la libera igualmente
+    	try {
+    		this.sap.close(new PdfDictionary());
+    	}
+    	catch (final IllegalArgumentException e) {
+    		// Es el rechazo esperado
+    	}
+    	catch (final DocumentException e) {
+    		throw new IOException("No se ha podido cerrar la sesion de firma del PDF", e); //$NON-NLS-1$
+    	}
+    }
+
 }
@@ -9,9 +9,13 @@
 
 package es.gob.afirma.signers.pades;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.security.cert.CertificateFactory;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -28,18 +32,15 @@ import java.util.logging.Logger;
 import com.aowagie.text.Rectangle;
 import com.aowagie.text.exceptions.BadPasswordException;
 import com.aowagie.text.pdf.AcroFields;
-import com.aowagie.text.pdf.PdfArray;
 import com.aowagie.text.pdf.PdfDeveloperExtension;
-import com.aowagie.text.pdf.PdfDictionary;
 import com.aowagie.text.pdf.PdfName;
-import com.aowagie.text.pdf.PdfObject;
 import com.aowagie.text.pdf.PdfReader;
 import com.aowagie.text.pdf.PdfSignatureAppearance;
 import com.aowagie.text.pdf.PdfStamper;
-import com.aowagie.text.pdf.PdfString;
 import com.aowagie.text.pdf.PdfWriter;
 
 import es.gob.afirma.core.AOException;
+import es.gob.afirma.core.misc.CryptoInstancePool;
 
 /** Utilidades variadas para el tratamiento de PDF.
  * @author Tom&aacute;s Garc&iacute;a-Mer&aacute;s */
@@ -47,6 +48,8 @@ public final class PdfUtil {
 
 	private static final Logger LOGGER = Logger.getLogger(PdfUtil.class.getName());
 
+	private static final int BUFFER_SIZE = 8192;
+
 	private static final String FILTER_ADOBE_PKCS7_DETACHED = "/adbe.pkcs7.detached"; //$NON-NLS-1$
 
 	private static final String RANGE_INDICATOR = "-"; //$NON-NLS-1$
@@ -179,6 +182,49 @@ public final class PdfUtil {
 		return pdfReader;
 	}
 
+	/**
+	 * Obtiene el lector iText de un PDF almacenado en fichero. El fichero se accede de forma
+	 * aleatoria, sin cargarlo completo en memoria, salvo que se haya indicado contrase&ntilde;a
+	 * del PDF, en cuyo caso se lee completo para poder descifrarlo.
+	 * @param inPdf Fichero PDF de entrada.
+	 * @param xParams Par&aacute;metros adicionales.
+	 * @return Lector iText de PDF.
+	 * @throws PdfIsPasswordProtectedException Si el PDF estaba protegido con contrase&ntilde;a y
+	 *                                 esta no se proporcion&oacute;
+	 * @throws BadPdfPasswordException Si el PDF estaba protegido con contrase&ntilde;a y
+	 *                                 se indic&oacute; una incorrecta.
+	 * @throws InvalidPdfException Si el PDF era inv&aacute;lido o estaba corrupto.
+	 * @throws IOException Si no se puede leer el fichero.
+	 */
+	public static PdfReader getPdfReader(final Path inPdf,
+			                             final Properties xParams) throws PdfIsPasswordProtectedException,
+																		  BadPdfPasswordException,
+			                                                              InvalidPdfException,
+			                                                              IOException {
+
+		final Properties extraParams = xParams != null ? xParams : new Properties();
+
+		// iText solo admite la lectura aleatoria de ficheros sin contrasena
+		if (extraParams.containsKey(PdfExtraParams.OWNER_PASSWORD_STRING)
+				|| extraParams.containsKey(PdfExtraParams.USER_PASSWORD_STRING)) {
+			return getPdfReader(Files.readAllBytes(inPdf), extraParams);
+		}
+
+		if (!Files.isReadable(inPdf)) {
+			throw new IOException("No se puede leer el fichero PDF: " + inPdf); //$NON-NLS-1$
+		}
+
+		try {
+			return new PdfReader(inPdf.toAbsolutePath().toString());
+		}
+		catch (final BadPasswordException e) {
+			throw new PdfIsPasswordProtectedException("El PDF esta protegido por contrasena para lectura", e); //$NON-NLS-1$
+		}
+		catch (final IOException e) {
+			throw new InvalidPdfException(e);
+		}
+	}
+
 	/**
 	 * Comprueba si un PDF esta certificados y se pueden agregar firmas a &eacute;l.
 	 * @param pdfCertificationLevel Nivel de certificaci&oacute;n.
@@ -230,92 +276,122 @@ public final class PdfUtil {
 		return Boolean.parseBoolean(extraParams.getProperty(PdfExtraParams.ALWAYS_CREATE_REVISION)) || !pdfReader.getAcroFields().getSignatureNames().isEmpty();
 	}
 
-	static boolean pdfHasUnregisteredSignatures(final byte[] pdf, final Properties xParams)
-			throws InvalidPdfException, PdfIsPasswordProtectedException, BadPdfPasswordException {
-		final Properties extraParams = xParams != null ? xParams : new Properties();
-		final PdfReader pdfReader = PdfUtil.getPdfReader(pdf, extraParams);
-		return pdfHasUnregisteredSignatures(pdfReader);
+	/** Calcula la huella digital del rango firmable de un PDF ya pre-cerrado, procesando
+	 * directamente los octetos del rango a medida que se leen, sin cargarlo en memoria.
+	 * @param sap Apariencia de la firma PDF en curso, con el PDF ya pre-cerrado.
+	 * @param digestAlgorithm Algoritmo de huella digital.
+	 * @return Huella digital del rango firmable del PDF.
+	 * @throws NoSuchAlgorithmException Si el algoritmo de huella no est&aacute; soportado.
+	 * @throws IOException Si hay errores en la lectura del rango firmable. */
+	static byte[] getRangeDigest(final PdfSignatureAppearance sap,
+			                     final String digestAlgorithm) throws NoSuchAlgorithmException,
+	                                                                  IOException {
+		// La instancia no se toma de la reserva del hilo, ya que se usa mientras se lee el PDF
+		final MessageDigest md = MessageDigest.getInstance(digestAlgorithm);
+		final byte[] buffer = new byte[BUFFER_SIZE];
+		try (InputStream is = sap.getRangeStream()) {
+			int n;
+			while ((n = is.read(buffer)) > 0) {
+				md.update(buffer, 0, n);
+			}
+		}
+		return md.digest();
 	}
 
-	/** Obtiene el primer filtro de firma obtenido de un documento PDF.
-	 * Si no se encuentra ninguno, devuelve {@code null}.
-	 * @param pdf PDF que analizar.
-	 * @param xParams Par&aacute;metros extra con la configuraci&oacute;n de la operaci&oacute;n.
-	 * @return Filtro de firma o {@code null} si no se encuentra.
-	 * @throws InvalidPdfException Cuando los datos proporcionados no son un PDF.
-	 * @throws BadPdfPasswordException Cuando se ha insertado una contrase&ntilde;a err&oacute;nea en el PDF. */
-	static String getFirstSupportedSignSubFilter(final byte[] pdf, final Properties xParams) throws InvalidPdfException,
-	                                                                                                PdfIsPasswordProtectedException,
-	                                                                                                BadPdfPasswordException {
-		if (pdf == null) {
-			throw new IllegalArgumentException("El PDF de entrada no puede ser nulo"); //$NON-NLS-1$
+	/** Sustituye directamente sobre los octetos de un PDF el identificador de fichero (<i>/ID</i>) de su
+	 * &uacute;ltima revisi&oacute;n por otro de la misma longitud.
+	 * <p>El identificador se escribe en el <i>trailer</i> o diccionario de referencias cruzadas de la
+	 * &uacute;ltima revisi&oacute;n del documento (en ambos en los ficheros h&iacute;bridos), por lo que
+	 * se sustituyen todas sus apariciones desde el inicio de esa revisi&oacute;n, sin recorrer el resto
+	 * del PDF ni generar copias del mismo. El inicio de la revisi&oacute;n lo proporciona quien la
+	 * gener&oacute;, en lugar de deducirse de los marcadores de fin de fichero, que tambi&eacute;n
+	 * pueden aparecer dentro del contenido.</p>
+	 * @param pdf PDF sobre el que se realiza la sustituci&oacute;n.
+	 * @param revisionOffset Posici&oacute;n del PDF en la que comienza su &uacute;ltima revisi&oacute;n.
+	 * @param oldFileId Identificador actual del PDF.
+	 * @param newFileId Nuevo identificador del PDF.
+	 * @return <code>true</code> si se realiz&oacute; la sustituci&oacute;n, <code>false</code> si no se encontr&oacute;
+	 *         el identificador actual o si los identificadores no tienen la misma longitud. */
+	static boolean replaceFileId(final byte[] pdf,
+			                     final int revisionOffset,
+			                     final String oldFileId,
+			                     final String newFileId) {
+
+		final byte[] oldId = oldFileId.getBytes(StandardCharsets.ISO_8859_1);
+		final byte[] newId = newFileId.getBytes(StandardCharsets.ISO_8859_1);
+		if (oldId.length != newId.length || oldId.length == 0
+				|| revisionOffset < 0 || revisionOffset > pdf.length) {
+			return false;
 		}
 
-		final Properties extraParams = xParams != null ? xParams : new Properties();
-
-		final PdfReader pdfReader = PdfUtil.getPdfReader(pdf, extraParams);
-
-    	for (int i = 0; i < pdfReader.getXrefSize(); i++) {
-    		final PdfObject pdfobj = pdfReader.getPdfObject(i);
-    		if (pdfobj != null && pdfobj.isDictionary()) {
-    			final PdfDictionary d = (PdfDictionary) pdfobj;
-    			if (PdfName.SIG.equals(d.get(PdfName.TYPE))) {
+		boolean replaced = false;
+		int i = lastIndexOf(pdf, oldId, pdf.length - oldId.length, revisionOffset);
+		while (i >= 0) {
+			System.arraycopy(newId, 0, pdf, i, newId.length);
+			replaced = true;
+			i = lastIndexOf(pdf, oldId, i - oldId.length, revisionOffset);
+		}
+		return replaced;
+	}
 
-    				final String subFilter = d.get(PdfName.SUBFILTER) != null ?
-						d.get(PdfName.SUBFILTER).toString() : null;
+	/** Busca hacia atr&aacute;s una secuencia de octetos.
+	 * @param data Octetos en los que buscar.
+	 * @param target Secuencia buscada.
+	 * @param from Posici&oacute;n desde la que se comienza a buscar.
+	 * @param limit Posici&oacute;n m&iacute;nima en la que puede comenzar la secuencia.
+	 * @return Posici&oacute;n de la secuencia o -1 si no se encuentra. */
+	private static int lastIndexOf(final byte[] data, final byte[] target, final int from, final int limit) {
+		for (int i = Math.min(from, data.length - target.length); i >= limit; i--) {
+			int j = 0;
+			while (j < target.length && data[i + j] == target[j]) {
+				j++;
+			}
+			if (j == target.length) {
+				return i;
+			}
+		}
+		return -1;
+	}
 
-					if (SUPPORTED_SUBFILTERS.contains(subFilter)) {
-						return subFilter;
-					}
-    			}
-    		}
-    	}
+	/** Obtiene el primer filtro de firma soportado de entre las firmas ya indexadas de un PDF.
+	 * Si no se encuentra ninguno, devuelve {@code null}.
+	 * @param signatureIndex &Iacute;ndice de las firmas del PDF.
+	 * @return Filtro de firma o {@code null} si no se encuentra. */
+	static String getFirstSupportedSignSubFilter(final PdfSignatureIndex signatureIndex) {
+		for (final PdfSignatureIndex.SignatureEntry signature : signatureIndex.getSignatures()) {
+			if (SUPPORTED_SUBFILTERS.contains(signature.getSubFilter())) {
+				return signature.getSubFilter();
+			}
+		}
 
     	LOGGER.info("No se ha encontrado ningun filtro de firma soportado, se devolvera null"); //$NON-NLS-1$
 		return null;
 	}
 
-	static boolean pdfHasUnregisteredSignatures(final PdfReader pdfReader) {
+	/** Comprueba si alguna de las firmas ya indexadas de un PDF usa un subfiltro no soportado.
+	 * @param signatureIndex &Iacute;ndice de las firmas del PDF.
+	 * @return {@code true} si el PDF contiene firmas no registradas, {@code false} en caso contrario. */
+	static boolean pdfHasUnregisteredSignatures(final PdfSignatureIndex signatureIndex) {
 
 		boolean ret = false;
-    	for (int i = 0; i < pdfReader.getXrefSize(); i++) {
-    		final PdfObject pdfobj = pdfReader.getPdfObject(i);
-    		if (pdfobj != null && pdfobj.isDictionary()) {
-    			final PdfDictionary d = (PdfDictionary) pdfobj;
-    			if (PdfName.SIG.equals(d.get(PdfName.TYPE))) {
-
-    				final String subFilter = d.get(PdfName.SUBFILTER) != null ?
-    						d.get(PdfName.SUBFILTER).toString() : null;
-
-    				if (subFilter == null || !SUPPORTED_SUBFILTERS.contains(subFilter)) {
-    					ret = true;
-	    				try {
-	    					final PdfObject o = d.get(PdfName.CERT);
-	    					final byte[] data;
-	    					if (o instanceof PdfString) {
-	    						data = ((PdfString)o).getOriginalBytes();
-	    					}
-	    					else {
-	    						data = ((PdfString) ((PdfArray) d.get(PdfName.CERT)).getArrayList().get(0)).getOriginalBytes();
-	    					}
-
-							final X509Certificate cert = (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate( //$NON-NLS-1$
-								new ByteArrayInputStream(
-									data
-								)
-							);
-							LOGGER.info(()->
-								"Encontrada firma no registrada, hecha con certificado emitido por: " + cert.getIssuerX500Principal().toString() //$NON-NLS-1$
-							);
-						}
-	    				catch (final Exception e) {
-							LOGGER.warning("No se ha podido comprobar la identidad de una firma no registrada con el subfiltro: " + subFilter + ": " + e); //$NON-NLS-1$ //$NON-NLS-2$
-						}
-    				}
-    			}
-    		}
-    	}
-    	return ret;
+		for (final PdfSignatureIndex.SignatureEntry signature : signatureIndex.getSignatures()) {
+
+			final String subFilter = signature.getSubFilter();
+			if (subFilter == null || !SUPPORTED_SUBFILTERS.contains(subFilter)) {
+				ret = true;
+				try {
+					final X509Certificate cert = CryptoInstancePool.generateCertificate(signature.getCert());
+					LOGGER.info(()->
+						"Encontrada firma no registrada en la revision " + signature.getRevision() + //$NON-NLS-1$
+							", hecha con certificado emitido por: " + cert.getIssuerX500Principal().toString() //$NON-NLS-1$
+					);
+				}
+				catch (final Exception e) {
+					LOGGER.warning("No se ha podido comprobar la identidad de una firma no registrada con el subfiltro: " + subFilter + ": " + e); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+			}
+		}
+		return ret;
 	}
 
 	/** Campo de firma dentro de un PDF. */
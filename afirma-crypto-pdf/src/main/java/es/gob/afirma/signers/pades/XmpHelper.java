@@ -131,7 +131,7 @@ final class XmpHelper {
 		// Obtenemos la fecha de creacion del documento
 		final String originalCreationDate = getOriginalCreationDateAsW3C(reader);
 
-		if (!PdfUtil.isPdfAx(xmpBytes) || new AOPDFSigner().isSign(inPdf, extraParams)) {
+		if (!PdfUtil.isPdfAx(xmpBytes) || AOPDFSigner.isSign(reader)) {
 			reader.close();
 			return inPdf;
 		}
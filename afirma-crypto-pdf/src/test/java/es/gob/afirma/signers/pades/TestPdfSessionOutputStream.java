@@ -0,0 +1,64 @@
+/* Copyright (C) 2011 [Gobierno de Espana]
+ * This file is part of "Cliente @Firma".
+ * "Cliente @Firma" is free software; you can redistribute it and/or modify it under the terms of:
+ *   - the GNU General Public License as published by the Free Software Foundation;
+ *     either version 2 of the License, or (at your option) any later version.
+ *   - or The European Software License; either version 1.1 or (at your option) any later version.
+ * You may contact the copyright holder at: soporte.afirma@seap.minhap.es
+ */
+
+package es.gob.afirma.signers.pades;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TestPdfSessionOutputStream {
+
+	/**
+	 * Comprueba que el flujo devuelve el mismo contenido que un <code>ByteArrayOutputStream</code>
+	 * ante escrituras sucesivas y que, fuera del cierre de la firma, no conserva la referencia al
+	 * buffer escrito.
+	 * @throws Exception En cualquier error.
+	 */
+	@SuppressWarnings("static-method")
+	@Test
+	void testBufferReference() throws Exception {
+
+		// Fuera del cierre de la firma las escrituras siempre se copian
+		final byte[] reused = "%PDF".getBytes(StandardCharsets.ISO_8859_1); //$NON-NLS-1$
+		try (ByteArrayOutputStream os = new PdfSessionOutputStream()) {
+			os.write(reused, 0, reused.length);
+			reused[0] = 'X';
+			Assertions.assertEquals("%PDF", os.toString()); //$NON-NLS-1$
+		}
+
+		final byte[] buffer = "%PDF-1.7 contenido%%EOF basura".getBytes(StandardCharsets.ISO_8859_1); //$NON-NLS-1$
+		final int len = buffer.length - " basura".length(); //$NON-NLS-1$
+
+		try (ByteArrayOutputStream os = new PdfSessionOutputStream()) {
+			os.write(buffer, 0, len);
+			Assertions.assertEquals(len, os.size());
+			Assertions.assertArrayEquals(
+				"%PDF-1.7 contenido%%EOF".getBytes(StandardCharsets.ISO_8859_1), //$NON-NLS-1$
+				os.toByteArray()
+			);
+
+			final ByteArrayOutputStream copy = new ByteArrayOutputStream();
+			os.writeTo(copy);
+			Assertions.assertArrayEquals(os.toByteArray(), copy.toByteArray());
+
+			// Las escrituras posteriores se agregan al contenido previo
+			os.write('\n');
+			os.write(buffer, 0, 4);
+			Assertions.assertEquals("%PDF-1.7 contenido%%EOF\n%PDF", os.toString()); //$NON-NLS-1$
+
+			os.reset();
+			Assertions.assertEquals(0, os.size());
+			os.write(buffer, 1, 3);
+			Assertions.assertEquals("PDF", os.toString()); //$NON-NLS-1$
+		}
+	}
+}
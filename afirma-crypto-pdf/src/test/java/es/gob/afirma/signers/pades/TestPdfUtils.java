@@ -1,12 +1,17 @@
 package es.gob.afirma.signers.pades;
 
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Properties;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import com.aowagie.text.pdf.PdfReader;
+
 class TestPdfUtils {
 
 	/**
@@ -83,6 +88,120 @@ class TestPdfUtils {
 		}
 	}
 
+	/**
+	 * Comprueba la sustituci&oacute;n del identificador de fichero directamente sobre los
+	 * octetos del PDF.
+	 */
+	@SuppressWarnings("static-method")
+	@Test
+	void testReplaceFileId() {
+
+		final String oldId = "[<0123456789ABCDEF><0123456789ABCDEF>]"; //$NON-NLS-1$
+		final String newId = "[<FEDCBA9876543210><FEDCBA9876543210>]"; //$NON-NLS-1$
+		final String pdf = "%PDF-1.7\n1 0 obj\n<<>>\nendobj\ntrailer\n<</Size 2/ID " + oldId + ">>\n%%EOF\n"; //$NON-NLS-1$ //$NON-NLS-2$
+
+		final byte[] pdfBytes = pdf.getBytes(StandardCharsets.ISO_8859_1);
+		Assertions.assertTrue(PdfUtil.replaceFileId(pdfBytes, 0, oldId, newId));
+		Assertions.assertEquals(
+			pdf.replace(oldId, newId),
+			new String(pdfBytes, StandardCharsets.ISO_8859_1),
+			"No se ha sustituido correctamente el identificador del PDF" //$NON-NLS-1$
+		);
+
+		// Identificadores de distinta longitud o inexistentes no se sustituyen
+		Assertions.assertFalse(PdfUtil.replaceFileId(pdfBytes, 0, newId, "[<00><00>]")); //$NON-NLS-1$
+		Assertions.assertFalse(PdfUtil.replaceFileId(pdfBytes, 0, oldId, newId));
+	}
+
+	/**
+	 * Comprueba que se sustituyen todas las apariciones del identificador de fichero en la
+	 * &uacute;ltima revisi&oacute;n de un PDF h&iacute;brido (<i>trailer</i> y diccionario del flujo de
+	 * referencias cruzadas), sin modificar las revisiones anteriores, aunque el contenido de la
+	 * &uacute;ltima revisi&oacute;n incluya marcadores de fin de fichero.
+	 */
+	@SuppressWarnings("static-method")
+	@Test
+	void testReplaceFileIdInHybridRevision() {
+
+		final String oldId = "[<0123456789ABCDEF><0123456789ABCDEF>]"; //$NON-NLS-1$
+		final String newId = "[<FEDCBA9876543210><FEDCBA9876543210>]"; //$NON-NLS-1$
+		final String firstRevision = "%PDF-1.7\n1 0 obj\n<<>>\nendobj\ntrailer\n<</Size 2/ID " + oldId + ">>\n%%EOF\n"; //$NON-NLS-1$ //$NON-NLS-2$
+		final String lastRevision = "3 0 obj\n<</Length 6>>\nstream\n%%EOF\nendstream\nendobj\n" + //$NON-NLS-1$
+				"2 0 obj\n<</Type/XRef/Size 3/ID " + oldId + ">>\nstream\nendstream\nendobj\n" + //$NON-NLS-1$ //$NON-NLS-2$
+				"trailer\n<</Size 3/XRefStm 10/ID " + oldId + ">>\n%%EOF\n"; //$NON-NLS-1$ //$NON-NLS-2$
+
+		final byte[] pdfBytes = (firstRevision + lastRevision).getBytes(StandardCharsets.ISO_8859_1);
+		Assertions.assertTrue(PdfUtil.replaceFileId(pdfBytes, firstRevision.length(), oldId, newId));
+		Assertions.assertEquals(
+			firstRevision + lastRevision.replace(oldId, newId),
+			new String(pdfBytes, StandardCharsets.ISO_8859_1),
+			"No se han sustituido todas las apariciones del identificador en la ultima revision" //$NON-NLS-1$
+		);
+	}
+
+	/**
+	 * Comprueba que el &iacute;ndice de firmas de un PDF recoge sus diccionarios de firma
+	 * y sigue siendo utilizable una vez cerrado el lector.
+	 * @throws Exception En cualquier error.
+	 */
+	@SuppressWarnings("static-method")
+	@Test
+	void testSignatureIndex() throws Exception {
+
+		final PdfReader unsignedReader;
+		try (InputStream is = ClassLoader.getSystemResourceAsStream("TEST_PDF.pdf")) { //$NON-NLS-1$
+			unsignedReader = new PdfReader(is);
+		}
+		Assertions.assertTrue(PdfSignatureIndex.build(unsignedReader).getSignatures().isEmpty());
+
+		final PdfReader signedReader;
+		try (InputStream is = ClassLoader.getSystemResourceAsStream("TEST_PDF_Signed.pdf")) { //$NON-NLS-1$
+			signedReader = new PdfReader(is);
+		}
+		final int signatureCount = signedReader.getAcroFields().getSignatureNames().size();
+		final PdfSignatureIndex index = PdfSignatureIndex.build(signedReader);
+		signedReader.close();
+
+		final List<PdfSignatureIndex.SignatureEntry> signatures = index.getSignatures();
+		Assertions.assertEquals(
+			signatureCount,
+			signatures.size(),
+			"El indice no contiene todas las firmas del PDF" //$NON-NLS-1$
+		);
+		for (final PdfSignatureIndex.SignatureEntry signature : signatures) {
+			Assertions.assertEquals(4, signature.getByteRange().length);
+			Assertions.assertTrue(signature.getRevision() > 0);
+		}
+		Assertions.assertNotNull(PdfUtil.getFirstSupportedSignSubFilter(index));
+	}
+
+	/**
+	 * Comprueba que al configurar una firma respetuosa con las existentes se establece
+	 * el sub-filtro de las firmas previas del PDF.
+	 * @throws Exception En cualquier error.
+	 */
+	@SuppressWarnings("static-method")
+	@Test
+	void testConfigureRespectfulProperties() throws Exception {
+
+		final byte[] signedPdf;
+		try (InputStream is = ClassLoader.getSystemResourceAsStream("TEST_PDF_Signed.pdf")) { //$NON-NLS-1$
+			signedPdf = is.readAllBytes();
+		}
+
+		final Properties config = new Properties();
+		AOPDFSigner.configureRespectfulProperties(signedPdf, config);
+
+		final PdfReader signedReader = new PdfReader(signedPdf);
+		final String expected = PdfUtil.getFirstSupportedSignSubFilter(PdfSignatureIndex.build(signedReader));
+		signedReader.close();
+		Assertions.assertNotNull(expected);
+		Assertions.assertEquals(
+			expected.substring(expected.indexOf('/') + 1),
+			config.getProperty(PdfExtraParams.SIGNATURE_SUBFILTER)
+		);
+	}
+
 	private static void checkExpected(final List<Integer> pagesList, final int[] expected) {
 
 		final Integer[] pages = pagesList.toArray(new Integer[0]);
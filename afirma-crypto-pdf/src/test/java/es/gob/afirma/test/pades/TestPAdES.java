@@ -10,16 +10,24 @@
 package es.gob.afirma.test.pades;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPairGenerator;
 import java.security.KeyStore;
 import java.security.KeyStore.PrivateKeyEntry;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.GregorianCalendar;
+import java.util.List;
 import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Disabled;
@@ -31,7 +39,9 @@ import es.gob.afirma.core.signers.AOSigner;
 import es.gob.afirma.core.signers.AOSimpleSignInfo;
 import es.gob.afirma.core.util.tree.AOTreeModel;
 import es.gob.afirma.core.util.tree.AOTreeNode;
+import es.gob.afirma.signers.pades.AOPDFBatchSigner;
 import es.gob.afirma.signers.pades.AOPDFSigner;
+import es.gob.afirma.signers.pades.PdfBatchResult;
 import es.gob.afirma.signers.pades.PdfExtraParams;
 import es.gob.afirma.signers.pades.PdfTimestamper;
 
@@ -588,6 +598,216 @@ public class TestPAdES {
 		);
     }
 
+    /** Prueba de firma de PDF de fichero a fichero, sin cargar el documento en memoria.
+     * @throws Exception En cualquier error. */
+    @SuppressWarnings("static-method")
+	@Test
+    void testFileSignature() throws Exception {
+
+    	final KeyStore ks = KeyStore.getInstance("PKCS12"); //$NON-NLS-1$
+        try (InputStream is = ClassLoader.getSystemResourceAsStream(TestContants.CERT_PATH)) {
+        	ks.load(is, TestContants.CERT_PASS.toCharArray());
+        }
+        final PrivateKeyEntry pke = (PrivateKeyEntry) ks.getEntry(TestContants.CERT_ALIAS, new KeyStore.PasswordProtection(TestContants.CERT_PASS.toCharArray()));
+
+        final AOPDFSigner signer = new AOPDFSigner();
+
+        for (final String file : new String[] { TEST_FILES[0], TEST_FILES[1], TEST_FILE_PDFA1B }) {
+
+	        final byte[] original;
+	        try (InputStream isPdf = ClassLoader.getSystemResourceAsStream(file)) {
+	        	original = AOUtil.getDataFromInputStream(isPdf);
+	        }
+
+	        final File inFile = File.createTempFile("afirmaPDF-FileIn_", ".pdf"); //$NON-NLS-1$ //$NON-NLS-2$
+	        final File outFile = File.createTempFile("afirmaPDF-FileOut_", ".pdf"); //$NON-NLS-1$ //$NON-NLS-2$
+	        try (OutputStream fos = new FileOutputStream(inFile)) {
+	        	fos.write(original);
+	        }
+
+	        signer.sign(
+        		inFile.toPath(),
+        		outFile.toPath(),
+        		AOSignConstants.SIGN_ALGORITHM_SHA256WITHRSA,
+        		pke.getPrivateKey(),
+        		(X509Certificate[]) pke.getCertificateChain(),
+        		null
+    		);
+
+	        final byte[] result;
+	        try (InputStream fis = new FileInputStream(outFile)) {
+	        	result = AOUtil.getDataFromInputStream(fis);
+	        }
+
+	        Assertions.assertTrue(signer.isSign(result), "El fichero firmado a partir de " + file + " no se reconoce como firma"); //$NON-NLS-1$ //$NON-NLS-2$
+
+	        final int previousSigners = signer.isSign(original) ?
+        		AOTreeModel.getChildCount(signer.getSignersStructure(original, false).getRoot()) :
+        			0;
+	        Assertions.assertEquals(
+        		previousSigners + 1,
+        		AOTreeModel.getChildCount(signer.getSignersStructure(result, false).getRoot()),
+        		"No se ha agregado la firma al fichero " + file //$NON-NLS-1$
+    		);
+
+	        inFile.delete();
+	        outFile.delete();
+        }
+    }
+
+    /** Prueba de firma por lotes de documentos PDF, en memoria y en fichero.
+     * @throws Exception Cuando ocurre cualquier error. */
+    @SuppressWarnings("static-method")
+	@Test
+    void testBatchSignature() throws Exception {
+
+    	final KeyStore ks = KeyStore.getInstance("PKCS12"); //$NON-NLS-1$
+        try (InputStream is = ClassLoader.getSystemResourceAsStream(TestContants.CERT_PATH)) {
+        	ks.load(is, TestContants.CERT_PASS.toCharArray());
+        }
+        final PrivateKeyEntry pke = (PrivateKeyEntry) ks.getEntry(TestContants.CERT_ALIAS, new KeyStore.PasswordProtection(TestContants.CERT_PASS.toCharArray()));
+
+        final String[] files = { TEST_FILES[0], TEST_FILES[1], TEST_FILES[2], TEST_FILE_PDFA1B };
+        final List<byte[]> pdfs = new ArrayList<>();
+        for (final String file : files) {
+	        try (InputStream isPdf = ClassLoader.getSystemResourceAsStream(file)) {
+	        	pdfs.add(AOUtil.getDataFromInputStream(isPdf));
+	        }
+        }
+        // Agregamos un documento que no es un PDF, que no debe impedir firmar el resto
+        pdfs.add("No es un PDF".getBytes()); //$NON-NLS-1$
+
+        final AOPDFSigner signer = new AOPDFSigner();
+        final AOPDFBatchSigner batchSigner = new AOPDFBatchSigner(2, 3);
+
+        final PdfBatchResult result = batchSigner.sign(
+    		pdfs,
+    		AOSignConstants.SIGN_ALGORITHM_SHA256WITHRSA,
+    		pke.getPrivateKey(),
+    		(X509Certificate[]) pke.getCertificateChain(),
+    		null
+		);
+
+        Assertions.assertEquals(pdfs.size(), result.getDocumentResults().size());
+        Assertions.assertEquals(files.length, result.getSignedCount());
+        Assertions.assertEquals(1, result.getErrorCount());
+        for (int i = 0; i < files.length; i++) {
+        	final PdfBatchResult.DocumentResult docResult = result.getDocumentResults().get(i);
+        	Assertions.assertEquals(i, docResult.getIndex());
+        	Assertions.assertTrue(docResult.isSigned(), "No se ha firmado el documento " + files[i] + ": " + docResult.getError()); //$NON-NLS-1$ //$NON-NLS-2$
+        	Assertions.assertTrue(signer.isSign(docResult.getSignedPdf()), "El fichero firmado a partir de " + files[i] + " no se reconoce como firma"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        Assertions.assertNotNull(result.getDocumentResults().get(files.length).getError());
+
+        // Firma de ficheros
+        final Path inDir = Files.createTempDirectory("afirmaPDF-BatchIn_"); //$NON-NLS-1$
+        final Path outDir = Files.createTempDirectory("afirmaPDF-BatchOut_"); //$NON-NLS-1$
+        final List<Path> inPdfs = new ArrayList<>();
+        for (int i = 0; i < files.length; i++) {
+        	inPdfs.add(Files.write(inDir.resolve(files[i]), pdfs.get(i)));
+        }
+
+        final PdfBatchResult fileResult = batchSigner.sign(
+    		inPdfs,
+    		outDir,
+    		AOSignConstants.SIGN_ALGORITHM_SHA256WITHRSA,
+    		pke.getPrivateKey(),
+    		(X509Certificate[]) pke.getCertificateChain(),
+    		null
+		);
+
+        Assertions.assertEquals(files.length, fileResult.getSignedCount());
+        for (final PdfBatchResult.DocumentResult docResult : fileResult.getDocumentResults()) {
+        	Assertions.assertTrue(signer.isSign(Files.readAllBytes(docResult.getOutput())), "El fichero " + docResult.getOutput() + " no se reconoce como firma"); //$NON-NLS-1$ //$NON-NLS-2$
+        	Files.delete(docResult.getOutput());
+        	Files.delete(docResult.getInput());
+        }
+        Files.delete(inDir);
+        Files.delete(outDir);
+    }
+
+    /** Prueba que se rechaza un lote de ficheros en el que varios documentos se guardar&iacute;an
+     * en el mismo fichero de salida.
+     * @throws Exception Cuando ocurre cualquier error. */
+    @SuppressWarnings("static-method")
+	@Test
+    void testBatchSignatureDuplicatedOutput() throws Exception {
+
+        final Path inDir1 = Files.createTempDirectory("afirmaPDF-BatchIn_"); //$NON-NLS-1$
+        final Path inDir2 = Files.createTempDirectory("afirmaPDF-BatchIn_"); //$NON-NLS-1$
+        final Path outDir = Files.createTempDirectory("afirmaPDF-BatchOut_"); //$NON-NLS-1$
+
+        final List<Path> inPdfs = new ArrayList<>();
+        inPdfs.add(inDir1.resolve("TEST_PDF.pdf")); //$NON-NLS-1$
+        inPdfs.add(inDir2.resolve("TEST_PDF.pdf")); //$NON-NLS-1$
+
+        try {
+        	Assertions.assertThrows(
+    			IllegalArgumentException.class,
+    			() -> new AOPDFBatchSigner(1).sign(
+					inPdfs,
+					outDir,
+					AOSignConstants.SIGN_ALGORITHM_SHA256WITHRSA,
+					null,
+					null,
+					null
+				)
+			);
+        	try (Stream<Path> outFiles = Files.list(outDir)) {
+        		Assertions.assertEquals(0, outFiles.count(), "Se han generado ficheros de salida"); //$NON-NLS-1$
+        	}
+        }
+        finally {
+        	Files.delete(inDir1);
+        	Files.delete(inDir2);
+        	Files.delete(outDir);
+        }
+    }
+
+    /** Prueba que un error en la firma PKCS#1 de un lote de ficheros no deja ficheros de salida.
+     * @throws Exception Cuando ocurre cualquier error. */
+    @SuppressWarnings("static-method")
+	@Test
+    void testBatchSignatureFailureRemovesOutput() throws Exception {
+
+    	final KeyStore ks = KeyStore.getInstance("PKCS12"); //$NON-NLS-1$
+        try (InputStream is = ClassLoader.getSystemResourceAsStream(TestContants.CERT_PATH)) {
+        	ks.load(is, TestContants.CERT_PASS.toCharArray());
+        }
+        final PrivateKeyEntry pke = (PrivateKeyEntry) ks.getEntry(TestContants.CERT_ALIAS, new KeyStore.PasswordProtection(TestContants.CERT_PASS.toCharArray()));
+
+        final Path inDir = Files.createTempDirectory("afirmaPDF-BatchIn_"); //$NON-NLS-1$
+        final Path outDir = Files.createTempDirectory("afirmaPDF-BatchOut_"); //$NON-NLS-1$
+        final Path inPdf;
+        try (InputStream isPdf = ClassLoader.getSystemResourceAsStream(TEST_FILES[0])) {
+        	inPdf = Files.write(inDir.resolve(TEST_FILES[0]), AOUtil.getDataFromInputStream(isPdf));
+        }
+        // Un fichero de salida previo no debe quedar sustituido por un PDF incompleto
+        final Path outPdf = outDir.resolve(AOPDFSigner.getSignedName(TEST_FILES[0]));
+        Files.write(outPdf, "Salida anterior".getBytes()); //$NON-NLS-1$
+
+        // Una clave de curva eliptica no es valida para un algoritmo RSA, asi que falla la firma PKCS#1
+        final PdfBatchResult result = new AOPDFBatchSigner(1).sign(
+    		Collections.singletonList(inPdf),
+    		outDir,
+    		AOSignConstants.SIGN_ALGORITHM_SHA256WITHRSA,
+    		KeyPairGenerator.getInstance("EC").generateKeyPair().getPrivate(), //$NON-NLS-1$
+    		(X509Certificate[]) pke.getCertificateChain(),
+    		null
+		);
+
+        Assertions.assertEquals(1, result.getErrorCount());
+        Assertions.assertNull(result.getDocumentResults().get(0).getOutput());
+        Assertions.assertFalse(Files.exists(outPdf), "Se ha dejado un fichero de salida tras el error de firma"); //$NON-NLS-1$
+        try (Stream<Path> files = Files.list(outDir)) {
+        	Assertions.assertEquals(0, files.count(), "Se han dejado ficheros en el directorio de salida"); //$NON-NLS-1$
+        }
+
+        Files.delete(inPdf);
+        Files.delete(inDir);
+        Files.delete(outDir);
+    }
+
     /** Prueba de firma visible PDF sobre un documento PDF/A.
      * @throws Exception Cuando ocurre cualquier error. */
     @SuppressWarnings("static-method")